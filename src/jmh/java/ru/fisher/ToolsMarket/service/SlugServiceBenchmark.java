@@ -0,0 +1,49 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость одного вызова SlugService.slugify против прежней реализации
+ * импортеров (HashMap транслитерации на вызов и пять replaceAll).
+ * <p>
+ * Запуск: mvn -P jmh test-compile exec:exec -Djmh.args=SlugServiceBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlugServiceBenchmark {
+
+    // Типичные названия из прайсов и фидов поставщиков
+    private static final List<String> NAMES = List.of(
+            "Дрель ударная Bosch GSB 13 RE 600 Вт",
+            "Набор бит (32 шт.) -- PH/PZ/TORX",
+            "Шуруповёрт аккумуляторный 18V 2×2.0Ah с кейсом",
+            "Перфоратор SDS-plus 800 Вт 2,7 Дж",
+            "ЩЁТКА-СМЕТКА «Эконом»",
+            "Круг отрезной по металлу 125x1.2x22.23 мм A60S BF");
+
+    private int next;
+
+    private String name() {
+        String name = NAMES.get(next);
+        next = (next + 1) % NAMES.size();
+        return name;
+    }
+
+    @Benchmark
+    public void slugify(Blackhole blackhole) {
+        blackhole.consume(SlugService.slugify(name(), 150, "product"));
+    }
+
+    @Benchmark
+    public void previousRegex(Blackhole blackhole) {
+        blackhole.consume(SlugServiceTest.regexSlug(name(), 150));
+    }
+}
@@ -0,0 +1,18 @@
+package ru.fisher.ToolsMarket.batch;
+
+import java.util.Map;
+
+/**
+ * Строка листа Excel вместе с разобранным заголовком листа
+ *
+ * @param rowIndex номер строки с нуля
+ * @param cells    значения по индексу столбца
+ * @param columns  индексы столбцов из строки заголовков
+ */
+public record ExcelRow(
+        int sheetIndex,
+        int rowIndex,
+        String[] cells,
+        Map<String, Integer> columns
+) {
+}
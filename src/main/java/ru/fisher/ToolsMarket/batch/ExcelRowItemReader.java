@@ -0,0 +1,102 @@
+package ru.fisher.ToolsMarket.batch;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import ru.fisher.ToolsMarket.util.StreamingExcelReader;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Потоковый reader строк Excel для задач импорта.
+ * Строки заголовков в результат не попадают. Позиция (количество прочитанных строк)
+ * сохраняется в контексте шага — при перезапуске уже обработанные строки пропускаются.
+ */
+public class ExcelRowItemReader extends AbstractItemCountingItemStreamItemReader<ExcelRow> {
+
+    private final Path file;
+    private final Function<String[], Map<String, Integer>> headerDetector;
+    private final String missingHeaderMessage;
+
+    private StreamingExcelReader.RowCursor cursor;
+    private long estimatedRows;
+    private long rowsSeen;
+    private Map<String, Integer> columns;
+    private boolean sheetOpen;
+    private boolean finished;
+
+    /**
+     * @param headerDetector       индексы столбцов по строке или null, если строка — не заголовок
+     * @param missingHeaderMessage если задано — читается только первый лист, и заголовок обязан
+     *                             быть в его первой строке; иначе на каждом листе заголовок ищется
+     *                             среди строк, а листы без него пропускаются
+     */
+    public ExcelRowItemReader(String name, Path file,
+                              Function<String[], Map<String, Integer>> headerDetector,
+                              String missingHeaderMessage) {
+        setName(name);
+        this.file = file;
+        this.headerDetector = headerDetector;
+        this.missingHeaderMessage = missingHeaderMessage;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        estimatedRows = StreamingExcelReader.estimateRows(file, missingHeaderMessage != null ? 1 : Integer.MAX_VALUE);
+        rowsSeen = 0;
+        cursor = StreamingExcelReader.open(file);
+        columns = null;
+        sheetOpen = false;
+        finished = false;
+    }
+
+    @Override
+    protected ExcelRow doRead() throws Exception {
+        while (!finished) {
+            if (!sheetOpen) {
+                if (!cursor.nextSheet()) {
+                    finished = true;
+                    break;
+                }
+                sheetOpen = true;
+                columns = null;
+            }
+
+            String[] cells = cursor.nextRow();
+            if (cells == null) {
+                sheetOpen = false;
+                finished = missingHeaderMessage != null;
+                continue;
+            }
+            rowsSeen++;
+
+            if (columns == null) {
+                columns = headerDetector.apply(cells);
+                if (columns == null && missingHeaderMessage != null) {
+                    throw new IllegalStateException(missingHeaderMessage);
+                }
+                continue;
+            }
+
+            return new ExcelRow(cursor.sheetIndex(), cursor.rowIndex(), cells, columns);
+        }
+        return null;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        executionContext.putLong(ImportStats.PROGRESS_DONE, rowsSeen);
+        executionContext.putLong(ImportStats.PROGRESS_TOTAL, estimatedRows);
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package ru.fisher.ToolsMarket.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.dto.PriceRow;
+import ru.fisher.ToolsMarket.dto.ProductImportRow;
+import ru.fisher.ToolsMarket.exceptions.ImportRowException;
+import ru.fisher.ToolsMarket.parsingXml.StemYmlImportService;
+import ru.fisher.ToolsMarket.parsingXml.YmlFeedFetcher;
+import ru.fisher.ToolsMarket.parsingXml.YmlOffer;
+import ru.fisher.ToolsMarket.parsingXml.YmlOfferImporter;
+import ru.fisher.ToolsMarket.repository.PriceBulkJdbcRepository;
+import ru.fisher.ToolsMarket.repository.ProductBulkJdbcRepository;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository;
+import ru.fisher.ToolsMarket.service.BulkProductParseService;
+import ru.fisher.ToolsMarket.service.ExcelProductImportService;
+import ru.fisher.ToolsMarket.service.PriceExcelParser;
+import ru.fisher.ToolsMarket.service.PriceImportService;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Импорты как чанковые задачи Spring Batch: reader (потоковое чтение файла или фида),
+ * processor (проверка и преобразование строки), writer (пакетная запись в БД).
+ * Каждый чанк из app.import.batch-size строк коммитится отдельно вместе с позицией reader,
+ * поэтому упавшая задача перезапускается с последнего закоммиченного чанка.
+ * Некорректные строки (ImportRowException) пропускаются, но не больше app.import.skip-limit.
+ * История запусков хранится в таблицах BATCH_* (V20).
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class ImportJobsConfig {
+
+    public static final String EXCEL_PRODUCT_IMPORT_JOB = "excelProductImportJob";
+    public static final String PRICE_IMPORT_JOB = "priceImportJob";
+    public static final String YML_IMPORT_JOB = "ymlImportJob";
+    public static final String PRODUCT_PARSE_JOB = "productParseJob";
+
+    // Параметры задач
+    public static final String PARAM_FILE = "file";
+    public static final String PARAM_FILE_NAME = "fileName";
+    public static final String PARAM_UPDATE_EXISTING = "updateExisting";
+    public static final String PARAM_URL = "url";
+    public static final String PARAM_RUN_AT = "run.at";
+
+    // id категорий фида → id в БД, переживает перезапуск в контексте задачи
+    static final String YML_CATEGORY_IDS = "yml.categoryIds";
+
+    // Скачанный фид и его валидаторы (см. YmlFeedFetcher, YmlFeedListener)
+    static final String YML_FEED_FILE = "yml.feedFile";
+    static final String YML_FEED_ETAG = "yml.etag";
+    static final String YML_FEED_LAST_MODIFIED = "yml.lastModified";
+    static final String YML_FEED_HASH = "yml.contentHash";
+    static final String YML_FEED_SIZE = "yml.contentLength";
+    public static final String YML_NOT_MODIFIED = "yml.notModified";
+    static final String FEED_NOT_MODIFIED_EXIT = "NOT_MODIFIED";
+
+    private final JobRepository jobRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.import.batch-size}")
+    private int batchSize;
+
+    @Value("${app.import.skip-limit:1000}")
+    private int skipLimit;
+
+    @Value("${app.import.work-dir:${java.io.tmpdir}/toolsmarket-imports}")
+    private String workDir;
+
+    // Доля пропавших из фида предложений, выше которой фид считается неполным
+    @Value("${app.yml.max-deactivate-ratio:0.5}")
+    private double maxDeactivateRatio;
+
+    // Разобранные предложения, ожидающие writer; producer ждет, если очередь заполнена
+    @Value("${app.yml.pipeline.queue-capacity:1000}")
+    private int pipelineQueueCapacity;
+
+    // Ссылок в пачке массового парсинга: страницы пачки скачиваются параллельно
+    @Value("${app.parse.batch-size:50}")
+    private int parseBatchSize;
+
+    // ---------------- Товары из Excel ----------------
+
+    @Bean
+    public Job excelProductImportJob(Step excelProductImportStep) {
+        return new JobBuilder(EXCEL_PRODUCT_IMPORT_JOB, jobRepository)
+                .listener(new UploadCleanupListener())
+                .start(excelProductImportStep)
+                .build();
+    }
+
+    @Bean
+    public Step excelProductImportStep(ExcelRowItemReader excelProductReader,
+                                       ExcelProductImportService excelImportService,
+                                       ItemWriter<ProductImportRow> excelProductWriter) {
+        ItemProcessor<ExcelRow, ProductImportRow> processor =
+                row -> excelImportService.toImportRow(row.cells(), row.columns());
+
+        ImportStatsListener stats = new ImportStatsListener();
+        return new StepBuilder("excelProductImportStep", jobRepository)
+                .<ExcelRow, ProductImportRow>chunk(batchSize, transactionManager)
+                .reader(excelProductReader)
+                .processor(processor)
+                .writer(excelProductWriter)
+                .listener((ItemWriteListener<Object>) stats)
+                .faultTolerant()
+                .skip(ImportRowException.class)
+                .skipLimit(skipLimit)
+                .listener(new ImportSkipListener())
+                .listener((ChunkListener) stats)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public ExcelRowItemReader excelProductReader(@Value("#{jobParameters['file']}") String file,
+                                                 ExcelProductImportService excelImportService) {
+        // Импортируется только первый лист, заголовок — в первой строке
+        return new ExcelRowItemReader("excelProductReader", Path.of(file),
+                excelImportService::detectHeader, ExcelProductImportService.MISSING_COLUMNS_MESSAGE);
+    }
+
+    @Bean
+    @StepScope
+    public ItemWriter<ProductImportRow> excelProductWriter(
+            @Value("#{jobParameters['updateExisting']}") String updateExistingParam,
+            ExcelProductImportService excelImportService) {
+
+        boolean updateExisting = Boolean.parseBoolean(updateExistingParam);
+        Long categoryId = excelImportService.defaultCategoryId();
+
+        return chunk -> {
+            // Повторы артикула внутри чанка; повтор из прошлых чанков
+            // upsert сам отметит как существующий товар
+            Map<String, ProductImportRow> unique = new LinkedHashMap<>();
+            List<String> duplicates = new ArrayList<>();
+            for (ProductImportRow row : chunk) {
+                if (unique.putIfAbsent(row.sku(), row) != null) {
+                    duplicates.add(row.sku() + " (повтор в файле)");
+                }
+            }
+
+            List<ProductImportRow> rows = new ArrayList<>(unique.values());
+            ProductBulkJdbcRepository.UpsertOutcome outcome =
+                    excelImportService.saveBatch(rows, categoryId, updateExisting);
+
+            // Остальные артикулы уже были в каталоге
+            Set<String> affected = new HashSet<>(outcome.inserted());
+            affected.addAll(outcome.updated());
+            List<String> skipped = new ArrayList<>(duplicates);
+            for (ProductImportRow row : rows) {
+                if (!affected.contains(row.sku())) {
+                    skipped.add(row.sku() + " (" + (updateExisting ? "без изменений" : "уже существует") + ")");
+                }
+            }
+
+            ImportStats.increment(ImportStats.CREATED, outcome.inserted().size());
+            ImportStats.append(ImportStats.CREATED_ITEMS, outcome.inserted());
+            ImportStats.increment(ImportStats.UPDATED, outcome.updated().size());
+            ImportStats.append(ImportStats.UPDATED_ITEMS, outcome.updated());
+            ImportStats.increment(ImportStats.SKIPPED, skipped.size());
+            ImportStats.append(ImportStats.SKIPPED_ITEMS, skipped);
+        };
+    }
+
+    // ---------------- Парсинг товаров по ссылкам ----------------
+
+    @Bean
+    public Job productParseJob(Step productParseStep) {
+        return new JobBuilder(PRODUCT_PARSE_JOB, jobRepository)
+                .listener(new UploadCleanupListener())
+                .start(productParseStep)
+                .build();
+    }
+
+    @Bean
+    public Step productParseStep(UrlListItemReader productUrlReader,
+                                 ItemWriter<String> productParseWriter) {
+        // Пачка скачивается долго — транзакция чанка не должна держать соединение с БД.
+        // Черновики сохраняются своей транзакцией (BulkProductParseService.saveDrafts),
+        // повтор пачки после сбоя безопасен: существующие артикулы пропускаются
+        ImportStatsListener stats = new ImportStatsListener();
+        return new StepBuilder("productParseStep", jobRepository)
+                .<String, String>chunk(parseBatchSize, new ResourcelessTransactionManager())
+                .reader(productUrlReader)
+                .writer(productParseWriter)
+                .listener((ItemWriteListener<Object>) stats)
+                .listener((ChunkListener) stats)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public UrlListItemReader productUrlReader(@Value("#{jobParameters['file']}") String file) {
+        return new UrlListItemReader("productUrlReader", Path.of(file));
+    }
+
+    @Bean
+    @StepScope
+    public ItemWriter<String> productParseWriter(BulkProductParseService parseService) {
+        return chunk -> {
+            List<BulkProductParseService.ParseOutcome> parsed = parseService.parseAll(new ArrayList<>(chunk.getItems()));
+            BulkProductParseService.DraftOutcome outcome = parseService.saveDrafts(parsed);
+
+            ImportStats.increment(ImportStats.CREATED, outcome.created().size());
+            ImportStats.append(ImportStats.CREATED_ITEMS, outcome.created());
+            ImportStats.increment(ImportStats.SKIPPED, outcome.skipped().size());
+            ImportStats.append(ImportStats.SKIPPED_ITEMS, outcome.skipped());
+            ImportStats.increment(ImportStats.ERRORS, outcome.errors().size());
+            ImportStats.append(ImportStats.ERROR_MESSAGES, outcome.errors());
+        };
+    }
+
+    // ---------------- Цены из Excel ----------------
+
+    @Bean
+    public Job priceImportJob(Step priceImportStep) {
+        return new JobBuilder(PRICE_IMPORT_JOB, jobRepository)
+                .listener(new UploadCleanupListener())
+                .start(priceImportStep)
+                .build();
+    }
+
+    @Bean
+    public Step priceImportStep(ExcelRowItemReader priceReader,
+                                ItemWriter<PriceRow> priceWriter) {
+        // Строки без артикула или цены — не товары, отфильтровываются (null)
+        ItemProcessor<ExcelRow, PriceRow> processor =
+                row -> PriceExcelParser.toPriceRow(row.cells(), row.columns());
+
+        ImportStatsListener stats = new ImportStatsListener();
+        return new StepBuilder("priceImportStep", jobRepository)
+                .<ExcelRow, PriceRow>chunk(batchSize, transactionManager)
+                .reader(priceReader)
+                .processor(processor)
+                .writer(priceWriter)
+                .listener((ItemWriteListener<Object>) stats)
+                .faultTolerant()
+                .skip(ImportRowException.class)
+                .skipLimit(skipLimit)
+                .listener(new ImportSkipListener())
+                .listener((ChunkListener) stats)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public ExcelRowItemReader priceReader(@Value("#{jobParameters['file']}") String file) {
+        // Все листы, заголовок ищется на каждом листе
+        return new ExcelRowItemReader("priceReader", Path.of(file),
+                PriceExcelParser::detectHeader, null);
+    }
+
+    @Bean
+    @StepScope
+    public ItemWriter<PriceRow> priceWriter(
+            @Value("#{jobParameters['fileName']}") String fileName,
+            @Value("#{stepExecution.jobExecution.jobInstance.instanceId}") Long jobInstanceId,
+            PriceImportService priceImportService,
+            PriceBulkJdbcRepository priceBulkRepository) {
+
+        return chunk -> {
+            ImportResult result = priceImportService.applyPrices(new ArrayList<>(chunk.getItems()), fileName);
+            priceBulkRepository.saveHistory(jobInstanceId, result.priceChanges());
+
+            ImportStats.increment(ImportStats.UPDATED, result.updatedCount());
+            ImportStats.increment(ImportStats.SAME_PRICE, result.samePriceCount());
+            ImportStats.increment(ImportStats.NOT_FOUND, result.notFoundCount());
+            ImportStats.append(ImportStats.NOT_FOUND_ITEMS, result.notFoundArticles());
+        };
+    }
+
+    // ---------------- YML-фид ----------------
+
+    /**
+     * Фид скачивается один раз (шаг ymlFetchStep), категории и предложения читаются из файла.
+     * Неизмененный фид — задача завершается сразу после скачивания.
+     */
+    @Bean
+    public Job ymlImportJob(Step ymlFetchStep, Step ymlCategoriesStep, Step ymlOffersStep,
+                            Step ymlDeactivateStep, YmlFeedStateJdbcRepository feedStateRepository) {
+        return new JobBuilder(YML_IMPORT_JOB, jobRepository)
+                .listener(new YmlFeedListener(feedStateRepository))
+                .start(ymlFetchStep)
+                .on(FEED_NOT_MODIFIED_EXIT).end()
+                .from(ymlFetchStep).on(ExitStatus.COMPLETED.getExitCode()).to(ymlCategoriesStep)
+                .next(ymlOffersStep)
+                .next(ymlDeactivateStep)
+                .end()
+                .build();
+    }
+
+    /**
+     * Условное скачивание фида во временный файл.
+     * При перезапуске завершенный шаг не повторяется — читается тот же файл.
+     */
+    @Bean
+    public Step ymlFetchStep(YmlFeedFetcher feedFetcher) {
+        Tasklet tasklet = (contribution, chunkContext) -> {
+            StepContext stepContext = chunkContext.getStepContext();
+            String url = (String) stepContext.getJobParameters().get(PARAM_URL);
+            JobExecution jobExecution = stepContext.getStepExecution().getJobExecution();
+            Path target = Path.of(workDir, "yml", "feed-" + jobExecution.getJobId() + ".xml");
+
+            YmlFeedFetcher.FetchResult result = feedFetcher.fetch(url, target);
+
+            ExecutionContext jobContext = jobExecution.getExecutionContext();
+            if (result.notModified()) {
+                jobContext.putString(YML_NOT_MODIFIED, "true");
+                contribution.setExitStatus(new ExitStatus(FEED_NOT_MODIFIED_EXIT,
+                        "Фид не изменился с последнего импорта"));
+                return RepeatStatus.FINISHED;
+            }
+
+            jobContext.putString(YML_FEED_FILE, result.file().toString());
+            jobContext.putString(YML_FEED_HASH, result.contentHash());
+            jobContext.putLong(YML_FEED_SIZE, result.contentLength());
+            if (result.etag() != null) jobContext.putString(YML_FEED_ETAG, result.etag());
+            if (result.lastModified() != null) jobContext.putString(YML_FEED_LAST_MODIFIED, result.lastModified());
+            return RepeatStatus.FINISHED;
+        };
+
+        return new StepBuilder("ymlFetchStep", jobRepository)
+                .tasklet(tasklet, transactionManager)
+                .build();
+    }
+
+    /**
+     * Категории фида — одной транзакцией: их немного, а товарам нужен полный справочник.
+     * При перезапуске завершенный шаг не повторяется, справочник берется из контекста задачи.
+     */
+    @Bean
+    public Step ymlCategoriesStep(StemYmlImportService ymlImportService) {
+        Tasklet tasklet = (contribution, chunkContext) -> {
+            ExecutionContext jobContext =
+                    chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext();
+            Map<String, Long> categoryIds =
+                    ymlImportService.importCategories(Path.of(jobContext.getString(YML_FEED_FILE)));
+
+            jobContext.put(YML_CATEGORY_IDS, new HashMap<>(categoryIds));
+            ImportStats.increment(ImportStats.CATEGORIES, categoryIds.size());
+            return RepeatStatus.FINISHED;
+        };
+
+        return new StepBuilder("ymlCategoriesStep", jobRepository)
+                .tasklet(tasklet, transactionManager)
+                .listener(new ImportStatsListener())
+                .build();
+    }
+
+    @Bean
+    public Step ymlOffersStep(YmlOfferItemReader ymlOfferReader,
+                              ItemProcessor<YmlOffer, YmlOffer> ymlOfferProcessor,
+                              ItemWriter<YmlOffer> ymlOfferWriter) {
+        ImportStatsListener stats = new ImportStatsListener();
+        return new StepBuilder("ymlOffersStep", jobRepository)
+                .<YmlOffer, YmlOffer>chunk(batchSize, transactionManager)
+                .reader(ymlOfferReader)
+                .processor(ymlOfferProcessor)
+                .writer(ymlOfferWriter)
+                .listener((ItemWriteListener<Object>) stats)
+                .faultTolerant()
+                .skip(ImportRowException.class)
+                .skipLimit(skipLimit)
+                .listener(new ImportSkipListener())
+                .listener((ChunkListener) stats)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public YmlOfferItemReader ymlOfferReader(
+            @Value("#{jobExecutionContext['" + YML_FEED_FILE + "']}") String feedFile,
+            StemYmlImportService ymlImportService,
+            YmlOfferImporter offerImporter,
+            @Qualifier(AsyncConfig.YML_PIPELINE_EXECUTOR) TaskExecutor ymlPipelineExecutor) {
+        return new YmlOfferItemReader("ymlOfferReader", Path.of(feedFile), ymlImportService, offerImporter,
+                ymlPipelineExecutor, pipelineQueueCapacity);
+    }
+
+    @Bean
+    @StepScope
+    public ItemProcessor<YmlOffer, YmlOffer> ymlOfferProcessor(
+            @Value("#{jobExecutionContext['" + YML_CATEGORY_IDS + "']}") Map<String, Long> categoryIds) {
+        return offer -> {
+            if (offer.externalId() == null || offer.externalId().isBlank()) {
+                throw new ImportRowException("Нет id предложения");
+            }
+            if (offer.name() == null || offer.name().isBlank()) {
+                throw new ImportRowException("Пустое наименование");
+            }
+            if (!categoryIds.containsKey(offer.categoryXmlId())) {
+                log.warn("Категория {} не найдена", offer.categoryXmlId());
+                return null;
+            }
+            return offer;
+        };
+    }
+
+    @Bean
+    @StepScope
+    public ItemWriter<YmlOffer> ymlOfferWriter(
+            @Value("#{jobExecutionContext['" + YML_CATEGORY_IDS + "']}") Map<String, Long> categoryIds,
+            @Value("#{jobParameters['url']}") String url,
+            @Value("#{stepExecution.jobExecution.jobId}") Long runId,
+            StemYmlImportService ymlImportService) {
+        String supplier = StemYmlImportService.supplierOf(url);
+        return chunk -> {
+            StemYmlImportService.WriteOutcome outcome =
+                    ymlImportService.writeOffers(chunk.getItems(), categoryIds, supplier, runId);
+            ImportStats.increment(ImportStats.IMPORTED, outcome.imported());
+            ImportStats.increment(ImportStats.UNCHANGED, outcome.unchanged());
+        };
+    }
+
+    /**
+     * Товары предложений, которых нет в фиде этого запуска, снимаются с продажи.
+     * Отметка «увиден» — id экземпляра задачи, поэтому перезапуск ее не теряет.
+     */
+    @Bean
+    public Step ymlDeactivateStep(StemYmlImportService ymlImportService) {
+        Tasklet tasklet = (contribution, chunkContext) -> {
+            StepContext stepContext = chunkContext.getStepContext();
+            String supplier = StemYmlImportService.supplierOf((String) stepContext.getJobParameters().get(PARAM_URL));
+            long runId = stepContext.getStepExecution().getJobExecution().getJobId();
+
+            ImportStats.increment(ImportStats.DEACTIVATED,
+                    ymlImportService.deactivateMissing(supplier, runId, maxDeactivateRatio));
+            return RepeatStatus.FINISHED;
+        };
+
+        return new StepBuilder("ymlDeactivateStep", jobRepository)
+                .tasklet(tasklet, transactionManager)
+                .listener(new ImportStatsListener())
+                .build();
+    }
+}
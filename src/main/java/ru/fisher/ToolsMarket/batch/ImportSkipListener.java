@@ -0,0 +1,53 @@
+package ru.fisher.ToolsMarket.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.SkipListener;
+import ru.fisher.ToolsMarket.dto.PriceRow;
+import ru.fisher.ToolsMarket.dto.ProductImportRow;
+import ru.fisher.ToolsMarket.parsingXml.YmlOffer;
+
+import java.util.List;
+
+/**
+ * Пропущенные строки импорта попадают в список ошибок результата
+ */
+@Slf4j
+public class ImportSkipListener implements SkipListener<Object, Object> {
+
+    @Override
+    public void onSkipInRead(Throwable t) {
+        record("Ошибка чтения: " + t.getMessage());
+    }
+
+    @Override
+    public void onSkipInProcess(Object item, Throwable t) {
+        record(describe(item) + ": " + t.getMessage());
+    }
+
+    @Override
+    public void onSkipInWrite(Object item, Throwable t) {
+        record(describe(item) + ": " + t.getMessage());
+    }
+
+    private void record(String message) {
+        log.warn("Импорт: пропуск — {}", message);
+        ImportStats.increment(ImportStats.ERRORS, 1);
+        ImportStats.append(ImportStats.ERROR_MESSAGES, List.of(message));
+    }
+
+    private String describe(Object item) {
+        if (item instanceof ExcelRow row) {
+            return "Строка " + (row.rowIndex() + 1);
+        }
+        if (item instanceof ProductImportRow row) {
+            return "Артикул " + row.sku();
+        }
+        if (item instanceof PriceRow row) {
+            return "Артикул " + row.sku();
+        }
+        if (item instanceof YmlOffer offer) {
+            return "Предложение " + offer.sku();
+        }
+        return String.valueOf(item);
+    }
+}
@@ -0,0 +1,159 @@
+package ru.fisher.ToolsMarket.batch;
+
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Счетчики и списки результата импорта в контексте шага.
+ * Контекст сохраняется в BATCH_STEP_EXECUTION_CONTEXT вместе с каждым чанком,
+ * поэтому после перезапуска итоги продолжают считаться с места падения.
+ * <p>
+ * Writer и skip listener копят итоги чанка отдельно; в контекст шага их переносит
+ * {@link ImportStatsListener} только после успешной записи. Чанк, откаченный
+ * при ошибке записи или повторенный поштучно (skip/retry), не считается дважды.
+ */
+public final class ImportStats {
+
+    public static final String CREATED = "import.created";
+    public static final String UPDATED = "import.updated";
+    public static final String SKIPPED = "import.skipped";
+    public static final String ERRORS = "import.errors";
+    public static final String SAME_PRICE = "import.samePrice";
+    public static final String NOT_FOUND = "import.notFound";
+    public static final String IMPORTED = "import.imported";
+    public static final String CATEGORIES = "import.categories";
+    public static final String UNCHANGED = "import.unchanged";
+    public static final String DEACTIVATED = "import.deactivated";
+
+    // Прогресс чтения для оценки оставшегося времени: строки файла или байты фида
+    public static final String PROGRESS_DONE = "import.progress.done";
+    public static final String PROGRESS_TOTAL = "import.progress.total";
+
+    public static final String CREATED_ITEMS = "import.createdItems";
+    public static final String UPDATED_ITEMS = "import.updatedItems";
+    public static final String SKIPPED_ITEMS = "import.skippedItems";
+    public static final String NOT_FOUND_ITEMS = "import.notFoundItems";
+    public static final String ERROR_MESSAGES = "import.errorMessages";
+
+    // Списки в контексте ограничены, чтобы не раздувать метаданные задачи
+    static final int MAX_ITEMS = 200;
+
+    private static final String STATS_PREFIX = "import.";
+    private static final String PROGRESS_PREFIX = "import.progress.";
+    private static final String CHUNK_ATTRIBUTE = ImportStats.class.getName() + ".chunk";
+
+    /**
+     * Итоги текущего чанка: еще не перенесенные в контекст и снимок контекста
+     * до начала чанка — для отката
+     */
+    private static final class ChunkStats {
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        final Map<String, List<String>> items = new LinkedHashMap<>();
+        final Map<String, Object> snapshot = new HashMap<>();
+    }
+
+    private ImportStats() {
+    }
+
+    public static void increment(String key, int delta) {
+        if (delta == 0) return;
+        chunk().counts.merge(key, delta, Integer::sum);
+    }
+
+    public static void append(String key, Collection<String> values) {
+        if (values.isEmpty()) return;
+        chunk().items.computeIfAbsent(key, k -> new ArrayList<>()).addAll(values);
+    }
+
+    /**
+     * Начало чанка: запоминает итоги шага на случай отката
+     */
+    static void beginChunk(StepContext stepContext) {
+        ChunkStats chunk = new ChunkStats();
+        stepContext.getStepExecution().getExecutionContext().entrySet().stream()
+                .filter(e -> e.getKey().startsWith(STATS_PREFIX) && !e.getKey().startsWith(PROGRESS_PREFIX))
+                .forEach(e -> chunk.snapshot.put(e.getKey(), e.getValue()));
+        stepContext.setAttribute(CHUNK_ATTRIBUTE, chunk);
+    }
+
+    /**
+     * Переносит накопленные итоги чанка в контекст шага
+     */
+    static void apply(StepContext stepContext) {
+        ChunkStats chunk = (ChunkStats) stepContext.getAttribute(CHUNK_ATTRIBUTE);
+        if (chunk == null) return;
+        ExecutionContext context = stepContext.getStepExecution().getExecutionContext();
+        chunk.counts.forEach((key, delta) -> context.putInt(key, context.getInt(key, 0) + delta));
+        chunk.items.forEach((key, values) -> {
+            List<String> items = items(context, key);
+            for (String value : values) {
+                if (items.size() >= MAX_ITEMS) break;
+                items.add(value);
+            }
+            context.put(key, items);
+        });
+        chunk.counts.clear();
+        chunk.items.clear();
+    }
+
+    /**
+     * Итоги неудачной записи: попытка не считается
+     */
+    static void discard(StepContext stepContext) {
+        ChunkStats chunk = (ChunkStats) stepContext.getAttribute(CHUNK_ATTRIBUTE);
+        if (chunk == null) return;
+        chunk.counts.clear();
+        chunk.items.clear();
+    }
+
+    /**
+     * Откат чанка: итоги шага возвращаются к снимку, сделанному в начале чанка
+     */
+    static void rollback(StepContext stepContext) {
+        ChunkStats chunk = (ChunkStats) stepContext.removeAttribute(CHUNK_ATTRIBUTE);
+        if (chunk == null) return;
+        ExecutionContext context = stepContext.getStepExecution().getExecutionContext();
+        List<String> added = context.entrySet().stream()
+                .map(Map.Entry::getKey)
+                .filter(key -> key.startsWith(STATS_PREFIX) && !key.startsWith(PROGRESS_PREFIX))
+                .filter(key -> !chunk.snapshot.containsKey(key))
+                .toList();
+        added.forEach(context::remove);
+        chunk.snapshot.forEach(context::put);
+    }
+
+    public static int count(ExecutionContext context, String key) {
+        return context.getInt(key, 0);
+    }
+
+    public static long longValue(ExecutionContext context, String key) {
+        return context.containsKey(key) ? context.getLong(key) : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<String> items(ExecutionContext context, String key) {
+        Object value = context.get(key);
+        return value instanceof List<?> list ? new ArrayList<>((List<String>) list) : new ArrayList<>();
+    }
+
+    private static ChunkStats chunk() {
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        if (stepContext == null) {
+            throw new IllegalStateException("Нет активного шага Spring Batch");
+        }
+        ChunkStats chunk = (ChunkStats) stepContext.getAttribute(CHUNK_ATTRIBUTE);
+        if (chunk == null) {
+            throw new IllegalStateException("Для шага " + stepContext.getStepName()
+                    + " не зарегистрирован ImportStatsListener");
+        }
+        return chunk;
+    }
+}
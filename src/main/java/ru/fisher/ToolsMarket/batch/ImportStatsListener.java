@@ -0,0 +1,49 @@
+package ru.fisher.ToolsMarket.batch;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.Chunk;
+
+/**
+ * Переносит итоги чанка ({@link ImportStats}) в контекст шага.
+ * <p>
+ * Итоги writer переносятся в afterWrite — в транзакции чанка, до сохранения контекста,
+ * поэтому фиксируются вместе с данными. Записи skip listener и tasklet переносятся
+ * в afterChunk. При ошибке записи накопленное отбрасывается, при откате чанка
+ * контекст возвращается к снимку, сделанному в начале чанка.
+ */
+public class ImportStatsListener implements ChunkListener, ItemWriteListener<Object> {
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        ImportStats.beginChunk(context.getStepContext());
+    }
+
+    @Override
+    public void afterWrite(Chunk<?> items) {
+        var stepContext = StepSynchronizationManager.getContext();
+        if (stepContext != null) {
+            ImportStats.apply(stepContext);
+        }
+    }
+
+    @Override
+    public void onWriteError(Exception exception, Chunk<?> items) {
+        var stepContext = StepSynchronizationManager.getContext();
+        if (stepContext != null) {
+            ImportStats.discard(stepContext);
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        ImportStats.apply(context.getStepContext());
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        ImportStats.rollback(context.getStepContext());
+    }
+}
@@ -0,0 +1,32 @@
+package ru.fisher.ToolsMarket.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Удаляет загруженный файл после успешного импорта.
+ * У упавшей или остановленной задачи файл остается — для перезапуска.
+ */
+@Slf4j
+public class UploadCleanupListener implements JobExecutionListener {
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            return;
+        }
+        String file = jobExecution.getJobParameters().getString(ImportJobsConfig.PARAM_FILE);
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(Path.of(file));
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл импорта {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.fisher.ToolsMarket.batch;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reader списка ссылок: файл со ссылками по одной в строке.
+ * Список небольшой (сотни строк), поэтому читается целиком; при перезапуске
+ * позиция восстанавливается по счетчику без повторного чтения.
+ */
+public class UrlListItemReader extends AbstractItemCountingItemStreamItemReader<String> {
+
+    private final Path file;
+
+    private List<String> urls;
+
+    public UrlListItemReader(String name, Path file) {
+        setName(name);
+        this.file = file;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        urls = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .toList();
+        setMaxItemCount(urls.size());
+    }
+
+    @Override
+    protected String doRead() {
+        int index = getCurrentItemCount() - 1;
+        return index < urls.size() ? urls.get(index) : null;
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) {
+        // Позиция — индекс в списке, читать пропущенные не нужно
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (urls != null) {
+            executionContext.putLong(ImportStats.PROGRESS_DONE, getCurrentItemCount());
+            executionContext.putLong(ImportStats.PROGRESS_TOTAL, urls.size());
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        urls = null;
+    }
+}
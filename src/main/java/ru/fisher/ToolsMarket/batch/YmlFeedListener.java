@@ -0,0 +1,50 @@
+package ru.fisher.ToolsMarket.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository.FeedState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * После успешного импорта фида запоминает его валидаторы (следующий запуск пропустит
+ * неизмененный фид) и удаляет скачанный файл. У упавшей задачи файл остается —
+ * перезапуск читает тот же фид, а валидаторы не сохраняются.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class YmlFeedListener implements JobExecutionListener {
+
+    private final YmlFeedStateJdbcRepository feedStateRepository;
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            return;
+        }
+        ExecutionContext context = jobExecution.getExecutionContext();
+        String file = context.getString(ImportJobsConfig.YML_FEED_FILE, null);
+        if (file == null) return; // фид не изменился
+
+        feedStateRepository.save(new FeedState(
+                jobExecution.getJobParameters().getString(ImportJobsConfig.PARAM_URL),
+                context.getString(ImportJobsConfig.YML_FEED_ETAG, null),
+                context.getString(ImportJobsConfig.YML_FEED_LAST_MODIFIED, null),
+                context.getString(ImportJobsConfig.YML_FEED_HASH),
+                context.getLong(ImportJobsConfig.YML_FEED_SIZE)
+        ));
+
+        try {
+            Files.deleteIfExists(Path.of(file));
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл фида {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ru.fisher.ToolsMarket.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import ru.fisher.ToolsMarket.parsingXml.RawOffer;
+import ru.fisher.ToolsMarket.parsingXml.StemYmlImportService;
+import ru.fisher.ToolsMarket.parsingXml.YmlOffer;
+import ru.fisher.ToolsMarket.parsingXml.YmlOfferImporter;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Потоковый reader предложений YML-фида, устроенный как пайплайн:
+ * <ul>
+ *     <li>поток-producer читает offer из скачанного файла StAX и отдает сырые записи воркерам;</li>
+ *     <li>воркеры параллельно разбирают их в YmlOffer (цена, нормализация, slug, хэш содержимого);</li>
+ *     <li>задания лежат в ограниченной очереди в порядке фида — producer ждет, если очередь полна,
+ *     а read() забирает результаты строго по порядку.</li>
+ * </ul>
+ * Запись в БД остается одна — writer шага, пачками. Порядок выдачи совпадает с порядком фида,
+ * поэтому повторы артикула применяются в том же порядке, а при перезапуске уже сохраненные
+ * предложения пропускаются по счетчику, как и при последовательном чтении.
+ * <p>
+ * Producer и воркеры выполняются в общем пуле {@link ru.fisher.ToolsMarket.config.AsyncConfig#YML_PIPELINE_EXECUTOR}:
+ * его метрики публикуются, потоки останавливает Spring. Если пул отклонил разбор,
+ * producer разбирает предложение сам.
+ */
+@Slf4j
+public class YmlOfferItemReader extends AbstractItemCountingItemStreamItemReader<YmlOffer> {
+
+    // Признак конца фида в очереди
+    private static final Future<YmlOffer> END = CompletableFuture.completedFuture(null);
+
+    private final Path feed;
+    private final StemYmlImportService importService;
+    private final YmlOfferImporter offerImporter;
+    private final TaskExecutor executor;
+    private final int queueCapacity;
+
+    private CountingInputStream inputStream;
+    private long contentLength;
+    private XMLStreamReader reader;
+
+    private BlockingQueue<Future<YmlOffer>> queue;
+    private FutureTask<Void> producer;
+    // Кто первым занял флаг: producer начинает чтение или close() отменяет его до старта
+    private AtomicBoolean producerClaimed;
+    private CountDownLatch producerDone;
+    private boolean finished;
+
+    public YmlOfferItemReader(String name, Path feed,
+                              StemYmlImportService importService,
+                              YmlOfferImporter offerImporter,
+                              TaskExecutor executor, int queueCapacity) {
+        setName(name);
+        this.feed = feed;
+        this.importService = importService;
+        this.offerImporter = offerImporter;
+        this.executor = executor;
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        contentLength = Files.size(feed);
+        inputStream = new CountingInputStream(new BufferedInputStream(Files.newInputStream(feed), 65536));
+        reader = importService.openOffers(inputStream);
+
+        finished = false;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        producerClaimed = new AtomicBoolean();
+        producerDone = new CountDownLatch(1);
+        producer = new FutureTask<>(this::produce, null);
+        executor.execute(producer);
+        log.debug("Пайплайн YML: очередь {}", queueCapacity);
+    }
+
+    /**
+     * Чтение фида в потоке producer. Ошибка чтения передается в read() через очередь.
+     */
+    private void produce() {
+        if (!producerClaimed.compareAndSet(false, true)) {
+            return; // reader уже закрыт
+        }
+        try {
+            while (reader.hasNext() && !Thread.currentThread().isInterrupted()) {
+                reader.next();
+
+                if (reader.isStartElement()
+                        && reader.getLocalName().equals("offer")) {
+                    RawOffer raw = offerImporter.readRawOffer(reader);
+                    FutureTask<YmlOffer> task = new FutureTask<>(() -> offerImporter.toOffer(raw));
+                    try {
+                        executor.execute(task);
+                    } catch (TaskRejectedException e) {
+                        task.run();
+                    }
+                    queue.put(task);
+                }
+            }
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // reader закрывается — очередь больше никто не читает
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            try {
+                queue.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            producerDone.countDown();
+        }
+    }
+
+    @Override
+    protected YmlOffer doRead() throws Exception {
+        if (finished) {
+            return null;
+        }
+
+        Future<YmlOffer> next = queue.take();
+        if (next == END) {
+            finished = true;
+            return null;
+        }
+
+        // Разбор, до которого пул еще не дошел (пул занят другими импортами), выполняется здесь;
+        // уже начатую или завершенную задачу FutureTask.run() не повторяет
+        if (next instanceof FutureTask<YmlOffer> task) {
+            task.run();
+        }
+        try {
+            return next.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (inputStream != null) {
+            executionContext.putLong(ImportStats.PROGRESS_DONE, inputStream.count);
+            executionContext.putLong(ImportStats.PROGRESS_TOTAL, contentLength);
+        }
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        try {
+            if (producer != null) {
+                producer.cancel(true);
+                // Producer уже читает фид — reader закрывается только после его остановки
+                if (!producerClaimed.compareAndSet(false, true)) {
+                    producerDone.await();
+                }
+            }
+            if (queue != null) {
+                queue.forEach(task -> task.cancel(true));
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        } finally {
+            producer = null;
+            queue = null;
+            reader = null;
+            if (inputStream != null) {
+                inputStream.close();
+                inputStream = null;
+            }
+        }
+    }
+
+    /**
+     * Счетчик прочитанных байт фида — для прогресса
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        // Пишет producer, читает поток шага в update()
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
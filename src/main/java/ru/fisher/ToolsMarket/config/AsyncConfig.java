@@ -1,23 +1,178 @@
 package ru.fisher.ToolsMarket.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Изолированные пулы потоков (bulkheads) по типам нагрузки:
+ * импорты, фоновые задачи веба (@Async) и планировщики.
+ * Долгий импорт не может занять потоки, нужные для отправки писем, и наоборот.
+ * Бин "taskExecutor" — исполнитель @Async по умолчанию.
+ * При spring.threads.virtual.enabled=true пулы создают виртуальные потоки,
+ * ограничения по размеру и очередям (и метрики) при этом сохраняются.
+ */
 @Configuration
 @EnableAsync
+@Slf4j
 public class AsyncConfig {
 
-    @Bean
-    public TaskExecutor taskExecutor() {
+    public static final String IMPORT_EXECUTOR = "importExecutor";
+    public static final String YML_PIPELINE_EXECUTOR = "ymlPipelineExecutor";
+    public static final String TASK_EXECUTOR = "taskExecutor";
+    public static final String MAIL_SCHEDULER = "mailScheduler";
+    public static final String TASK_SCHEDULER = "taskScheduler";
+
+    public static final String WAIT_TIMER = "executor.queue.wait";
+    public static final String REJECTED_COUNTER = "executor.rejected";
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * Импорты (Excel, цены, YML). Маленький пул и короткая очередь:
+     * при переполнении задача отклоняется, а не копится часами.
+     */
+    @Bean(name = IMPORT_EXECUTOR)
+    public ThreadPoolTaskExecutor importExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${app.executor.import.pool-size:2}") int poolSize,
+            @Value("${app.executor.import.queue-capacity:5}") int queueCapacity) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(100);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
         executor.setThreadNamePrefix("import-");
+        executor.setThreadFactory(threadFactory("import-"));
+        instrument(executor, IMPORT_EXECUTOR, meterRegistry, new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Пайплайн разбора YML-фида (YmlOfferItemReader): поток чтения фида и воркеры разбора.
+     * Один поток сверх воркеров занимает чтение фида. Очередь вмещает разбор всех
+     * одновременных импортов (у каждого в работе не больше app.yml.pipeline.queue-capacity),
+     * поэтому чтение фида следующего импорта не отклоняется.
+     */
+    @Bean(name = YML_PIPELINE_EXECUTOR)
+    public ThreadPoolTaskExecutor ymlPipelineExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${app.yml.pipeline.workers:0}") int workers,
+            @Value("${app.yml.pipeline.queue-capacity:1000}") int pipelineQueueCapacity,
+            @Value("${app.executor.import.pool-size:2}") int importPoolSize) {
+        int poolSize = (workers > 0 ? workers : Runtime.getRuntime().availableProcessors()) + 1;
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(importPoolSize * (pipelineQueueCapacity + 2));
+        executor.setThreadNamePrefix("yml-");
+        executor.setThreadFactory(threadFactory("yml-"));
+        instrument(executor, YML_PIPELINE_EXECUTOR, meterRegistry, new ThreadPoolExecutor.AbortPolicy());
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Общие фоновые задачи веба (@Async по умолчанию).
+     * При переполнении задача выполняется в вызывающем потоке — без потери работы.
+     */
+    @Bean(name = TASK_EXECUTOR)
+    public ThreadPoolTaskExecutor taskExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${app.executor.async.core-size:4}") int coreSize,
+            @Value("${app.executor.async.max-size:8}") int maxSize,
+            @Value("${app.executor.async.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("async-");
+        executor.setThreadFactory(threadFactory("async-"));
+        instrument(executor, TASK_EXECUTOR, meterRegistry, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Отдельный планировщик для outbox-диспетчера писем
+     */
+    @Bean(name = MAIL_SCHEDULER)
+    public ThreadPoolTaskScheduler mailScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("mail-");
+        scheduler.setThreadFactory(threadFactory("mail-"));
+        scheduler.setErrorHandler(t -> log.error("Ошибка в задаче отправки писем", t));
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * Планировщик для остальных периодических задач
+     */
+    @Bean(name = TASK_SCHEDULER)
+    public ThreadPoolTaskScheduler taskScheduler(
+            @Value("${app.executor.scheduler.pool-size:2}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduler-");
+        scheduler.setThreadFactory(threadFactory("scheduler-"));
+        scheduler.setErrorHandler(t -> log.error("Ошибка в периодической задаче", t));
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * Фабрика виртуальных потоков в режиме spring.threads.virtual.enabled,
+     * иначе — обычные потоки с префиксом имени
+     */
+    private ThreadFactory threadFactory(String prefix) {
+        return virtualThreads
+                ? Thread.ofVirtual().name(prefix, 1).factory()
+                : new CustomizableThreadFactory(prefix);
+    }
+
+    /**
+     * Время ожидания задачи в очереди и счетчик отклоненных задач.
+     * Размер очереди и активные потоки публикует Spring Boot (executor.*).
+     */
+    private static void instrument(ThreadPoolTaskExecutor executor, String name,
+                                   MeterRegistry meterRegistry, RejectedExecutionHandler policy) {
+        Timer waitTimer = Timer.builder(WAIT_TIMER)
+                .description("Время ожидания задачи в очереди пула")
+                .tag("name", name)
+                .register(meterRegistry);
+        Counter rejected = Counter.builder(REJECTED_COUNTER)
+                .description("Задачи, отклоненные пулом")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        executor.setTaskDecorator(task -> {
+            long queuedAt = System.nanoTime();
+            return () -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                task.run();
+            };
+        });
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            log.warn("Пул {} переполнен: активных {}, в очереди {}",
+                    name, pool.getActiveCount(), pool.getQueue().size());
+            policy.rejectedExecution(task, pool);
+        });
+    }
 }
@@ -0,0 +1,113 @@
+package ru.fisher.ToolsMarket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * DataSource с семафором по размеру пула Hikari.
+ * С виртуальными потоками число одновременных запросов почти не ограничено,
+ * поэтому соединения выдаются в порядке очереди (fair), а разрешение
+ * возвращается при закрытии соединения.
+ */
+@Slf4j
+public class BoundedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    public BoundedDataSource(DataSource target, int maxConnections, long acquireTimeoutMs) {
+        super(target);
+        this.permits = new Semaphore(maxConnections, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return wrap(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return wrap(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Потоков, ожидающих соединение
+     */
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Нет свободных соединений с БД за {} мс, ожидают: {}",
+                        acquireTimeoutMs, permits.getQueueLength());
+                throw new SQLTransientConnectionException(
+                        "Нет свободных соединений с БД за " + acquireTimeoutMs + " мс");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Ожидание соединения прервано", e);
+        }
+    }
+
+    /**
+     * Прокси соединения: разрешение возвращается один раз при первом close()
+     */
+    private Connection wrap(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                    }
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        try {
+                            connection.close();
+                        } finally {
+                            permits.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
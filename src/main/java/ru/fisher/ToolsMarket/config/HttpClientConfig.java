@@ -0,0 +1,25 @@
+package ru.fisher.ToolsMarket.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class HttpClientConfig {
+
+    /**
+     * Общий клиент для запросов к поставщикам (фиды, страницы, картинки) и RestTemplate:
+     * один пул соединений на приложение. Срок ответа задает каждый запрос
+     * (HttpBodies.send), здесь — только подключение и редиректы.
+     */
+    @Bean
+    public HttpClient httpClient(@Value("${app.http.connect-timeout-ms:5000}") long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+}
@@ -29,6 +29,7 @@ public class ModelMapperConfig {
                     mapper.map(Category::getSortOrder, CategoryDto::setSortOrder);
                     mapper.map(Category::getImageUrl, CategoryDto::setImageUrl);
                     mapper.map(Category::getThumbnailUrl, CategoryDto::setThumbnailUrl);
+                    mapper.map(Category::getImageSrcset, CategoryDto::setImageSrcset);
                     mapper.map(Category::getCreatedAt, CategoryDto::setCreatedAt);
 
                     // Кастомный маппинг для родителя
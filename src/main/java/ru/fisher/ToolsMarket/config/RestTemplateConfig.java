@@ -1,14 +1,27 @@
 package ru.fisher.ToolsMarket.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class RestTemplateConfig {
 
+    /**
+     * java.net.http.HttpClient вместо HttpURLConnection: не блокирует
+     * виртуальные потоки и всегда работает с таймаутами
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(
+            HttpClient httpClient,
+            @Value("${app.http.read-timeout-ms:10000}") long readTimeoutMs) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return new RestTemplate(requestFactory);
     }
 }
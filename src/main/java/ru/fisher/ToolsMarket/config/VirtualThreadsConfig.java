@@ -0,0 +1,36 @@
+package ru.fisher.ToolsMarket.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Режим виртуальных потоков (spring.threads.virtual.enabled=true).
+ * Tomcat и @Async Spring Boot переключает сам, пулы из AsyncConfig — см. threadFactory.
+ * Здесь доступ к БД ограничивается семафором по maximum-pool-size Hikari.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadsConfig {
+
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari) {
+                    log.info("Виртуальные потоки: доступ к БД ограничен {} соединениями",
+                            hikari.getMaximumPoolSize());
+                    return new BoundedDataSource(hikari,
+                            hikari.getMaximumPoolSize(), hikari.getConnectionTimeout());
+                }
+                return bean;
+            }
+        };
+    }
+}
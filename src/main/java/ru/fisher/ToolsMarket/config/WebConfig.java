@@ -3,9 +3,13 @@ package ru.fisher.ToolsMarket.config;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.fisher.ToolsMarket.service.ImageStorageService;
+
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @Slf4j
@@ -16,6 +20,14 @@ public class WebConfig implements WebMvcConfigurer {
 
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        // Хранилище по хэшу содержимого: по одному URL содержимое не меняется,
+        // поэтому кэшируем на год без перепроверки
+        registry.addResourceHandler("/images/" + ImageStorageService.CONTENT_DIR + "/**")
+                .addResourceLocations("file:" + uploadPath + "/" + ImageStorageService.CONTENT_DIR + "/")
+                .setCacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .resourceChain(true);
+
+        // Старые картинки с именами из названия
         registry.addResourceHandler("/images/**")
                 .addResourceLocations(
                         "file:" + uploadPath + "/",           // Основные изображения
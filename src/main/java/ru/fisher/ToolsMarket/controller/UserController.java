@@ -3,6 +3,8 @@ package ru.fisher.ToolsMarket.controller;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
@@ -12,6 +14,8 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import ru.fisher.ToolsMarket.dto.OrderDTO.OrderItemDto;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderSummaryDto;
+import ru.fisher.ToolsMarket.dto.OrderDTO.UserOrderStatsDto;
 import ru.fisher.ToolsMarket.dto.UserDTO.UserProfileUpdateDto;
 import ru.fisher.ToolsMarket.models.Order;
 import ru.fisher.ToolsMarket.models.OrderStatus;
@@ -20,7 +24,6 @@ import ru.fisher.ToolsMarket.service.*;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Objects;
 
 @Controller
 @RequestMapping("/profile")
@@ -31,28 +34,17 @@ public class UserController {
     private final UserService userService;
     private final OrderService orderService;
 
+    private static final int RECENT_ORDERS_LIMIT = 5;
+    private static final int ORDERS_PAGE_SIZE = 10;
+
     @GetMapping
     public String profilePage(Model model, Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
         User user = userService.findById(userId).orElseThrow();
-        List<Order> orders = orderService.getUserOrdersWithItems(userId);
-
-        // Получаем активные заказы (не завершенные)
-        List<Order> activeOrders = orders.stream()
-                .filter(order -> order.getStatus() != OrderStatus.COMPLETED &&
-                        order.getStatus() != OrderStatus.CANCELLED)
-                .toList();
-
-        // Получаем завершенные заказы (уже есть в orders, фильтруем)
-        List<Order> completedOrders = orders.stream()
-                .filter(order -> order.getStatus() == OrderStatus.COMPLETED)
-                .toList();
-
-        // Считаем общую сумму потраченных денег
-        BigDecimal totalSpent = completedOrders.stream()
-                .map(Order::getTotalPrice)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // Последние заказы — только краткие данные, без позиций
+        Page<OrderSummaryDto> recentOrders = orderService.getUserOrderSummaries(
+                userId, null, PageRequest.of(0, RECENT_ORDERS_LIMIT));
+        UserOrderStatsDto stats = orderService.getUserOrderStats(userId);
 
         // Проверяем роль и добавляем флаг
         boolean isAdmin = user.getAuthorities().stream()
@@ -62,16 +54,18 @@ public class UserController {
         model.addAttribute("isAdmin", isAdmin);
         model.addAttribute("isManager", isManager);
         model.addAttribute("user", user);
-        model.addAttribute("orders", orders);
-        model.addAttribute("orderCount", orders.size());
-        model.addAttribute("activeOrderCount", activeOrders.size());
-        model.addAttribute("totalSpent", totalSpent);
+        model.addAttribute("orders", recentOrders.getContent());
+        model.addAttribute("orderCount", stats.getTotalOrdersCount());
+        model.addAttribute("activeOrderCount", stats.getActiveOrdersCount());
+        model.addAttribute("totalSpent", stats.getTotalSpent());
 
         return "profile/index";
     }
 
     @GetMapping("/orders")
-    public String userOrders(Model model, Authentication authentication) {
+    public String userOrders(@RequestParam(defaultValue = "0") int page,
+                             Model model,
+                             Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
         if (userId == null) {
             return "redirect:/auth/login";
@@ -79,8 +73,7 @@ public class UserController {
         // Получаем текущего пользователя
         User currentUser = userService.findById(userId).orElseThrow();
 
-        List<Order> orders = orderService.getUserOrders(userId);
-        model.addAttribute("orders", orders);
+        addOrdersPage(model, userId, null, page);
         model.addAttribute("isAuthenticated", true);
         model.addAttribute("currentUser", currentUser);
         return "profile/orders";
@@ -269,6 +262,7 @@ public class UserController {
 
     @GetMapping("/orders/status/{status}")  // Добавляем /status/
     public String userOrdersByStatus(@PathVariable String status,
+                                     @RequestParam(defaultValue = "0") int page,
                                      Model model,
                                      Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
@@ -278,13 +272,12 @@ public class UserController {
 
         try {
             OrderStatus orderStatus = OrderStatus.valueOf(status.toUpperCase());
-            List<Order> orders = orderService.getUserOrdersByStatus(userId, orderStatus);
 
             // Получаем текущего пользователя (добавлено)
             User currentUser = userService.findById(userId).orElseThrow();
 
             // Добавляем те же атрибуты, что и в userOrders (добавлено)
-            model.addAttribute("orders", orders);
+            addOrdersPage(model, userId, orderStatus, page);
             model.addAttribute("status", orderStatus);
             model.addAttribute("user", currentUser);
             model.addAttribute("currentUser", currentUser);  // Добавлено
@@ -297,6 +290,15 @@ public class UserController {
         }
     }
 
+    private void addOrdersPage(Model model, Long userId, OrderStatus status, int page) {
+        Page<OrderSummaryDto> ordersPage = orderService.getUserOrderSummaries(
+                userId, status, PageRequest.of(Math.max(page, 0), ORDERS_PAGE_SIZE));
+
+        model.addAttribute("orders", ordersPage.getContent());
+        model.addAttribute("ordersPage", ordersPage);
+        model.addAttribute("orderStats", orderService.getUserOrderStats(userId));
+    }
+
     private Long getCurrentUserId(Authentication authentication) {
         if (authentication != null && authentication.isAuthenticated()) {
             Object principal = authentication.getPrincipal();
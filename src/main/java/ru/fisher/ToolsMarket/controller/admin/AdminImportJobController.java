@@ -0,0 +1,73 @@
+package ru.fisher.ToolsMarket.controller.admin;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
+import ru.fisher.ToolsMarket.service.ImportJobService;
+
+import java.util.NoSuchElementException;
+
+/**
+ * История запусков импортов (метаданные Spring Batch), прогресс, остановка и перезапуск
+ */
+@Slf4j
+@Controller
+@RequestMapping("/admin/import-jobs")
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+public class AdminImportJobController {
+
+    private static final int HISTORY_SIZE = 50;
+
+    private final ImportJobService importJobService;
+
+    @GetMapping
+    public String history(Model model) {
+        model.addAttribute("jobs", importJobService.recentExecutions(HISTORY_SIZE));
+        return "admin/import-jobs/index";
+    }
+
+    /**
+     * Прогресс запуска для опроса со страниц импорта
+     */
+    @GetMapping("/{id}/progress")
+    @ResponseBody
+    public ResponseEntity<ImportProgressDto> progress(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(importJobService.progress(id));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/{id}/stop")
+    public String stop(@PathVariable Long id, RedirectAttributes redirectAttributes) {
+        importJobService.stop(id);
+        redirectAttributes.addFlashAttribute("successMessage",
+                "Импорт #" + id + " останавливается после текущего чанка");
+        // Не по Referer: заголовок задает клиент, это был бы открытый редирект
+        return "redirect:/admin/import-jobs";
+    }
+
+    @PostMapping("/{id}/restart")
+    public String restart(@PathVariable Long id, RedirectAttributes redirectAttributes) {
+        if (!importJobService.canRestart(id)) {
+            redirectAttributes.addFlashAttribute("errorMessage",
+                    "Запуск #" + id + " нельзя перезапустить");
+            return "redirect:/admin/import-jobs";
+        }
+
+        // Запуск асинхронный: задача выполняется в пуле импортов
+        long newId = importJobService.restart(id);
+
+        redirectAttributes.addFlashAttribute("successMessage",
+                "Импорт #" + id + " перезапущен с последнего сохраненного чанка (запуск #" + newId + ")");
+        return "redirect:/admin/import-jobs";
+    }
+}
@@ -0,0 +1,37 @@
+package ru.fisher.ToolsMarket.controller.admin;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import ru.fisher.ToolsMarket.dto.ExecutorStatsDto;
+import ru.fisher.ToolsMarket.service.ExecutorMonitorService;
+
+import java.util.List;
+
+@Controller
+@RequestMapping("/admin/system")
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+public class AdminSystemController {
+
+    private final ExecutorMonitorService executorMonitorService;
+
+    @GetMapping("/executors")
+    public String executors(Model model) {
+        model.addAttribute("executors", executorMonitorService.getStats());
+        return "admin/system/executors";
+    }
+
+    /**
+     * Те же данные в JSON — для автообновления страницы
+     */
+    @GetMapping("/executors/stats")
+    @ResponseBody
+    public List<ExecutorStatsDto> executorStats() {
+        return executorMonitorService.getStats();
+    }
+}
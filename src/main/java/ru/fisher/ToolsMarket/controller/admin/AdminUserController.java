@@ -14,6 +14,7 @@ import ru.fisher.ToolsMarket.models.User;
 import ru.fisher.ToolsMarket.models.UserDiscount;
 import ru.fisher.ToolsMarket.models.UserType;
 import ru.fisher.ToolsMarket.repository.UserDiscountRepository;
+import ru.fisher.ToolsMarket.service.OrderService;
 import ru.fisher.ToolsMarket.service.UserService;
 
 import java.util.List;
@@ -27,6 +28,7 @@ public class AdminUserController {
 
     private final UserDiscountRepository discountRepository;
     private final UserService userService;
+    private final OrderService orderService;
 
     @GetMapping
     public String listUsers(Model model,
@@ -67,14 +69,14 @@ public class AdminUserController {
 
     @GetMapping("/{id}")
     public String viewUser(@PathVariable Long id, Model model) {
-        User user = userService.findByIdWithOrders(id)
+        User user = userService.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден"));
 
         // Получаем скидки, доступные для типа пользователя
         List<UserDiscount> userDiscounts = discountRepository.findByUserType(user.getUserType());
 
-        // Статистика пользователя
-        int orderCount = user.getOrders() != null ? user.getOrders().size() : 0;
+        // Статистика пользователя — считаем в БД, сами заказы не загружаем
+        long orderCount = orderService.countUserOrders(id);
 
         model.addAttribute("user", user);
         model.addAttribute("userTypes", UserType.values());
@@ -86,7 +88,7 @@ public class AdminUserController {
 
     @GetMapping("/{id}/edit")
     public String editUserForm(@PathVariable Long id, Model model) {
-        User user = userService.findByIdWithOrders(id)
+        User user = userService.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден"));
 
         model.addAttribute("user", user);
@@ -1,6 +1,7 @@
 package ru.fisher.ToolsMarket.controller.admin;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -108,8 +109,10 @@ public class AttributeAdminController {
     public ResponseEntity<?> updateAttributesOrder(@PathVariable Long categoryId,
                                                    @RequestBody List<AttributeOrderDto> orderData) {
         try {
-            attributeService.updateSortOrder(orderData);
+            attributeService.updateSortOrder(categoryId, orderData);
             return ResponseEntity.ok().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
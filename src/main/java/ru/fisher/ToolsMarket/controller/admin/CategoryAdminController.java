@@ -133,12 +133,11 @@ public class CategoryAdminController {
                 String imageUrl = imageStorageService.saveCategoryImage(image, category.getTitle());
                 category.setImageUrl(imageUrl);
 
-                // Генерируем миниатюру
-                String thumbnailUrl = imageStorageService.generateThumbnail(imageUrl);
-                category.setThumbnailUrl(thumbnailUrl);
+                // До создания копий (ImageVariantService) миниатюрой служит оригинал
+                category.setThumbnailUrl(imageUrl);
+                category.setImageSrcset(null);
 
                 log.info("Category image saved: {}", imageUrl);
-                log.info("Thumbnail generated: {}", thumbnailUrl);
             } catch (Exception e) {
                 log.error("Failed to save category image: {}", e.getMessage(), e);
                 model.addAttribute("error", "Ошибка при сохранении изображения: " + e.getMessage());
@@ -213,6 +212,7 @@ public class CategoryAdminController {
             imageStorageService.deleteCategoryImage(oldImageUrl);
             existing.setImageUrl(null);
             existing.setThumbnailUrl(null);
+            existing.setImageSrcset(null);
         }
 
         // Добавляем новое изображение
@@ -229,8 +229,8 @@ public class CategoryAdminController {
                 String imageUrl = imageStorageService.saveCategoryImage(newImage, title);
                 existing.setImageUrl(imageUrl);
 
-                String thumbnailUrl = imageStorageService.generateThumbnail(imageUrl);
-                existing.setThumbnailUrl(thumbnailUrl);
+                existing.setThumbnailUrl(imageUrl);
+                existing.setImageSrcset(null);
 
                 log.info("New category image saved: {}", imageUrl);
             } catch (Exception e) {
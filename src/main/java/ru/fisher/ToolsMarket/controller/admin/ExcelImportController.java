@@ -2,16 +2,16 @@ package ru.fisher.ToolsMarket.controller.admin;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import ru.fisher.ToolsMarket.dto.ExcelImportResult;
-import ru.fisher.ToolsMarket.service.ExcelProductImportService;
+import ru.fisher.ToolsMarket.batch.ImportJobsConfig;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
+import ru.fisher.ToolsMarket.service.ImportJobService;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.NoSuchElementException;
 
 @Slf4j
 @Controller
@@ -20,41 +20,63 @@ import java.util.concurrent.CompletableFuture;
 @RequestMapping("/admin/excel-import")
 public class ExcelImportController {
 
-    private final ExcelProductImportService excelImportService;
-    private final TaskExecutor taskExecutor;
+    private final ImportJobService importJobService;
 
+    /**
+     * Страница импорта. С ?job={id} показывает прогресс или результат запуска,
+     * без параметра — прогресс идущего импорта, если он есть
+     */
     @GetMapping
-    public String importPage(Model model) {
+    public String importPage(@RequestParam(value = "job", required = false) Long jobId, Model model) {
         model.addAttribute("result", null);
         model.addAttribute("running", false);
+
+        Long id = jobId != null ? jobId
+                : importJobService.findRunning(ImportJobsConfig.EXCEL_PRODUCT_IMPORT_JOB).orElse(null);
+        if (id == null) {
+            return "admin/excel/import";
+        }
+
+        try {
+            ImportProgressDto progress = importJobService.progress(id);
+            if (!ImportJobsConfig.EXCEL_PRODUCT_IMPORT_JOB.equals(progress.jobName())) {
+                return "admin/excel/import";
+            }
+            model.addAttribute("jobId", id);
+            if (progress.running()) {
+                model.addAttribute("running", true);
+            } else {
+                model.addAttribute("result", importJobService.productResult(id));
+            }
+        } catch (NoSuchElementException e) {
+            model.addAttribute("error", e.getMessage());
+        }
         return "admin/excel/import";
     }
 
+    /**
+     * Файл сохраняется и ставится в очередь импорта, страница сразу переходит к прогрессу
+     */
     @PostMapping("/import")
-    public CompletableFuture<String> handleImport(
+    public String handleImport(
             @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "updateExisting", defaultValue = "false") boolean updateExisting,
             Model model) {
 
-        log.info("Excel import request: file={}, size={}",
-                file.getOriginalFilename(), file.getSize());
+        log.info("Excel import request: file={}, size={}, updateExisting={}",
+                file.getOriginalFilename(), file.getSize(), updateExisting);
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                model.addAttribute("running", true);
+        try {
+            long jobId = importJobService.startProducts(
+                    file.getInputStream(), file.getOriginalFilename(), updateExisting);
+            return "redirect:/admin/excel-import?job=" + jobId;
 
-                ExcelImportResult result = excelImportService.importFromExcel(file);
-
-                model.addAttribute("result", result);
-                model.addAttribute("running", false);
-
-                return "admin/excel/import";
-
-            } catch (Exception e) {
-                log.error("Error importing Excel", e);
-                model.addAttribute("error", "Ошибка импорта: " + e.getMessage());
-                model.addAttribute("running", false);
-                return "admin/excel/import";
-            }
-        }, taskExecutor);
+        } catch (Exception e) {
+            log.error("Error importing Excel", e);
+            model.addAttribute("error", "Ошибка импорта: " + e.getMessage());
+            model.addAttribute("result", null);
+            model.addAttribute("running", false);
+            return "admin/excel/import";
+        }
     }
-}
\ No newline at end of file
+}
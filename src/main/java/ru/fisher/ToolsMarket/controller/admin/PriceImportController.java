@@ -2,6 +2,7 @@ package ru.fisher.ToolsMarket.controller.admin;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -10,11 +11,16 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ru.fisher.ToolsMarket.batch.ImportJobsConfig;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
 import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.service.ImportJobService;
 import ru.fisher.ToolsMarket.service.PriceImportService;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
 
 @Controller
@@ -25,28 +31,50 @@ import java.util.concurrent.CompletableFuture;
 public class PriceImportController {
 
     private final PriceImportService priceImportService;
-    private final TaskExecutor taskExecutor;
+    private final ImportJobService importJobService;
+    @Qualifier(AsyncConfig.IMPORT_EXECUTOR)
+    private final TaskExecutor importExecutor;
 
+    /**
+     * Dry-run выполняется сразу и показывает изменения,
+     * реальный импорт ставится в очередь — страница переходит к прогрессу.
+     * С токеном dry-run применяются проверенные изменения без повторной загрузки файла.
+     */
     @PostMapping("/import")
     public CompletableFuture<String> handleImport(
-            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "file", required = false) MultipartFile file,
             @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "token", required = false) String token,
             Model model) {
 
-        return CompletableFuture.supplyAsync(() -> {
+        if (token != null && !token.isBlank()) {
+            return CompletableFuture.supplyAsync(() -> applyDryRun(token, model), importExecutor);
+        }
+
+        if (file == null || !isValidExcelFile(file)) {
+            model.addAttribute("error",
+                    "Поддерживаются только файлы Excel (.xlsx, .xls)");
+            return CompletableFuture.completedFuture("admin/prices/import_prices");
+        }
+
+        if (!dryRun) {
             try {
-                ImportResult result = dryRun
-                        ? priceImportService.dryRunImport(file.getInputStream(), file.getOriginalFilename())
-                        : priceImportService.importPrices(file.getInputStream(), file.getOriginalFilename());
+                long jobId = importJobService.startPrices(file.getInputStream(), file.getOriginalFilename());
+                return CompletableFuture.completedFuture("redirect:/admin/prices?job=" + jobId);
+            } catch (Exception e) {
+                log.error("Error importing prices", e);
+                model.addAttribute("error", "Ошибка обработки файла: " + e.getMessage());
+                return CompletableFuture.completedFuture("admin/prices/import_prices");
+            }
+        }
 
-                if (!isValidExcelFile(file)) {
-                    model.addAttribute("error",
-                            "Поддерживаются только файлы Excel (.xlsx, .xls)");
-                    return "admin/prices/import_prices";
-                }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ImportResult result =
+                        priceImportService.dryRunImport(file.getInputStream(), file.getOriginalFilename());
 
                 model.addAttribute("result", result);
-                model.addAttribute("dryRun", dryRun);
+                model.addAttribute("dryRun", true);
 
                 return "admin/prices/import_prices";
 
@@ -55,13 +83,59 @@ public class PriceImportController {
                 model.addAttribute("error", "Ошибка обработки файла: " + e.getMessage());
                 return "admin/prices/import_prices";
             }
-        }, taskExecutor);
+        }, importExecutor);
     }
 
+    private String applyDryRun(String token, Model model) {
+        try {
+            ImportResult result = priceImportService.applyDryRun(token);
+            model.addAttribute("result", result);
+            model.addAttribute("dryRun", false);
+            if (!result.conflictArticles().isEmpty()) {
+                model.addAttribute("error", "Цены " + result.conflictArticles().size()
+                        + " товаров изменились после предпросмотра и не были обновлены. "
+                        + "Повторите предпросмотр для этих артикулов.");
+            }
+        } catch (IllegalStateException e) {
+            model.addAttribute("error", e.getMessage());
+        } catch (Exception e) {
+            log.error("Error applying dry-run {}", token, e);
+            model.addAttribute("error", "Ошибка применения цен: " + e.getMessage());
+        }
+        return "admin/prices/import_prices";
+    }
+
+    /**
+     * Страница импорта. С ?job={id} показывает прогресс или результат запуска,
+     * без параметра — прогресс идущего импорта, если он есть
+     */
     @GetMapping
-    public String importPage(Model model) {
+    public String importPage(@RequestParam(value = "job", required = false) Long jobId, Model model) {
         model.addAttribute("result", null);
         model.addAttribute("dryRun", false);
+        model.addAttribute("running", false);
+
+        Long id = jobId != null ? jobId
+                : importJobService.findRunning(ImportJobsConfig.PRICE_IMPORT_JOB).orElse(null);
+        if (id == null) {
+            return "admin/prices/import_prices";
+        }
+
+        try {
+            ImportProgressDto progress = importJobService.progress(id);
+            if (!ImportJobsConfig.PRICE_IMPORT_JOB.equals(progress.jobName())) {
+                return "admin/prices/import_prices";
+            }
+            model.addAttribute("jobId", id);
+            if (progress.running()) {
+                model.addAttribute("running", true);
+            } else {
+                model.addAttribute("result", importJobService.priceResult(id));
+                importJobService.failure(id).ifPresent(error -> model.addAttribute("error", error));
+            }
+        } catch (NoSuchElementException e) {
+            model.addAttribute("error", e.getMessage());
+        }
         return "admin/prices/import_prices";
     }
 
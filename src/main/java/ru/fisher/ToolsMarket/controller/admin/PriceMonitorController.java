@@ -0,0 +1,42 @@
+package ru.fisher.ToolsMarket.controller.admin;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import ru.fisher.ToolsMarket.service.PriceMonitorService;
+
+@Controller
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+@RequestMapping("/admin/prices/monitor")
+public class PriceMonitorController {
+
+    private final PriceMonitorService priceMonitorService;
+
+    /**
+     * Отчет последней проверки цен поставщиков. Изменения применяются
+     * через импорт цен по токену (POST /admin/prices/import)
+     */
+    @GetMapping
+    public String monitorPage(Model model) {
+        model.addAttribute("running", priceMonitorService.isRunning());
+        model.addAttribute("report", priceMonitorService.lastReport().orElse(null));
+        return "admin/prices/monitor";
+    }
+
+    @PostMapping
+    public String startCheck(RedirectAttributes redirectAttributes) {
+        if (priceMonitorService.start()) {
+            redirectAttributes.addFlashAttribute("message", "Проверка цен запущена");
+        } else {
+            redirectAttributes.addFlashAttribute("error",
+                    "Проверка уже идет или очередь импорта заполнена — попробуйте позже");
+        }
+        return "redirect:/admin/prices/monitor";
+    }
+}
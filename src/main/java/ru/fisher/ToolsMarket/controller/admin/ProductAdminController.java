@@ -4,6 +4,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -26,12 +27,8 @@ import ru.fisher.ToolsMarket.exceptions.DuplicateSkuException;
 import ru.fisher.ToolsMarket.exceptions.ValidationException;
 import ru.fisher.ToolsMarket.models.*;
 import ru.fisher.ToolsMarket.service.*;
-import ru.fisher.ToolsMarket.util.CustomMultipartFile;
 
-import java.io.InputStream;
 import java.math.BigDecimal;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -119,6 +116,7 @@ public class ProductAdminController {
                          @RequestParam(required = false) List<Integer> imageSortOrders,
                          @RequestParam(required = false) ProductType productType,
                          @RequestParam(required = false) List<String> parsedImageUrls,
+                         @RequestParam(required = false) String sourceUrl,
                          @AuthenticationPrincipal UserDetails userDetails,
                          HttpSession session, RedirectAttributes redirectAttributes) {
 
@@ -147,6 +145,7 @@ public class ProductAdminController {
                 .images(new HashSet<>())
                 .views(0L)
                 .productType(productType)
+                .sourceUrl(sourceUrl != null && !sourceUrl.isBlank() ? sourceUrl.trim() : null)
                 .build();
 
         // Устанавливаем категории
@@ -172,22 +171,14 @@ public class ProductAdminController {
             // Пользователь сам загрузил файлы с компьютера
             saveProductImages(savedProduct, images, imageAlts, imageSortOrders);
         } else if (parsedImageUrls != null && !parsedImageUrls.isEmpty()) {
-            // Скачиваем все картинки из карусели
-            List<MultipartFile> downloadedFiles = new ArrayList<>();
-
+            // Картинки поставщика сохраняются ссылками, ImageMirrorService скопирует их в фоне
             for (int i = 0; i < parsedImageUrls.size(); i++) {
-                String imgUrl = parsedImageUrls.get(i);
-                try (InputStream in = new URL(imgUrl).openStream()) {
-                    byte[] content = in.readAllBytes();
-                    // Используем наш Custom класс
-                    downloadedFiles.add(new CustomMultipartFile("images", "parsed-image-" + i + ".jpg", "image/jpeg", content));
-                } catch (Exception e) {
-                    log.error("Не удалось скачать картинку парсера: " + imgUrl, e);
-                }
-            }
-
-            if (!downloadedFiles.isEmpty()) {
-                saveProductImages(savedProduct, downloadedFiles, null, null);
+                savedProduct.getImages().add(ProductImage.builder()
+                        .product(savedProduct)
+                        .url(parsedImageUrls.get(i))
+                        .alt(name)
+                        .sortOrder(i)
+                        .build());
             }
         }
 
@@ -198,44 +189,6 @@ public class ProductAdminController {
         return "redirect:" + getReturnUrl(session);
     }
 
-    private void downloadAndSaveParsedImages(Product product, List<String> imageUrls) {
-        List<MultipartFile> downloadedFiles = new ArrayList<>();
-        int maxImages = 10;
-
-        for (int i = 0; i < Math.min(imageUrls.size(), maxImages); i++) {
-            String imgUrl = imageUrls.get(i);
-            try {
-                URL url = new URL(imgUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setConnectTimeout(5000);
-                conn.setReadTimeout(5000);
-                conn.setRequestMethod("GET");
-                conn.connect();
-
-                int contentLength = conn.getContentLength();
-                if (contentLength < 10000) {
-                    conn.disconnect();
-                    continue;
-                }
-
-                try (InputStream in = conn.getInputStream()) {
-                    byte[] content = in.readAllBytes();
-                    String filename = "product-" + product.getSku() + "-" + (i + 1) + ".jpg";
-                    downloadedFiles.add(new CustomMultipartFile(
-                            "images", filename, "image/jpeg", content));
-                }
-                conn.disconnect();
-            } catch (Exception e) {
-                log.warn("Failed to download image {}: {}", imgUrl, e.getMessage());
-            }
-        }
-
-        if (!downloadedFiles.isEmpty()) {
-            saveProductImages(product, downloadedFiles, null, null);
-            log.info("Downloaded {} parsed images", downloadedFiles.size());
-        }
-    }
-
     @GetMapping("/new")
     public String showCreateForm(@RequestParam(required = false) String parseUrl,
                                  Model model,
@@ -257,6 +210,7 @@ public class ProductAdminController {
                 product.setDescription(parsedData.getDescription());
                 product.setShortDescription(parsedData.getShortDescription());
                 parsedImageUrls = parsedData.getImageUrls();
+                model.addAttribute("sourceUrl", parseUrl);
                // parsedCategorySuggestion = parsedData.getCategorySuggestion();
 
                 model.addAttribute("message", "Товар успешно спарсен! Найдено фото: " + parsedImageUrls.size());
@@ -460,8 +414,11 @@ public class ProductAdminController {
                                                @RequestBody List<ImageOrderDto> orderData) {
         try {
             log.info("Обновление порядка изображений для товара {}: {}", id, orderData);
-            imageStorageService.updateImageOrder(orderData);
+            imageStorageService.updateImageOrder(id, orderData);
             return ResponseEntity.ok().body(Map.of("success", true, "message", "Порядок изображений обновлен"));
+        } catch (OptimisticLockingFailureException e) {
+            log.warn("Порядок изображений товара {} не обновлен: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("success", false, "message", e.getMessage()));
         } catch (Exception e) {
             log.error("Ошибка при обновлении порядка изображений", e);
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
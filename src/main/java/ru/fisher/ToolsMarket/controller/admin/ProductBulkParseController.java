@@ -0,0 +1,74 @@
+package ru.fisher.ToolsMarket.controller.admin;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+import ru.fisher.ToolsMarket.batch.ImportJobsConfig;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
+import ru.fisher.ToolsMarket.service.ImportJobService;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+@Slf4j
+@Controller
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+@RequestMapping("/admin/products/bulk-parse")
+public class ProductBulkParseController {
+
+    private final ImportJobService importJobService;
+
+    /**
+     * Страница массового парсинга. С ?job={id} показывает прогресс или результат запуска
+     */
+    @GetMapping
+    public String parsePage(@RequestParam(value = "job", required = false) Long jobId, Model model) {
+        model.addAttribute("result", null);
+        model.addAttribute("running", false);
+
+        Long id = jobId != null ? jobId
+                : importJobService.findRunning(ImportJobsConfig.PRODUCT_PARSE_JOB).orElse(null);
+        if (id == null) {
+            return "admin/products/bulk-parse";
+        }
+
+        try {
+            ImportProgressDto progress = importJobService.progress(id);
+            if (!ImportJobsConfig.PRODUCT_PARSE_JOB.equals(progress.jobName())) {
+                return "admin/products/bulk-parse";
+            }
+            model.addAttribute("jobId", id);
+            if (progress.running()) {
+                model.addAttribute("running", true);
+            } else {
+                model.addAttribute("result", importJobService.productResult(id));
+            }
+        } catch (NoSuchElementException e) {
+            model.addAttribute("error", e.getMessage());
+        }
+        return "admin/products/bulk-parse";
+    }
+
+    /**
+     * Ссылки (по одной в строке) ставятся в очередь, страница сразу переходит к прогрессу
+     */
+    @PostMapping
+    public String startParse(@RequestParam("urls") String urls, Model model) {
+        try {
+            long jobId = importJobService.startParse(Arrays.asList(urls.split("\\R")));
+            return "redirect:/admin/products/bulk-parse?job=" + jobId;
+
+        } catch (Exception e) {
+            log.error("Error starting bulk parse", e);
+            model.addAttribute("error", "Ошибка запуска: " + e.getMessage());
+            model.addAttribute("urls", urls);
+            model.addAttribute("result", null);
+            model.addAttribute("running", false);
+            return "admin/products/bulk-parse";
+        }
+    }
+}
@@ -2,14 +2,15 @@ package ru.fisher.ToolsMarket.controller.admin;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
-import ru.fisher.ToolsMarket.parsingXml.StemYmlImportService;
+import ru.fisher.ToolsMarket.batch.ImportJobsConfig;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
+import ru.fisher.ToolsMarket.service.ImportJobService;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.NoSuchElementException;
 
 @Controller
 @Slf4j
@@ -18,45 +19,60 @@ import java.util.concurrent.CompletableFuture;
 @RequestMapping("/admin/parser")
 public class XmlParserController {
 
-    private final StemYmlImportService ymlImportService;
-    private final TaskExecutor taskExecutor;
+    private static final String DEFAULT_URL =
+            "https://stemru.ru/bitrix/catalog_export/export_stemtechno_dealer.xml";
+
+    private final ImportJobService importJobService;
 
     @GetMapping
-    public String importPage(Model model) {
+    public String importPage(@RequestParam(value = "job", required = false) Long jobId, Model model) {
         model.addAttribute("result", null);
         model.addAttribute("running", false);
-        model.addAttribute("defaultUrl",
-                "https://stemru.ru/bitrix/catalog_export/export_stemtechno_dealer.xml");
+        model.addAttribute("defaultUrl", DEFAULT_URL);
+
+        Long id = jobId != null ? jobId
+                : importJobService.findRunning(ImportJobsConfig.YML_IMPORT_JOB).orElse(null);
+        if (id == null) {
+            return "admin/parser/xml_parser";
+        }
+
+        try {
+            ImportProgressDto progress = importJobService.progress(id);
+            if (!ImportJobsConfig.YML_IMPORT_JOB.equals(progress.jobName())) {
+                return "admin/parser/xml_parser";
+            }
+            model.addAttribute("jobId", id);
+            model.addAttribute("xmlUrl", progress.source());
+            if (progress.running()) {
+                model.addAttribute("running", true);
+            } else {
+                model.addAttribute("result", importJobService.ymlResult(id));
+            }
+        } catch (NoSuchElementException e) {
+            model.addAttribute("error", e.getMessage());
+        }
         return "admin/parser/xml_parser";
     }
 
     @PostMapping("/run")
-    public CompletableFuture<String> runImport(
+    public String runImport(
             @RequestParam("xmlUrl") String xmlUrl,
             Model model) {
 
         log.info("YML Import request: url={}", xmlUrl);
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                model.addAttribute("running", true);
-
-                StemYmlImportService.ImportResult result =
-                        ymlImportService.importFromUrl(xmlUrl);
+        try {
+            long jobId = importJobService.startYml(xmlUrl);
+            return "redirect:/admin/parser?job=" + jobId;
 
-                model.addAttribute("result", result);
-                model.addAttribute("xmlUrl", xmlUrl);
-                model.addAttribute("running", false);
-
-                return "admin/parser/xml_parser";
-
-            } catch (Exception e) {
-                log.error("Error importing YML", e);
-                model.addAttribute("error", "Ошибка импорта: " + e.getMessage());
-                model.addAttribute("xmlUrl", xmlUrl);
-                model.addAttribute("running", false);
-                return "admin/parser/xml_parser";
-            }
-        }, taskExecutor);
+        } catch (Exception e) {
+            log.error("Error importing YML", e);
+            model.addAttribute("error", "Ошибка импорта: " + e.getMessage());
+            model.addAttribute("xmlUrl", xmlUrl);
+            model.addAttribute("defaultUrl", DEFAULT_URL);
+            model.addAttribute("result", null);
+            model.addAttribute("running", false);
+            return "admin/parser/xml_parser";
+        }
     }
 }
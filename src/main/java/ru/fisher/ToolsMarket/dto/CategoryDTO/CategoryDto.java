@@ -20,6 +20,7 @@ public class CategoryDto {
     private Integer sortOrder;
     private String imageUrl;
     private String thumbnailUrl;
+    private String imageSrcset;
     private Long parentId;
     private String parentName;
     private String parentTitle;
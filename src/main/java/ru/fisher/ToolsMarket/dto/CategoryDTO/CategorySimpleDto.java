@@ -18,6 +18,7 @@ public class CategorySimpleDto {
     private String description;
     private String imageUrl;
     private String thumbnailUrl;
+    private String imageSrcset;
     private Integer sortOrder;
     private Instant createdAt;
 }
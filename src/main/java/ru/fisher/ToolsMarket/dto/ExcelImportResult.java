@@ -20,6 +20,9 @@ public class ExcelImportResult {
     @Builder.Default
     private int created = 0;
 
+    @Builder.Default
+    private int updated = 0;
+
     @Builder.Default
     private int skipped = 0;
 
@@ -32,6 +35,9 @@ public class ExcelImportResult {
     @Builder.Default
     private List<String> createdProducts = new ArrayList<>();
 
+    @Builder.Default
+    private List<String> updatedProducts = new ArrayList<>();
+
     @Builder.Default
     private List<String> skippedProducts = new ArrayList<>();
 
@@ -43,6 +49,10 @@ public class ExcelImportResult {
         created += count;
     }
 
+    public void incrementUpdated(int count) {
+        updated += count;
+    }
+
     public void incrementSkipped() {
         skipped++;
     }
@@ -60,6 +70,10 @@ public class ExcelImportResult {
         createdProducts.add(sku);
     }
 
+    public void addUpdatedProduct(String sku) {
+        updatedProducts.add(sku);
+    }
+
     public void addSkippedProduct(String sku, String reason) {
         skippedProducts.add(sku + " (" + reason + ")");
     }
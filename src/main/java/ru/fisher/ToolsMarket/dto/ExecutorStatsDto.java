@@ -0,0 +1,22 @@
+package ru.fisher.ToolsMarket.dto;
+
+/**
+ * Состояние пула потоков для админки
+ */
+public record ExecutorStatsDto(
+        String name,             // имя бина
+        String threadPrefix,     // префикс имен потоков
+        int activeCount,         // занятые потоки
+        int poolSize,            // текущий размер пула
+        int maxPoolSize,         // максимальный размер пула
+        int queueSize,           // задач в очереди
+        int queueCapacity,       // емкость очереди (-1 — без ограничения)
+        long completedTasks,     // выполнено задач
+        long rejectedTasks,      // отклонено задач
+        double avgWaitMs,        // среднее ожидание в очереди
+        double maxWaitMs         // максимальное ожидание в очереди
+) {
+    public boolean isSaturated() {
+        return activeCount >= maxPoolSize && queueCapacity > 0 && queueSize >= queueCapacity;
+    }
+}
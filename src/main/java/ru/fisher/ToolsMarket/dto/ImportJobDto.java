@@ -0,0 +1,30 @@
+package ru.fisher.ToolsMarket.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запуск задачи импорта для страницы истории
+ *
+ * @param source      имя файла или URL фида
+ * @param restartable можно перезапустить с последнего закоммиченного чанка
+ */
+public record ImportJobDto(
+        long executionId,
+        long instanceId,
+        String jobName,
+        String source,
+        String status,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        long readCount,
+        long writeCount,
+        long filterCount,
+        long skipCount,
+        int commitCount,
+        String exitMessage,
+        boolean restartable
+) {
+    public boolean isFailed() {
+        return "FAILED".equals(status) || "STOPPED".equals(status);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.fisher.ToolsMarket.dto;
+
+import java.util.List;
+
+/**
+ * Прогресс запуска импорта — для опроса со страниц импорта
+ *
+ * @param stepName       текущий шаг задачи
+ * @param percent        доля прочитанного файла/фида, null — если размер неизвестен
+ * @param rowsPerSecond  скорость чтения строк за время запуска
+ * @param etaSeconds     оценка оставшегося времени, null — если оценить нельзя
+ * @param errors         последние ошибки строк
+ */
+public record ImportProgressDto(
+        long executionId,
+        String jobName,
+        String source,
+        String status,
+        boolean running,
+        String stepName,
+        long readCount,
+        long writeCount,
+        long filterCount,
+        long skipCount,
+        int errorCount,
+        List<String> errors,
+        Double percent,
+        double rowsPerSecond,
+        long elapsedSeconds,
+        Long etaSeconds,
+        String exitMessage
+) {
+}
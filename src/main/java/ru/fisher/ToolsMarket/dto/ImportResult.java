@@ -11,19 +11,21 @@ public record ImportResult(
         List<PriceChange> priceChanges, // детали изменений цен
         String filename,                // имя файла
         LocalDateTime importedAt,       // время импорта
-        boolean dryRun                  // был ли это dry-run
+        boolean dryRun,                 // был ли это dry-run
+        String token,                   // токен dry-run для применения без повторной загрузки
+        List<String> conflictArticles   // цена изменилась между dry-run и применением
 ) {
     public ImportResult(int updatedCount, List<String> notFoundArticles,
                         int samePriceCount, String filename) {
         this(updatedCount, samePriceCount, notFoundArticles.size(), notFoundArticles,
-                List.of(), filename, LocalDateTime.now(), false);
+                List.of(), filename, LocalDateTime.now(), false, null, List.of());
     }
 
     public ImportResult(int updatedCount, int samePriceCount, int notFoundCount,
                         List<String> notFoundArticles, List<PriceChange> priceChanges,
                         String filename, boolean dryRun) {
         this(updatedCount, samePriceCount, notFoundCount, notFoundArticles,
-                priceChanges, filename, LocalDateTime.now(), dryRun);
+                priceChanges, filename, LocalDateTime.now(), dryRun, null, List.of());
     }
 
     public static ImportResult dryRun(List<PriceChange> changes,
@@ -40,4 +42,9 @@ public record ImportResult(
                 true
         );
     }
+
+    public ImportResult withToken(String token) {
+        return new ImportResult(updatedCount, samePriceCount, notFoundCount, notFoundArticles,
+                priceChanges, filename, importedAt, dryRun, token, conflictArticles);
+    }
 }
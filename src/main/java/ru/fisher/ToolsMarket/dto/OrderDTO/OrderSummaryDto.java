@@ -0,0 +1,26 @@
+package ru.fisher.ToolsMarket.dto.OrderDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.fisher.ToolsMarket.models.OrderStatus;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Краткая информация о заказе для списков (без позиций заказа)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryDto {
+    private Long id;
+    private Long orderNumber;
+    private Instant createdAt;
+    private OrderStatus status;
+    private BigDecimal totalPrice;
+    private long itemsCount;
+}
@@ -0,0 +1,23 @@
+package ru.fisher.ToolsMarket.dto.OrderDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Агрегированная статистика заказов пользователя
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserOrderStatsDto {
+    private long totalOrdersCount;
+    private long activeOrdersCount;
+    private long newOrdersCount;
+    private long notCancelledOrdersCount;
+    private BigDecimal totalSpent;
+}
@@ -20,6 +20,7 @@ public class ProductCardDto {
     private String sku;
     private BigDecimal price;
     private String mainImageUrl;
+    private String mainImageSrcset;
     private BigDecimal discountPercentage;
     private BigDecimal discountedPrice;
     private boolean hasDiscount;
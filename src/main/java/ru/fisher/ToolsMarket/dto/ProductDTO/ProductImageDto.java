@@ -13,5 +13,7 @@ public class ProductImageDto {
     private Long id;
     private String url;
     private String alt;
+    private String thumbnailUrl;
+    private String srcset;
     private Integer sortOrder;
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package ru.fisher.ToolsMarket.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Черновик товара, спарсенного со страницы поставщика, готовый к массовой вставке.
+ * Сохраняется неактивным — публикует его администратор после проверки.
+ */
+public record ProductDraftRow(
+        String sku,
+        String name,
+        String title,
+        String description,
+        String shortDescription,
+        BigDecimal price,
+        String sourceUrl,
+        List<String> imageUrls
+) {}
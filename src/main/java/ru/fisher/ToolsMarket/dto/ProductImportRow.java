@@ -0,0 +1,13 @@
+package ru.fisher.ToolsMarket.dto;
+
+/**
+ * Строка импорта товара, готовая к массовой вставке
+ */
+public record ProductImportRow(
+        String sku,
+        String name,
+        String title,
+        String description,
+        String shortDescription,
+        String imageUrl     // может быть null
+) {}
@@ -0,0 +1,17 @@
+package ru.fisher.ToolsMarket.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Строка прайса, проверенная в dry-run: цена товара на момент проверки и цена из файла
+ */
+public record ReviewedPrice(
+        String sku,
+        String productName,
+        BigDecimal oldPrice,
+        BigDecimal newPrice
+) {
+    public boolean isChanged() {
+        return oldPrice.compareTo(newPrice) != 0;
+    }
+}
@@ -23,6 +23,7 @@ import org.springframework.web.servlet.resource.NoResourceFoundException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 @Slf4j
@@ -139,6 +140,17 @@ public class GlobalExceptionHandler {
         return "redirect:/admin/orders";
     }
 
+    // Пул импорта переполнен (bulkhead) — просим повторить позже, а не падаем с 500
+    @ExceptionHandler(RejectedExecutionException.class)
+    public String handleRejectedExecution(RejectedExecutionException e,
+                                          RedirectAttributes redirectAttributes,
+                                          HttpServletRequest request) {
+        log.warn("Задача отклонена пулом потоков: {}", e.getMessage());
+        redirectAttributes.addFlashAttribute("error",
+                "Сервер занят другими импортами. Попробуйте повторить через несколько минут.");
+        return getRedirectUrl(request, "/admin");
+    }
+
     private String getRedirectUrl(HttpServletRequest request, String defaultUrl) {
         String referer = request.getHeader("Referer");
         return "redirect:" + (referer != null ? referer : defaultUrl);
@@ -0,0 +1,10 @@
+package ru.fisher.ToolsMarket.exceptions;
+
+/**
+ * Некорректная строка импорта: строка пропускается, импорт продолжается
+ */
+public class ImportRowException extends RuntimeException {
+    public ImportRowException(String message) {
+        super(message);
+    }
+}
@@ -2,27 +2,27 @@ package ru.fisher.ToolsMarket.listener;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 import ru.fisher.ToolsMarket.dto.OrderDTO.OrderCreatedEvent;
-import ru.fisher.ToolsMarket.service.EmailService;
+import ru.fisher.ToolsMarket.service.EmailOutboxService;
 
+/**
+ * Письмо о заказе ставится в outbox в транзакции создания заказа:
+ * при откате заказа письмо не уйдет, при рестарте — не потеряется.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class OrderEmailNotificationListener {
 
-    private final EmailService emailService;
+    private final EmailOutboxService outboxService;
 
-    @Async
-    @EventListener
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
     public void onOrderCreated(final OrderCreatedEvent event) {
-        try {
-            emailService.sendOrderCreatedEmail(event);
-        } catch (Exception e) {
-            log.error("Failed to send order email for order {}", event.orderNumber(), e);
-        }
+        outboxService.enqueueOrderCreated(event);
+        log.debug("Письмо о заказе {} поставлено в очередь", event.orderNumber());
     }
 
 
@@ -31,6 +31,7 @@ public class CategoryMapperService {
                 .sortOrder(category.getSortOrder())
                 .imageUrl(category.getImageUrl())
                 .thumbnailUrl(category.getThumbnailUrl())
+                .imageSrcset(category.getImageSrcset())
                 .createdAt(category.getCreatedAt())
                 .build();
 
@@ -58,6 +58,8 @@ public class ProductMapperService {
                     .map(img -> ProductImageDto.builder()
                             .url(img.getUrl())
                             .alt(img.getAlt())
+                            .thumbnailUrl(img.getThumbnailUrl())
+                            .srcset(img.getSrcset())
                             .sortOrder(img.getSortOrder())
                             .build())
                     .toList();
@@ -132,6 +134,8 @@ public class ProductMapperService {
                     .map(img -> ProductImageDto.builder()
                             .url(img.getUrl())
                             .alt(img.getAlt())
+                            .thumbnailUrl(img.getThumbnailUrl())
+                            .srcset(img.getSrcset())
                             .sortOrder(img.getSortOrder())
                             .build())
                     .toList());
@@ -47,6 +47,9 @@ public class Category {
     @Column(name = "thumbnail_url")
     private String thumbnailUrl;
 
+    @Column(name = "image_srcset")
+    private String imageSrcset;
+
     @Column(name = "sort_order")
     private Integer sortOrder = 0;
 
@@ -0,0 +1,64 @@
+package ru.fisher.ToolsMarket.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Исходящее письмо (transactional outbox).
+ * Запись создается в той же транзакции, что и заказ/регистрация,
+ * и отправляется диспетчером после коммита.
+ */
+@Entity
+@Table(name = "email_outbox")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private EmailOutboxType type;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(name = "payload_json", columnDefinition = "TEXT", nullable = false)
+    private String payloadJson;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private EmailOutboxStatus status = EmailOutboxStatus.PENDING;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private int attempts = 0;
+
+    // Отправляется в составе сводки (digest mode)
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean digest = false;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "locked_at")
+    private Instant lockedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+}
@@ -0,0 +1,8 @@
+package ru.fisher.ToolsMarket.models;
+
+public enum EmailOutboxStatus {
+    PENDING,  // Ожидает отправки (в том числе повторной)
+    SENDING,  // Захвачено диспетчером
+    SENT,     // Отправлено
+    FAILED    // Исчерпаны все попытки
+}
@@ -0,0 +1,6 @@
+package ru.fisher.ToolsMarket.models;
+
+public enum EmailOutboxType {
+    ORDER_CREATED,
+    USER_REGISTERED
+}
@@ -30,6 +30,10 @@ public class FailedEmail {
 
     private Instant failedAt;
 
+    // Ошибка переноса в outbox; строка остается для разбора
+    @Column(name = "transfer_error", columnDefinition = "TEXT")
+    private String transferError;
+
     public static FailedEmail from(
             OrderEmailPayload payload,
             OrderStatus status,
@@ -48,4 +52,8 @@ public class FailedEmail {
         f.failedAt = Instant.now();
         return f;
     }
+
+    public void markTransferFailed(Exception ex) {
+        this.transferError = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName();
+    }
 }
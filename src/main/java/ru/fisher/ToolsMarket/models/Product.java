@@ -61,6 +61,9 @@ public class Product {
     @OrderBy("sortOrder ASC")
     private Set<ProductImage> images = new LinkedHashSet<>();
 
+    @Column(name = "source_url", length = 1024)
+    private String sourceUrl; // Страница товара у поставщика, по ней мониторятся цены
+
     @Column(name = "created_by_user_id")
     private Long createdByUserId;
 
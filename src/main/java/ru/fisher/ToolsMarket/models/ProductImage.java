@@ -25,6 +25,16 @@ public class ProductImage {
 
     private String alt;
 
+    // Уменьшенная копия для карточек и srcset с копиями разной ширины (ImageVariantService)
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
+
+    private String srcset;
+
+    // Внешний URL поставщика, если картинка скопирована к нам (ImageMirrorService)
+    @Column(name = "source_url")
+    private String sourceUrl;
+
     @Column(name = "sort_order")
     private Integer sortOrder = 0;
 }
@@ -2,38 +2,59 @@ package ru.fisher.ToolsMarket.parsingXml;
 
 import lombok.Getter;
 import ru.fisher.ToolsMarket.models.*;
-import ru.fisher.ToolsMarket.repository.AttributeRepository;
+import ru.fisher.ToolsMarket.repository.YmlImportJdbcRepository.AttributeKey;
+import ru.fisher.ToolsMarket.repository.YmlImportJdbcRepository.AttributeValueKey;
+import ru.fisher.ToolsMarket.repository.YmlImportJdbcRepository.ProductState;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Контекст пачки предложений.
+ * Состояние каталога хранится в узких проекциях (см. YmlImportJdbcRepository),
+ * сущности Product — только для изменившихся предложений.
+ */
 @Getter
 public class ImportContext {
 
     private final Map<String, Category> categoryByXmlId;
-    private final Map<String, Product> productsBySku;
-    private final Map<String, Attribute> attributeCache;
-    private final Map<String, ProductAttributeValue> valueCache;
+    private final Map<String, ProductState> productStates;            // sku → состояние
+    // Плоские карты: один поиск по ключу-записи, без вложенной карты на каждую категорию и товар
+    private final Map<AttributeKey, Long> attributeIds;               // (categoryId, имя) → attributeId
+    private final Map<AttributeValueKey, String> attributeValues;     // (productId, attributeId) → значение
 
+    private final Map<String, Product> productsBySku = new HashMap<>();
     private final List<Product> productsToSave = new ArrayList<>();
-    private final List<Attribute> attributesToSave = new ArrayList<>();
-    private final List<ProductAttributeValue> valuesToSave = new ArrayList<>();
-    private final List<ProductImage> productImagesToSave = new ArrayList<>();
+    private final List<PendingValue> valuesToSave = new ArrayList<>();
 
-    // Добавляем репозиторий для проверки существующих атрибутов
-    private AttributeRepository attributeRepository;
+    /**
+     * Значение атрибута к сохранению; id нового товара появится после его сохранения
+     */
+    public record PendingValue(Product product, long attributeId, String value) {}
 
     public ImportContext(
             Map<String, Category> categoryByXmlId,
-            Map<String, Product> productsBySku,
-            Map<String, Attribute> attributeCache,
-            Map<String, ProductAttributeValue> valueCache
+            Map<String, ProductState> productStates,
+            Map<AttributeKey, Long> attributeIds,
+            Map<AttributeValueKey, String> attributeValues
     ) {
         this.categoryByXmlId = categoryByXmlId;
-        this.productsBySku = productsBySku;
-        this.attributeCache = attributeCache;
-        this.valueCache = valueCache;
+        this.productStates = productStates;
+        this.attributeIds = attributeIds;
+        this.attributeValues = attributeValues;
+    }
+
+    public Long attributeId(long categoryId, String name) {
+        return attributeIds.get(new AttributeKey(categoryId, name));
     }
-}
 
+    public void putAttributeId(long categoryId, String name, long attributeId) {
+        attributeIds.put(new AttributeKey(categoryId, name), attributeId);
+    }
+
+    public String attributeValue(long productId, long attributeId) {
+        return attributeValues.get(new AttributeValueKey(productId, attributeId));
+    }
+}
@@ -0,0 +1,22 @@
+package ru.fisher.ToolsMarket.parsingXml;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Предложение в том виде, как оно записано в фиде: только текст элементов, без разбора.
+ * Читается StAX-потоком, разбирается в YmlOffer воркерами (см. YmlOfferImporter.toOffer).
+ *
+ * @param price  текст элемента price
+ * @param params характеристики (param name → значение) в порядке фида
+ */
+public record RawOffer(
+        String externalId,
+        String vendorCode,
+        String name,
+        String price,
+        String categoryXmlId,
+        List<String> pictures,
+        Map<String, String> params
+) {
+}
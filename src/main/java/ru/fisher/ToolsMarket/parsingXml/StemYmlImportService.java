@@ -5,18 +5,24 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.fisher.ToolsMarket.models.Attribute;
+import ru.fisher.ToolsMarket.models.AttributeType;
 import ru.fisher.ToolsMarket.models.Category;
 import ru.fisher.ToolsMarket.models.Product;
-import ru.fisher.ToolsMarket.models.ProductAttributeValue;
 import ru.fisher.ToolsMarket.repository.AttributeRepository;
-import ru.fisher.ToolsMarket.repository.ProductAttributeValueRepository;
+import ru.fisher.ToolsMarket.repository.CategoryRepository;
 import ru.fisher.ToolsMarket.repository.ProductRepository;
+import ru.fisher.ToolsMarket.repository.YmlImportJdbcRepository;
+import ru.fisher.ToolsMarket.service.SlugService;
 
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.InputStream;
-import java.net.URL;
-import java.util.Map;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -27,105 +33,294 @@ public class StemYmlImportService {
     private final YmlCategoryImporter categoryImporter;
     private final YmlOfferImporter offerImporter;
     private final ProductRepository productRepository;
-    private final ProductAttributeValueRepository valueRepository;
+    private final YmlImportJdbcRepository importJdbcRepository;
     private final AttributeRepository attributeRepository;
+    private final CategoryRepository categoryRepository;
+    private final SlugService slugService;
 
-    @Transactional
-    public ImportResult importFromUrl(String url) throws Exception {
+    /*
+     * Импорт выполняется задачей Spring Batch ymlImportJob (см. ImportJobsConfig):
+     * фид один раз скачивается в файл (YmlFeedFetcher), шаг категорий вызывает importCategories,
+     * шаг товаров читает offer из того же файла по одному и сохраняет их пачками через writeOffers.
+     */
 
-        log.info("Импорт из {}", url);
+    /**
+     * Этап 1: категории фида
+     *
+     * @param feed скачанный файл фида
+     * @return id категории в фиде → id категории в БД
+     */
+    @Transactional
+    public Map<String, Long> importCategories(Path feed) throws Exception {
 
-        Map<String, Category> categoryByXmlId;
+        log.info("Импорт категорий из {}", feed);
 
-        // -------- ЭТАП 1: категории --------
-        try (InputStream is = new URL(url).openStream()) {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(feed), 65536)) {
             XMLStreamReader reader = createReader(is);
-            categoryByXmlId = categoryImporter.importCategories(reader);
+            try {
+                return categoryImporter.importCategories(reader);
+            } finally {
+                reader.close();
+            }
         }
+    }
 
-        // -------- ЭТАП 2: preload --------
-        ImportContext ctx = prepareContext(categoryByXmlId);
+    /**
+     * Reader, установленный на элемент offers
+     */
+    public XMLStreamReader openOffers(InputStream is) throws XMLStreamException {
+        XMLStreamReader reader = createReader(is);
 
-        // -------- ЭТАП 3: товары --------
-        try (InputStream is = new URL(url).openStream()) {
-            XMLStreamReader reader = createReader(is);
+        while (reader.hasNext()) {
+            reader.next();
+            if (reader.isStartElement()
+                    && reader.getLocalName().equals("offers")) {
+                break;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Итог пачки предложений
+     *
+     * @param imported  импортировано (включая неизмененные)
+     * @param unchanged не изменились с прошлого импорта — товар не трогался
+     */
+    public record WriteOutcome(int imported, int unchanged) {}
+
+    /**
+     * Этап 2: сохранение пачки предложений.
+     * Предложения с тем же хэшем содержимого, что при прошлом импорте поставщика, пропускаются сразу;
+     * остальные сравниваются с каталогом по узким проекциям, сущности загружаются
+     * и сохраняются только для новых и изменившихся.
+     *
+     * @param supplier поставщик (хост фида)
+     * @param runId    экземпляр задачи импорта — отметка «предложение есть в фиде»
+     */
+    @Transactional
+    public WriteOutcome writeOffers(List<? extends YmlOffer> offers, Map<String, Long> categoryIds,
+                                    String supplier, long runId) {
 
-            while (reader.hasNext()) {
-                reader.next();
-                if (reader.isStartElement()
-                        && reader.getLocalName().equals("offers")) {
-                    break;
+        Map<String, String> hashes = new HashMap<>();
+        for (YmlOffer offer : offers) {
+            hashes.put(offer.externalId(), offer.contentHash());
+        }
+        Map<String, String> previousHashes = importJdbcRepository.findOfferHashes(supplier, hashes.keySet());
+
+        List<YmlOffer> candidates = new ArrayList<>();
+        int unchanged = 0;
+        for (YmlOffer offer : offers) {
+            if (hashes.get(offer.externalId()).equals(previousHashes.get(offer.externalId()))) {
+                unchanged++;
+            } else {
+                candidates.add(offer);
+            }
+        }
+
+        int imported = unchanged;
+        Set<String> rejected = new HashSet<>();
+        if (!candidates.isEmpty()) {
+            ImportContext ctx = prepareContext(candidates, categoryIds);
+
+            List<YmlOffer> changed = new ArrayList<>();
+            for (YmlOffer offer : candidates) {
+                if (offerImporter.isUnchanged(offer, ctx)) {
+                    imported++;
+                    unchanged++;
+                } else {
+                    changed.add(offer);
                 }
             }
 
-            offerImporter.importOffers(reader, ctx);
+            if (!changed.isEmpty()) {
+                loadChangedProducts(changed, ctx);
+                createMissingAttributes(changed, ctx);
+
+                for (YmlOffer offer : changed) {
+                    if (offerImporter.applyOffer(offer, ctx)) {
+                        imported++;
+                    } else {
+                        rejected.add(offer.externalId());
+                    }
+                }
+                flush(ctx);
+            }
         }
 
-        // -------- ЭТАП 4: batch flush --------
-        flush(ctx);
+        // Неизмененные по хэшу тоже отмечаются как увиденные в этом запуске;
+        // повтор id предложения в пачке — действует последнее
+        Map<String, YmlOffer> seen = new LinkedHashMap<>();
+        for (YmlOffer offer : offers) {
+            if (!rejected.contains(offer.externalId())) {
+                seen.put(offer.externalId(), offer);
+            }
+        }
+        List<String> offerIds = new ArrayList<>(seen.keySet());
+        List<String> skus = seen.values().stream().map(YmlOffer::sku).toList();
+        List<String> offerHashes = offerIds.stream().map(hashes::get).toList();
+        importJdbcRepository.saveOfferHashes(supplier, runId, offerIds, skus, offerHashes);
+
+        log.debug("Пачка предложений: {}, без изменений {}", offers.size(), unchanged);
+        return new WriteOutcome(imported, unchanged);
+    }
 
-        log.info("Импорт завершен");
+    /**
+     * Этап 3: товары предложений, пропавших из фида, снимаются с продажи.
+     * Если пропала слишком большая доля (обрезанный или сломанный фид), ничего не меняется.
+     *
+     * @return количество снятых с продажи товаров
+     */
+    @Transactional
+    public int deactivateMissing(String supplier, long runId, double maxRatio) {
+        int[] counts = importJdbcRepository.countMissingOffers(supplier, runId);
+        int missing = counts[0];
+        int total = counts[1];
+        if (missing == 0) {
+            return 0;
+        }
+        if (missing > total * maxRatio) {
+            throw new IllegalStateException(String.format(
+                    "Из фида %s пропало %d из %d предложений — похоже на неполный фид, товары не сняты с продажи",
+                    supplier, missing, total));
+        }
 
-        return new ImportResult(true,
-                categoryByXmlId.size(),
-                ctx.getProductsToSave().size(),
-                null);
+        int deactivated = importJdbcRepository.deactivateMissingOffers(supplier, runId);
+        log.info("Фид {}: пропало предложений {}, снято с продажи товаров {}", supplier, missing, deactivated);
+        return deactivated;
     }
 
-    private XMLStreamReader createReader(InputStream is) throws Exception {
+    /**
+     * Поставщик фида — хост URL
+     */
+    public static String supplierOf(String url) {
+        String host = URI.create(url).getHost();
+        return host != null ? host : url;
+    }
+
+    private XMLStreamReader createReader(InputStream is) throws XMLStreamException {
         XMLInputFactory factory = XMLInputFactory.newInstance();
         factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
         factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
         return factory.createXMLStreamReader(is);
     }
 
-    private ImportContext prepareContext(Map<String, Category> categoryByXmlId) {
+    private ImportContext prepareContext(List<? extends YmlOffer> offers, Map<String, Long> categoryIds) {
 
-        Map<String, Product> productsBySku =
-                productRepository.findAll()
+        Map<Long, Category> categoriesById =
+                categoryRepository.findAllById(offers.stream()
+                                .map(offer -> categoryIds.get(offer.categoryXmlId()))
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toSet()))
                         .stream()
-                        .collect(Collectors.toMap(
-                                Product::getSku,
-                                p -> p
-                        ));
+                        .collect(Collectors.toMap(Category::getId, c -> c));
 
-        Map<String, Attribute> attributeCache =
-                attributeRepository.findAll()
-                        .stream()
-                        .collect(Collectors.toMap(
-                                a -> a.getCategory().getId() + "_" + a.getName(),
-                                a -> a
-                        ));
+        Map<String, Category> categoryByXmlId = new HashMap<>();
+        for (YmlOffer offer : offers) {
+            Long categoryId = categoryIds.get(offer.categoryXmlId());
+            if (categoryId != null && categoriesById.containsKey(categoryId)) {
+                categoryByXmlId.put(offer.categoryXmlId(), categoriesById.get(categoryId));
+            }
+        }
 
-        Map<String, ProductAttributeValue> valueCache =
-                valueRepository.findAll()
-                        .stream()
-                        .collect(Collectors.toMap(
-                                v -> v.getProduct().getId()
-                                        + "_" + v.getAttribute().getId(),
-                                v -> v
-                        ));
+        Map<String, YmlImportJdbcRepository.ProductState> productStates =
+                importJdbcRepository.findProductStates(offers.stream()
+                        .map(YmlOffer::sku)
+                        .collect(Collectors.toSet()));
 
         return new ImportContext(
                 categoryByXmlId,
-                productsBySku,
-                attributeCache,
-                valueCache
+                productStates,
+                importJdbcRepository.findAttributeIds(categoriesById.keySet()),
+                importJdbcRepository.findAttributeValues(productStates.values().stream()
+                        .map(YmlImportJdbcRepository.ProductState::id)
+                        .toList())
         );
     }
 
-    private void flush(ImportContext ctx) {
+    /**
+     * Сущности существующих товаров — только для изменившихся предложений
+     */
+    private void loadChangedProducts(List<YmlOffer> changed, ImportContext ctx) {
+        Set<String> skus = changed.stream()
+                .map(YmlOffer::sku)
+                .filter(ctx.getProductStates()::containsKey)
+                .collect(Collectors.toSet());
+        if (!skus.isEmpty()) {
+            productRepository.findAllBySkus(skus)
+                    .forEach(p -> ctx.getProductsBySku().put(p.getSku(), p));
+        }
+    }
+
+    /**
+     * Атрибуты, которых еще нет у категории, создаются до разбора предложений —
+     * дальше в контексте участвуют только их id
+     */
+    private void createMissingAttributes(List<YmlOffer> changed, ImportContext ctx) {
+        Map<Long, Map<String, Attribute>> missing = new LinkedHashMap<>();
+        for (YmlOffer offer : changed) {
+            Category category = ctx.getCategoryByXmlId().get(offer.categoryXmlId());
+            if (category == null) continue;
 
-        if (!ctx.getAttributesToSave().isEmpty()) {
-            attributeRepository.saveAll(ctx.getAttributesToSave());
+            for (String name : offer.params().keySet()) {
+                if (ctx.attributeId(category.getId(), name) == null) {
+                    missing.computeIfAbsent(category.getId(), k -> new LinkedHashMap<>())
+                            .computeIfAbsent(name, k -> Attribute.builder()
+                                    .name(name)
+                                    .category(category)
+                                    .type(AttributeType.STRING)
+                                    .build());
+                }
+            }
         }
+        if (missing.isEmpty()) return;
+
+        List<Attribute> attributes = missing.values().stream()
+                .flatMap(byName -> byName.values().stream())
+                .toList();
+        attributeRepository.saveAll(attributes);
+        attributes.forEach(a -> ctx.putAttributeId(a.getCategory().getId(), a.getName(), a.getId()));
+    }
+
+    private void flush(ImportContext ctx) {
 
         if (!ctx.getProductsToSave().isEmpty()) {
+            assignUniqueTitles(ctx.getProductsToSave());
             productRepository.saveAll(ctx.getProductsToSave());
         }
+        // id новых товаров нужны для значений атрибутов
+        productRepository.flush();
 
         if (!ctx.getValuesToSave().isEmpty()) {
-            valueRepository.saveAll(ctx.getValuesToSave());
+            // Повтор товара в пачке — действует последнее значение
+            Map<YmlImportJdbcRepository.AttributeValueKey, String> values = new LinkedHashMap<>();
+            for (ImportContext.PendingValue value : ctx.getValuesToSave()) {
+                values.put(new YmlImportJdbcRepository.AttributeValueKey(value.product().getId(), value.attributeId()),
+                        value.value());
+            }
+
+            List<Long> productIds = new ArrayList<>(values.size());
+            List<Long> attributeIds = new ArrayList<>(values.size());
+            List<String> attributeValues = new ArrayList<>(values.size());
+            values.forEach((key, value) -> {
+                productIds.add(key.productId());
+                attributeIds.add(key.attributeId());
+                attributeValues.add(value);
+            });
+            importJdbcRepository.upsertAttributeValues(productIds, attributeIds, attributeValues);
+        }
+    }
+
+    /**
+     * Title новых товаров, уже занятые в каталоге или повторенные в пачке, получают суффикс
+     */
+    private void assignUniqueTitles(List<Product> products) {
+        List<Product> created = products.stream()
+                .filter(product -> product.getId() == null)
+                .toList();
+        List<String> titles = slugService.uniqueProductTitles(created.stream().map(Product::getTitle).toList());
+        for (int i = 0; i < created.size(); i++) {
+            created.get(i).setTitle(titles.get(i));
         }
     }
 
@@ -135,21 +330,40 @@ public class StemYmlImportService {
         private final int categoriesImported;
         private final int offersImported;
         private final String error;
+        private final boolean notModified;
+        private final int offersUnchanged;
+        private final int productsDeactivated;
 
         public ImportResult(boolean success,
                             int categoriesImported,
                             int offersImported,
                             String error) {
+            this(success, categoriesImported, offersImported, error, false, 0, 0);
+        }
+
+        public ImportResult(boolean success,
+                            int categoriesImported,
+                            int offersImported,
+                            String error,
+                            boolean notModified,
+                            int offersUnchanged,
+                            int productsDeactivated) {
             this.success = success;
             this.categoriesImported = categoriesImported;
             this.offersImported = offersImported;
             this.error = error;
+            this.notModified = notModified;
+            this.offersUnchanged = offersUnchanged;
+            this.productsDeactivated = productsDeactivated;
         }
 
         public boolean isSuccess() { return success; }
         public int getCategoriesImported() { return categoriesImported; }
         public int getOffersImported() { return offersImported; }
         public String getError() { return error; }
+        public boolean isNotModified() { return notModified; }
+        public int getOffersUnchanged() { return offersUnchanged; }
+        public int getProductsDeactivated() { return productsDeactivated; }
     }
 }
 
@@ -0,0 +1,138 @@
+package ru.fisher.ToolsMarket.parsingXml;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository.FeedState;
+import ru.fisher.ToolsMarket.util.Digests;
+import ru.fisher.ToolsMarket.util.HttpBodies;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Скачивание YML-фида один раз во временный файл: оба прохода StAX (категории и предложения)
+ * читают этот файл. Запрос условный (If-None-Match / If-Modified-Since), со сжатием gzip;
+ * app.yml.fetch-timeout-ms ограничивает весь обмен, включая чтение тела. Если сервер
+ * не поддерживает валидаторы, неизмененный фид распознается по SHA-256 содержимого.
+ */
+@Slf4j
+@Service
+public class YmlFeedFetcher {
+
+    private final YmlFeedStateJdbcRepository feedStateRepository;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+
+    public YmlFeedFetcher(YmlFeedStateJdbcRepository feedStateRepository,
+                          HttpClient httpClient,
+                          @Value("${app.yml.fetch-timeout-ms:600000}") long fetchTimeoutMs) {
+        this.feedStateRepository = feedStateRepository;
+        this.httpClient = httpClient;
+        this.requestTimeout = Duration.ofMillis(fetchTimeoutMs);
+    }
+
+    /**
+     * Результат скачивания
+     *
+     * @param notModified фид не изменился с последнего успешного импорта — файл не создан
+     */
+    public record FetchResult(boolean notModified, Path file, String etag, String lastModified,
+                              String contentHash, long contentLength) {
+
+        static FetchResult unchanged() {
+            return new FetchResult(true, null, null, null, null, 0);
+        }
+
+        public FeedState toState(String url) {
+            return new FeedState(url, etag, lastModified, contentHash, contentLength);
+        }
+    }
+
+    /**
+     * Ответ сервера; тело уже во временном файле
+     */
+    private record Download(int status, String etag, String lastModified, boolean gzip, long size) {}
+
+    public FetchResult fetch(String url, Path target) throws IOException, InterruptedException {
+        Optional<FeedState> previous = feedStateRepository.find(url);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        previous.ifPresent(state -> {
+            if (state.etag() != null) request.header("If-None-Match", state.etag());
+            if (state.lastModified() != null) request.header("If-Modified-Since", state.lastModified());
+        });
+
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        MessageDigest digest = Digests.sha256();
+        Download download;
+        try {
+            // Срок — на весь обмен вместе с телом: timeout запроса действует только до заголовков
+            download = HttpBodies.send(httpClient, request.build(), requestTimeout, response -> {
+                if (response.statusCode() == 304) {
+                    return new Download(304, null, null, false, 0);
+                }
+                if (response.statusCode() != 200) {
+                    throw new IOException("Фид " + url + " недоступен: HTTP " + response.statusCode());
+                }
+
+                boolean gzip = response.headers().firstValue("Content-Encoding")
+                        .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                        .orElse(false);
+                InputStream body = response.body();
+                try (InputStream in = new DigestInputStream(gzip ? new GZIPInputStream(body, 65536) : body, digest)) {
+                    long size = Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                    return new Download(200,
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null),
+                            gzip, size);
+                }
+            });
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        if (download.status() == 304) {
+            Files.deleteIfExists(tmp);
+            log.info("Фид {} не изменился (304 Not Modified)", url);
+            return FetchResult.unchanged();
+        }
+
+        String hash = Digests.hex(digest);
+        String etag = download.etag();
+        String lastModified = download.lastModified();
+        if (previous.isPresent() && previous.get().contentHash().equals(hash)) {
+            Files.deleteIfExists(tmp);
+            // Без новых валидаторов следующий запуск снова скачал бы фид целиком
+            if (!Objects.equals(previous.get().etag(), etag)
+                    || !Objects.equals(previous.get().lastModified(), lastModified)) {
+                feedStateRepository.updateValidators(url, etag, lastModified);
+            }
+            log.info("Фид {} не изменился (совпал хэш содержимого)", url);
+            return FetchResult.unchanged();
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        log.info("Фид {} скачан: {} байт{}", url, download.size(), download.gzip() ? " (gzip)" : "");
+
+        return new FetchResult(false, target, etag, lastModified, hash, download.size());
+    }
+}
@@ -0,0 +1,79 @@
+package ru.fisher.ToolsMarket.parsingXml;
+
+import ru.fisher.ToolsMarket.service.SlugService;
+import ru.fisher.ToolsMarket.util.Digests;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Товарное предложение из YML-фида (элемент offer)
+ *
+ * @param sku           vendorCode, а если его нет — id предложения
+ * @param categoryXmlId id категории в фиде
+ * @param params        характеристики (param name → значение) в порядке фида,
+ *                      значения уже обрезаны до допустимой длины (YmlOfferImporter.toOffer)
+ * @param contentHash   хэш содержимого; если не передан — считается при создании
+ * @param title         slug нового товара; если не передан — строится при создании.
+ *                      Хэш и slug считаются в воркере пайплайна, а не в writer
+ */
+public record YmlOffer(
+        String externalId,
+        String sku,
+        String name,
+        BigDecimal price,
+        String categoryXmlId,
+        List<String> pictures,
+        Map<String, String> params,
+        String contentHash,
+        String title
+) {
+
+    public YmlOffer {
+        if (contentHash == null) {
+            contentHash = hashOf(sku, name, price, categoryXmlId, pictures, params);
+        }
+        if (title == null) {
+            // Уникальность title проверяется пачкой перед сохранением (StemYmlImportService)
+            title = SlugService.slugify(name, 200, "product") + "-" + sku;
+        }
+    }
+
+    public YmlOffer(String externalId, String sku, String name, BigDecimal price,
+                    String categoryXmlId, List<String> pictures, Map<String, String> params) {
+        this(externalId, sku, name, price, categoryXmlId, pictures, params, null, null);
+    }
+
+    /**
+     * SHA-256 всех полей, которые импорт переносит в товар.
+     * Совпадение с сохраненным хэшем — предложение не менялось с прошлого импорта.
+     */
+    private static String hashOf(String sku, String name, BigDecimal price, String categoryXmlId,
+                                 List<String> pictures, Map<String, String> params) {
+        MessageDigest digest = Digests.sha256();
+        update(digest, sku);
+        update(digest, name);
+        update(digest, price != null ? price.stripTrailingZeros().toPlainString() : null);
+        update(digest, categoryXmlId);
+        for (String picture : pictures) {
+            update(digest, picture);
+        }
+        digest.update((byte) 1);
+        params.forEach((key, value) -> {
+            update(digest, key);
+            update(digest, value);
+        });
+        return Digests.hex(digest);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Разделитель полей: "ab" + "c" и "a" + "bc" дают разные хэши
+        digest.update((byte) 0);
+    }
+}
@@ -1,11 +1,11 @@
 package ru.fisher.ToolsMarket.parsingXml;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.fisher.ToolsMarket.models.*;
-import ru.fisher.ToolsMarket.repository.ProductAttributeValueRepository;
+import ru.fisher.ToolsMarket.repository.YmlImportJdbcRepository.ProductState;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -13,33 +13,21 @@ import java.util.*;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class YmlOfferImporter {
 
-    private final ProductAttributeValueRepository productAttributeValueRepository;
     private static final int MAX_ATTRIBUTE_VALUE_LENGTH = 1024;
 
-    public void importOffers(XMLStreamReader reader,
-                             ImportContext ctx) throws Exception {
-
-        while (reader.hasNext()) {
-            reader.next();
-
-            if (reader.isStartElement()
-                    && reader.getLocalName().equals("offer")) {
-                parseOffer(reader, ctx);
-            }
-        }
-    }
-
-    private void parseOffer(XMLStreamReader reader,
-                            ImportContext ctx) throws Exception {
+    /**
+     * Чтение одного предложения без разбора значений. Reader должен стоять на открывающем теге offer,
+     * после чтения он стоит на закрывающем.
+     */
+    public RawOffer readRawOffer(XMLStreamReader reader) throws XMLStreamException {
 
         String externalId = reader.getAttributeValue(null, "id");
         List<String> pictures = new ArrayList<>();
 
         String name = null;
-        BigDecimal price = BigDecimal.ZERO;
+        String price = null;
         String categoryXmlId = null;
         String vendorCode = null;
 
@@ -51,21 +39,12 @@ public class YmlOfferImporter {
             if (reader.isStartElement()) {
                 switch (reader.getLocalName()) {
                     case "name" -> name = reader.getElementText();
-                    case "price" -> {
-                        try {
-                            price = new BigDecimal(reader.getElementText());
-                        } catch (Exception ignored) {}
-                    }
+                    case "price" -> price = reader.getElementText();
                     case "vendorCode" ->
                             vendorCode = reader.getElementText();
                     case "categoryId" ->
                             categoryXmlId = reader.getElementText();
-                    case "picture" -> {
-                        String pic = reader.getElementText();
-                        if (pic != null && !pic.isBlank()) {
-                            pictures.add(pic.trim());
-                        }
-                    }
+                    case "picture" -> pictures.add(reader.getElementText());
                     case "param" -> {
                         String paramName =
                                 reader.getAttributeValue(null, "name");
@@ -81,22 +60,95 @@ public class YmlOfferImporter {
             }
         }
 
-        String sku = (vendorCode != null && !vendorCode.isBlank())
-                ? vendorCode
-                : externalId;
+        return new RawOffer(externalId, vendorCode, name, price, categoryXmlId, pictures, params);
+    }
+
+    /**
+     * Разбор предложения: цена, артикул, нормализация картинок и значений, хэш содержимого, slug.
+     * Не обращается к БД и к общему состоянию — вызывается параллельно из воркеров пайплайна.
+     */
+    public YmlOffer toOffer(RawOffer raw) {
+
+        BigDecimal price = BigDecimal.ZERO;
+        if (raw.price() != null) {
+            try {
+                price = new BigDecimal(raw.price().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+
+        String sku = (raw.vendorCode() != null && !raw.vendorCode().isBlank())
+                ? raw.vendorCode()
+                : raw.externalId();
+
+        List<String> pictures = new ArrayList<>(raw.pictures().size());
+        for (String pic : raw.pictures()) {
+            if (pic != null && !pic.isBlank()) {
+                pictures.add(pic.trim());
+            }
+        }
+
+        Map<String, String> params = new LinkedHashMap<>();
+        raw.params().forEach((paramName, value) ->
+                params.put(paramName, trimTo(value, MAX_ATTRIBUTE_VALUE_LENGTH))); // чтобы не превышать limit
+
+        return new YmlOffer(raw.externalId(), sku, raw.name(), price, raw.categoryXmlId(), pictures, params);
+    }
+
+    /**
+     * Совпадает ли предложение с товаром в каталоге — по проекциям контекста, без загрузки сущности.
+     * Для таких предложений товар не загружается и не сохраняется.
+     */
+    public boolean isUnchanged(YmlOffer offer, ImportContext ctx) {
+
+        Category category = ctx.getCategoryByXmlId().get(offer.categoryXmlId());
+        ProductState state = ctx.getProductStates().get(offer.sku());
+        if (category == null || state == null) {
+            return false;
+        }
+
+        if (!Objects.equals(state.name(), offer.name())
+                || state.price().compareTo(offer.price()) != 0
+                || !state.active()
+                || !ProductType.OTHER.name().equals(state.productType())
+                || !state.categoryIds().equals(Set.of(category.getId()))
+                || !state.imageUrls().equals(offer.pictures())) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> entry : offer.params().entrySet()) {
+            Long attributeId = ctx.attributeId(category.getId(), entry.getKey());
+            if (attributeId == null
+                    || !Objects.equals(ctx.attributeValue(state.id(), attributeId), entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Создание или обновление товара по предложению в рамках контекста пачки.
+     * Существующий товар должен быть заранее загружен в ctx.productsBySku,
+     * атрибуты категории — созданы (см. StemYmlImportService.writeOffers).
+     *
+     * @return false, если категория предложения не найдена
+     */
+    public boolean applyOffer(YmlOffer offer, ImportContext ctx) {
 
-        Category category = ctx.getCategoryByXmlId().get(categoryXmlId);
+        Category category = ctx.getCategoryByXmlId().get(offer.categoryXmlId());
 
         if (category == null) {
-            log.warn("Категория {} не найдена", categoryXmlId);
-            return;
+            log.warn("Категория {} не найдена", offer.categoryXmlId());
+            return false;
         }
 
-        createOrUpdateProduct(sku, name, price, category, params, pictures, ctx);
+        createOrUpdateProduct(offer.sku(), offer.title(), offer.name(), offer.price(), category,
+                offer.params(), offer.pictures(), ctx);
+        return true;
     }
 
     private void createOrUpdateProduct(
             String sku,
+            String title,
             String name,
             BigDecimal price,
             Category category,
@@ -106,39 +158,73 @@ public class YmlOfferImporter {
     ) {
 
         Product product = ctx.getProductsBySku().get(sku);
-        boolean isNew = false;
 
+        boolean changed = product == null;
         if (product == null) {
             product = new Product();
             product.setSku(sku);
-            product.setTitle(generateSlug(name) + "-" + sku);
+            product.setTitle(title);
             product.setCreatedAt(Instant.now());
             ctx.getProductsBySku().put(sku, product);
-            isNew = true;
-            // Очищаем старые изображения
-            product.getImages().clear();
+            ctx.getProductsToSave().add(product);
+            log.debug("Создаем новый товар: SKU={}", sku);
+        } else {
             log.debug("Обновляем товар: SKU={}, ID={}", sku, product.getId());
         }
 
-        product.setName(name);
-        product.setPrice(price);
-        product.setProductType(ProductType.OTHER);
-        product.setUpdatedAt(Instant.now());
-        product.setActive(true);
+        // Меняются только отличающиеся поля: без лишних UPDATE и пересоздания коллекций
+        if (!Objects.equals(product.getName(), name)) {
+            product.setName(name);
+            changed = true;
+        }
+        if (product.getPrice() == null || product.getPrice().compareTo(price) != 0) {
+            product.setPrice(price);
+            changed = true;
+        }
+        if (product.getProductType() != ProductType.OTHER) {
+            product.setProductType(ProductType.OTHER);
+            changed = true;
+        }
+        if (!product.isActive()) {
+            product.setActive(true);
+            changed = true;
+        }
 
-        product.getCategories().clear();
-        product.getCategories().add(category);
+        if (!hasOnlyCategory(product, category)) {
+            product.getCategories().clear();
+            product.getCategories().add(category);
+            changed = true;
+        }
 
-        if (isNew) {
-            ctx.getProductsToSave().add(product);
+        changed |= handleImages(product, pictures);
+        changed |= handleAttributes(product, category, params, ctx);
+
+        if (changed) {
+            product.setUpdatedAt(Instant.now());
         }
+    }
 
-        log.debug("Создаем новый товар: SKU={}", sku);
-        handleImages(product, pictures, ctx);
-        handleAttributes(product, category, params, ctx);
+    private boolean hasOnlyCategory(Product product, Category category) {
+        return product.getCategories().size() == 1
+                && product.getCategories().iterator().next().getId().equals(category.getId());
     }
 
-    private void handleImages(Product product, List<String> pictures, ImportContext ctx) {
+    /**
+     * Картинки сравниваются по URL поставщика: скопированные к нам картинки
+     * (с локальным URL, копиями и srcset) при том же фиде не пересоздаются
+     *
+     * @return true, если картинки изменились
+     */
+    private boolean handleImages(Product product, List<String> pictures) {
+        List<String> current = product.getImages().stream()
+                .sorted(Comparator.comparing(ProductImage::getSortOrder,
+                        Comparator.nullsFirst(Comparator.naturalOrder())))
+                .map(image -> image.getSourceUrl() != null ? image.getSourceUrl() : image.getUrl())
+                .toList();
+        if (current.equals(pictures)) {
+            return false;
+        }
+
         product.getImages().clear();
         int sort = 0;
         for (String url : pictures) {
@@ -147,60 +233,34 @@ public class YmlOfferImporter {
                     .url(url)
                     .sortOrder(sort++)
                     .build();
-            ctx.getProductImagesToSave().add(image);
             product.getImages().add(image);
         }
+        return true;
     }
 
-    private void handleAttributes(Product product, Category category,
-                                  Map<String, String> params, ImportContext ctx) {
+    /**
+     * @return true, если изменилось хотя бы одно значение
+     */
+    private boolean handleAttributes(Product product, Category category,
+                                     Map<String, String> params, ImportContext ctx) {
 
+        boolean changed = false;
         for (Map.Entry<String, String> entry : params.entrySet()) {
 
-            String key = category.getId() + "_" + entry.getKey();
-
-            Attribute attribute = ctx.getAttributeCache().get(key);
-            if (attribute == null) {
-                attribute = Attribute.builder()
-                        .name(entry.getKey())
-                        .category(category)
-                        .type(AttributeType.STRING)
-                        .build();
-
-                ctx.getAttributeCache().put(key, attribute);
-                ctx.getAttributesToSave().add(attribute);
-            }
-
-            // Используем комбинацию SKU + attributeName для кеша до сохранения продукта
-            String valueKey = product.getSku() + "_" + attribute.getName();
-
-            ProductAttributeValue pav = ctx.getValueCache().get(valueKey);
-
-            if (pav == null) {
-                // Если продукт уже существует в БД, проверяем, нет ли там значения
-                if (product.getId() != null) {
-                    pav = findAttributeValueInDb(product.getId(), attribute.getId());
-                }
+            Long attributeId = ctx.attributeId(category.getId(), entry.getKey());
+            if (attributeId == null) {
+                throw new IllegalStateException("Атрибут '" + entry.getKey()
+                        + "' категории " + category.getId() + " не создан");
             }
 
-            if (pav == null) {
-                pav = ProductAttributeValue.builder()
-                        .product(product)
-                        .attribute(attribute)
-                        .value(trimTo(entry.getValue(), MAX_ATTRIBUTE_VALUE_LENGTH)) // чтобы не превышать limit
-                        .build();
-                ctx.getValuesToSave().add(pav);
-                ctx.getValueCache().put(valueKey, pav);
-            } else {
-                pav.setValue(trimTo(entry.getValue(), MAX_ATTRIBUTE_VALUE_LENGTH));
+            String value = entry.getValue();
+            if (product.getId() == null
+                    || !Objects.equals(ctx.attributeValue(product.getId(), attributeId), value)) {
+                ctx.getValuesToSave().add(new ImportContext.PendingValue(product, attributeId, value));
+                changed = true;
             }
         }
-    }
-
-    private ProductAttributeValue findAttributeValueInDb(Long productId, Long attributeId) {
-        return productAttributeValueRepository
-                .findByProductIdAndAttributeId(productId, attributeId)
-                .orElse(null);
+        return changed;
     }
 
     private String trimTo(String value, int maxLength) {
@@ -213,66 +273,4 @@ public class YmlOfferImporter {
         }
         return value;
     }
-
-    /**
-    * Генерация slug из названия
-    */
-    private String generateSlug(String name) {
-        if (name == null || name.isEmpty()) {
-            return "product-" + System.currentTimeMillis();
-        }
-
-        String slug = transliterate(name)
-                .replaceAll("[^a-zA-Z0-9\\s-]", "")
-                .replaceAll("\\s+", "_")
-                .replaceAll("-+", "_")
-                .toLowerCase();
-
-        slug = slug.replaceAll("^_+|_+$", "");
-        slug = slug.replaceAll("_+", "_");
-
-        if (slug.length() > 200) {
-            slug = slug.substring(0, 200);
-        }
-
-        if (slug.endsWith("_")) {
-            slug = slug.substring(0, slug.length() - 1);
-        }
-
-        return slug;
-    }
-
-    /**
-     * Транслитерация
-     */
-    private String transliterate(String text) {
-        Map<Character, String> map = new HashMap<>();
-        map.put('а', "a"); map.put('б', "b"); map.put('в', "v"); map.put('г', "g");
-        map.put('д', "d"); map.put('е', "e"); map.put('ё', "yo"); map.put('ж', "zh");
-        map.put('з', "z"); map.put('и', "i"); map.put('й', "y"); map.put('к', "k");
-        map.put('л', "l"); map.put('м', "m"); map.put('н', "n"); map.put('о', "o");
-        map.put('п', "p"); map.put('р', "r"); map.put('с', "s"); map.put('т', "t");
-        map.put('у', "u"); map.put('ф', "f"); map.put('х', "kh"); map.put('ц', "ts");
-        map.put('ч', "ch"); map.put('ш', "sh"); map.put('щ', "shch"); map.put('ъ', "");
-        map.put('ы', "y"); map.put('ь', ""); map.put('э', "e"); map.put('ю', "yu");
-        map.put('я', "ya");
-
-        // Заглавные
-        map.put('А', "A"); map.put('Б', "B"); map.put('В', "V"); map.put('Г', "G");
-        map.put('Д', "D"); map.put('Е', "E"); map.put('Ё', "Yo"); map.put('Ж', "Zh");
-        map.put('З', "Z"); map.put('И', "I"); map.put('Й', "Y"); map.put('К', "K");
-        map.put('Л', "L"); map.put('М', "M"); map.put('Н', "N"); map.put('О', "O");
-        map.put('П', "P"); map.put('Р', "R"); map.put('С', "S"); map.put('Т', "T");
-        map.put('У', "U"); map.put('Ф', "F"); map.put('Х', "Kh"); map.put('Ц', "Ts");
-        map.put('Ч', "Ch"); map.put('Ш', "Sh"); map.put('Щ', "Shch"); map.put('Ъ', "");
-        map.put('Ы', "Y"); map.put('Ь', ""); map.put('Э', "E"); map.put('Ю', "Yu");
-        map.put('Я', "Ya");
-
-        StringBuilder result = new StringBuilder();
-        for (char c : text.toCharArray()) {
-            result.append(map.getOrDefault(c, String.valueOf(c)));
-        }
-        return result.toString();
-    }
 }
-
@@ -59,9 +59,8 @@ public class CategoryJdbcRepository {
         p.name,
         p.sku,
         p.price,
-        (SELECT pi.url FROM product_image pi 
-         WHERE pi.product_id = p.id 
-         ORDER BY pi.sort_order LIMIT 1) as main_image_url,
+        mi.url as main_image_url,
+        mi.srcset as main_image_srcset,
         ud.discount_percentage,
         ROUND(p.price * (1 - COALESCE(ud.discount_percentage, 0) / 100), 2) as discounted_price,
         CASE WHEN ci.id IS NOT NULL THEN true ELSE false END as in_cart,
@@ -73,6 +72,11 @@ public class CategoryJdbcRepository {
         AND ud.is_active = true
     LEFT JOIN cart_item ci ON ci.product_id = p.id
         AND ci.cart_id = (SELECT id FROM cart WHERE user_id = ?)
+    LEFT JOIN LATERAL (
+        SELECT pi.url, pi.srcset FROM product_image pi
+        WHERE pi.product_id = p.id
+        ORDER BY pi.sort_order LIMIT 1
+    ) mi ON true
     WHERE pc.category_id = ? AND p.active = true
     ORDER BY %s
     LIMIT ? OFFSET ?
@@ -92,6 +96,7 @@ public class CategoryJdbcRepository {
                         .shortDescription(rs.getString("short_description"))
                         .price(rs.getBigDecimal("price"))
                         .mainImageUrl(rs.getString("main_image_url"))  // ← добавить
+                        .mainImageSrcset(rs.getString("main_image_srcset"))
                         .discountPercentage(rs.getBigDecimal("discount_percentage"))
                         .discountedPrice(rs.getBigDecimal("discounted_price"))
                         .inCart(rs.getBoolean("in_cart"))
@@ -0,0 +1,63 @@
+package ru.fisher.ToolsMarket.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.fisher.ToolsMarket.models.EmailOutbox;
+import ru.fisher.ToolsMarket.models.EmailOutboxStatus;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    // Пачка писем, готовых к отправке. SKIP LOCKED — чтобы параллельные диспетчеры не брали одно и то же
+    @Query(value = """
+        SELECT * FROM email_outbox
+        WHERE status = 'PENDING' AND digest = :digest AND next_attempt_at <= :now
+        ORDER BY id
+        LIMIT :limit
+        FOR UPDATE SKIP LOCKED
+    """, nativeQuery = true)
+    List<EmailOutbox> lockDueBatch(@Param("digest") boolean digest,
+                                   @Param("now") Instant now,
+                                   @Param("limit") int limit);
+
+    // Сколько событий накопилось для сводки и когда пришло самое старое
+    @Query("""
+        SELECT COUNT(e), MIN(e.createdAt) FROM EmailOutbox e
+        WHERE e.status = :pending AND e.digest = true AND e.nextAttemptAt <= :now
+    """)
+    List<Object[]> digestBacklog(@Param("pending") EmailOutboxStatus pending, @Param("now") Instant now);
+
+    // Возвращаем в очередь письма, «зависшие» после падения приложения во время отправки
+    @Modifying
+    @Query("""
+        UPDATE EmailOutbox e
+        SET e.status = :pending, e.lockedAt = null
+        WHERE e.status = :sending AND e.lockedAt < :before
+    """)
+    int releaseStale(@Param("pending") EmailOutboxStatus pending,
+                     @Param("sending") EmailOutboxStatus sending,
+                     @Param("before") Instant before);
+
+    @Modifying
+    @Query("""
+        UPDATE EmailOutbox e
+        SET e.status = :sent, e.sentAt = :now, e.lockedAt = null, e.lastError = null
+        WHERE e.id IN :ids
+    """)
+    int markSent(@Param("ids") Collection<Long> ids,
+                 @Param("sent") EmailOutboxStatus sent,
+                 @Param("now") Instant now);
+
+    @Modifying
+    @Query("DELETE FROM EmailOutbox e WHERE e.status = :sent AND e.sentAt < :before")
+    int deleteSentBefore(@Param("sent") EmailOutboxStatus sent, @Param("before") Instant before);
+
+    long countByStatus(EmailOutboxStatus status);
+}
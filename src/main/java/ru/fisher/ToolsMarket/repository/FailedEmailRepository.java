@@ -1,9 +1,15 @@
 package ru.fisher.ToolsMarket.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import ru.fisher.ToolsMarket.models.FailedEmail;
 
+import java.util.List;
+
 @Repository
 public interface FailedEmailRepository extends JpaRepository<FailedEmail, Long> {
+
+    // Строки, которые еще не пытались перенести в outbox
+    List<FailedEmail> findByTransferErrorIsNullOrderByIdAsc(Pageable pageable);
 }
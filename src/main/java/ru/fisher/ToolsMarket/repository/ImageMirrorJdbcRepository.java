@@ -0,0 +1,117 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * Состояние копирования картинок поставщиков (image_mirror) и замена
+ * внешних URL в product_image на локальные — одним UPDATE ... FROM на всё
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageMirrorJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Итог копирования одного URL: localUrl и contentHash при успехе, error при ошибке
+     */
+    public record MirrorResult(String sourceUrl, String localUrl, String contentHash, Long sizeBytes, String error) {
+
+        public boolean failed() {
+            return localUrl == null;
+        }
+    }
+
+    /**
+     * Внешние URL картинок, которые еще не скопированы и не исчерпали попытки;
+     * после ошибки URL повторяется не раньше чем через retryAfterSeconds.
+     * Свои URL (начинающиеся с localPrefix) не трогаем.
+     */
+    public List<String> findPending(String localPrefix, int maxAttempts, long retryAfterSeconds, int limit) {
+        return jdbcTemplate.queryForList("""
+                SELECT DISTINCT i.url
+                FROM product_image i
+                LEFT JOIN image_mirror m ON m.source_url = i.url
+                WHERE (i.url LIKE 'http://%' OR i.url LIKE 'https://%')
+                  AND NOT starts_with(i.url, ?)
+                  AND (m.source_url IS NULL
+                       OR (m.local_url IS NULL
+                           AND m.attempts < ?
+                           AND m.updated_at < now() - ? * INTERVAL '1 second'))
+                LIMIT ?
+                """, String.class, localPrefix, maxAttempts, retryAfterSeconds, limit);
+    }
+
+    /**
+     * Запись результатов пачки (для ошибок увеличивается счетчик попыток)
+     * и замена скопированных URL в product_image
+     *
+     * @return число обновленных строк product_image
+     */
+    @Transactional
+    public int saveResults(List<MirrorResult> results) {
+        if (results.isEmpty()) return 0;
+
+        int n = results.size();
+        String[] sourceUrls = new String[n];
+        String[] localUrls = new String[n];
+        String[] hashes = new String[n];
+        Long[] sizes = new Long[n];
+        String[] errors = new String[n];
+        for (int i = 0; i < n; i++) {
+            MirrorResult result = results.get(i);
+            sourceUrls[i] = result.sourceUrl();
+            localUrls[i] = result.localUrl();
+            hashes[i] = result.contentHash();
+            sizes[i] = result.sizeBytes();
+            errors[i] = result.error() != null && result.error().length() > 512
+                    ? result.error().substring(0, 512) : result.error();
+        }
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO image_mirror (source_url, local_url, content_hash, size_bytes, attempts, last_error, updated_at)
+                    SELECT r.source_url, r.local_url, r.content_hash, r.size_bytes, 1, r.last_error, now()
+                    FROM unnest(?::text[], ?::text[], ?::varchar[], ?::bigint[], ?::varchar[])
+                         AS r(source_url, local_url, content_hash, size_bytes, last_error)
+                    ON CONFLICT (source_url) DO UPDATE
+                    SET local_url = EXCLUDED.local_url,
+                        content_hash = EXCLUDED.content_hash,
+                        size_bytes = EXCLUDED.size_bytes,
+                        attempts = image_mirror.attempts + 1,
+                        last_error = EXCLUDED.last_error,
+                        updated_at = now()
+                    """);
+            ps.setArray(1, con.createArrayOf("text", sourceUrls));
+            ps.setArray(2, con.createArrayOf("text", localUrls));
+            ps.setArray(3, con.createArrayOf("varchar", hashes));
+            ps.setArray(4, con.createArrayOf("bigint", sizes));
+            ps.setArray(5, con.createArrayOf("varchar", errors));
+            return ps;
+        });
+        return rewriteMirroredUrls();
+    }
+
+    /**
+     * Замена внешних URL на локальные у всех картинок, чьи URL уже скопированы
+     * (в том числе у товаров, добавленных позже с той же картинкой).
+     * Внешний URL сохраняется в source_url — с ним сравнивает картинки импорт фида
+     *
+     * @return число обновленных строк product_image
+     */
+    public int rewriteMirroredUrls() {
+        return jdbcTemplate.update("""
+                UPDATE product_image i
+                SET url = m.local_url, source_url = m.source_url
+                FROM image_mirror m
+                WHERE i.url = m.source_url
+                  AND m.local_url IS NOT NULL
+                """);
+    }
+}
@@ -0,0 +1,100 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * Картинки товаров и категорий без уменьшенных копий и запись созданных копий
+ * (thumbnail_url/srcset) пачкой через unnest
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageVariantJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record ImageRef(long id, String url) {}
+
+    /**
+     * Копии картинки: srcset пустой, если копии создать не удалось
+     */
+    public record VariantRow(long id, String url, String thumbnailUrl, String srcset) {}
+
+    /**
+     * Наши картинки товаров (URL начинается с localPrefix), для которых копии еще не создавались.
+     * Внешние URL ждут копирования к нам (ImageMirrorService)
+     */
+    public List<ImageRef> findProductImagesWithoutVariants(String localPrefix, int limit) {
+        return jdbcTemplate.query("""
+                SELECT id, url
+                FROM product_image
+                WHERE srcset IS NULL AND starts_with(url, ?)
+                ORDER BY id
+                LIMIT ?
+                """, (rs, rowNum) -> new ImageRef(rs.getLong("id"), rs.getString("url")), localPrefix, limit);
+    }
+
+    public List<ImageRef> findCategoriesWithoutVariants(String localPrefix, int limit) {
+        return jdbcTemplate.query("""
+                SELECT id, image_url
+                FROM category
+                WHERE image_srcset IS NULL AND starts_with(image_url, ?)
+                ORDER BY id
+                LIMIT ?
+                """, (rs, rowNum) -> new ImageRef(rs.getLong("id"), rs.getString("image_url")), localPrefix, limit);
+    }
+
+    /**
+     * Запись копий; строки, у которых URL сменился за время обработки, не трогаются
+     */
+    public int saveProductImageVariants(List<VariantRow> rows) {
+        return save("""
+                UPDATE product_image i
+                SET thumbnail_url = r.thumbnail_url, srcset = r.srcset
+                FROM unnest(?::bigint[], ?::text[], ?::text[], ?::text[]) AS r(id, url, thumbnail_url, srcset)
+                WHERE i.id = r.id AND i.url = r.url
+                """, rows);
+    }
+
+    /**
+     * Запись копий категорий; если копии не созданы, миниатюрой остается оригинал
+     */
+    public int saveCategoryVariants(List<VariantRow> rows) {
+        return save("""
+                UPDATE category c
+                SET thumbnail_url = COALESCE(r.thumbnail_url, c.image_url), image_srcset = r.srcset
+                FROM unnest(?::bigint[], ?::text[], ?::text[], ?::text[]) AS r(id, url, thumbnail_url, srcset)
+                WHERE c.id = r.id AND c.image_url = r.url
+                """, rows);
+    }
+
+    private int save(String sql, List<VariantRow> rows) {
+        if (rows.isEmpty()) return 0;
+
+        int n = rows.size();
+        Long[] ids = new Long[n];
+        String[] urls = new String[n];
+        String[] thumbnails = new String[n];
+        String[] srcsets = new String[n];
+        for (int i = 0; i < n; i++) {
+            VariantRow row = rows.get(i);
+            ids[i] = row.id();
+            urls[i] = row.url();
+            thumbnails[i] = row.thumbnailUrl();
+            srcsets[i] = row.srcset();
+        }
+
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            ps.setArray(2, con.createArrayOf("text", urls));
+            ps.setArray(3, con.createArrayOf("text", thumbnails));
+            ps.setArray(4, con.createArrayOf("text", srcsets));
+            return ps;
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderSummaryDto;
+import ru.fisher.ToolsMarket.dto.OrderDTO.UserOrderStatsDto;
+import ru.fisher.ToolsMarket.models.OrderStatus;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * История заказов пользователя: постраничные проекции без загрузки позиций заказа.
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderHistoryJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final RowMapper<OrderSummaryDto> SUMMARY_MAPPER = (rs, rowNum) -> {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        return OrderSummaryDto.builder()
+                .id(rs.getLong("id"))
+                .orderNumber(rs.getLong("order_number"))
+                .createdAt(createdAt != null ? createdAt.toInstant() : null)
+                .status(OrderStatus.valueOf(rs.getString("status")))
+                .totalPrice(rs.getBigDecimal("total_price"))
+                .itemsCount(rs.getLong("items_count"))
+                .build();
+    };
+
+    /**
+     * Страница заказов пользователя (новые сверху), статус — необязательный фильтр.
+     */
+    public Page<OrderSummaryDto> findUserOrderSummaries(Long userId, OrderStatus status, Pageable pageable) {
+        StringBuilder where = new StringBuilder(" WHERE o.user_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+
+        if (status != null) {
+            where.append(" AND o.status = ?");
+            params.add(status.name());
+        }
+
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM \"order\" o" + where, Long.class, params.toArray());
+        if (total == null || total == 0) {
+            return Page.empty(pageable);
+        }
+
+        String sql = """
+            SELECT
+                o.id,
+                o.order_number,
+                o.created_at,
+                o.status,
+                o.total_price,
+                COALESCE((SELECT SUM(oi.quantity) FROM order_item oi WHERE oi.order_id = o.id), 0) as items_count
+            FROM "order" o
+            """ + where + """
+             ORDER BY o.created_at DESC, o.id DESC
+            LIMIT ? OFFSET ?
+            """;
+
+        params.add(pageable.getPageSize());
+        params.add(pageable.getOffset());
+
+        List<OrderSummaryDto> content = jdbcTemplate.query(sql, SUMMARY_MAPPER, params.toArray());
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    /**
+     * Статистика по заказам пользователя одним запросом
+     */
+    public UserOrderStatsDto getUserOrderStats(Long userId) {
+        String sql = """
+            SELECT
+                COUNT(*) as total_orders,
+                SUM(CASE WHEN status NOT IN ('COMPLETED', 'CANCELLED') THEN 1 ELSE 0 END) as active_orders,
+                SUM(CASE WHEN status = 'CREATED' THEN 1 ELSE 0 END) as new_orders,
+                SUM(CASE WHEN status <> 'CANCELLED' THEN 1 ELSE 0 END) as not_cancelled_orders,
+                COALESCE(SUM(CASE WHEN status = 'COMPLETED' THEN total_price END), 0) as total_spent
+            FROM "order"
+            WHERE user_id = ?
+            """;
+
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            BigDecimal totalSpent = rs.getBigDecimal("total_spent");
+            return UserOrderStatsDto.builder()
+                    .totalOrdersCount(rs.getLong("total_orders"))
+                    .activeOrdersCount(rs.getLong("active_orders"))
+                    .newOrdersCount(rs.getLong("new_orders"))
+                    .notCancelledOrdersCount(rs.getLong("not_cancelled_orders"))
+                    .totalSpent(totalSpent != null ? totalSpent : BigDecimal.ZERO)
+                    .build();
+        }, userId);
+    }
+}
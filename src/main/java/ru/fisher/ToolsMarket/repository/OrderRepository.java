@@ -98,6 +98,10 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     Optional<Order> findByIdAndUserId(Long id, Long userId);
 
+    long countByUserId(Long userId);
+
+    boolean existsByUserId(Long userId);
+
     List<Order> findByUserIdAndStatusOrderByCreatedAtDesc(Long userId, OrderStatus status);
 
 }
@@ -0,0 +1,275 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.fisher.ToolsMarket.dto.PriceChange;
+import ru.fisher.ToolsMarket.dto.PriceRow;
+import ru.fisher.ToolsMarket.dto.ReviewedPrice;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Массовое обновление цен через временную таблицу:
+ * строки файла заливаются COPY в price_import_staging,
+ * затем цены меняются одним UPDATE ... FROM.
+ * Все методы работают в одной транзакции — staging живет до коммита.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(propagation = Propagation.MANDATORY)
+public class PriceBulkJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+
+    /**
+     * Источник строк: пишет пачки (sku, цена) в переданный consumer
+     */
+    @FunctionalInterface
+    public interface PriceRowSource {
+        void writeTo(Consumer<List<PriceRow>> sink) throws IOException;
+    }
+
+    /**
+     * Создает staging-таблицу и заливает в нее строки через COPY.
+     *
+     * @return количество залитых строк
+     */
+    public long stagePrices(PriceRowSource source) throws IOException {
+        jdbcTemplate.execute("""
+                CREATE TEMP TABLE IF NOT EXISTS price_import_staging (
+                    line_no BIGSERIAL,
+                    sku VARCHAR(100) NOT NULL,
+                    price NUMERIC(12,2) NOT NULL
+                ) ON COMMIT DROP
+                """);
+        jdbcTemplate.execute("TRUNCATE price_import_staging");
+
+        StringBuilder buffer = new StringBuilder();
+        long copied = copy("COPY price_import_staging (sku, price) FROM STDIN", out ->
+                source.writeTo(rows -> {
+                    buffer.setLength(0);
+                    for (PriceRow row : rows) {
+                        appendEscaped(buffer, row.sku());
+                        buffer.append('\t').append(row.price().toPlainString()).append('\n');
+                    }
+                    out.accept(buffer);
+                }));
+        log.debug("COPY в price_import_staging: {} строк", copied);
+        return copied;
+    }
+
+    /**
+     * Артикулы из файла, которых нет в каталоге
+     */
+    public List<String> findStagedNotFound() {
+        return jdbcTemplate.queryForList("""
+                SELECT DISTINCT s.sku
+                FROM price_import_staging s
+                WHERE NOT EXISTS (SELECT 1 FROM product p WHERE p.sku = s.sku)
+                ORDER BY s.sku
+                """, String.class);
+    }
+
+    /**
+     * Сколько разных артикулов из файла найдено в каталоге
+     */
+    public int countStagedMatched() {
+        Integer count = jdbcTemplate.queryForObject("""
+                SELECT COUNT(DISTINCT s.sku)
+                FROM price_import_staging s
+                JOIN product p ON p.sku = s.sku
+                """, Integer.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Применяет цены одним UPDATE. Для повторов артикула берется последняя строка файла.
+     * Старая цена читается из снимка до обновления через self-join.
+     */
+    public List<PriceChange> applyStagedPrices() {
+        return jdbcTemplate.query("""
+                UPDATE product p
+                SET price = s.price,
+                    updated_at = now()
+                FROM (
+                    SELECT DISTINCT ON (st.sku) st.sku, st.price, o.price AS old_price
+                    FROM price_import_staging st
+                    JOIN product o ON o.sku = st.sku
+                    ORDER BY st.sku, st.line_no DESC
+                ) s
+                WHERE p.sku = s.sku
+                  AND p.price <> s.price
+                RETURNING p.sku, p.title, s.old_price, p.price
+                """,
+                (rs, rowNum) -> new PriceChange(
+                        rs.getString("sku"),
+                        rs.getString("title"),
+                        rs.getBigDecimal("old_price"),
+                        rs.getBigDecimal("price")
+                ));
+    }
+
+    /**
+     * Запись примененных изменений в историю задачи импорта
+     */
+    public void saveHistory(long jobInstanceId, List<PriceChange> changes) {
+        if (changes.isEmpty()) return;
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO price_change_history (job_instance_id, sku, product_title, old_price, new_price)
+                VALUES (?, ?, ?, ?, ?)
+                """, changes, changes.size(), (ps, change) -> {
+            ps.setLong(1, jobInstanceId);
+            ps.setString(2, change.sku());
+            ps.setString(3, change.productName());
+            ps.setBigDecimal(4, change.oldPrice());
+            ps.setBigDecimal(5, change.newPrice());
+        });
+    }
+
+    /**
+     * Изменения цен, примененные задачей импорта
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<PriceChange> findHistory(long jobInstanceId, int limit) {
+        return jdbcTemplate.query("""
+                SELECT sku, product_title, old_price, new_price
+                FROM price_change_history
+                WHERE job_instance_id = ?
+                ORDER BY id
+                LIMIT ?
+                """,
+                (rs, rowNum) -> new PriceChange(
+                        rs.getString("sku"),
+                        rs.getString("product_title"),
+                        rs.getBigDecimal("old_price"),
+                        rs.getBigDecimal("new_price")
+                ), jobInstanceId, limit);
+    }
+
+    /**
+     * Применяет цены, проверенные в dry-run. Товар обновляется, только если его цена
+     * не изменилась с момента проверки (оптимистичная проверка по старой цене).
+     *
+     * @return примененные изменения и артикулы, цена которых успела измениться
+     */
+    public ReviewedApplyResult applyReviewedPrices(List<ReviewedPrice> rows) throws IOException {
+        jdbcTemplate.execute("""
+                CREATE TEMP TABLE IF NOT EXISTS price_review_staging (
+                    sku VARCHAR(100) NOT NULL,
+                    old_price NUMERIC(12,2) NOT NULL,
+                    new_price NUMERIC(12,2) NOT NULL
+                ) ON COMMIT DROP
+                """);
+        jdbcTemplate.execute("TRUNCATE price_review_staging");
+
+        StringBuilder buffer = new StringBuilder();
+        copy("COPY price_review_staging (sku, old_price, new_price) FROM STDIN", out -> {
+            for (ReviewedPrice row : rows) {
+                appendEscaped(buffer, row.sku());
+                buffer.append('\t').append(row.oldPrice().toPlainString())
+                        .append('\t').append(row.newPrice().toPlainString()).append('\n');
+            }
+            out.accept(buffer);
+        });
+
+        List<PriceChange> applied = jdbcTemplate.query("""
+                UPDATE product p
+                SET price = s.new_price,
+                    updated_at = now()
+                FROM price_review_staging s
+                WHERE p.sku = s.sku
+                  AND p.price = s.old_price
+                  AND s.old_price <> s.new_price
+                RETURNING p.sku, p.title, s.old_price, p.price
+                """,
+                (rs, rowNum) -> new PriceChange(
+                        rs.getString("sku"),
+                        rs.getString("title"),
+                        rs.getBigDecimal("old_price"),
+                        rs.getBigDecimal("price")
+                ));
+
+        // После UPDATE у примененных строк цена = new_price, у проверенных без изменений = old_price.
+        // Любая другая цена (или удаленный товар) — изменение между проверкой и применением
+        List<String> conflicts = jdbcTemplate.queryForList("""
+                SELECT s.sku
+                FROM price_review_staging s
+                LEFT JOIN product p ON p.sku = s.sku
+                WHERE p.id IS NULL
+                   OR (p.price <> s.old_price AND p.price <> s.new_price)
+                ORDER BY s.sku
+                """, String.class);
+
+        return new ReviewedApplyResult(applied, conflicts);
+    }
+
+    public record ReviewedApplyResult(List<PriceChange> applied, List<String> conflicts) {}
+
+    /**
+     * COPY ... FROM STDIN на соединении текущей транзакции — том же, что у jdbcTemplate
+     */
+    private long copy(String copySql, CopyBody body) throws IOException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+            try {
+                body.writeTo(data -> {
+                    byte[] bytes = data.toString().getBytes(StandardCharsets.UTF_8);
+                    try {
+                        copyIn.writeToCopy(bytes, 0, bytes.length);
+                    } catch (SQLException e) {
+                        throw new UncheckedIOException(new IOException("Ошибка COPY: " + e.getMessage(), e));
+                    }
+                });
+                return copyIn.endCopy();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate(copySql, null, e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CopyBody {
+        void writeTo(Consumer<CharSequence> out) throws IOException;
+    }
+
+    /**
+     * Экранирование для текстового формата COPY
+     */
+    private static void appendEscaped(StringBuilder buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+    }
+}
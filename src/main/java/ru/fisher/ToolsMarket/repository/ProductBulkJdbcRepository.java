@@ -0,0 +1,328 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.fisher.ToolsMarket.dto.ProductDraftRow;
+import ru.fisher.ToolsMarket.dto.ProductImportRow;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.*;
+
+/**
+ * Массовая вставка товаров при импорте: один INSERT ... SELECT FROM unnest(...)
+ * на пачку вместо отдельного INSERT на каждый товар, связь с категорией и картинки —
+ * так же одним запросом. Идентификаторы выделяются из последовательности заранее.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductBulkJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Итог пачки: артикулы созданных и обновленных товаров.
+     * Остальные строки пачки уже существовали (и не изменились).
+     */
+    public record UpsertOutcome(List<String> inserted, List<String> updated) {}
+
+    private record UpsertedRow(long id, String sku, boolean inserted) {}
+
+    /**
+     * Товар со ссылкой на страницу поставщика — для мониторинга цен
+     */
+    public record PriceSource(long id, String sku, String title, BigDecimal price, String sourceUrl) {}
+
+    private static final String INSERT_SQL = """
+            INSERT INTO product (id, sku, name, title, description, short_description,
+                                 price, currency, active, product_type, created_at, updated_at)
+            SELECT r.id, r.sku, r.name, r.title, r.description, r.short_description,
+                   0, 'RUB', true, 'OTHER', now(), now()
+            FROM unnest(?::bigint[], ?::varchar[], ?::varchar[], ?::varchar[], ?::text[], ?::varchar[])
+                 AS r(id, sku, name, title, description, short_description)
+            """;
+
+    private static final String ON_CONFLICT_SKIP = """
+            ON CONFLICT (sku) DO NOTHING
+            RETURNING id, sku, (xmax = 0) AS inserted
+            """;
+
+    // title (slug) у существующих товаров не меняем — на него ведут ссылки
+    private static final String ON_CONFLICT_UPDATE = """
+            ON CONFLICT (sku) DO UPDATE
+            SET name = EXCLUDED.name,
+                description = EXCLUDED.description,
+                short_description = EXCLUDED.short_description,
+                updated_at = now()
+            WHERE (product.name, product.description, product.short_description)
+                  IS DISTINCT FROM (EXCLUDED.name, EXCLUDED.description, EXCLUDED.short_description)
+            RETURNING id, sku, (xmax = 0) AS inserted
+            """;
+
+    /**
+     * Вставляет пачку товаров. Артикулы внутри пачки должны быть уникальны.
+     *
+     * @param updateExisting true — обновить название и описания существующих товаров,
+     *                       false — пропустить их
+     */
+    public UpsertOutcome upsertProducts(List<ProductImportRow> rows, Long categoryId, boolean updateExisting) {
+        if (rows.isEmpty()) {
+            return new UpsertOutcome(List.of(), List.of());
+        }
+
+        List<Long> ids = allocateIds(rows.size());
+        int n = rows.size();
+        Long[] idArr = ids.toArray(new Long[0]);
+        String[] skus = new String[n];
+        String[] names = new String[n];
+        String[] titles = new String[n];
+        String[] descriptions = new String[n];
+        String[] shortDescriptions = new String[n];
+        for (int i = 0; i < n; i++) {
+            ProductImportRow row = rows.get(i);
+            skus[i] = row.sku();
+            names[i] = row.name();
+            titles[i] = row.title();
+            descriptions[i] = row.description();
+            shortDescriptions[i] = row.shortDescription();
+        }
+
+        String sql = INSERT_SQL + (updateExisting ? ON_CONFLICT_UPDATE : ON_CONFLICT_SKIP);
+        List<UpsertedRow> upserted = jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    ps.setArray(1, con.createArrayOf("bigint", idArr));
+                    ps.setArray(2, con.createArrayOf("varchar", skus));
+                    ps.setArray(3, con.createArrayOf("varchar", names));
+                    ps.setArray(4, con.createArrayOf("varchar", titles));
+                    ps.setArray(5, con.createArrayOf("text", descriptions));
+                    ps.setArray(6, con.createArrayOf("varchar", shortDescriptions));
+                    return ps;
+                },
+                (rs, rowNum) -> new UpsertedRow(
+                        rs.getLong("id"), rs.getString("sku"), rs.getBoolean("inserted")));
+
+        List<String> inserted = new ArrayList<>();
+        List<String> updated = new ArrayList<>();
+        List<Long> insertedIds = new ArrayList<>();
+        for (UpsertedRow row : upserted) {
+            if (row.inserted()) {
+                inserted.add(row.sku());
+                insertedIds.add(row.id());
+            } else {
+                updated.add(row.sku());
+            }
+        }
+
+        // Категория и картинки — только для новых товаров:
+        // у существующих их мог поменять администратор
+        if (!insertedIds.isEmpty()) {
+            linkCategory(insertedIds, categoryId);
+            insertImages(rows, idArr, inserted);
+        }
+
+        return new UpsertOutcome(inserted, updated);
+    }
+
+    /**
+     * Вставляет пачку черновиков (active = false) вместе с картинками.
+     * Товары с существующим артикулом не трогаются.
+     *
+     * @return артикулы созданных черновиков
+     */
+    public List<String> insertDrafts(List<ProductDraftRow> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+
+        int n = rows.size();
+        Long[] ids = allocateIds(n).toArray(new Long[0]);
+        String[] skus = new String[n];
+        String[] names = new String[n];
+        String[] titles = new String[n];
+        String[] descriptions = new String[n];
+        String[] shortDescriptions = new String[n];
+        BigDecimal[] prices = new BigDecimal[n];
+        String[] sourceUrls = new String[n];
+        for (int i = 0; i < n; i++) {
+            ProductDraftRow row = rows.get(i);
+            skus[i] = row.sku();
+            names[i] = row.name();
+            titles[i] = row.title();
+            descriptions[i] = row.description();
+            shortDescriptions[i] = row.shortDescription();
+            prices[i] = row.price();
+            sourceUrls[i] = row.sourceUrl();
+        }
+
+        List<UpsertedRow> inserted = jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement("""
+                            INSERT INTO product (id, sku, name, title, description, short_description,
+                                                 price, currency, active, product_type, source_url,
+                                                 created_at, updated_at)
+                            SELECT r.id, r.sku, r.name, r.title, r.description, r.short_description,
+                                   COALESCE(r.price, 0), 'RUB', false, 'OTHER', r.source_url, now(), now()
+                            FROM unnest(?::bigint[], ?::varchar[], ?::varchar[], ?::varchar[], ?::text[],
+                                        ?::varchar[], ?::numeric[], ?::varchar[])
+                                 AS r(id, sku, name, title, description, short_description, price, source_url)
+                            ON CONFLICT (sku) DO NOTHING
+                            RETURNING id, sku, true AS inserted
+                            """);
+                    ps.setArray(1, con.createArrayOf("bigint", ids));
+                    ps.setArray(2, con.createArrayOf("varchar", skus));
+                    ps.setArray(3, con.createArrayOf("varchar", names));
+                    ps.setArray(4, con.createArrayOf("varchar", titles));
+                    ps.setArray(5, con.createArrayOf("text", descriptions));
+                    ps.setArray(6, con.createArrayOf("varchar", shortDescriptions));
+                    ps.setArray(7, con.createArrayOf("numeric", prices));
+                    ps.setArray(8, con.createArrayOf("varchar", sourceUrls));
+                    return ps;
+                },
+                (rs, rowNum) -> new UpsertedRow(rs.getLong("id"), rs.getString("sku"), true));
+
+        Map<String, Long> idBySku = new HashMap<>();
+        inserted.forEach(row -> idBySku.put(row.sku(), row.id()));
+
+        List<Long> imageProductIds = new ArrayList<>();
+        List<String> imageUrls = new ArrayList<>();
+        List<Integer> sortOrders = new ArrayList<>();
+        for (ProductDraftRow row : rows) {
+            Long productId = idBySku.get(row.sku());
+            if (productId == null) continue;
+            int sort = 0;
+            for (String url : row.imageUrls()) {
+                imageProductIds.add(productId);
+                imageUrls.add(url);
+                sortOrders.add(sort++);
+            }
+        }
+        if (!imageProductIds.isEmpty()) {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement("""
+                        INSERT INTO product_image (product_id, url, sort_order)
+                        SELECT product_id, url, sort_order
+                        FROM unnest(?::bigint[], ?::varchar[], ?::int[]) AS r(product_id, url, sort_order)
+                        """);
+                ps.setArray(1, con.createArrayOf("bigint", imageProductIds.toArray()));
+                ps.setArray(2, con.createArrayOf("varchar", imageUrls.toArray()));
+                ps.setArray(3, con.createArrayOf("integer", sortOrders.toArray()));
+                return ps;
+            });
+        }
+
+        return inserted.stream().map(UpsertedRow::sku).toList();
+    }
+
+    /**
+     * Какие из переданных title уже заняты товарами
+     */
+    public Set<String> findExistingTitles(Collection<String> titles) {
+        Set<String> existing = new HashSet<>();
+        if (titles.isEmpty()) return existing;
+
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "SELECT title FROM product WHERE title = ANY (?::varchar[])");
+                    ps.setArray(1, con.createArrayOf("varchar", titles.toArray()));
+                    return ps;
+                },
+                rs -> {
+                    existing.add(rs.getString(1));
+                });
+        return existing;
+    }
+
+    /**
+     * Занятые title вида base-N для переданных base — чтобы подобрать свободный суффикс
+     */
+    public Set<String> findSuffixedTitles(Collection<String> bases) {
+        Set<String> existing = new HashSet<>();
+        if (bases.isEmpty()) return existing;
+
+        // '_' и '%' в slug — подстановочные символы LIKE
+        String[] patterns = bases.stream()
+                .map(base -> base.replace("\\", "\\\\").replace("_", "\\_").replace("%", "\\%") + "-%")
+                .toArray(String[]::new);
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "SELECT title FROM product WHERE title LIKE ANY (?::varchar[])");
+                    ps.setArray(1, con.createArrayOf("varchar", patterns));
+                    return ps;
+                },
+                rs -> {
+                    existing.add(rs.getString(1));
+                });
+        return existing;
+    }
+
+    /**
+     * Пачка товаров со ссылкой на поставщика, по возрастанию id (keyset-пагинация)
+     */
+    public List<PriceSource> findPriceSources(long afterId, int limit) {
+        return jdbcTemplate.query("""
+                SELECT id, sku, title, price, source_url
+                FROM product
+                WHERE source_url IS NOT NULL
+                  AND sku IS NOT NULL
+                  AND id > ?
+                ORDER BY id
+                LIMIT ?
+                """,
+                (rs, rowNum) -> new PriceSource(
+                        rs.getLong("id"),
+                        rs.getString("sku"),
+                        rs.getString("title"),
+                        rs.getBigDecimal("price"),
+                        rs.getString("source_url")
+                ), afterId, limit);
+    }
+
+    /**
+     * Выделяет n идентификаторов из последовательности product.id одним запросом
+     */
+    private List<Long> allocateIds(int n) {
+        return jdbcTemplate.queryForList("""
+                SELECT nextval(pg_get_serial_sequence('product', 'id'))
+                FROM generate_series(1, ?)
+                """, Long.class, n);
+    }
+
+    private void linkCategory(List<Long> productIds, Long categoryId) {
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO product_category (product_id, category_id)
+                    SELECT unnest(?::bigint[]), ?
+                    ON CONFLICT DO NOTHING
+                    """);
+            ps.setArray(1, con.createArrayOf("bigint", productIds.toArray()));
+            ps.setLong(2, categoryId);
+            return ps;
+        });
+    }
+
+    private void insertImages(List<ProductImportRow> rows, Long[] ids, List<String> insertedSkus) {
+        Set<String> inserted = new HashSet<>(insertedSkus);
+        List<Long> productIds = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+
+        for (int i = 0; i < rows.size(); i++) {
+            ProductImportRow row = rows.get(i);
+            if (row.imageUrl() != null && inserted.contains(row.sku())) {
+                productIds.add(ids[i]);
+                urls.add(row.imageUrl());
+            }
+        }
+        if (productIds.isEmpty()) return;
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO product_image (product_id, url, sort_order)
+                    SELECT product_id, url, 0
+                    FROM unnest(?::bigint[], ?::varchar[]) AS r(product_id, url)
+                    """);
+            ps.setArray(1, con.createArrayOf("bigint", productIds.toArray()));
+            ps.setArray(2, con.createArrayOf("varchar", urls.toArray()));
+            return ps;
+        });
+    }
+}
@@ -1,10 +1,25 @@
 package ru.fisher.ToolsMarket.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.fisher.ToolsMarket.models.ProductImage;
 
 import java.util.List;
 
 public interface ProductImageRepository extends JpaRepository<ProductImage, Long> {
     List<ProductImage> findByProductIdOrderBySortOrderAsc(Long productId);
+
+    /**
+     * Сколько картинок товаров и категорий ссылается на URL
+     * (файлы в хранилище по хэшу общие для одинаковых картинок).
+     * Скопированная картинка поставщика учитывается и через image_mirror:
+     * по ней URL подставляется новым товарам с той же внешней ссылкой
+     */
+    @Query(value = """
+            SELECT (SELECT COUNT(*) FROM product_image WHERE url = :url)
+                 + (SELECT COUNT(*) FROM category WHERE image_url = :url)
+                 + (SELECT COUNT(*) FROM image_mirror WHERE local_url = :url)
+            """, nativeQuery = true)
+    long countUrlReferences(@Param("url") String url);
 }
@@ -0,0 +1,106 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Порядок картинок товара и атрибутов категории: весь новый порядок
+ * записывается одним UPDATE ... FROM unnest, сколько бы строк ни было.
+ * <p>
+ * Новый порядок должен перечислять все строки владельца. Перед записью строка
+ * владельца (товара, категории) блокируется FOR UPDATE: вставка картинки или атрибута
+ * берет на нее FOR KEY SHARE (проверка внешнего ключа), поэтому добавление строк
+ * и другая перестановка того же владельца ждут конца транзакции. Одновременные
+ * перестановки выполняются по очереди, и остается последняя из них — но это всегда
+ * полный порядок, без перемешивания двух.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SortOrderJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Новый порядок картинок товара (id картинки -> sort_order).
+     * Применяется целиком или никак: если хотя бы одна картинка уже удалена,
+     * принадлежит другому товару или у товара есть картинка не из списка
+     * (добавлена после загрузки страницы), ничего не меняется
+     *
+     * @throws OptimisticLockingFailureException если набор картинок товара не совпал с переданным
+     */
+    @Transactional
+    public int reorderProductImages(long productId, Map<Long, Integer> order) {
+        return reorder("SELECT id FROM product WHERE id = ? FOR UPDATE", """
+                UPDATE product_image i
+                SET sort_order = r.sort_order
+                FROM unnest(?::bigint[], ?::int[]) AS r(id, sort_order)
+                WHERE i.id = r.id AND i.product_id = ?
+                  AND (SELECT count(*) FROM product_image WHERE product_id = ?) = ?
+                """, productId, order, "Картинки товара изменились, обновите страницу");
+    }
+
+    /**
+     * Новый порядок атрибутов категории (id атрибута -> sort_order), целиком или никак:
+     * список должен совпадать с набором атрибутов категории
+     *
+     * @throws OptimisticLockingFailureException если набор атрибутов категории не совпал с переданным
+     */
+    @Transactional
+    public int reorderAttributes(long categoryId, Map<Long, Integer> order) {
+        return reorder("SELECT id FROM category WHERE id = ? FOR UPDATE", """
+                UPDATE attribute a
+                SET sort_order = r.sort_order
+                FROM unnest(?::bigint[], ?::int[]) AS r(id, sort_order)
+                WHERE a.id = r.id AND a.category_id = ?
+                  AND (SELECT count(*) FROM attribute WHERE category_id = ?) = ?
+                """, categoryId, order, "Атрибуты категории изменились, обновите страницу");
+    }
+
+    /**
+     * Нумерация атрибутов категории 1..n без пропусков в текущем порядке;
+     * строки, у которых номер не изменился, не обновляются
+     */
+    public int normalizeAttributeOrder(long categoryId) {
+        return jdbcTemplate.update("""
+                UPDATE attribute a
+                SET sort_order = r.position
+                FROM (SELECT id, row_number() OVER (ORDER BY sort_order, id) AS position
+                      FROM attribute
+                      WHERE category_id = ?) r
+                WHERE a.id = r.id AND a.sort_order IS DISTINCT FROM r.position
+                """, categoryId);
+    }
+
+    private int reorder(String lockSql, String updateSql, long ownerId, Map<Long, Integer> order,
+                        String conflictMessage) {
+        if (order.isEmpty()) return 0;
+
+        Long[] ids = order.keySet().toArray(Long[]::new);
+        Integer[] sortOrders = Arrays.stream(ids).map(order::get).toArray(Integer[]::new);
+
+        // Отдельный запрос: в READ COMMITTED следующий увидит строки, вставленные до получения блокировки
+        if (jdbcTemplate.queryForList(lockSql, Long.class, ownerId).isEmpty()) {
+            throw new OptimisticLockingFailureException(conflictMessage);
+        }
+        int updated = jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(updateSql);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            ps.setArray(2, con.createArrayOf("integer", sortOrders));
+            ps.setLong(3, ownerId);
+            ps.setLong(4, ownerId);
+            ps.setLong(5, ids.length);
+            return ps;
+        });
+        if (updated != ids.length) {
+            throw new OptimisticLockingFailureException(conflictMessage);
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.function.Consumer;
+
+/**
+ * Ссылки на загруженные файлы для сборщика неиспользуемых картинок (UploadGcService)
+ */
+@Repository
+@RequiredArgsConstructor
+public class UploadGcJdbcRepository {
+
+    private static final int FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Забывает скопированные картинки поставщиков, которые больше не нужны ни одному товару
+     * (товар удален или картинка заменена) и не обновлялись дольше graceSeconds.
+     * После этого их файлы перестают считаться используемыми
+     *
+     * @return число удаленных записей image_mirror
+     */
+    public int forgetUnusedMirrors(long graceSeconds) {
+        return jdbcTemplate.update("""
+                DELETE FROM image_mirror m
+                WHERE m.local_url IS NOT NULL
+                  AND m.updated_at < now() - ? * INTERVAL '1 second'
+                  AND NOT EXISTS (SELECT 1 FROM product_image i WHERE i.url = m.local_url)
+                  AND NOT EXISTS (SELECT 1 FROM product_image i WHERE i.url = m.source_url)
+                """, graceSeconds);
+    }
+
+    /**
+     * Все URL картинок товаров, категорий и скопированных картинок поставщиков.
+     * Читается курсором порциями по FETCH_SIZE, целиком в память не загружается
+     */
+    @Transactional(readOnly = true)
+    public void forEachReferencedUrl(Consumer<String> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT url FROM product_image
+                    UNION ALL
+                    SELECT image_url FROM category WHERE image_url IS NOT NULL
+                    UNION ALL
+                    SELECT thumbnail_url FROM category WHERE thumbnail_url IS NOT NULL
+                    UNION ALL
+                    SELECT local_url FROM image_mirror WHERE local_url IS NOT NULL
+                    """);
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+}
@@ -0,0 +1,63 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Валидаторы YML-фидов (ETag, Last-Modified, хэш) после последнего успешного импорта
+ */
+@Repository
+@RequiredArgsConstructor
+public class YmlFeedStateJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record FeedState(String url, String etag, String lastModified,
+                            String contentHash, long contentLength) {}
+
+    public Optional<FeedState> find(String url) {
+        return jdbcTemplate.query("""
+                        SELECT url, etag, last_modified, content_hash, content_length
+                        FROM yml_feed_state
+                        WHERE url = ?
+                        """,
+                (rs, rowNum) -> new FeedState(
+                        rs.getString("url"),
+                        rs.getString("etag"),
+                        rs.getString("last_modified"),
+                        rs.getString("content_hash"),
+                        rs.getLong("content_length")
+                ), url).stream().findFirst();
+    }
+
+    public void save(FeedState state) {
+        jdbcTemplate.update("""
+                INSERT INTO yml_feed_state (url, etag, last_modified, content_hash, content_length, imported_at)
+                VALUES (?, ?, ?, ?, ?, now())
+                ON CONFLICT (url) DO UPDATE
+                SET etag = EXCLUDED.etag,
+                    last_modified = EXCLUDED.last_modified,
+                    content_hash = EXCLUDED.content_hash,
+                    content_length = EXCLUDED.content_length,
+                    imported_at = now()
+                """,
+                state.url(), state.etag(), state.lastModified(), state.contentHash(), state.contentLength());
+    }
+
+    /**
+     * Новые ETag и Last-Modified того же содержимого: сервер сменил валидаторы,
+     * а фид не изменился. Время импорта остается прежним
+     */
+    public void updateValidators(String url, String etag, String lastModified) {
+        jdbcTemplate.update("""
+                UPDATE yml_feed_state
+                SET etag = ?,
+                    last_modified = ?
+                WHERE url = ?
+                """,
+                etag, lastModified, url);
+    }
+}
@@ -0,0 +1,339 @@
+package ru.fisher.ToolsMarket.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Узкие выборки для импорта YML-фида: вместо сущностей с коллекциями —
+ * только то, что нужно для сравнения предложения с товаром.
+ * Сущности Product загружаются лишь для изменившихся предложений.
+ */
+@Repository
+@RequiredArgsConstructor
+public class YmlImportJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Ключ атрибута категории: одна плоская карта вместо карты карт по категориям
+     */
+    public record AttributeKey(long categoryId, String name) {}
+
+    /**
+     * Ключ значения атрибута товара
+     */
+    public record AttributeValueKey(long productId, long attributeId) {}
+
+    /**
+     * Состояние товара, с которым сравнивается предложение фида
+     *
+     * @param categoryIds категории товара
+     * @param imageUrls   картинки в порядке сортировки; для скопированных к нам — URL поставщика
+     */
+    public record ProductState(
+            long id,
+            String name,
+            BigDecimal price,
+            boolean active,
+            String productType,
+            Set<Long> categoryIds,
+            List<String> imageUrls
+    ) {}
+
+    /**
+     * @return SKU → состояние товара
+     */
+    public Map<String, ProductState> findProductStates(Collection<String> skus) {
+        Map<String, ProductState> states = new HashMap<>();
+        if (skus.isEmpty()) return states;
+
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement("""
+                            SELECT p.id, p.sku, p.name, p.price, p.active, p.product_type,
+                                   ARRAY(SELECT pc.category_id FROM product_category pc
+                                         WHERE pc.product_id = p.id) AS category_ids,
+                                   ARRAY(SELECT COALESCE(i.source_url, i.url) FROM product_image i
+                                         WHERE i.product_id = p.id
+                                         ORDER BY i.sort_order, i.id) AS image_urls
+                            FROM product p
+                            WHERE p.sku = ANY (?::varchar[])
+                            """);
+                    ps.setArray(1, con.createArrayOf("varchar", skus.toArray()));
+                    return ps;
+                },
+                rs -> {
+                    states.put(rs.getString("sku"), new ProductState(
+                            rs.getLong("id"),
+                            rs.getString("name"),
+                            rs.getBigDecimal("price"),
+                            rs.getBoolean("active"),
+                            rs.getString("product_type"),
+                            new HashSet<>(Arrays.asList(toArray(rs.getArray("category_ids"), Long[].class))),
+                            Arrays.asList(toArray(rs.getArray("image_urls"), String[].class))
+                    ));
+                });
+        return states;
+    }
+
+    /**
+     * Категория каталога, с которой сравнивается категория фида
+     */
+    public record CategoryRow(long id, String name, Long parentId) {}
+
+    /**
+     * @return title → категория
+     */
+    public Map<String, CategoryRow> findCategoriesByTitle(Collection<String> titles) {
+        Map<String, CategoryRow> categories = new HashMap<>();
+        if (titles.isEmpty()) return categories;
+
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement("""
+                            SELECT id, title, name, parent_id
+                            FROM category
+                            WHERE title = ANY (?::varchar[])
+                            """);
+                    ps.setArray(1, con.createArrayOf("varchar", titles.toArray()));
+                    return ps;
+                },
+                rs -> {
+                    categories.put(rs.getString("title"), new CategoryRow(
+                            rs.getLong("id"),
+                            rs.getString("name"),
+                            rs.getObject("parent_id", Long.class)
+                    ));
+                });
+        return categories;
+    }
+
+    /**
+     * Вставка новых категорий одним запросом. Категории, созданные параллельно
+     * с тем же title, пропускаются — их id читаются повторной выборкой.
+     */
+    public void insertCategories(List<String> titles, List<String> names) {
+        if (titles.isEmpty()) return;
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO category (title, name, sort_order, created_at)
+                    SELECT r.title, r.name, 0, now()
+                    FROM unnest(?::varchar[], ?::varchar[]) AS r(title, name)
+                    ON CONFLICT (title) DO NOTHING
+                    """);
+            ps.setArray(1, con.createArrayOf("varchar", titles.toArray()));
+            ps.setArray(2, con.createArrayOf("varchar", names.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Переименование категорий одним UPDATE
+     */
+    public int renameCategories(List<Long> ids, List<String> names) {
+        if (ids.isEmpty()) return 0;
+
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    UPDATE category c
+                    SET name = r.name
+                    FROM unnest(?::bigint[], ?::varchar[]) AS r(id, name)
+                    WHERE c.id = r.id
+                    """);
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            ps.setArray(2, con.createArrayOf("varchar", names.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Смена родителей категорий одним UPDATE
+     */
+    public int reparentCategories(List<Long> ids, List<Long> parentIds) {
+        if (ids.isEmpty()) return 0;
+
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    UPDATE category c
+                    SET parent_id = r.parent_id
+                    FROM unnest(?::bigint[], ?::bigint[]) AS r(id, parent_id)
+                    WHERE c.id = r.id
+                    """);
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", parentIds.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * @return (id категории, имя атрибута) → id атрибута
+     */
+    public Map<AttributeKey, Long> findAttributeIds(Collection<Long> categoryIds) {
+        Map<AttributeKey, Long> ids = new HashMap<>();
+        if (categoryIds.isEmpty()) return ids;
+
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "SELECT id, category_id, name FROM attribute WHERE category_id = ANY (?::bigint[])");
+                    ps.setArray(1, con.createArrayOf("bigint", categoryIds.toArray()));
+                    return ps;
+                },
+                rs -> {
+                    ids.put(new AttributeKey(rs.getLong("category_id"), rs.getString("name")), rs.getLong("id"));
+                });
+        return ids;
+    }
+
+    /**
+     * @return (id товара, id атрибута) → значение
+     */
+    public Map<AttributeValueKey, String> findAttributeValues(Collection<Long> productIds) {
+        Map<AttributeValueKey, String> values = new HashMap<>();
+        if (productIds.isEmpty()) return values;
+
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement("""
+                            SELECT product_id, attribute_id, value
+                            FROM product_attribute_values
+                            WHERE product_id = ANY (?::bigint[])
+                            """);
+                    ps.setArray(1, con.createArrayOf("bigint", productIds.toArray()));
+                    return ps;
+                },
+                rs -> {
+                    values.put(new AttributeValueKey(rs.getLong("product_id"), rs.getLong("attribute_id")),
+                            rs.getString("value"));
+                });
+        return values;
+    }
+
+    /**
+     * Вставка или обновление значений атрибутов одним запросом
+     * по уникальному ключу (product_id, attribute_id)
+     */
+    public void upsertAttributeValues(List<Long> productIds, List<Long> attributeIds, List<String> values) {
+        if (productIds.isEmpty()) return;
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO product_attribute_values (product_id, attribute_id, value)
+                    SELECT r.product_id, r.attribute_id, r.value
+                    FROM unnest(?::bigint[], ?::bigint[], ?::varchar[]) AS r(product_id, attribute_id, value)
+                    ON CONFLICT (product_id, attribute_id) DO UPDATE
+                    SET value = EXCLUDED.value
+                    WHERE product_attribute_values.value IS DISTINCT FROM EXCLUDED.value
+                    """);
+            ps.setArray(1, con.createArrayOf("bigint", productIds.toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", attributeIds.toArray()));
+            ps.setArray(3, con.createArrayOf("varchar", values.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * @return id предложения → хэш содержимого при последнем импорте
+     */
+    public Map<String, String> findOfferHashes(String supplier, Collection<String> offerIds) {
+        Map<String, String> hashes = new HashMap<>();
+        if (offerIds.isEmpty()) return hashes;
+
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement("""
+                            SELECT offer_id, content_hash
+                            FROM yml_offer_hash
+                            WHERE supplier = ? AND offer_id = ANY (?::varchar[])
+                            """);
+                    ps.setString(1, supplier);
+                    ps.setArray(2, con.createArrayOf("varchar", offerIds.toArray()));
+                    return ps;
+                },
+                rs -> {
+                    hashes.put(rs.getString("offer_id"), rs.getString("content_hash"));
+                });
+        return hashes;
+    }
+
+    /**
+     * Запоминает хэши предложений пачки и отмечает их как увиденные в запуске runId.
+     * Товар находится по артикулу — предложения без товара не сохраняются.
+     */
+    public void saveOfferHashes(String supplier, long runId,
+                                List<String> offerIds, List<String> skus, List<String> hashes) {
+        if (offerIds.isEmpty()) return;
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO yml_offer_hash (supplier, offer_id, product_id, content_hash, last_seen_run)
+                    SELECT ?, r.offer_id, p.id, r.content_hash, ?
+                    FROM unnest(?::varchar[], ?::varchar[], ?::varchar[]) AS r(offer_id, sku, content_hash)
+                    JOIN product p ON p.sku = r.sku
+                    ON CONFLICT (supplier, offer_id) DO UPDATE
+                    SET product_id = EXCLUDED.product_id,
+                        content_hash = EXCLUDED.content_hash,
+                        last_seen_run = EXCLUDED.last_seen_run,
+                        updated_at = CASE WHEN yml_offer_hash.content_hash = EXCLUDED.content_hash
+                                          THEN yml_offer_hash.updated_at ELSE now() END
+                    """);
+            ps.setString(1, supplier);
+            ps.setLong(2, runId);
+            ps.setArray(3, con.createArrayOf("varchar", offerIds.toArray()));
+            ps.setArray(4, con.createArrayOf("varchar", skus.toArray()));
+            ps.setArray(5, con.createArrayOf("varchar", hashes.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Сколько ранее импортированных предложений поставщика не встретилось в запуске runId
+     *
+     * @return [пропавшие, всего]
+     */
+    public int[] countMissingOffers(String supplier, long runId) {
+        return jdbcTemplate.queryForObject("""
+                        SELECT COUNT(*) FILTER (WHERE last_seen_run <> ?), COUNT(*)
+                        FROM yml_offer_hash
+                        WHERE supplier = ?
+                        """,
+                (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2)},
+                runId, supplier);
+    }
+
+    /**
+     * Снимает с продажи товары предложений, пропавших из фида.
+     * Их хэши удаляются — вернувшееся предложение применится заново.
+     * Товар, на который ссылается другое увиденное предложение, не трогается.
+     *
+     * @return количество снятых с продажи товаров
+     */
+    public int deactivateMissingOffers(String supplier, long runId) {
+        return jdbcTemplate.update("""
+                WITH gone AS (
+                    DELETE FROM yml_offer_hash
+                    WHERE supplier = ? AND last_seen_run <> ?
+                    RETURNING product_id
+                )
+                UPDATE product p
+                SET active = false,
+                    updated_at = now()
+                FROM gone
+                WHERE p.id = gone.product_id
+                  AND p.active
+                  AND NOT EXISTS (SELECT 1 FROM yml_offer_hash h
+                                  WHERE h.product_id = p.id AND h.last_seen_run = ?)
+                """, supplier, runId, runId);
+    }
+
+    private static <T> T[] toArray(Array array, Class<T[]> type) throws SQLException {
+        try {
+            return type.cast(array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+}
@@ -12,6 +12,7 @@ import ru.fisher.ToolsMarket.models.Product;
 import ru.fisher.ToolsMarket.models.ProductAttributeValue;
 import ru.fisher.ToolsMarket.repository.AttributeRepository;
 import ru.fisher.ToolsMarket.repository.ProductAttributeValueRepository;
+import ru.fisher.ToolsMarket.repository.SortOrderJdbcRepository;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -23,6 +24,7 @@ import java.util.stream.Collectors;
 public class AttributeService {
     private final AttributeRepository attributeRepository;
     private final ProductAttributeValueRepository valueRepository;
+    private final SortOrderJdbcRepository sortOrderRepository;
 
     public Optional<Attribute> findById(Long id) {
         return attributeRepository.findById(id);
@@ -52,20 +54,12 @@ public class AttributeService {
         // удаляем значения
         valueRepository.deleteByAttributeId(attributeId);
 
-        // удаляем сам атрибут
+        // удаляем сам атрибут (flush — чтобы нумерация ниже его уже не видела)
         attributeRepository.delete(attribute);
+        attributeRepository.flush();
 
-        // нормализуем порядок
-        normalizeSortOrder(categoryId);
-    }
-
-    private void normalizeSortOrder(Long categoryId) {
-        List<Attribute> attributes =
-                attributeRepository.findByCategoryIdOrderBySortOrder(categoryId);
-
-        for (int i = 0; i < attributes.size(); i++) {
-            attributes.get(i).setSortOrder(i + 1);
-        }
+        // нормализуем порядок одним запросом
+        sortOrderRepository.normalizeAttributeOrder(categoryId);
     }
 
     public void delete(Long id) {
@@ -170,20 +164,23 @@ public class AttributeService {
         return filterOptions;
     }
 
+    /**
+     * Новый порядок атрибутов категории одним запросом
+     *
+     * @throws org.springframework.dao.OptimisticLockingFailureException если атрибуты категории
+     *         изменились после загрузки страницы (порядок тогда не меняется)
+     */
     @Transactional
-    public void updateSortOrder(List<AttributeOrderDto> orderData) {
-
-        Map<Long, Integer> orderMap = orderData.stream()
-                .collect(Collectors.toMap(
-                        AttributeOrderDto::getId,
-                        AttributeOrderDto::getSortOrder
-                ));
-
-        List<Attribute> attributes =
-                attributeRepository.findAllById(orderMap.keySet());
-
-        for (Attribute attribute : attributes) {
-            attribute.setSortOrder(orderMap.get(attribute.getId()));
+    public void updateSortOrder(Long categoryId, List<AttributeOrderDto> orderData) {
+        Map<Long, Integer> orderMap = new HashMap<>();
+        for (AttributeOrderDto dto : orderData) {
+            if (dto.getId() == null || dto.getSortOrder() == null) {
+                throw new IllegalArgumentException("Не указан id или порядок атрибута");
+            }
+            if (orderMap.put(dto.getId(), dto.getSortOrder()) != null) {
+                throw new IllegalArgumentException("Атрибут указан дважды: " + dto.getId());
+            }
         }
+        sortOrderRepository.reorderAttributes(categoryId, orderMap);
     }
 }
@@ -0,0 +1,209 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.fisher.ToolsMarket.dto.ParsedProductData;
+import ru.fisher.ToolsMarket.dto.ProductDraftRow;
+import ru.fisher.ToolsMarket.repository.ProductBulkJdbcRepository;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Массовый парсинг товаров по списку ссылок поставщиков.
+ * <p>
+ * Страницы пачки скачиваются параллельно в виртуальных потоках: ожидание сети не занимает
+ * потоки платформы. Чтобы не нагружать сайты поставщиков, к одному хосту одновременно
+ * идет не больше app.parse.per-host-concurrency запросов, а между запросами к нему
+ * выдерживается пауза app.parse.host-delay-ms. Ограничения общие для всех запусков.
+ * Результаты сохраняются черновиками (неактивными товарами) одной пачкой.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkProductParseService {
+
+    private final ParserRouter router;
+    private final ProductBulkJdbcRepository productBulkRepository;
+    private final SlugService slugService;
+
+    @Value("${app.parse.per-host-concurrency:2}")
+    private int perHostConcurrency;
+
+    @Value("${app.parse.host-delay-ms:500}")
+    private long hostDelayMs;
+
+    private final Map<String, HostLimit> hostLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Результат парсинга одной ссылки: данные или текст ошибки
+     */
+    public record ParseOutcome(String url, ParsedProductData data, String error) {
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Итог сохранения пачки
+     *
+     * @param created артикулы созданных черновиков
+     * @param skipped артикулы, которые уже есть в каталоге
+     * @param errors  ссылки, по которым не удалось получить товар, с причиной
+     */
+    public record DraftOutcome(List<String> created, List<String> skipped, List<String> errors) {}
+
+    /**
+     * Парсинг пачки ссылок. Ошибка одной ссылки не прерывает остальные.
+     *
+     * @return результаты в порядке ссылок
+     */
+    public List<ParseOutcome> parseAll(List<String> urls) throws InterruptedException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ParseOutcome>> futures = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                futures.add(executor.submit(() -> parseOne(url)));
+            }
+
+            List<ParseOutcome> outcomes = new ArrayList<>(urls.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    outcomes.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    outcomes.add(new ParseOutcome(urls.get(i), null, String.valueOf(e.getCause().getMessage())));
+                }
+            }
+            return outcomes;
+        }
+    }
+
+    /**
+     * Сохранение результатов пачки черновиками. Товары без артикула или названия
+     * попадают в ошибки, повторы артикула в пачке — в пропущенные.
+     */
+    @Transactional
+    public DraftOutcome saveDrafts(List<ParseOutcome> outcomes) {
+        List<String> errors = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        Map<String, ParseOutcome> bySku = new LinkedHashMap<>();
+
+        for (ParseOutcome outcome : outcomes) {
+            if (outcome.failed()) {
+                errors.add(outcome.url() + ": " + outcome.error());
+                continue;
+            }
+            ParsedProductData data = outcome.data();
+            if (data.getSku() == null || data.getSku().isBlank()) {
+                errors.add(outcome.url() + ": на странице не найден артикул");
+            } else if (data.getName() == null || data.getName().isBlank()) {
+                errors.add(outcome.url() + ": на странице не найдено название");
+            } else if (bySku.putIfAbsent(data.getSku().trim(), outcome) != null) {
+                skipped.add(data.getSku().trim() + " (повтор в списке)");
+            }
+        }
+
+        List<String> titles = slugService.uniqueProductTitles(bySku.entrySet().stream()
+                .map(entry -> SlugService.slugify(entry.getValue().data().getName(), 150, "product")
+                        + "-" + entry.getKey().toLowerCase())
+                .toList());
+
+        List<ProductDraftRow> rows = new ArrayList<>(bySku.size());
+        int i = 0;
+        for (Map.Entry<String, ParseOutcome> entry : bySku.entrySet()) {
+            ParsedProductData data = entry.getValue().data();
+            String name = data.getName().trim();
+            rows.add(new ProductDraftRow(
+                    entry.getKey(),
+                    name,
+                    titles.get(i++),
+                    data.getDescription(),
+                    data.getShortDescription() != null ? data.getShortDescription()
+                            : (name.length() <= 200 ? name : name.substring(0, 197) + "..."),
+                    data.getPrice(),
+                    entry.getValue().url(),
+                    data.getImageUrls() != null ? data.getImageUrls() : List.of()
+            ));
+        }
+
+        List<String> created = productBulkRepository.insertDrafts(rows);
+        Set<String> createdSet = new HashSet<>(created);
+        for (ProductDraftRow row : rows) {
+            if (!createdSet.contains(row.sku())) {
+                skipped.add(row.sku() + " (уже существует)");
+            }
+        }
+
+        log.debug("Черновики: создано {}, пропущено {}, ошибок {}", created.size(), skipped.size(), errors.size());
+        return new DraftOutcome(created, skipped, errors);
+    }
+
+    private ParseOutcome parseOne(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return new ParseOutcome(url, null, "некорректная ссылка");
+        }
+        if (host == null) {
+            return new ParseOutcome(url, null, "некорректная ссылка");
+        }
+
+        HostLimit limit = hostLimits.computeIfAbsent(host.toLowerCase(), h -> new HostLimit(perHostConcurrency));
+        try {
+            limit.acquire(hostDelayMs);
+            try {
+                return new ParseOutcome(url, router.getParser(url).parse(url), null);
+            } finally {
+                limit.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ParseOutcome(url, null, "прервано");
+        } catch (Exception e) {
+            log.debug("Не удалось спарсить {}: {}", url, e.getMessage());
+            return new ParseOutcome(url, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /**
+     * Ограничение запросов к одному хосту: не больше permits одновременно
+     * и не чаще одного старта запроса в delayMs
+     */
+    private static final class HostLimit {
+
+        private final Semaphore permits;
+        private long nextStartAt;
+
+        HostLimit(int permits) {
+            this.permits = new Semaphore(Math.max(1, permits), true);
+        }
+
+        void acquire(long delayMs) throws InterruptedException {
+            permits.acquire();
+            long waitMs;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                long startAt = Math.max(now, nextStartAt);
+                nextStartAt = startAt + delayMs;
+                waitMs = startAt - now;
+            }
+            if (waitMs > 0) {
+                try {
+                    Thread.sleep(waitMs);
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package ru.fisher.ToolsMarket.service;
+
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.models.EmailOutbox;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Диспетчер outbox: по расписанию забирает пачку писем, отправляет их
+ * через одно SMTP-соединение с ограничением частоты и планирует повторы.
+ * В режиме сводки (app.mail.digest.enabled) накопленные события уходят одним письмом.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "app.mail.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class EmailOutboxDispatcher {
+
+    private static final Duration RATE_WINDOW = Duration.ofMinutes(1);
+
+    private final EmailOutboxService outboxService;
+    private final EmailService emailService;
+
+    @Value("${app.mail.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.max-per-minute:30}")
+    private int maxPerMinute;
+
+    @Value("${app.mail.outbox.sent-retention-days:7}")
+    private int sentRetentionDays;
+
+    @Value("${app.mail.digest.window-ms:300000}")
+    private long digestWindowMs;
+
+    @Value("${app.mail.digest.max-events:50}")
+    private int digestMaxEvents;
+
+    // Верхняя граница событий в одном письме-сводке
+    @Value("${app.mail.digest.max-batch:200}")
+    private int digestMaxBatch;
+
+    // Окно ограничения частоты. Диспетчер вызывается одним потоком планировщика
+    private Instant windowStart = Instant.now();
+    private int sentInWindow;
+
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval-ms:10000}",
+            initialDelayString = "${app.mail.outbox.initial-delay-ms:30000}",
+            scheduler = AsyncConfig.MAIL_SCHEDULER)
+    public void dispatch() {
+        outboxService.drainFailedEmails(batchSize);
+
+        if (availablePermits() <= 0) {
+            log.debug("Лимит отправки писем исчерпан до {}", windowStart.plus(RATE_WINDOW));
+            return;
+        }
+
+        // Сводка проверяется всегда: после выключения режима накопленные события тоже должны уйти
+        dispatchDigest();
+
+        int permits = availablePermits();
+        if (permits <= 0) {
+            return;
+        }
+
+        List<EmailOutbox> batch = outboxService.claimBatch(Math.min(batchSize, permits));
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<MimeMessage, EmailOutbox> messages = new IdentityHashMap<>();
+        for (EmailOutbox entry : batch) {
+            try {
+                messages.put(outboxService.toMessage(entry), entry);
+            } catch (Exception e) {
+                outboxService.markFailed(entry, e);
+            }
+        }
+
+        send(messages);
+    }
+
+    private void dispatchDigest() {
+        List<EmailOutbox> entries = outboxService.claimDigest(
+                digestMaxEvents, Duration.ofMillis(digestWindowMs), digestMaxBatch);
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        try {
+            emailService.sendAll(List.of(outboxService.toDigestMessage(entries)));
+            outboxService.markSent(entries.stream().map(EmailOutbox::getId).toList());
+            log.info("Outbox: отправлена сводка по {} событиям", entries.size());
+        } catch (Exception e) {
+            entries.forEach(entry -> outboxService.markFailed(entry, e));
+        }
+        sentInWindow++;
+    }
+
+    private void send(Map<MimeMessage, EmailOutbox> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        List<Long> sentIds = new ArrayList<>();
+        try {
+            emailService.sendAll(new ArrayList<>(messages.keySet()));
+            messages.values().forEach(entry -> sentIds.add(entry.getId()));
+        } catch (MailSendException e) {
+            // Частичная ошибка: отправлены все, кроме перечисленных в failedMessages
+            Map<Object, Exception> failed = e.getFailedMessages();
+            messages.forEach((message, entry) -> {
+                Exception cause = failed.get(message);
+                if (cause != null) {
+                    outboxService.markFailed(entry, cause);
+                } else {
+                    sentIds.add(entry.getId());
+                }
+            });
+        } catch (MailException e) {
+            // Например, ошибка аутентификации: не отправлено ничего
+            messages.values().forEach(entry -> outboxService.markFailed(entry, e));
+        }
+
+        sentInWindow += messages.size();
+        outboxService.markSent(sentIds);
+        log.info("Outbox: отправлено писем {}, с ошибкой {}", sentIds.size(), messages.size() - sentIds.size());
+    }
+
+    private int availablePermits() {
+        Instant now = Instant.now();
+        if (!now.isBefore(windowStart.plus(RATE_WINDOW))) {
+            windowStart = now;
+            sentInWindow = 0;
+        }
+        return maxPerMinute - sentInWindow;
+    }
+
+    @Scheduled(cron = "${app.mail.outbox.cleanup-cron:0 30 3 * * *}")
+    public void cleanupSent() {
+        int deleted = outboxService.deleteSentBefore(Instant.now().minus(Duration.ofDays(sentRetentionDays)));
+        if (deleted > 0) {
+            log.info("Outbox: удалено отправленных писем: {}", deleted);
+        }
+    }
+}
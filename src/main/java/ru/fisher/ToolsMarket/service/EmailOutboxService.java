@@ -0,0 +1,259 @@
+package ru.fisher.ToolsMarket.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderCreatedEvent;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderEmailPayload;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderItemDto;
+import ru.fisher.ToolsMarket.dto.UserDTO.UserRegistrationEvent;
+import ru.fisher.ToolsMarket.models.EmailOutbox;
+import ru.fisher.ToolsMarket.models.EmailOutboxStatus;
+import ru.fisher.ToolsMarket.models.EmailOutboxType;
+import ru.fisher.ToolsMarket.models.FailedEmail;
+import ru.fisher.ToolsMarket.repository.EmailOutboxRepository;
+import ru.fisher.ToolsMarket.repository.FailedEmailRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Очередь исходящих писем (transactional outbox).
+ * Письма пишутся в БД в транзакции бизнес-операции и отправляются {@link EmailOutboxDispatcher}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailOutboxService {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final FailedEmailRepository failedEmailRepository;
+    private final EmailService emailService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.retry-delay-ms:60000}")
+    private long retryDelayMs;
+
+    @Value("${app.mail.outbox.max-retry-delay-ms:21600000}")
+    private long maxRetryDelayMs;
+
+    @Value("${app.mail.outbox.lock-timeout-ms:600000}")
+    private long lockTimeoutMs;
+
+    // Режим сводки: события копятся и уходят одним письмом
+    @Value("${app.mail.digest.enabled:false}")
+    private boolean digestEnabled;
+
+    // Заказы на эту сумму и выше отправляются сразу, минуя сводку
+    @Value("${app.mail.digest.immediate-order-total:100000}")
+    private BigDecimal immediateOrderTotal;
+
+    @Transactional
+    public EmailOutbox enqueueOrderCreated(OrderCreatedEvent event) {
+        boolean highValue = event.total() != null && event.total().compareTo(immediateOrderTotal) >= 0;
+        return enqueue(EmailOutboxType.ORDER_CREATED, event, digestEnabled && !highValue);
+    }
+
+    @Transactional
+    public EmailOutbox enqueueUserRegistration(UserRegistrationEvent event) {
+        return enqueue(EmailOutboxType.USER_REGISTERED, event, digestEnabled);
+    }
+
+    private EmailOutbox enqueue(EmailOutboxType type, Object payload, boolean digest) {
+        Instant now = Instant.now();
+        EmailOutbox entry = EmailOutbox.builder()
+                .type(type)
+                .recipient(emailService.getAdminEmail())
+                .payloadJson(toJson(payload))
+                .digest(digest)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+        return outboxRepository.save(entry);
+    }
+
+    /**
+     * Захват пачки писем для отправки: строки блокируются (SKIP LOCKED) и переводятся в SENDING.
+     */
+    @Transactional
+    public List<EmailOutbox> claimBatch(int limit) {
+        Instant now = Instant.now();
+        int released = outboxRepository.releaseStale(EmailOutboxStatus.PENDING, EmailOutboxStatus.SENDING,
+                now.minusMillis(lockTimeoutMs));
+        if (released > 0) {
+            log.warn("Возвращено в очередь зависших писем: {}", released);
+        }
+        return lock(false, now, limit);
+    }
+
+    /**
+     * Захват событий для сводки — только если накопилось maxEvents или самое старое ждет дольше окна.
+     */
+    @Transactional
+    public List<EmailOutbox> claimDigest(int maxEvents, Duration window, int limit) {
+        Instant now = Instant.now();
+        Object[] backlog = outboxRepository.digestBacklog(EmailOutboxStatus.PENDING, now).getFirst();
+        long count = ((Number) backlog[0]).longValue();
+        Instant oldest = (Instant) backlog[1];
+
+        if (count == 0 || (count < maxEvents && oldest.isAfter(now.minus(window)))) {
+            return List.of();
+        }
+        return lock(true, now, limit);
+    }
+
+    private List<EmailOutbox> lock(boolean digest, Instant now, int limit) {
+        List<EmailOutbox> batch = outboxRepository.lockDueBatch(digest, now, limit);
+        for (EmailOutbox entry : batch) {
+            entry.setStatus(EmailOutboxStatus.SENDING);
+            entry.setLockedAt(now);
+        }
+        return batch;
+    }
+
+    @Transactional
+    public void markSent(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            outboxRepository.markSent(ids, EmailOutboxStatus.SENT, Instant.now());
+        }
+    }
+
+    /**
+     * Неудачная попытка: экспоненциальная задержка до следующей, после maxAttempts — FAILED.
+     */
+    @Transactional
+    public void markFailed(EmailOutbox entry, Exception ex) {
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts);
+        entry.setLockedAt(null);
+        entry.setLastError(ex.getMessage());
+
+        if (attempts >= maxAttempts) {
+            entry.setStatus(EmailOutboxStatus.FAILED);
+            log.error("Письмо {} ({}) не отправлено после {} попыток", entry.getId(), entry.getType(), attempts, ex);
+        } else {
+            entry.setStatus(EmailOutboxStatus.PENDING);
+            entry.setNextAttemptAt(Instant.now().plus(backoff(attempts)));
+            log.warn("Письмо {} ({}) не отправлено, попытка {}: {}",
+                    entry.getId(), entry.getType(), attempts, ex.getMessage());
+        }
+        outboxRepository.save(entry);
+    }
+
+    Duration backoff(int attempts) {
+        long delay = retryDelayMs << Math.min(attempts - 1, 20);
+        return Duration.ofMillis(Math.min(delay, maxRetryDelayMs));
+    }
+
+    /**
+     * Перенос писем из failed_emails (ошибки до появления outbox) в очередь повторной отправки.
+     * Удаляются только перенесенные строки; строки с нечитаемым payload помечаются
+     * transfer_error и остаются для разбора.
+     */
+    @Transactional
+    public int drainFailedEmails(int limit) {
+        List<FailedEmail> failed = failedEmailRepository.findByTransferErrorIsNullOrderByIdAsc(PageRequest.of(0, limit));
+        List<FailedEmail> transferred = new ArrayList<>(failed.size());
+        for (FailedEmail f : failed) {
+            try {
+                OrderEmailPayload payload = objectMapper.readValue(f.getPayloadJson(), OrderEmailPayload.class);
+                enqueue(EmailOutboxType.ORDER_CREATED, toOrderCreatedEvent(payload), false);
+                transferred.add(f);
+            } catch (JsonProcessingException | RuntimeException e) {
+                log.error("Не удалось перенести failed_email {} в outbox, payload: {}",
+                        f.getId(), f.getPayloadJson(), e);
+                f.markTransferFailed(e);
+            }
+        }
+        failedEmailRepository.deleteAll(transferred);
+        if (!failed.isEmpty()) {
+            log.info("Перенесено в outbox писем из failed_emails: {}, оставлено с ошибкой: {}",
+                    transferred.size(), failed.size() - transferred.size());
+        }
+        return transferred.size();
+    }
+
+    @Transactional
+    public int deleteSentBefore(Instant before) {
+        return outboxRepository.deleteSentBefore(EmailOutboxStatus.SENT, before);
+    }
+
+    @Transactional(readOnly = true)
+    public long countByStatus(EmailOutboxStatus status) {
+        return outboxRepository.countByStatus(status);
+    }
+
+    /**
+     * Сборка MIME-сообщения по записи outbox
+     */
+    public MimeMessage toMessage(EmailOutbox entry) throws MessagingException, JsonProcessingException {
+        return switch (entry.getType()) {
+            case ORDER_CREATED -> emailService.createOrderCreatedMessage(
+                    objectMapper.readValue(entry.getPayloadJson(), OrderCreatedEvent.class));
+            case USER_REGISTERED -> emailService.createUserRegistrationMessage(
+                    objectMapper.readValue(entry.getPayloadJson(), UserRegistrationEvent.class));
+        };
+    }
+
+    /**
+     * Одно письмо-сводка по набору записей outbox
+     */
+    public MimeMessage toDigestMessage(List<EmailOutbox> entries) throws MessagingException, JsonProcessingException {
+        List<OrderCreatedEvent> orders = new ArrayList<>();
+        List<UserRegistrationEvent> registrations = new ArrayList<>();
+        for (EmailOutbox entry : entries) {
+            switch (entry.getType()) {
+                case ORDER_CREATED -> orders.add(
+                        objectMapper.readValue(entry.getPayloadJson(), OrderCreatedEvent.class));
+                case USER_REGISTERED -> registrations.add(
+                        objectMapper.readValue(entry.getPayloadJson(), UserRegistrationEvent.class));
+            }
+        }
+        return emailService.createDigestMessage(orders, registrations);
+    }
+
+    private OrderCreatedEvent toOrderCreatedEvent(OrderEmailPayload payload) {
+        List<OrderItemDto> items = payload.items() == null ? List.of() : payload.items().stream()
+                .map(item -> {
+                    OrderItemDto dto = new OrderItemDto();
+                    dto.setProductName(item.productName());
+                    dto.setQuantity(item.quantity());
+                    dto.setUnitPrice(item.unitPrice());
+                    dto.setOriginalPrice(item.unitPrice());
+                    dto.setSubtotal(item.subtotal());
+                    return dto;
+                })
+                .toList();
+
+        return new OrderCreatedEvent(
+                payload.orderId(),
+                payload.orderNumber(),
+                items,
+                payload.total(),
+                payload.customerEmail(),
+                payload.note()
+        );
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать письмо", e);
+        }
+    }
+}
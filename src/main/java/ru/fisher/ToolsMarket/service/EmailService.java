@@ -1,31 +1,24 @@
 package ru.fisher.ToolsMarket.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.MailException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring6.SpringTemplateEngine;
 import ru.fisher.ToolsMarket.dto.*;
 import ru.fisher.ToolsMarket.dto.OrderDTO.OrderCreatedEvent;
-import ru.fisher.ToolsMarket.dto.OrderDTO.OrderEmailPayload;
 import ru.fisher.ToolsMarket.dto.UserDTO.UserRegistrationEvent;
-import ru.fisher.ToolsMarket.models.FailedEmail;
-import ru.fisher.ToolsMarket.models.OrderStatus;
-import ru.fisher.ToolsMarket.repository.FailedEmailRepository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
@@ -34,8 +27,6 @@ public class EmailService {
 
     public final JavaMailSender mailSender;
     private final SpringTemplateEngine templateEngine;
-    private final FailedEmailRepository failedEmailRepository;
-    private final ObjectMapper objectMapper;
 
     @Value("${app.mail.from}")
     public String from;
@@ -43,17 +34,10 @@ public class EmailService {
     @Value("${app.mail.admin}")
     private String adminEmail;
 
-    @Retryable(
-            retryFor = {
-                    MailException.class,
-                    MessagingException.class
-            },
-            maxAttempts = 3,
-            backoff = @Backoff(delay = 3000, multiplier = 2)
-    )
-    public void sendOrderCreatedEmail(OrderCreatedEvent event) throws MessagingException {
-        log.info("Sending order email for order {}", event.orderNumber());
-
+    /**
+     * Письмо о новом заказе без отправки (для пакетной отправки из outbox)
+     */
+    public MimeMessage createOrderCreatedMessage(OrderCreatedEvent event) throws MessagingException {
         MimeMessage message = mailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
 
@@ -73,40 +57,13 @@ public class EmailService {
         String htmlContent = templateEngine.process("email/order-created", context);
         helper.setText(htmlContent, true);
 
-        mailSender.send(message);
+        return message;
     }
 
-    public OrderEmailPayload toSimpleEmailPayload(OrderCreatedEvent event) {
-        List<SimpleOrderItemDto> simpleItems = event.orderItems().stream()
-                .map(item -> new SimpleOrderItemDto(
-                        item.getProductName(),
-                        item.getQuantity(),
-                        item.getUnitPrice(),
-                        item.getSubtotal()
-                ))
-                .toList();
-
-        return new OrderEmailPayload(
-                event.orderId(),
-                event.orderNumber(),
-                simpleItems, // Используем упрощенный DTO
-                event.total(),
-                event.customerEmail(),
-                event.note()
-        );
-    }
-
-    @Retryable(
-            retryFor = {
-                    MailException.class,
-                    MessagingException.class
-            },
-            maxAttempts = 3,
-            backoff = @Backoff(delay = 3000, multiplier = 2)
-    )
-    public void sendUserRegistrationEmail(UserRegistrationEvent event) throws MessagingException {
-        log.info("Отправка сообщения о регистрации нового пользователя для админа: {}", event.email());
-
+    /**
+     * Письмо о регистрации пользователя без отправки (для пакетной отправки из outbox)
+     */
+    public MimeMessage createUserRegistrationMessage(UserRegistrationEvent event) throws MessagingException {
         MimeMessage message = mailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
 
@@ -123,17 +80,53 @@ public class EmailService {
         String htmlContent = templateEngine.process("email/user-registration", context);
         helper.setText(htmlContent, true);
 
-        mailSender.send(message);
+        return message;
     }
 
     /**
-     * Fallback после всех retry
+     * Сводка по заказам и регистрациям за окно — один рендер и одно письмо
      */
-    @Recover
-    public void recover(Exception ex, OrderCreatedEvent event) {
-        log.error("Email sending FAILED after retries for order {}", event.orderNumber(), ex);
-        OrderEmailPayload payload = toSimpleEmailPayload(event);
-        failedEmailRepository.save(FailedEmail.from(payload, OrderStatus.CREATED, ex, objectMapper));
+    public MimeMessage createDigestMessage(List<OrderCreatedEvent> orders,
+                                           List<UserRegistrationEvent> registrations) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+
+        helper.setFrom(from);
+        helper.setTo(adminEmail);
+        helper.setSubject(String.format("Сводка ToolsMarket48: заказов %d, регистраций %d",
+                orders.size(), registrations.size()));
+
+        BigDecimal ordersTotal = orders.stream()
+                .map(OrderCreatedEvent::total)
+                .filter(Objects::nonNull)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        Context context = new Context();
+        context.setVariable("orders", orders);
+        context.setVariable("registrations", registrations);
+        context.setVariable("ordersTotal", ordersTotal);
+        context.setVariable("formattedDate", LocalDateTime.now()
+                .format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm")));
+
+        String htmlContent = templateEngine.process("email/admin-digest", context);
+        helper.setText(htmlContent, true);
+
+        return message;
+    }
+
+    /**
+     * Отправка пачки писем через одно SMTP-соединение.
+     * При частичной ошибке бросает MailSendException с картой неотправленных сообщений.
+     */
+    public void sendAll(List<MimeMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        mailSender.send(messages.toArray(new MimeMessage[0]));
+    }
+
+    public String getAdminEmail() {
+        return adminEmail;
     }
 
 }
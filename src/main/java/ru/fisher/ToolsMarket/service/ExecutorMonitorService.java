@@ -0,0 +1,67 @@
+package ru.fisher.ToolsMarket.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.dto.ExecutorStatsDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сводка по всем пулам потоков приложения (очереди, активные потоки, ожидание)
+ */
+@Service
+@RequiredArgsConstructor
+public class ExecutorMonitorService {
+
+    private final Map<String, ThreadPoolTaskExecutor> executors;
+    private final Map<String, ThreadPoolTaskScheduler> schedulers;
+    private final MeterRegistry meterRegistry;
+
+    public List<ExecutorStatsDto> getStats() {
+        List<ExecutorStatsDto> stats = new ArrayList<>();
+
+        executors.forEach((name, executor) -> {
+            ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+            stats.add(toStats(name, executor.getThreadNamePrefix(), pool, executor.getQueueCapacity()));
+        });
+
+        schedulers.forEach((name, scheduler) -> {
+            ScheduledThreadPoolExecutor pool = scheduler.getScheduledThreadPoolExecutor();
+            stats.add(toStats(name, scheduler.getThreadNamePrefix(), pool, -1));
+        });
+
+        stats.sort(Comparator.comparing(ExecutorStatsDto::name));
+        return stats;
+    }
+
+    private ExecutorStatsDto toStats(String name, String prefix, ThreadPoolExecutor pool, int queueCapacity) {
+        Timer wait = meterRegistry.find(AsyncConfig.WAIT_TIMER).tag("name", name).timer();
+        Counter rejected = meterRegistry.find(AsyncConfig.REJECTED_COUNTER).tag("name", name).counter();
+
+        return new ExecutorStatsDto(
+                name,
+                prefix,
+                pool.getActiveCount(),
+                pool.getPoolSize(),
+                pool.getMaximumPoolSize(),
+                pool.getQueue().size(),
+                queueCapacity,
+                pool.getCompletedTaskCount(),
+                rejected != null ? (long) rejected.count() : 0,
+                wait != null ? wait.mean(TimeUnit.MILLISECONDS) : 0,
+                wait != null ? wait.max(TimeUnit.MILLISECONDS) : 0
+        );
+    }
+}
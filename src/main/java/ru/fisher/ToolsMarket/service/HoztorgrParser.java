@@ -1,7 +1,7 @@
 package ru.fisher.ToolsMarket.service;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -14,11 +14,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class HoztorgrParser implements ProductPageParser {
 
     private static final String BASE_URL = "https://hoztorgr.ru";
 
+    private final SupplierPageFetcher pageFetcher;
+
     @Override
     public boolean supports(String url) {
         return url.contains("hoztorgr.ru");
@@ -26,12 +29,7 @@ public class HoztorgrParser implements ProductPageParser {
 
     @Override
     public ParsedProductData parse(String url) throws Exception {
-        Document doc = Jsoup.connect(url)
-                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36")
-                .timeout(15000)
-                .ignoreHttpErrors(true)
-                .ignoreContentType(true)
-                .get();
+        Document doc = pageFetcher.fetch(url);
 
         ParsedProductData data = new ParsedProductData();
 
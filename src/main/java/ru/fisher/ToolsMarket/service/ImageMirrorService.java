@@ -0,0 +1,186 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.repository.ImageMirrorJdbcRepository;
+import ru.fisher.ToolsMarket.repository.ImageMirrorJdbcRepository.MirrorResult;
+import ru.fisher.ToolsMarket.util.HttpBodies;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Копирование картинок поставщиков к нам.
+ * <p>
+ * Импорт Excel/YML и парсинг сохраняют в product_image внешние URL поставщиков.
+ * По расписанию такие URL скачиваются пачками: параллельно в виртуальных потоках
+ * (не больше app.images.mirror.concurrency одновременно), с ограничением размера;
+ * app.images.mirror.timeout-ms ограничивает весь обмен, включая чтение тела. Картинка сохраняется в хранилище по хэшу содержимого (ImageStorageService.storeMirrored) —
+ * одна картинка у многих артикулов хранится один раз. Затем внешние URL заменяются
+ * на локальные одним UPDATE. Неудачные URL повторяются не чаще раза
+ * в app.images.mirror.retry-after-seconds, после app.images.mirror.max-attempts попыток остаются внешними.
+ */
+@Slf4j
+@Service
+public class ImageMirrorService {
+
+    private final ImageStorageService imageStorageService;
+    private final ImageMirrorJdbcRepository mirrorRepository;
+
+    @Value("${app.images.mirror.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.mirror.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.images.mirror.concurrency:8}")
+    private int concurrency;
+
+    @Value("${app.images.mirror.max-bytes:10485760}")
+    private long maxBytes;
+
+    @Value("${app.images.mirror.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.images.mirror.retry-after-seconds:3600}")
+    private long retryAfterSeconds;
+
+    @Value("${app.images.mirror.timeout-ms:20000}")
+    private long timeoutMs;
+
+    @Value("${app.base.url:http://localhost:8080}")
+    private String baseUrl;
+
+    private final HttpClient httpClient;
+
+    public ImageMirrorService(ImageStorageService imageStorageService,
+                              ImageMirrorJdbcRepository mirrorRepository,
+                              HttpClient httpClient) {
+        this.imageStorageService = imageStorageService;
+        this.mirrorRepository = mirrorRepository;
+        this.httpClient = httpClient;
+    }
+
+    @Scheduled(fixedDelayString = "${app.images.mirror.interval-ms:60000}",
+            initialDelayString = "${app.images.mirror.initial-delay-ms:60000}",
+            scheduler = AsyncConfig.TASK_SCHEDULER)
+    public void scheduledMirror() {
+        if (enabled) {
+            mirrorPending();
+        }
+    }
+
+    /**
+     * Копирует все ожидающие картинки пачками
+     *
+     * @return сколько URL скопировано
+     */
+    public int mirrorPending() {
+        // Картинки, уже скопированные под тем же URL для других товаров, — без скачивания
+        int rewritten = mirrorRepository.rewriteMirroredUrls();
+        int mirrored = 0;
+        int failed = 0;
+
+        List<String> batch;
+        while (!(batch = mirrorRepository.findPending(baseUrl, maxAttempts, retryAfterSeconds, batchSize)).isEmpty()) {
+            List<MirrorResult> results = downloadAll(batch);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            rewritten += mirrorRepository.saveResults(results);
+            for (MirrorResult result : results) {
+                if (result.failed()) failed++;
+                else mirrored++;
+            }
+        }
+
+        if (mirrored > 0 || failed > 0 || rewritten > 0) {
+            log.info("Картинки поставщиков: скопировано {}, ошибок {}, заменено ссылок {}",
+                    mirrored, failed, rewritten);
+        }
+        return mirrored;
+    }
+
+    private List<MirrorResult> downloadAll(List<String> urls) {
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<MirrorResult>> futures = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return download(url);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            List<MirrorResult> results = new ArrayList<>(urls.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new MirrorResult(urls.get(i), null, null, null, String.valueOf(e.getCause())));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    executor.shutdownNow();
+                    return results;
+                }
+            }
+            return results;
+        }
+    }
+
+    private MirrorResult download(String url) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .header("User-Agent", "Mozilla/5.0 (compatible; ToolsMarket image mirror)")
+                    .GET()
+                    .build();
+            // Срок — на весь обмен вместе с телом: timeout запроса действует только до заголовков
+            return HttpBodies.send(httpClient, request, Duration.ofMillis(timeoutMs), response -> {
+                if (response.statusCode() / 100 != 2) {
+                    return failed(url, "HTTP " + response.statusCode());
+                }
+                String contentType = response.headers().firstValue("Content-Type").orElse("");
+                String extension = ImageStorageService.extensionFor(contentType);
+                if (extension == null) {
+                    return failed(url, "неподдерживаемый тип: " + contentType);
+                }
+                long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                if (length > maxBytes) {
+                    return failed(url, "картинка больше " + maxBytes + " байт");
+                }
+
+                ImageStorageService.StoredImage stored =
+                        imageStorageService.storeMirrored(response.body(), extension, maxBytes);
+                return new MirrorResult(url, stored.url(), stored.contentHash(), stored.size(), null);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(url, "прервано");
+        } catch (HttpTimeoutException e) {
+            return failed(url, "таймаут");
+        } catch (IOException | IllegalArgumentException e) {
+            return failed(url, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static MirrorResult failed(String url, String error) {
+        log.debug("Не удалось скопировать картинку {}: {}", url, error);
+        return new MirrorResult(url, null, null, null, error);
+    }
+}
@@ -10,20 +10,35 @@ import org.springframework.web.multipart.MultipartFile;
 import ru.fisher.ToolsMarket.dto.ImageOrderDto;
 import ru.fisher.ToolsMarket.models.ProductImage;
 import ru.fisher.ToolsMarket.repository.ProductImageRepository;
+import ru.fisher.ToolsMarket.repository.SortOrderJdbcRepository;
+import ru.fisher.ToolsMarket.util.Digests;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ImageStorageService {
 
+    /**
+     * Каталог хранилища по хэшу содержимого внутри app.upload.path
+     */
+    public static final String CONTENT_DIR = "content";
+
     @Value("${app.upload.path:./uploads/images}")
     private String uploadPath;
 
@@ -31,6 +46,7 @@ public class ImageStorageService {
     private String baseUrl;
 
     private final ProductImageRepository productImageRepository;
+    private final SortOrderJdbcRepository sortOrderRepository;
 
     public ProductImage saveImage(MultipartFile file, String productTitle) {
         log.info("Attempting to save image: {}, size: {}, type: {}",
@@ -44,25 +60,13 @@ public class ImageStorageService {
             throw new IllegalArgumentException("Файл не является изображением");
         }
 
-        try {
-            // Создаем директорию если не существует
-            Path uploadDir = Paths.get(uploadPath, "products");
-            Files.createDirectories(uploadDir);
-
-            // Генерируем уникальное имя файла
-            String originalFileName = file.getOriginalFilename();
-            String fileExtension = getFileExtension(originalFileName);
-            String fileName = generateFileName(productTitle, fileExtension);
-
-            // Сохраняем файл
-            Path filePath = uploadDir.resolve(fileName);
-            Files.write(filePath, file.getBytes());
-
-            log.info("Image saved: {}", filePath);
+        try (InputStream in = file.getInputStream()) {
+            StoredImage stored = store(in, uploadExtension(file), Long.MAX_VALUE);
+            log.info("Image saved: {}", stored.url());
 
             // Создаем и возвращаем сущность ProductImage
             return ProductImage.builder()
-                    .url(baseUrl + "/images/products/" + fileName) // Полный URL
+                    .url(stored.url()) // Полный URL
                     .alt(productTitle) // Базовое описание
                     .sortOrder(0)
                     .build();
@@ -72,17 +76,108 @@ public class ImageStorageService {
         }
     }
 
+    /**
+     * Сохраненная картинка: URL, SHA-256 содержимого и размер
+     */
+    public record StoredImage(String url, String contentHash, long size) {}
+
+    /**
+     * Сохраняет скопированную картинку поставщика в общее хранилище по хэшу содержимого
+     *
+     * @param extension расширение с точкой
+     * @throws IOException если поток пустой или длиннее maxBytes
+     */
+    public StoredImage storeMirrored(InputStream in, String extension, long maxBytes) throws IOException {
+        return store(in, extension, maxBytes);
+    }
+
+    /**
+     * Сохраняет картинку под путем из SHA-256 содержимого: content/ab/cd/{хэш}{расширение}.
+     * Одна и та же картинка (у разных товаров, категорий, под разными внешними URL)
+     * хранится одним файлом, а содержимое по URL никогда не меняется — его можно кэшировать
+     * навсегда (WebConfig). Поток пишется во временный файл с подсчетом хэша —
+     * целиком в память не читается.
+     *
+     * @param extension расширение с точкой
+     * @throws IOException если поток пустой или длиннее maxBytes
+     */
+    private StoredImage store(InputStream in, String extension, long maxBytes) throws IOException {
+        Path root = Paths.get(uploadPath, CONTENT_DIR);
+        Files.createDirectories(root);
+        Path tmp = Files.createTempFile(root, "upload", ".tmp");
+        try {
+            MessageDigest digest = Digests.sha256();
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new IOException("Картинка больше " + maxBytes + " байт");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (size == 0) {
+                throw new IOException("Пустой файл");
+            }
+
+            String hash = Digests.hex(digest);
+            String relative = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extension;
+            Path target = root.resolve(relative);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                // Параллельная запись той же картинки перезапишет файл тем же содержимым
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("Картинка сохранена: {}", target);
+            } else {
+                // Свежая дата защищает файл от сборщика (UploadGcService), пока строка со ссылкой
+                // на него еще не сохранена
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                log.debug("Картинка уже есть в хранилище: {}", target);
+            }
+            return new StoredImage(baseUrl + "/images/" + CONTENT_DIR + "/" + relative, hash, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Расширение по Content-Type. Только растровые форматы: SVG может содержать скрипты
+     *
+     * @return null для остальных типов
+     */
+    public static String extensionFor(String contentType) {
+        String type = contentType == null ? "" : contentType.toLowerCase();
+        if (type.startsWith("image/jpeg") || type.startsWith("image/jpg")) return ".jpg";
+        if (type.startsWith("image/png")) return ".png";
+        if (type.startsWith("image/webp")) return ".webp";
+        if (type.startsWith("image/gif")) return ".gif";
+        return null;
+    }
+
+    /**
+     * Новый порядок картинок товара одним запросом
+     *
+     * @throws org.springframework.dao.OptimisticLockingFailureException если картинки товара
+     *         изменились после загрузки страницы (порядок тогда не меняется)
+     */
     @Transactional
-    public void updateImageOrder(List<ImageOrderDto> orderData) {
+    public void updateImageOrder(Long productId, List<ImageOrderDto> orderData) {
         log.info("Обновление порядка сортировки изображений: {}", orderData);
 
+        Map<Long, Integer> order = new HashMap<>();
         for (ImageOrderDto dto : orderData) {
-            ProductImage image = productImageRepository.findById(dto.getId())
-                    .orElseThrow(() -> new RuntimeException("Изображение не найдено: " + dto.getId()));
-
-            image.setSortOrder(dto.getSortOrder());
-            productImageRepository.save(image);
+            if (dto.getId() == null || dto.getSortOrder() == null) {
+                throw new IllegalArgumentException("Не указан id или порядок изображения");
+            }
+            if (order.put(dto.getId(), dto.getSortOrder()) != null) {
+                throw new IllegalArgumentException("Изображение указано дважды: " + dto.getId());
+            }
         }
+        sortOrderRepository.reorderProductImages(productId, order);
     }
 
     public List<ProductImage> saveImages(List<MultipartFile> files, String productTitle) {
@@ -102,20 +197,7 @@ public class ImageStorageService {
     }
 
     public void deleteImage(String imageUrl) {
-        try {
-            // Извлекаем имя файла из URL
-            String fileName = extractFileNameFromUrl(imageUrl);
-            Path filePath = Paths.get(uploadPath,"products", fileName);
-
-            if (Files.exists(filePath)) {
-                Files.delete(filePath);
-                log.info("Image deleted: {}", filePath);
-            } else {
-                log.warn("File not found for deletion: {}", filePath);
-            }
-        } catch (IOException e) {
-            log.error("Failed to delete image: {}", e.getMessage());
-        }
+        deleteFile(imageUrl, "products");
     }
 
     public boolean isImage(MultipartFile file) {
@@ -123,17 +205,20 @@ public class ImageStorageService {
         return contentType != null && contentType.startsWith("image/");
     }
 
-    private String getFileExtension(String fileName) {
+    /**
+     * Расширение загружаемого файла: по Content-Type, для остальных image/* — из имени файла
+     */
+    private String uploadExtension(MultipartFile file) {
+        String extension = extensionFor(file.getContentType());
+        if (extension != null) {
+            return extension;
+        }
+        String fileName = file.getOriginalFilename();
         if (fileName == null || !fileName.contains(".")) {
             return ".jpg";
         }
-        return fileName.substring(fileName.lastIndexOf("."));
-    }
-
-    private String generateFileName(String productTitle, String extension) {
-        String safeTitle = productTitle.replaceAll("[^a-zA-Z0-9-]", "_");
-        String uniqueId = UUID.randomUUID().toString().substring(0, 8);
-        return safeTitle + "_" + uniqueId + "_" + System.currentTimeMillis() + extension;
+        String fromName = fileName.substring(fileName.lastIndexOf(".")).toLowerCase();
+        return fromName.matches("\\.[a-z0-9]{1,5}") ? fromName : ".jpg";
     }
 
     private String extractFileNameFromUrl(String imageUrl) {
@@ -164,22 +249,8 @@ public class ImageStorageService {
             throw new IllegalArgumentException("Размер изображения категории не должен превышать 2MB");
         }
 
-        try {
-            // Создаем поддиректорию для категорий
-            Path categoryDir = Paths.get(uploadPath, "categories");
-            Files.createDirectories(categoryDir);
-
-            // Генерируем уникальное имя файла
-            String originalFileName = file.getOriginalFilename();
-            String fileExtension = getFileExtension(originalFileName);
-            String fileName = generateCategoryFileName(categoryTitle, fileExtension);
-
-            // Сохраняем файл
-            Path filePath = categoryDir.resolve(fileName);
-            Files.write(filePath, file.getBytes());
-
-            // Формируем URL для доступа к изображению
-            String imageUrl = baseUrl + "/images/categories/" + fileName;
+        try (InputStream in = file.getInputStream()) {
+            String imageUrl = store(in, uploadExtension(file), Long.MAX_VALUE).url();
             log.info("Category image saved: {}", imageUrl);
 
             return imageUrl;
@@ -191,46 +262,69 @@ public class ImageStorageService {
     }
 
     /**
-     * Генерирует миниатюру для категории (пока возвращает тот же URL)
+     * Файл нашей картинки по ее URL (baseUrl/images/...)
+     *
+     * @return null для внешних URL и путей за пределами каталога загрузок
+     */
+    public Path resolveLocalFile(String imageUrl) {
+        String prefix = baseUrl + "/images/";
+        if (imageUrl == null || !imageUrl.startsWith(prefix)) {
+            return null;
+        }
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Path file = root.resolve(imageUrl.substring(prefix.length())).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    /**
+     * Удаляет уменьшенные копии картинки ({имя}_w{ширина}.jpg/.png рядом с оригиналом)
      */
-    public String generateThumbnail(String originalImageUrl) {
-        log.info("Generating thumbnail for: {}", originalImageUrl);
-        // Пока просто возвращаем тот же URL
-        // В будущем можно реализовать реальную генерацию миниатюр
-        return originalImageUrl;
+    private void deleteVariants(Path original) {
+        String stem = ImageVariantService.stem(original.getFileName().toString());
+        try (DirectoryStream<Path> variants = Files.newDirectoryStream(original.getParent(), stem + "_w*")) {
+            for (Path variant : variants) {
+                Files.deleteIfExists(variant);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить копии картинки {}: {}", original, e.getMessage());
+        }
     }
 
     /**
      * Удаляет изображение категории
      */
     public void deleteCategoryImage(String imageUrl) {
-        try {
-            // Извлекаем имя файла из URL
-            String fileName = extractFileNameFromUrl(imageUrl);
+        deleteFile(imageUrl, "categories");
+    }
 
-            // Учитываем что файл в поддиректории categories
-            Path filePath = Paths.get(uploadPath, "categories", fileName);
+    /**
+     * Удаляет файл картинки и ее копии. Файл в хранилище по хэшу может быть общим:
+     * он удаляется, только если на него ссылается не больше одной строки
+     * (та, для которой картинка удаляется сейчас).
+     *
+     * @param legacyDir каталог старых картинок с именами из названия, если URL не наш
+     */
+    private void deleteFile(String imageUrl, String legacyDir) {
+        try {
+            Path filePath = resolveLocalFile(imageUrl);
+            if (filePath == null) {
+                filePath = Paths.get(uploadPath, legacyDir, extractFileNameFromUrl(imageUrl));
+            }
 
-            if (Files.exists(filePath)) {
+            if (productImageRepository.countUrlReferences(imageUrl) > 1) {
+                log.info("Image is still in use, keeping file: {}", filePath);
+            } else if (Files.exists(filePath)) {
                 Files.delete(filePath);
-                log.info("Category image deleted: {}", filePath);
+                deleteVariants(filePath);
+                log.info("Image deleted: {}", filePath);
             } else {
-                log.warn("Category image file not found: {}", filePath);
+                log.warn("File not found for deletion: {}", filePath);
             }
         } catch (IOException e) {
-            log.error("Failed to delete category image: {}", e.getMessage(), e);
+            log.error("Failed to delete image: {}", e.getMessage(), e);
         }
     }
 
-    /**
-     * Генерирует имя файла для категории
-     */
-    private String generateCategoryFileName(String categoryTitle, String extension) {
-        String safeTitle = categoryTitle.replaceAll("[^a-zA-Z0-9-]", "_");
-        String uniqueId = UUID.randomUUID().toString().substring(0, 8);
-        return "category_" + safeTitle + "_" + uniqueId + "_" + System.currentTimeMillis() + extension;
-    }
-
     @PostConstruct
     public void init() {
         try {
@@ -0,0 +1,287 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.repository.ImageVariantJdbcRepository;
+import ru.fisher.ToolsMarket.repository.ImageVariantJdbcRepository.ImageRef;
+import ru.fisher.ToolsMarket.repository.ImageVariantJdbcRepository.VariantRow;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Уменьшенные копии картинок для карточек и плиток категорий.
+ * <p>
+ * Сохранение из админки и копирование картинок поставщиков (ImageMirrorService) только
+ * записывают оригинал; копии создаются по расписанию для всех наших картинок с srcset IS NULL.
+ * Для каждой ширины из app.images.variants.widths, меньшей исходной, рядом с оригиналом
+ * пишется файл {имя}_w{ширина}: JPEG с качеством app.images.variants.jpeg-quality,
+ * PNG для картинок с прозрачностью. В базу записываются URL копии ширины
+ * app.images.variants.thumbnail-width (для src) и готовое значение srcset.
+ * Форматы, которые ImageIO не читает (WebP), получают пустой srcset и показываются как есть.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageVariantService {
+
+    /**
+     * URL копии для src и значение srcset
+     */
+    public record ImageVariants(String thumbnailUrl, String srcset) {}
+
+    private static final ImageVariants NONE = new ImageVariants(null, "");
+
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantJdbcRepository variantRepository;
+
+    @Value("${app.images.variants.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.variants.widths:200,400,800}")
+    private int[] widths;
+
+    @Value("${app.images.variants.thumbnail-width:400}")
+    private int thumbnailWidth;
+
+    @Value("${app.images.variants.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    @Value("${app.images.variants.max-pixels:40000000}")
+    private long maxPixels;
+
+    @Value("${app.images.variants.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.base.url:http://localhost:8080}")
+    private String baseUrl;
+
+    @Scheduled(fixedDelayString = "${app.images.variants.interval-ms:30000}",
+            initialDelayString = "${app.images.variants.initial-delay-ms:30000}",
+            scheduler = AsyncConfig.TASK_SCHEDULER)
+    public void scheduledGenerate() {
+        if (enabled) {
+            generatePending();
+        }
+    }
+
+    /**
+     * Создает копии для всех картинок товаров и категорий, у которых их еще нет
+     *
+     * @return сколько строк обработано
+     */
+    public int generatePending() {
+        String localPrefix = baseUrl + "/images/";
+        int products = process(limit -> variantRepository.findProductImagesWithoutVariants(localPrefix, limit),
+                variantRepository::saveProductImageVariants);
+        int categories = process(limit -> variantRepository.findCategoriesWithoutVariants(localPrefix, limit),
+                variantRepository::saveCategoryVariants);
+
+        if (products > 0 || categories > 0) {
+            log.info("Копии картинок созданы: товаров {}, категорий {}", products, categories);
+        }
+        return products + categories;
+    }
+
+    private int process(Function<Integer, List<ImageRef>> finder, Function<List<VariantRow>, Integer> saver) {
+        int processed = 0;
+        List<ImageRef> batch;
+        while (!Thread.currentThread().isInterrupted()
+                && !(batch = finder.apply(batchSize)).isEmpty()) {
+            // Одна картинка у многих товаров (копии поставщика) обрабатывается один раз
+            Map<String, ImageVariants> byUrl = new HashMap<>();
+            List<VariantRow> rows = new ArrayList<>(batch.size());
+            for (ImageRef image : batch) {
+                ImageVariants variants = byUrl.computeIfAbsent(image.url(), this::createVariantsQuietly);
+                rows.add(new VariantRow(image.id(), image.url(), variants.thumbnailUrl(), variants.srcset()));
+            }
+            saver.apply(rows);
+            processed += rows.size();
+        }
+        return processed;
+    }
+
+    private ImageVariants createVariantsQuietly(String imageUrl) {
+        try {
+            return createVariants(imageUrl);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось создать копии картинки {}: {}", imageUrl, e.getMessage());
+            return NONE;
+        }
+    }
+
+    /**
+     * Создает недостающие копии картинки. Уже существующие файлы копий
+     * (та же картинка у другого товара) повторно не кодируются.
+     *
+     * @return копии; пустой srcset, если картинка не наша, не найдена или не читается
+     */
+    public ImageVariants createVariants(String imageUrl) throws IOException {
+        Path original = imageStorageService.resolveLocalFile(imageUrl);
+        if (original == null || !Files.isRegularFile(original)) {
+            log.debug("Файл картинки не найден: {}", imageUrl);
+            return NONE;
+        }
+
+        int[] size = readSize(original);
+        if (size == null) {
+            log.debug("Формат картинки не поддерживается: {}", original);
+            return NONE;
+        }
+        int sourceWidth = size[0];
+        if ((long) sourceWidth * size[1] > maxPixels) {
+            log.warn("Картинка {} слишком большая для уменьшения: {}x{}", original, sourceWidth, size[1]);
+            return NONE;
+        }
+
+        Path dir = original.getParent();
+        String stem = stem(original.getFileName().toString());
+        String dirUrl = imageUrl.substring(0, imageUrl.lastIndexOf('/') + 1);
+
+        TreeMap<Integer, String> variantUrls = new TreeMap<>();
+        BufferedImage source = null;
+        for (int width : IntStream.of(widths).filter(w -> w > 0 && w < sourceWidth).distinct().toArray()) {
+            Path variant = findVariant(dir, stem, width);
+            if (variant == null) {
+                if (source == null) {
+                    source = ImageIO.read(original.toFile());
+                    if (source == null) return NONE;
+                }
+                variant = writeVariant(source, dir, stem, width);
+            }
+            variantUrls.put(width, dirUrl + variant.getFileName());
+        }
+
+        StringJoiner srcset = new StringJoiner(", ");
+        variantUrls.forEach((width, url) -> srcset.add(url + " " + width + "w"));
+        srcset.add(imageUrl + " " + sourceWidth + "w");
+
+        Map.Entry<Integer, String> thumbnail = variantUrls.ceilingEntry(thumbnailWidth);
+        return new ImageVariants(thumbnail != null ? thumbnail.getValue() : imageUrl, srcset.toString());
+    }
+
+    /**
+     * Имя файла без расширения: по нему строятся имена копий
+     */
+    static String stem(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    /**
+     * Размер картинки из заголовка, без декодирования
+     *
+     * @return {ширина, высота} или null, если ImageIO не знает формат
+     */
+    private static int[] readSize(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static Path findVariant(Path dir, String stem, int width) {
+        for (String extension : List.of(".jpg", ".png")) {
+            Path variant = dir.resolve(stem + "_w" + width + extension);
+            if (Files.exists(variant)) return variant;
+        }
+        return null;
+    }
+
+    private Path writeVariant(BufferedImage source, Path dir, String stem, int width) throws IOException {
+        boolean alpha = source.getColorModel().hasAlpha();
+        BufferedImage scaled = resize(source, width, alpha);
+
+        Path target = dir.resolve(stem + "_w" + width + (alpha ? ".png" : ".jpg"));
+        Path tmp = Files.createTempFile(dir, "variant", ".tmp");
+        try {
+            write(scaled, alpha ? "png" : "jpeg", tmp);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Копия картинки сохранена: {}", target);
+            return target;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Уменьшение в несколько шагов не больше чем вдвое: билинейная интерполяция
+     * за один шаг при сильном уменьшении дает ступеньки и муар
+     */
+    private static BufferedImage resize(BufferedImage source, int width, boolean alpha) {
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(targetHeight, h / 2);
+
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != targetHeight);
+        return current;
+    }
+
+    private void write(BufferedImage image, String format, Path file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (param.getCompressionType() == null) {
+                param.setCompressionType(param.getCompressionTypes()[0]);
+            }
+            // JPEG — заданное качество; PNG сжимается без потерь, 0 — максимальное сжатие
+            param.setCompressionQuality("jpeg".equals(format) ? jpegQuality : 0f);
+        }
+        if ("jpeg".equals(format) && param.canWriteProgressive()) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
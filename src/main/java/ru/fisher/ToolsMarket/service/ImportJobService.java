@@ -0,0 +1,519 @@
+package ru.fisher.ToolsMarket.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.batch.ImportJobsConfig;
+import ru.fisher.ToolsMarket.batch.ImportStats;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.dto.ExcelImportResult;
+import ru.fisher.ToolsMarket.dto.ImportJobDto;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
+import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.parsingXml.StemYmlImportService;
+import ru.fisher.ToolsMarket.repository.PriceBulkJdbcRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Запуск задач импорта (см. ImportJobsConfig) в пуле импортов и чтение их состояния.
+ * Запрос только сохраняет файл и получает id запуска; прогресс и результат
+ * берутся из метаданных Spring Batch, поэтому страница импорта переживает перезагрузку.
+ * Загруженный файл хранится в app.import.work-dir до успешного завершения задачи.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImportJobService {
+
+    private static final int MAX_PRICE_CHANGES_IN_RESULT = 1000;
+    private static final int MAX_ERRORS_IN_PROGRESS = 10;
+
+    private final JobRepository jobRepository;
+    private final JobExplorer jobExplorer;
+    private final Map<String, Job> jobs;
+    private final PriceBulkJdbcRepository priceBulkRepository;
+    @Qualifier(AsyncConfig.IMPORT_EXECUTOR)
+    private final TaskExecutor importExecutor;
+
+    @Value("${app.import.work-dir:${java.io.tmpdir}/toolsmarket-imports}")
+    private String workDir;
+
+    @Value("${app.parse.max-urls:1000}")
+    private int maxParseUrls;
+
+    private TaskExecutorJobLauncher jobLauncher;
+
+    // Запуски, созданные раньше, выполнялись предыдущим экземпляром приложения
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    @PostConstruct
+    void initLauncher() throws Exception {
+        jobLauncher = new TaskExecutorJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.setTaskExecutor(importExecutor);
+        jobLauncher.afterPropertiesSet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void failOrphanedOnStartup() {
+        failOrphaned(startedAt);
+    }
+
+    /**
+     * Запуски, оставшиеся в STARTED/STOPPING после падения или передеплоя, помечаются FAILED:
+     * иначе страница импорта вечно опрашивает их прогресс, новый запуск отклоняется
+     * как «уже выполняется», а перезапуск невозможен. Приложение работает в одном
+     * экземпляре, поэтому все такие запуски, созданные до старта, — сироты.
+     *
+     * @param createdBefore не трогать запуски, созданные позже (уже этим экземпляром)
+     * @return сколько запусков помечено
+     */
+    public int failOrphaned(LocalDateTime createdBefore) {
+        int failed = 0;
+        for (String jobName : jobExplorer.getJobNames()) {
+            for (JobExecution execution : jobExplorer.findRunningJobExecutions(jobName)) {
+                if (execution.getCreateTime() != null && !execution.getCreateTime().isBefore(createdBefore)) {
+                    continue;
+                }
+
+                LocalDateTime now = LocalDateTime.now();
+                ExitStatus exitStatus = ExitStatus.FAILED
+                        .addExitDescription("Прервано остановкой приложения");
+                for (StepExecution step : execution.getStepExecutions()) {
+                    if (step.getStatus().isRunning()) {
+                        step.setStatus(BatchStatus.FAILED);
+                        step.setExitStatus(exitStatus);
+                        step.setEndTime(now);
+                        jobRepository.update(step);
+                    }
+                }
+                execution.setStatus(BatchStatus.FAILED);
+                execution.setExitStatus(exitStatus);
+                execution.setEndTime(now);
+                jobRepository.update(execution);
+
+                log.warn("Импорт {} (запуск #{}) не завершился до остановки приложения — помечен FAILED",
+                        jobName, execution.getId());
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Запуск импорта товаров из Excel
+     *
+     * @param updateExisting обновить название и описания у товаров с существующим артикулом
+     * @return id запуска
+     */
+    public long startProducts(InputStream inputStream, String fileName, boolean updateExisting) throws IOException {
+        Path file = saveExcelUpload(inputStream, fileName);
+        return launch(ImportJobsConfig.EXCEL_PRODUCT_IMPORT_JOB, new JobParametersBuilder()
+                .addString(ImportJobsConfig.PARAM_FILE, file.toString())
+                .addString(ImportJobsConfig.PARAM_FILE_NAME, fileName, false)
+                .addString(ImportJobsConfig.PARAM_UPDATE_EXISTING, String.valueOf(updateExisting))
+                .toJobParameters());
+    }
+
+    /**
+     * Запуск импорта цен из Excel
+     *
+     * @return id запуска
+     */
+    public long startPrices(InputStream inputStream, String fileName) throws IOException {
+        Path file = saveExcelUpload(inputStream, fileName);
+        return launch(ImportJobsConfig.PRICE_IMPORT_JOB, new JobParametersBuilder()
+                .addString(ImportJobsConfig.PARAM_FILE, file.toString())
+                .addString(ImportJobsConfig.PARAM_FILE_NAME, fileName, false)
+                .toJobParameters());
+    }
+
+    /**
+     * Запуск импорта YML-фида. Каждый запуск — новый экземпляр задачи (фид по одному URL меняется)
+     *
+     * @return id запуска
+     */
+    public long startYml(String url) {
+        log.info("Импорт из {}", url);
+        return launch(ImportJobsConfig.YML_IMPORT_JOB, new JobParametersBuilder()
+                .addString(ImportJobsConfig.PARAM_URL, url)
+                .addLong(ImportJobsConfig.PARAM_RUN_AT, System.currentTimeMillis())
+                .toJobParameters());
+    }
+
+    /**
+     * Запуск массового парсинга товаров по ссылкам поставщиков.
+     * Ссылки сохраняются в файл — задачу можно перезапустить, как импорт из файла.
+     *
+     * @return id запуска
+     */
+    public long startParse(List<String> urls) throws IOException {
+        List<String> unique = urls.stream()
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .distinct()
+                .toList();
+        if (unique.isEmpty()) {
+            throw new IllegalArgumentException("Список ссылок пуст");
+        }
+        if (unique.size() > maxParseUrls) {
+            throw new IllegalArgumentException("Слишком много ссылок: " + unique.size()
+                    + " (не больше " + maxParseUrls + " за запуск)");
+        }
+
+        Path dir = Path.of(workDir);
+        Files.createDirectories(dir);
+        Path file = Files.write(dir.resolve(UUID.randomUUID() + ".urls"), unique);
+
+        return launch(ImportJobsConfig.PRODUCT_PARSE_JOB, new JobParametersBuilder()
+                .addString(ImportJobsConfig.PARAM_FILE, file.toString())
+                .addString(ImportJobsConfig.PARAM_FILE_NAME, "Ссылок: " + unique.size(), false)
+                .toJobParameters());
+    }
+
+    /**
+     * Выполняющийся запуск задачи — чтобы страница импорта показала его после перехода
+     */
+    public Optional<Long> findRunning(String jobName) {
+        return jobExplorer.findRunningJobExecutions(jobName).stream()
+                .map(JobExecution::getId)
+                .max(Long::compare);
+    }
+
+    /**
+     * Текущее состояние запуска: счетчики, скорость, оценка времени, ошибки строк
+     */
+    public ImportProgressDto progress(long executionId) {
+        JobExecution execution = getExecution(executionId);
+
+        long read = 0, write = 0, filter = 0, skip = 0;
+        long done = -1, total = -1;
+        int errorCount = 0;
+        List<String> errors = new ArrayList<>();
+        String stepName = null;
+
+        for (StepExecution step : execution.getStepExecutions()) {
+            read += step.getReadCount();
+            write += step.getWriteCount();
+            filter += step.getFilterCount();
+            skip += step.getSkipCount();
+
+            ExecutionContext context = step.getExecutionContext();
+            errorCount += ImportStats.count(context, ImportStats.ERRORS);
+            errors.addAll(ImportStats.items(context, ImportStats.ERROR_MESSAGES));
+
+            if (step.getStatus().isRunning() || stepName == null) {
+                stepName = step.getStepName();
+            }
+            long stepTotal = ImportStats.longValue(context, ImportStats.PROGRESS_TOTAL);
+            if (stepTotal > 0) {
+                done = ImportStats.longValue(context, ImportStats.PROGRESS_DONE);
+                total = stepTotal;
+            }
+        }
+
+        LocalDateTime start = execution.getStartTime();
+        LocalDateTime end = execution.getEndTime() != null ? execution.getEndTime() : LocalDateTime.now();
+        long elapsedMillis = start != null ? Math.max(0, Duration.between(start, end).toMillis()) : 0;
+        boolean running = execution.isRunning();
+
+        Double percent = null;
+        if (execution.getStatus() == BatchStatus.COMPLETED) {
+            percent = 100.0;
+        } else if (total > 0 && done >= 0) {
+            // Размер — оценка, до конца задачи не показываем 100%
+            percent = Math.min(99.0, 100.0 * done / total);
+        }
+
+        Long etaSeconds = null;
+        if (running && percent != null && percent > 0) {
+            etaSeconds = Math.round(elapsedMillis / 1000.0 * (100 - percent) / percent);
+        }
+
+        double rowsPerSecond = elapsedMillis > 0 ? read * 1000.0 / elapsedMillis : 0;
+
+        return new ImportProgressDto(
+                execution.getId(),
+                execution.getJobInstance().getJobName(),
+                source(execution),
+                execution.getStatus().name(),
+                running,
+                stepName,
+                read, write, filter, skip,
+                errorCount,
+                errors.subList(Math.max(0, errors.size() - MAX_ERRORS_IN_PROGRESS), errors.size()),
+                percent,
+                rowsPerSecond,
+                elapsedMillis / 1000,
+                etaSeconds,
+                running ? null : failure(execution).orElse(null)
+        );
+    }
+
+    /**
+     * Результат импорта товаров (в том числе частичный — у упавшего запуска)
+     */
+    public ExcelImportResult productResult(long executionId) {
+        JobExecution execution = getExecution(executionId);
+        ExcelImportResult result = new ExcelImportResult();
+
+        for (StepExecution step : execution.getStepExecutions()) {
+            ExecutionContext context = step.getExecutionContext();
+            result.setTotalRows(result.getTotalRows() + (int) step.getReadCount() + (int) step.getReadSkipCount());
+            result.incrementCreated(ImportStats.count(context, ImportStats.CREATED));
+            result.incrementUpdated(ImportStats.count(context, ImportStats.UPDATED));
+            result.setSkipped(result.getSkipped() + ImportStats.count(context, ImportStats.SKIPPED));
+            result.setErrors(result.getErrors() + ImportStats.count(context, ImportStats.ERRORS));
+            result.getCreatedProducts().addAll(ImportStats.items(context, ImportStats.CREATED_ITEMS));
+            result.getUpdatedProducts().addAll(ImportStats.items(context, ImportStats.UPDATED_ITEMS));
+            result.getSkippedProducts().addAll(ImportStats.items(context, ImportStats.SKIPPED_ITEMS));
+            result.getErrorMessages().addAll(ImportStats.items(context, ImportStats.ERROR_MESSAGES));
+        }
+
+        failure(execution).ifPresent(result::addError);
+        return result;
+    }
+
+    /**
+     * Результат импорта цен; изменения берутся из price_change_history
+     */
+    public ImportResult priceResult(long executionId) {
+        JobExecution execution = getExecution(executionId);
+
+        int updated = 0;
+        int samePrice = 0;
+        int notFoundCount = 0;
+        List<String> notFound = new ArrayList<>();
+        for (StepExecution step : execution.getStepExecutions()) {
+            ExecutionContext context = step.getExecutionContext();
+            updated += ImportStats.count(context, ImportStats.UPDATED);
+            samePrice += ImportStats.count(context, ImportStats.SAME_PRICE);
+            notFoundCount += ImportStats.count(context, ImportStats.NOT_FOUND);
+            notFound.addAll(ImportStats.items(context, ImportStats.NOT_FOUND_ITEMS));
+        }
+
+        return new ImportResult(
+                updated, samePrice, notFoundCount, notFound,
+                priceBulkRepository.findHistory(execution.getJobInstance().getInstanceId(),
+                        MAX_PRICE_CHANGES_IN_RESULT),
+                execution.getJobParameters().getString(ImportJobsConfig.PARAM_FILE_NAME), false
+        );
+    }
+
+    /**
+     * Результат импорта YML-фида
+     */
+    public StemYmlImportService.ImportResult ymlResult(long executionId) {
+        JobExecution execution = getExecution(executionId);
+
+        int categories = 0;
+        int offers = 0;
+        int unchanged = 0;
+        int deactivated = 0;
+        for (StepExecution step : execution.getStepExecutions()) {
+            categories += ImportStats.count(step.getExecutionContext(), ImportStats.CATEGORIES);
+            offers += ImportStats.count(step.getExecutionContext(), ImportStats.IMPORTED);
+            unchanged += ImportStats.count(step.getExecutionContext(), ImportStats.UNCHANGED);
+            deactivated += ImportStats.count(step.getExecutionContext(), ImportStats.DEACTIVATED);
+        }
+
+        Optional<String> failure = failure(execution);
+        boolean notModified = execution.getExecutionContext().containsKey(ImportJobsConfig.YML_NOT_MODIFIED);
+        return new StemYmlImportService.ImportResult(failure.isEmpty(), categories, offers,
+                failure.orElse(null), notModified, unchanged, deactivated);
+    }
+
+    /**
+     * Причина, по которой запуск не завершился успешно (пусто — если завершился или еще идет)
+     */
+    public Optional<String> failure(long executionId) {
+        return failure(getExecution(executionId));
+    }
+
+    private Optional<String> failure(JobExecution execution) {
+        long executionId = execution.getId();
+        if (execution.isRunning() || execution.getStatus() == BatchStatus.COMPLETED) {
+            return Optional.empty();
+        }
+        if (execution.getStatus() == BatchStatus.STOPPED) {
+            return Optional.of("Импорт остановлен (запуск #" + executionId + "). "
+                    + "Закоммиченные пачки сохранены, задачу можно продолжить в истории импортов");
+        }
+
+        String cause = execution.getAllFailureExceptions().stream()
+                .map(Throwable::getMessage)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(execution.getExitStatus().getExitDescription());
+
+        // Ошибка заголовка — не сбой, перезапуск ничего не даст
+        if (ExcelProductImportService.MISSING_COLUMNS_MESSAGE.equals(cause)) {
+            return Optional.of(cause);
+        }
+        return Optional.of("Импорт прерван (запуск #" + executionId + "): " + cause
+                + ". Закоммиченные пачки сохранены, задачу можно перезапустить в истории импортов");
+    }
+
+    /**
+     * Остановка запуска: задача завершится после текущего чанка со статусом STOPPED
+     * и может быть продолжена перезапуском
+     */
+    public void stop(long executionId) {
+        JobExecution execution = getExecution(executionId);
+        if (!execution.isRunning()) {
+            throw new IllegalStateException("Импорт #" + executionId + " уже завершен");
+        }
+
+        log.info("Остановка импорта {} (запуск #{})", execution.getJobInstance().getJobName(), executionId);
+        // Так же останавливает SimpleJobOperator: шаг увидит STOPPING при следующем коммите
+        execution.setStatus(BatchStatus.STOPPING);
+        jobRepository.update(execution);
+    }
+
+    /**
+     * Перезапуск упавшей задачи с теми же параметрами:
+     * Spring Batch продолжит с последнего закоммиченного чанка
+     *
+     * @return id нового запуска
+     */
+    public long restart(long executionId) {
+        JobExecution failed = getExecution(executionId);
+        if (!isRestartable(failed)) {
+            throw new IllegalStateException("Запуск #" + executionId + " нельзя перезапустить");
+        }
+
+        log.info("Перезапуск импорта {} (запуск #{})", failed.getJobInstance().getJobName(), executionId);
+        return launch(failed.getJobInstance().getJobName(), failed.getJobParameters());
+    }
+
+    /**
+     * Можно ли перезапустить запуск (упал, последний у экземпляра, файл на месте)
+     */
+    public boolean canRestart(long executionId) {
+        JobExecution execution = jobExplorer.getJobExecution(executionId);
+        return execution != null && isRestartable(execution);
+    }
+
+    /**
+     * Последние запуски всех задач импорта, новые сверху
+     */
+    public List<ImportJobDto> recentExecutions(int limit) {
+        List<JobExecution> executions = new ArrayList<>();
+        for (String jobName : jobExplorer.getJobNames()) {
+            for (JobInstance instance : jobExplorer.getJobInstances(jobName, 0, limit)) {
+                executions.addAll(jobExplorer.getJobExecutions(instance));
+            }
+        }
+
+        return executions.stream()
+                .sorted(Comparator.comparing(JobExecution::getId).reversed())
+                .limit(limit)
+                .map(this::toDto)
+                .toList();
+    }
+
+    private long launch(String jobName, JobParameters parameters) {
+        Job job = jobs.get(jobName);
+        if (job == null) {
+            throw new IllegalArgumentException("Неизвестная задача импорта: " + jobName);
+        }
+
+        try {
+            JobExecution execution = jobLauncher.run(job, parameters);
+            log.info("Импорт {} поставлен в очередь: запуск #{}", jobName, execution.getId());
+            return execution.getId();
+        } catch (JobExecutionException e) {
+            throw new IllegalStateException("Не удалось запустить импорт: " + e.getMessage(), e);
+        }
+    }
+
+    private JobExecution getExecution(long executionId) {
+        JobExecution execution = jobExplorer.getJobExecution(executionId);
+        if (execution == null) {
+            throw new NoSuchElementException("Запуск импорта не найден: " + executionId);
+        }
+        return execution;
+    }
+
+    private boolean isRestartable(JobExecution execution) {
+        if (execution.getStatus() != BatchStatus.FAILED && execution.getStatus() != BatchStatus.STOPPED) {
+            return false;
+        }
+        // Перезапускается только последний запуск экземпляра
+        JobExecution last = jobExplorer.getLastJobExecution(execution.getJobInstance());
+        if (last == null || !last.getId().equals(execution.getId())) {
+            return false;
+        }
+        String file = execution.getJobParameters().getString(ImportJobsConfig.PARAM_FILE);
+        return file == null || Files.exists(Path.of(file));
+    }
+
+    private ImportJobDto toDto(JobExecution execution) {
+        long read = 0, write = 0, filter = 0, skip = 0;
+        int commits = 0;
+        for (StepExecution step : execution.getStepExecutions()) {
+            read += step.getReadCount();
+            write += step.getWriteCount();
+            filter += step.getFilterCount();
+            skip += step.getSkipCount();
+            commits += (int) step.getCommitCount();
+        }
+
+        return new ImportJobDto(
+                execution.getId(),
+                execution.getJobInstance().getInstanceId(),
+                execution.getJobInstance().getJobName(),
+                source(execution),
+                execution.getStatus().name(),
+                execution.getStartTime(),
+                execution.getEndTime(),
+                read, write, filter, skip, commits,
+                execution.getExitStatus().getExitDescription(),
+                isRestartable(execution)
+        );
+    }
+
+    private String source(JobExecution execution) {
+        JobParameters parameters = execution.getJobParameters();
+        return Optional.ofNullable(parameters.getString(ImportJobsConfig.PARAM_FILE_NAME))
+                .orElse(parameters.getString(ImportJobsConfig.PARAM_URL));
+    }
+
+    private Path saveExcelUpload(InputStream inputStream, String fileName) throws IOException {
+        // Проверяем расширение файла
+        if (fileName == null || (!fileName.endsWith(".xlsx") && !fileName.endsWith(".xls"))) {
+            throw new IllegalArgumentException("Поддерживаются только файлы Excel (.xlsx, .xls)");
+        }
+
+        Path dir = Path.of(workDir);
+        Files.createDirectories(dir);
+
+        Path file = dir.resolve(UUID.randomUUID() + fileName.substring(fileName.lastIndexOf('.')));
+        Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+
+        if (Files.size(file) == 0) {
+            Files.deleteIfExists(file);
+            throw new IllegalArgumentException("Файл пустой");
+        }
+        return file;
+    }
+}
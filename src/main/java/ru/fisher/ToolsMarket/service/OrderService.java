@@ -3,6 +3,8 @@ package ru.fisher.ToolsMarket.service;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -10,6 +12,8 @@ import ru.fisher.ToolsMarket.dto.OrderDTO.OrderAdminDto;
 import ru.fisher.ToolsMarket.dto.OrderDTO.OrderCreatedEvent;
 import ru.fisher.ToolsMarket.dto.OrderDTO.OrderItemDto;
 import ru.fisher.ToolsMarket.dto.OrderDTO.OrderStatisticsDto;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderSummaryDto;
+import ru.fisher.ToolsMarket.dto.OrderDTO.UserOrderStatsDto;
 import ru.fisher.ToolsMarket.dto.UserDTO.UserFilterDto;
 import ru.fisher.ToolsMarket.exceptions.InvalidStatusTransitionException;
 import ru.fisher.ToolsMarket.exceptions.OrderFinalizedException;
@@ -35,6 +39,7 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final CartRepository cartRepository;
     private final OrderAdminJdbcRepository orderAdminJdbc;
+    private final OrderHistoryJdbcRepository orderHistoryJdbc;
     private final DiscountService discountService;
     private final ApplicationEventPublisher eventPublisher;
 
@@ -77,6 +82,25 @@ public class OrderService {
         return orderRepository.findByUserIdWithItems(userId);
     }
 
+    /**
+     * Постраничная история заказов пользователя без загрузки позиций.
+     * Позиции загружаются только для просматриваемого заказа.
+     */
+    @Transactional(readOnly = true)
+    public Page<OrderSummaryDto> getUserOrderSummaries(Long userId, OrderStatus status, Pageable pageable) {
+        return orderHistoryJdbc.findUserOrderSummaries(userId, status, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public UserOrderStatsDto getUserOrderStats(Long userId) {
+        return orderHistoryJdbc.getUserOrderStats(userId);
+    }
+
+    @Transactional(readOnly = true)
+    public long countUserOrders(Long userId) {
+        return orderRepository.countByUserId(userId);
+    }
+
     /**
      * Получение заказов пользователя по статусу
      */
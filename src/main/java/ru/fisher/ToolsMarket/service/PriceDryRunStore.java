@@ -0,0 +1,217 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.dto.ReviewedPrice;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище результатов dry-run импорта цен.
+ * Разобранные строки и вычисленная разница пишутся на диск в компактном бинарном формате
+ * под случайным токеном — реальный импорт применяет их без повторной загрузки и разбора файла.
+ * Токен живет app.import.dry-run-ttl-minutes (отчеты мониторинга цен — дольше, см. save с ttl),
+ * просроченные файлы удаляются по расписанию.
+ */
+@Slf4j
+@Service
+public class PriceDryRunStore {
+
+    private static final int MAGIC = 0x50445232; // "PDR2"
+    private static final String SUFFIX = ".bin";
+
+    private final Path dir;
+    private final Duration ttl;
+
+    public PriceDryRunStore(
+            @Value("${app.import.work-dir:${java.io.tmpdir}/toolsmarket-imports}") String workDir,
+            @Value("${app.import.dry-run-ttl-minutes:30}") long ttlMinutes) {
+        this.dir = Path.of(workDir, "dry-run");
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+
+    /**
+     * Проверенный прайс: найденные товары с ценами и артикулы, которых нет в каталоге
+     */
+    public record Snapshot(
+            String filename,
+            Instant createdAt,
+            List<ReviewedPrice> rows,
+            List<String> notFound
+    ) {}
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    /**
+     * Сохраняет результат dry-run
+     *
+     * @return токен для последующего применения
+     */
+    public String save(Snapshot snapshot) throws IOException {
+        return save(snapshot, ttl);
+    }
+
+    /**
+     * Сохраняет результат проверки цен с собственным сроком жизни
+     *
+     * @return токен для последующего применения
+     */
+    public String save(Snapshot snapshot, Duration ttl) throws IOException {
+        Files.createDirectories(dir);
+        String token = UUID.randomUUID().toString();
+        Path tmp = Files.createTempFile(dir, token, ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(snapshot.createdAt().toEpochMilli());
+            out.writeLong(snapshot.createdAt().plus(ttl).toEpochMilli());
+            out.writeUTF(snapshot.filename() != null ? snapshot.filename() : "");
+
+            out.writeInt(snapshot.notFound().size());
+            for (String sku : snapshot.notFound()) {
+                out.writeUTF(sku);
+            }
+
+            out.writeInt(snapshot.rows().size());
+            for (ReviewedPrice row : snapshot.rows()) {
+                out.writeUTF(row.sku());
+                out.writeUTF(row.productName() != null ? row.productName() : "");
+                writeDecimal(out, row.oldPrice());
+                writeDecimal(out, row.newPrice());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        Files.move(tmp, file(token), StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Dry-run {} сохранен: {} строк, не найдено {}",
+                token, snapshot.rows().size(), snapshot.notFound().size());
+        return token;
+    }
+
+    /**
+     * Загружает результат dry-run
+     *
+     * @return пусто, если токен неизвестен или просрочен
+     */
+    public Optional<Snapshot> load(String token) throws IOException {
+        Path file = file(token);
+        if (file == null || !Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неизвестный формат файла dry-run: " + file);
+            }
+            Instant createdAt = Instant.ofEpochMilli(in.readLong());
+            if (Instant.ofEpochMilli(in.readLong()).isBefore(Instant.now())) {
+                Files.deleteIfExists(file);
+                return Optional.empty();
+            }
+            String filename = in.readUTF();
+
+            int notFoundCount = in.readInt();
+            List<String> notFound = new ArrayList<>(notFoundCount);
+            for (int i = 0; i < notFoundCount; i++) {
+                notFound.add(in.readUTF());
+            }
+
+            int rowCount = in.readInt();
+            List<ReviewedPrice> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                rows.add(new ReviewedPrice(in.readUTF(), in.readUTF(), readDecimal(in), readDecimal(in)));
+            }
+            return Optional.of(new Snapshot(filename, createdAt, rows, notFound));
+        } catch (NoSuchFileException e) {
+            // Удален параллельно (применен или очищен)
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Токен одноразовый — после применения файл удаляется
+     */
+    public void remove(String token) {
+        Path file = file(token);
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить dry-run {}: {}", token, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.import.dry-run-cleanup-interval-ms:600000}")
+    public void removeExpired() {
+        if (!Files.isDirectory(dir)) return;
+
+        int removed = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (isExpired(file) && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Ошибка очистки dry-run файлов: {}", e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("Удалено просроченных dry-run файлов: {}", removed);
+        }
+    }
+
+    /**
+     * Срок жизни записан в заголовке файла. Недописанные и файлы старого формата
+     * удаляются по времени изменения и общему ttl
+     */
+    private boolean isExpired(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() == MAGIC) {
+                in.readLong();
+                return Instant.ofEpochMilli(in.readLong()).isBefore(Instant.now());
+            }
+        } catch (EOFException e) {
+            // файл еще пишется или оборван
+        }
+        return Files.getLastModifiedTime(file).toInstant().plus(ttl).isBefore(Instant.now());
+    }
+
+    /**
+     * Токен — UUID; все остальное (в том числе пути) отбрасывается
+     */
+    private Path file(String token) {
+        try {
+            return dir.resolve(UUID.fromString(token) + SUFFIX);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeByte(value.scale());
+        out.writeLong(value.unscaledValue().longValueExact());
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readByte();
+        return new BigDecimal(BigInteger.valueOf(in.readLong()), scale);
+    }
+}
@@ -1,160 +1,172 @@
 package ru.fisher.ToolsMarket.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.openxml4j.util.ZipSecureFile;
-import org.apache.poi.ss.usermodel.*;
 import org.springframework.stereotype.Service;
 import ru.fisher.ToolsMarket.dto.PriceRow;
+import ru.fisher.ToolsMarket.util.StreamingExcelReader;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class PriceExcelParser {
 
-//    static {
-//        // Устанавливаем перед использованием POI
-//        ZipSecureFile.setMinInflateRatio(0.005);
-//    }
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String SKU_COLUMN = "sku";
+    private static final String PRICE_COLUMN = "price";
 
     public List<PriceRow> parse(InputStream inputStream) throws IOException {
-        try (Workbook workbook = WorkbookFactory.create(inputStream)) {
-            List<PriceRow> allRows = new ArrayList<>();
+        List<PriceRow> allRows = new ArrayList<>();
+        parse(inputStream, DEFAULT_CHUNK_SIZE, allRows::addAll);
+        return allRows;
+    }
 
-            // Проверяем ВСЕ листы
-            for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
-                Sheet sheet = workbook.getSheetAt(sheetIndex);
-                String sheetName = sheet.getSheetName();
+    /**
+     * Потоковый разбор всех листов: строки отдаются в consumer пачками не больше chunkSize.
+     * Заголовок (артикул + цена) ищется на каждом листе заново, листы без него пропускаются.
+     *
+     * @return количество найденных строк с ценами
+     */
+    public int parse(InputStream inputStream, int chunkSize, Consumer<List<PriceRow>> consumer)
+            throws IOException {
+        PriceSheetHandler handler = new PriceSheetHandler(chunkSize, consumer);
+        StreamingExcelReader.read(inputStream, handler);
+        handler.flush();
+
+        log.info("Total rows parsed from all sheets: {}", handler.total);
+        return handler.total;
+    }
 
-                log.debug("Processing sheet: {} (index: {})", sheetName, sheetIndex);
+    private static class PriceSheetHandler implements StreamingExcelReader.RowHandler {
 
-                List<PriceRow> sheetRows = parseSheet(sheet);
-                allRows.addAll(sheetRows);
+        private final int chunkSize;
+        private final Consumer<List<PriceRow>> consumer;
+        private List<PriceRow> chunk;
 
-                log.info("Sheet '{}': found {} valid rows", sheetName, sheetRows.size());
-            }
+        private String sheetName;
+        private Map<String, Integer> columns;
+        private int sheetRows;
+        private int total;
 
-            log.info("Total rows parsed from all sheets: {}", allRows.size());
-            return allRows;
+        PriceSheetHandler(int chunkSize, Consumer<List<PriceRow>> consumer) {
+            this.chunkSize = chunkSize;
+            this.consumer = consumer;
+            this.chunk = new ArrayList<>(chunkSize);
         }
-    }
-
-    private Sheet findTargetSheet(Workbook workbook) {
-        // Приоритетные названия листов
-        String[] targetNames = {"Prices", "Прайс", "Price", "Товары", "Products", "Прайс-лист"};
 
-        for (String targetName : targetNames) {
-            Sheet sheet = workbook.getSheet(targetName);
-            if (sheet != null) {
-                return sheet;
-            }
+        @Override
+        public boolean startSheet(int sheetIndex, String sheetName) {
+            log.debug("Processing sheet: {} (index: {})", sheetName, sheetIndex);
+            this.sheetName = sheetName;
+            this.columns = null;
+            this.sheetRows = 0;
+            return true;
         }
 
-        // Ищем по частичному совпадению
-        for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-            Sheet sheet = workbook.getSheetAt(i);
-            String sheetName = sheet.getSheetName().toLowerCase();
-
-            if (sheetName.contains("price") ||
-                    sheetName.contains("прайс") ||
-                    sheetName.contains("товар") ||
-                    sheetName.contains("product")) {
-                return sheet;
+        @Override
+        public void row(int rowIndex, String[] cells) {
+            if (columns == null) {
+                columns = detectHeader(cells);
+                return;
             }
-        }
 
-        return null;
-    }
-
-    private List<PriceRow> parseSheet(Sheet sheet) {
-        int articleCol = -1;
-        int priceCol = -1;
-        int headerRowIndex = -1;
-
-        // Ищем строку заголовков
-        for (Row row : sheet) {
-            for (Cell cell : row) {
-                if (cell.getCellType() == CellType.STRING) {
-                    String value = cell.getStringCellValue().toLowerCase();
-
-                    if (value.contains("артикул") || value.contains("sku") || value.contains("код")) {
-                        articleCol = cell.getColumnIndex();
-                    }
-                    if (value.contains("прайс") || value.contains("цена") || value.contains("price")) {
-                        priceCol = cell.getColumnIndex();
-                    }
-                }
+            PriceRow row = toPriceRow(cells, columns);
+            if (row == null) {
+                return; // не товар
             }
 
-            if (articleCol != -1 && priceCol != -1) {
-                headerRowIndex = row.getRowNum();
-                break;
+            chunk.add(row);
+            sheetRows++;
+            total++;
+            if (chunk.size() >= chunkSize) {
+                flush();
             }
         }
 
-        // Если не нашли заголовки в этом листе
-        if (headerRowIndex == -1) {
-            log.debug("Sheet '{}': no headers found, skipping", sheet.getSheetName());
-            return List.of();
+        @Override
+        public void endSheet() {
+            if (columns == null) {
+                log.debug("Sheet '{}': no headers found, skipping", sheetName);
+                return;
+            }
+            log.info("Sheet '{}': found {} valid rows", sheetName, sheetRows);
         }
 
-        // Читаем строки товаров
-        List<PriceRow> result = new ArrayList<>();
-
-        for (int i = headerRowIndex + 1; i <= sheet.getLastRowNum(); i++) {
-            Row row = sheet.getRow(i);
-            if (row == null) continue;
-
-            String article = getString(row.getCell(articleCol));
-            BigDecimal price = getPrice(row.getCell(priceCol));
+        void flush() {
+            if (chunk.isEmpty()) return;
+            consumer.accept(chunk);
+            chunk = new ArrayList<>(chunkSize);
+        }
+    }
 
-            if (article == null || price == null) {
-                continue; // не товар
+    /**
+     * Строка заголовков — та, где нашлись и артикул, и цена
+     *
+     * @return индексы столбцов "sku" и "price" или null, если это не заголовок
+     */
+    public static Map<String, Integer> detectHeader(String[] cells) {
+        int article = -1;
+        int price = -1;
+
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == null) continue;
+            String value = cells[i].toLowerCase();
+
+            if (value.contains("артикул") || value.contains("sku") || value.contains("код")) {
+                article = i;
+            }
+            if (value.contains("прайс") || value.contains("цена") || value.contains("price")) {
+                price = i;
             }
-
-            result.add(new PriceRow(article, price));
         }
 
-        return result;
+        if (article == -1 || price == -1) {
+            return null;
+        }
+        return Map.of(SKU_COLUMN, article, PRICE_COLUMN, price);
     }
 
-    private String getString(Cell cell) {
-        if (cell == null) return null;
+    /**
+     * Строка с артикулом и ценой или null, если строка — не товар
+     */
+    public static PriceRow toPriceRow(String[] cells, Map<String, Integer> columns) {
+        String article = getString(StreamingExcelReader.cell(cells, columns.get(SKU_COLUMN)));
+        BigDecimal price = getPrice(StreamingExcelReader.cell(cells, columns.get(PRICE_COLUMN)));
 
-        return switch (cell.getCellType()) {
-            case STRING -> cell.getStringCellValue().trim();
-            case NUMERIC -> String.valueOf((long) cell.getNumericCellValue());
-            default -> null;
-        };
+        if (article == null || price == null) {
+            return null;
+        }
+        return new PriceRow(article, price);
     }
 
-    private BigDecimal getPrice(Cell cell) {
-        if (cell == null) return null;
+    private static String getString(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
 
-        if (cell.getCellType() == CellType.NUMERIC) {
-            return BigDecimal.valueOf(cell.getNumericCellValue());
-        }
+    private static BigDecimal getPrice(String value) {
+        if (value == null) return null;
 
-        if (cell.getCellType() == CellType.STRING) {
-            String raw = cell.getStringCellValue()
-                    .replace("\u00A0", "") // неразрывный пробел
-                    .replace(" ", "")
-                    .replace(",", ".")
-                    .trim();
+        String raw = value
+                .replace("\u00A0", "") // неразрывный пробел
+                .replace(" ", "")
+                .replace(",", ".")
+                .trim();
 
-            if (raw.isEmpty()) return null;
+        if (raw.isEmpty()) return null;
 
-            try {
-                return new BigDecimal(raw);
-            } catch (NumberFormatException e) {
-                return null;
-            }
+        try {
+            return new BigDecimal(raw);
+        } catch (NumberFormatException e) {
+            return null;
         }
-
-        return null;
     }
 }
@@ -5,15 +5,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.fisher.ToolsMarket.dto.ImportResult;
 import ru.fisher.ToolsMarket.dto.PriceChange;
 import ru.fisher.ToolsMarket.dto.PriceRow;
+import ru.fisher.ToolsMarket.dto.ReviewedPrice;
 import ru.fisher.ToolsMarket.models.Product;
+import ru.fisher.ToolsMarket.repository.PriceBulkJdbcRepository;
 import ru.fisher.ToolsMarket.repository.ProductRepository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -24,61 +31,29 @@ public class PriceImportService {
 
     private final PriceExcelParser excelParser;
     private final ProductRepository productRepository;
+    private final PriceBulkJdbcRepository priceBulkRepository;
+    private final PriceDryRunStore dryRunStore;
 
     @Value("${app.import.batch-size}")
     private int batchSize;
 
     /**
-     * Реальный импорт с сохранением в БД
+     * Применение пачки цен (writer задачи priceImportJob, см. ImportJobsConfig).
+     * Строки пачки заливаются COPY во временную таблицу,
+     * цены меняются одним UPDATE, изменения берутся из RETURNING.
+     * Каждая пачка коммитится отдельно — при падении задача продолжится со следующей.
      */
     @Transactional
-    public ImportResult importPrices(InputStream is, String filename) throws IOException {
-        long startTime = System.currentTimeMillis();
-
-        List<PriceRow> rows = excelParser.parse(is);
-        log.info("Обычный импорт цен для {} товаров", rows.size());
-
-        Set<String> skus = rows.stream().map(PriceRow::sku).collect(Collectors.toSet());
-        Map<String, Product> productMap = productRepository.findAllBySkus(skus).stream()
-                .collect(Collectors.toMap(Product::getSku, p -> p));
-
-        List<PriceChange> changes = new ArrayList<>();
-        int samePrice = 0;
-        List<String> notFound = new ArrayList<>();
-        List<Product> productsToUpdate = new ArrayList<>();
-
-        for (PriceRow row : rows) {
-            Product product = productMap.get(row.sku());
-
-            if (product == null) {
-                notFound.add(row.sku());
-                continue;
-            }
+    public ImportResult applyPrices(List<PriceRow> rows, String filename) throws IOException {
+        priceBulkRepository.stagePrices(sink -> sink.accept(rows));
 
-            if (product.getPrice().compareTo(row.price()) != 0) {
-                changes.add(new PriceChange(
-                        row.sku(), product.getTitle(),
-                        product.getPrice(), row.price()
-                ));
-                product.setPrice(row.price());
-                product.setUpdatedAt(Instant.now());
-                productsToUpdate.add(product);
-            } else {
-                samePrice++;
-            }
-        }
-
-        if (!productsToUpdate.isEmpty()) {
-            // Сохраняем пакетами
-            for (int i = 0; i < productsToUpdate.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, productsToUpdate.size());
-                productRepository.saveAll(productsToUpdate.subList(i, end));
-            }
-        }
+        List<String> notFound = priceBulkRepository.findStagedNotFound();
+        int matched = priceBulkRepository.countStagedMatched();
+        List<PriceChange> changes = priceBulkRepository.applyStagedPrices();
+        int samePrice = matched - changes.size();
 
-        long endTime = System.currentTimeMillis();
-        log.info("Обычный импорт завершен за {} мс. Обновлено: {}, без изменений: {}, не найдено: {}",
-                (endTime - startTime), changes.size(), samePrice, notFound.size());
+        log.debug("Пачка цен: {} строк, обновлено {}, без изменений {}, не найдено {}",
+                rows.size(), changes.size(), samePrice, notFound.size());
 
         return new ImportResult(
                 changes.size(), samePrice, notFound.size(),
@@ -87,45 +62,108 @@ public class PriceImportService {
     }
 
     /**
-     * Dry-run: только проверка без сохранения
+     * Dry-run: только проверка без сохранения.
+     * Разобранные строки и разница с каталогом сохраняются под токеном (см. PriceDryRunStore) —
+     * по нему applyDryRun применит ровно эти изменения без повторной загрузки файла.
+     * Повторы артикула схлопываются: действует последняя строка файла, как и при импорте.
      */
     @Transactional(readOnly = true)
     public ImportResult dryRunImport(InputStream is, String filename) throws IOException {
         long startTime = System.currentTimeMillis();
 
-        List<PriceRow> rows = excelParser.parse(is);
-        log.info("Dry-run для {} товаров", rows.size());
-
-        Set<String> skus = rows.stream().map(PriceRow::sku).collect(Collectors.toSet());
-        Map<String, Product> productMap = productRepository.findAllBySkusOptimized(skus).stream()
-                .collect(Collectors.toMap(Product::getSku, p -> p));
+        Map<String, BigDecimal> filePrices = new LinkedHashMap<>();
+        int total = excelParser.parse(is, batchSize, chunk -> {
+            for (PriceRow row : chunk) {
+                filePrices.remove(row.sku());
+                filePrices.put(row.sku(), row.price().setScale(2, RoundingMode.HALF_UP));
+            }
+        });
+        log.info("Dry-run для {} строк ({} артикулов)", total, filePrices.size());
 
+        List<ReviewedPrice> reviewed = new ArrayList<>(filePrices.size());
         List<PriceChange> changes = new ArrayList<>();
-        int samePrice = 0;
         List<String> notFound = new ArrayList<>();
+        int samePrice = 0;
 
-        for (PriceRow row : rows) {
-            Product product = productMap.get(row.sku());
-
-            if (product == null) {
-                notFound.add(row.sku());
-                continue;
-            }
-
-            if (product.getPrice().compareTo(row.price()) != 0) {
-                changes.add(new PriceChange(
-                        row.sku(), product.getTitle(),
-                        product.getPrice(), row.price()
-                ));
-            } else {
-                samePrice++;
+        List<String> skus = new ArrayList<>(filePrices.keySet());
+        for (int from = 0; from < skus.size(); from += batchSize) {
+            List<String> batch = skus.subList(from, Math.min(from + batchSize, skus.size()));
+            Map<String, Product> productMap = productRepository.findAllBySkusOptimized(new HashSet<>(batch)).stream()
+                    .collect(Collectors.toMap(Product::getSku, p -> p, (a, b) -> a));
+
+            for (String sku : batch) {
+                Product product = productMap.get(sku);
+
+                if (product == null) {
+                    notFound.add(sku);
+                    continue;
+                }
+
+                ReviewedPrice row = new ReviewedPrice(sku, product.getTitle(),
+                        product.getPrice(), filePrices.get(sku));
+                reviewed.add(row);
+                if (row.isChanged()) {
+                    changes.add(new PriceChange(sku, row.productName(), row.oldPrice(), row.newPrice()));
+                } else {
+                    samePrice++;
+                }
             }
         }
 
+        String token = dryRunStore.save(new PriceDryRunStore.Snapshot(
+                filename, Instant.now(), reviewed, notFound));
+
         long endTime = System.currentTimeMillis();
         log.info("Dry-run завершен за {} мс. Будет обновлено: {}, без изменений: {}, не найдено: {}",
                 (endTime - startTime), changes.size(), samePrice, notFound.size());
 
-        return ImportResult.dryRun(changes, notFound, samePrice, filename);
+        return ImportResult.dryRun(changes, notFound, samePrice, filename).withToken(token);
+    }
+
+    /**
+     * Применение проверенных цен одним UPDATE (автоприменение мониторинга цен).
+     * Как и в applyDryRun, товар обновляется, только если его цена не изменилась с момента проверки.
+     */
+    @Transactional
+    public PriceBulkJdbcRepository.ReviewedApplyResult applyReviewed(List<ReviewedPrice> rows) throws IOException {
+        if (rows.isEmpty()) {
+            return new PriceBulkJdbcRepository.ReviewedApplyResult(List.of(), List.of());
+        }
+        return priceBulkRepository.applyReviewedPrices(rows);
+    }
+
+    /**
+     * Применение проверенного dry-run по токену: файл не загружается и не разбирается заново.
+     * Меняются только цены, которые не изменились с момента проверки;
+     * остальные возвращаются в conflictArticles — для них нужен новый dry-run.
+     *
+     * @throws IllegalStateException если токен неизвестен или просрочен
+     */
+    @Transactional
+    public ImportResult applyDryRun(String token) throws IOException {
+        PriceDryRunStore.Snapshot snapshot = dryRunStore.load(token)
+                .orElseThrow(() -> new IllegalStateException(
+                        "Предпросмотр устарел или уже применен — загрузите файл заново"));
+
+        PriceBulkJdbcRepository.ReviewedApplyResult applied =
+                priceBulkRepository.applyReviewedPrices(snapshot.rows());
+
+        int samePrice = (int) snapshot.rows().stream().filter(row -> !row.isChanged()).count();
+        log.info("Применен dry-run {} ({}): обновлено {}, изменились после проверки {}",
+                token, snapshot.filename(), applied.applied().size(), applied.conflicts().size());
+
+        // Токен одноразовый, но удаляется только после коммита — при откате его можно применить снова
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dryRunStore.remove(token);
+            }
+        });
+
+        return new ImportResult(
+                applied.applied().size(), samePrice, snapshot.notFound().size(), snapshot.notFound(),
+                applied.applied(), snapshot.filename(), LocalDateTime.now(), false,
+                null, applied.conflicts()
+        );
     }
 }
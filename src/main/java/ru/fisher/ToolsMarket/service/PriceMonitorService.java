@@ -0,0 +1,196 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.dto.PriceChange;
+import ru.fisher.ToolsMarket.dto.ReviewedPrice;
+import ru.fisher.ToolsMarket.repository.PriceBulkJdbcRepository;
+import ru.fisher.ToolsMarket.repository.ProductBulkJdbcRepository;
+import ru.fisher.ToolsMarket.repository.ProductBulkJdbcRepository.PriceSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Мониторинг цен поставщиков по ссылкам, с которых товары были спарсены (product.source_url).
+ * <p>
+ * Страницы перепарсиваются теми же парсерами и с теми же ограничениями на хост,
+ * что и массовый парсинг (BulkProductParseService). Результат — отчет в форме dry-run
+ * импорта цен: изменения сохраняются в PriceDryRunStore под токеном и применяются
+ * администратором так же, как проверенный прайс. Изменения не меньше
+ * app.parse.monitor.auto-apply-percent (если задан) применяются сразу одним UPDATE.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PriceMonitorService {
+
+    private final ProductBulkJdbcRepository productBulkRepository;
+    private final BulkProductParseService parseService;
+    private final PriceImportService priceImportService;
+    private final PriceDryRunStore dryRunStore;
+    @Qualifier(AsyncConfig.IMPORT_EXECUTOR)
+    private final TaskExecutor importExecutor;
+
+    @Value("${app.parse.monitor.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.parse.batch-size:50}")
+    private int batchSize;
+
+    // 0 — автоприменение выключено
+    @Value("${app.parse.monitor.auto-apply-percent:0}")
+    private BigDecimal autoApplyPercent;
+
+    @Value("${app.parse.monitor.report-ttl-hours:48}")
+    private long reportTtlHours;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Report lastReport;
+
+    /**
+     * Отчет последней проверки
+     *
+     * @param result      изменения в форме dry-run; токен применяет их через PriceImportService.applyDryRun
+     * @param autoApplied изменения, примененные автоматически
+     * @param conflicts   артикулы, цена которых изменилась во время проверки (не применены)
+     * @param errors      товары, страницу которых не удалось разобрать, с причиной
+     */
+    public record Report(
+            Instant startedAt,
+            Instant finishedAt,
+            int checked,
+            ImportResult result,
+            List<PriceChange> autoApplied,
+            List<String> conflicts,
+            List<String> errors
+    ) {}
+
+    public Optional<Report> lastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Scheduled(cron = "${app.parse.monitor.cron:0 0 5 * * *}", scheduler = AsyncConfig.TASK_SCHEDULER)
+    public void scheduledCheck() {
+        if (enabled && !start()) {
+            log.info("Мониторинг цен: предыдущая проверка еще идет, запуск пропущен");
+        }
+    }
+
+    /**
+     * Запуск проверки в пуле импорта
+     *
+     * @return false, если проверка уже идет или пул импорта переполнен
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            importExecutor.execute(() -> {
+                try {
+                    lastReport = check();
+                } catch (Exception e) {
+                    log.error("Мониторинг цен завершился с ошибкой", e);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            running.set(false);
+            return false;
+        }
+    }
+
+    /**
+     * Проверка всех товаров со ссылкой на поставщика: пачками по app.parse.batch-size,
+     * чтобы в памяти не держать весь каталог
+     */
+    Report check() throws Exception {
+        Instant startedAt = Instant.now();
+        List<ReviewedPrice> reviewed = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        int checked = 0;
+
+        long afterId = 0;
+        List<PriceSource> batch;
+        while (!(batch = productBulkRepository.findPriceSources(afterId, batchSize)).isEmpty()) {
+            List<BulkProductParseService.ParseOutcome> outcomes =
+                    parseService.parseAll(batch.stream().map(PriceSource::sourceUrl).toList());
+
+            for (int i = 0; i < batch.size(); i++) {
+                PriceSource source = batch.get(i);
+                BulkProductParseService.ParseOutcome outcome = outcomes.get(i);
+                if (outcome.failed()) {
+                    errors.add(source.sku() + " (" + source.sourceUrl() + "): " + outcome.error());
+                } else if (outcome.data().getPrice() == null
+                        || outcome.data().getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+                    errors.add(source.sku() + " (" + source.sourceUrl() + "): на странице не найдена цена");
+                } else {
+                    reviewed.add(new ReviewedPrice(source.sku(), source.title(), source.price(),
+                            outcome.data().getPrice().setScale(2, RoundingMode.HALF_UP)));
+                }
+            }
+            checked += batch.size();
+            afterId = batch.get(batch.size() - 1).id();
+        }
+
+        List<ReviewedPrice> autoRows = new ArrayList<>();
+        List<ReviewedPrice> reportRows = new ArrayList<>();
+        for (ReviewedPrice row : reviewed) {
+            (row.isChanged() && isAutoApplied(row) ? autoRows : reportRows).add(row);
+        }
+
+        PriceBulkJdbcRepository.ReviewedApplyResult applied = priceImportService.applyReviewed(autoRows);
+
+        List<PriceChange> changes = reportRows.stream()
+                .filter(ReviewedPrice::isChanged)
+                .map(row -> new PriceChange(row.sku(), row.productName(), row.oldPrice(), row.newPrice()))
+                .toList();
+        int samePrice = reportRows.size() - changes.size();
+
+        String token = dryRunStore.save(
+                new PriceDryRunStore.Snapshot("Мониторинг цен поставщиков", startedAt, reportRows, List.of()),
+                Duration.ofHours(reportTtlHours));
+        ImportResult result = ImportResult.dryRun(changes, List.of(), samePrice, "Мониторинг цен поставщиков")
+                .withToken(token);
+
+        Report report = new Report(startedAt, Instant.now(), checked, result,
+                applied.applied(), applied.conflicts(), errors);
+        log.info("Мониторинг цен: проверено {}, изменений к применению {}, применено автоматически {}, ошибок {}",
+                checked, changes.size(), applied.applied().size(), errors.size());
+        return report;
+    }
+
+    /**
+     * Изменение цены не меньше порога в процентах от текущей
+     */
+    private boolean isAutoApplied(ReviewedPrice row) {
+        if (autoApplyPercent.signum() <= 0 || row.oldPrice().signum() <= 0) {
+            return false;
+        }
+        BigDecimal percent = row.newPrice().subtract(row.oldPrice()).abs()
+                .multiply(BigDecimal.valueOf(100))
+                .divide(row.oldPrice(), 2, RoundingMode.HALF_UP);
+        return percent.compareTo(autoApplyPercent) >= 0;
+    }
+}
@@ -0,0 +1,132 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.repository.ProductBulkJdbcRepository;
+
+import java.util.*;
+
+/**
+ * Генерация slug (title для URL) для импорта товаров и категорий.
+ * <p>
+ * Правила те же, что были в импортерах: транслитерация кириллицы, из остального
+ * остаются только латиница и цифры, пробелы и дефисы становятся одним '_',
+ * '_' по краям отбрасываются, результат в нижнем регистре и не длиннее maxLength.
+ * Всё делается за один проход по строке — без регулярных выражений и временных map.
+ */
+@Service
+@RequiredArgsConstructor
+public class SlugService {
+
+    // Кириллица Ё..ё (U+0401..U+0451) → латиница
+    private static final char TABLE_START = 'Ё';
+    private static final String[] TABLE = new String['ё' - TABLE_START + 1];
+
+    static {
+        String lower = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя";
+        String upper = "АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯ";
+        String[] latin = {"a", "b", "v", "g", "d", "e", "yo", "zh", "z", "i", "y", "k", "l", "m", "n", "o",
+                "p", "r", "s", "t", "u", "f", "kh", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya"};
+        for (int i = 0; i < latin.length; i++) {
+            // Slug в нижнем регистре — для заглавных та же запись
+            TABLE[lower.charAt(i) - TABLE_START] = latin[i];
+            TABLE[upper.charAt(i) - TABLE_START] = latin[i];
+        }
+    }
+
+    private final ProductBulkJdbcRepository productBulkRepository;
+
+    /**
+     * Slug из текста
+     *
+     * @param fallbackPrefix если из текста ничего не осталось («№», только иероглифы) —
+     *                       prefix-хэш текста. Slug категории служит ключом при импорте,
+     *                       поэтому для одного текста он всегда один и тот же
+     */
+    public static String slugify(String text, int maxLength, String fallbackPrefix) {
+        if (text == null || text.isEmpty()) {
+            return fallback(fallbackPrefix, "");
+        }
+
+        StringBuilder slug = new StringBuilder(Math.min(text.length() + 8, maxLength + 1));
+        boolean separator = false;
+
+        for (int i = 0; i < text.length() && slug.length() <= maxLength; i++) {
+            char c = text.charAt(i);
+
+            if (c >= TABLE_START && c - TABLE_START < TABLE.length && TABLE[c - TABLE_START] != null) {
+                String latin = TABLE[c - TABLE_START];
+                if (!latin.isEmpty()) {
+                    if (separator && !slug.isEmpty()) slug.append('_');
+                    separator = false;
+                    slug.append(latin);
+                }
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                if (separator && !slug.isEmpty()) slug.append('_');
+                separator = false;
+                slug.append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                if (separator && !slug.isEmpty()) slug.append('_');
+                separator = false;
+                slug.append((char) (c + ('a' - 'A')));
+            } else if (c == ' ' || c == '-' || (c >= '\t' && c <= '\r')) {
+                separator = true;
+            }
+            // Остальные символы отбрасываются
+        }
+
+        if (slug.length() > maxLength) {
+            slug.setLength(maxLength);
+        }
+        if (!slug.isEmpty() && slug.charAt(slug.length() - 1) == '_') {
+            slug.setLength(slug.length() - 1);
+        }
+
+        return slug.isEmpty()
+                ? fallback(fallbackPrefix, text)
+                : slug.toString();
+    }
+
+    private static String fallback(String prefix, String text) {
+        // String.hashCode задан спецификацией — одинаков на всех JVM и между запусками
+        return prefix + "-" + String.format("%08x", text.hashCode());
+    }
+
+    /**
+     * Уникальные title товаров для пачки кандидатов: один запрос на пачку,
+     * второй — только если есть совпадения. Занятые title получают суффикс -2, -3, ...
+     *
+     * @return title в порядке кандидатов
+     */
+    public List<String> uniqueProductTitles(List<String> candidates) {
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> taken = productBulkRepository.findExistingTitles(new HashSet<>(candidates));
+
+        Set<String> seen = new HashSet<>();
+        Set<String> collided = new LinkedHashSet<>();
+        for (String candidate : candidates) {
+            if (taken.contains(candidate) || !seen.add(candidate)) {
+                collided.add(candidate);
+            }
+        }
+        if (collided.isEmpty()) {
+            return candidates;
+        }
+        taken.addAll(productBulkRepository.findSuffixedTitles(collided));
+
+        List<String> titles = new ArrayList<>(candidates.size());
+        Set<String> used = new HashSet<>();
+        for (String candidate : candidates) {
+            String title = candidate;
+            for (int n = 2; taken.contains(title) || used.contains(title); n++) {
+                title = candidate + "-" + n;
+            }
+            used.add(title);
+            titles.add(title);
+        }
+        return titles;
+    }
+}
@@ -1,6 +1,6 @@
 package ru.fisher.ToolsMarket.service;
 
-import org.jsoup.Jsoup;
+import lombok.RequiredArgsConstructor;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -13,10 +13,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Component
+@RequiredArgsConstructor
 public class SturmParserService implements ProductPageParser {
 
     private static final String BASE_URL = "https://sturmtools.ru";
 
+    private final SupplierPageFetcher pageFetcher;
+
     @Override
     public boolean supports(String url) {
         return url.contains("sturmtools.ru");
@@ -24,13 +27,7 @@ public class SturmParserService implements ProductPageParser {
 
     @Override
     public ParsedProductData parse(String url) throws Exception {
-        // Подключаемся к странице, игнорируем ошибки SSL и ставим большой таймаут
-        Document doc = Jsoup.connect(url)
-                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36")
-                .timeout(15000)
-                .ignoreHttpErrors(true)
-                .ignoreContentType(true)
-                .get();
+        Document doc = pageFetcher.fetch(url);
 
         ParsedProductData data = new ParsedProductData();
 
@@ -0,0 +1,312 @@
+package ru.fisher.ToolsMarket.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.fisher.ToolsMarket.util.Digests;
+import ru.fisher.ToolsMarket.util.HttpBodies;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Загрузка страниц поставщиков для парсеров (ProductPageParser) с дисковым кэшем.
+ * <p>
+ * Страница хранится в файле по SHA-256 от URL: заголовок (URL после редиректов, ETag,
+ * Last-Modified, кодировка) и тело в gzip. Время изменения файла — время последней проверки.
+ * <ul>
+ *     <li>в пределах app.parse.cache.fresh-seconds страница отдается из кэша без запроса;</li>
+ *     <li>позже — условный запрос (If-None-Match / If-Modified-Since), на 304 отдается кэш;</li>
+ *     <li>размер кэша ограничен app.parse.cache.max-bytes — давно не проверявшиеся страницы удаляются.</li>
+ * </ul>
+ * Ответы с ошибкой (4xx/5xx) разбираются, как раньше, но не кэшируются.
+ * Запрос вместе с чтением тела ограничен app.parse.fetch-timeout-ms, распакованное тело —
+ * app.parse.max-body-bytes (как maxBodySize у Jsoup), иначе IOException.
+ */
+@Slf4j
+@Service
+public class SupplierPageFetcher {
+
+    private static final int MAGIC = 0x50474331; // "PGC1"
+    private static final String SUFFIX = ".page";
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+
+    private final Path dir;
+    private final Duration freshFor;
+    private final long maxBytes;
+    private final Duration requestTimeout;
+    private final long maxBodyBytes;
+    private final HttpClient httpClient;
+
+    // Текущий размер кэша; -1 — еще не подсчитан
+    private final AtomicLong cacheBytes = new AtomicLong(-1);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public SupplierPageFetcher(
+            HttpClient httpClient,
+            @Value("${app.parse.cache.dir:${app.import.work-dir:${java.io.tmpdir}/toolsmarket-imports}/page-cache}") String cacheDir,
+            @Value("${app.parse.cache.fresh-seconds:600}") long freshSeconds,
+            @Value("${app.parse.cache.max-bytes:209715200}") long maxBytes,
+            @Value("${app.parse.fetch-timeout-ms:15000}") long requestTimeoutMs,
+            @Value("${app.parse.max-body-bytes:2097152}") long maxBodyBytes) {
+        this.dir = Path.of(cacheDir);
+        this.freshFor = Duration.ofSeconds(freshSeconds);
+        this.maxBytes = maxBytes;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.maxBodyBytes = maxBodyBytes;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Страница в кэше
+     *
+     * @param url URL после редиректов — от него считаются относительные ссылки
+     */
+    private record CachedPage(String url, String etag, String lastModified, String charset,
+                              byte[] body, Instant checkedAt) {}
+
+    /**
+     * Ответ сервера; page == null — 304, годится кэш
+     */
+    private record Fetched(int status, CachedPage page) {}
+
+    /**
+     * HTML-документ страницы; относительные ссылки разрешаются от ее URL
+     */
+    public Document fetch(String url) throws IOException {
+        Path file = fileFor(url);
+        CachedPage cached = read(file);
+
+        if (cached != null && cached.checkedAt().plus(freshFor).isAfter(Instant.now())) {
+            log.debug("Страница из кэша: {}", url);
+            return parse(cached);
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (cached != null && cached.etag() != null) {
+            request.header("If-None-Match", cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+            request.header("If-Modified-Since", cached.lastModified());
+        }
+
+        // Срок — на весь обмен: после заголовков сервер может зависнуть посреди тела
+        Fetched fetched;
+        try {
+            fetched = HttpBodies.send(httpClient, request.build(), requestTimeout, response -> {
+                if (response.statusCode() == 304 && cached != null) {
+                    return new Fetched(304, null);
+                }
+                byte[] body;
+                try (InputStream in = HttpBodies.limited(decoded(response), maxBodyBytes)) {
+                    body = in.readAllBytes();
+                }
+                return new Fetched(response.statusCode(), new CachedPage(
+                        response.uri().toString(),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        charsetOf(response.headers().firstValue("Content-Type").orElse(null)),
+                        body,
+                        Instant.now()));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана: " + url);
+        }
+
+        if (fetched.page() == null) {
+            touch(file);
+            log.debug("Страница не изменилась: {}", url);
+            return parse(cached);
+        }
+
+        CachedPage page = fetched.page();
+        if (fetched.status() >= 200 && fetched.status() < 300) {
+            write(file, page);
+        } else {
+            log.warn("Страница {} вернула {} — не кэшируется", url, fetched.status());
+        }
+        return parse(page);
+    }
+
+    private Document parse(CachedPage page) throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(page.body()), page.charset(), page.url());
+    }
+
+    private static InputStream decoded(HttpResponse<InputStream> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return gzip ? new GZIPInputStream(response.body()) : response.body();
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) return null;
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                return trimmed.substring(8).replace("\"", "").trim();
+            }
+        }
+        // Кодировку определит Jsoup по meta или BOM
+        return null;
+    }
+
+    // ---- файлы кэша ----
+
+    private Path fileFor(String url) {
+        return dir.resolve(Digests.sha256Hex(url) + SUFFIX);
+    }
+
+    private CachedPage read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неизвестный формат");
+            }
+            String url = in.readUTF();
+            String etag = nullIfEmpty(in.readUTF());
+            String lastModified = nullIfEmpty(in.readUTF());
+            String charset = nullIfEmpty(in.readUTF());
+            byte[] body;
+            try (GZIPInputStream gzip = new GZIPInputStream(in)) {
+                body = gzip.readAllBytes();
+            }
+            return new CachedPage(url, etag, lastModified, charset, body,
+                    Files.getLastModifiedTime(file).toInstant());
+        } catch (IOException e) {
+            log.warn("Поврежденный файл кэша {} удален: {}", file.getFileName(), e.getMessage());
+            delete(file);
+            return null;
+        }
+    }
+
+    private void write(Path file, CachedPage page) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "page", ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeUTF(page.url());
+                    out.writeUTF(Objects.requireNonNullElse(page.etag(), ""));
+                    out.writeUTF(Objects.requireNonNullElse(page.lastModified(), ""));
+                    out.writeUTF(Objects.requireNonNullElse(page.charset(), ""));
+                    GZIPOutputStream gzip = new GZIPOutputStream(out);
+                    gzip.write(page.body());
+                    gzip.finish();
+                }
+
+                long previous = Files.exists(file) ? Files.size(file) : 0;
+                long size = Files.size(tmp);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (cacheBytes.get() >= 0) {
+                    cacheBytes.addAndGet(size - previous);
+                }
+            } finally {
+                // После ошибки записи или переноса временный файл не должен остаться в кэше
+                Files.deleteIfExists(tmp);
+            }
+            evictIfNeeded();
+        } catch (IOException e) {
+            // Кэш — оптимизация: страница уже загружена, ошибка записи не мешает парсингу
+            log.warn("Не удалось сохранить страницу {} в кэш: {}", page.url(), e.getMessage());
+        }
+    }
+
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Не удалось обновить время проверки {}: {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Если кэш больше лимита — удаляются страницы, которые дольше всех не проверялись,
+     * пока размер не опустится до 90% лимита.
+     * Очистку выполняет один поток; остальные писатели ее не ждут (tryLock) —
+     * synchronized закрепил бы виртуальные потоки парсинга за несущими на время обхода каталога
+     */
+    private void evictIfNeeded() throws IOException {
+        if (cacheBytes.get() >= 0 && cacheBytes.get() <= maxBytes) {
+            return;
+        }
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Другой поток мог только что закончить очистку
+            if (cacheBytes.get() < 0 || cacheBytes.get() > maxBytes) {
+                evict();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evict() throws IOException {
+
+        record Entry(Path file, long size, FileTime modified) {}
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(SUFFIX))::iterator) {
+                try {
+                    entries.add(new Entry(file, Files.size(file), Files.getLastModifiedTime(file)));
+                } catch (NoSuchFileException ignored) {
+                    // удален параллельно
+                }
+            }
+        }
+
+        long total = entries.stream().mapToLong(Entry::size).sum();
+        if (total > maxBytes) {
+            long target = maxBytes * 9 / 10;
+            entries.sort(Comparator.comparing(Entry::modified));
+            int removed = 0;
+            for (Entry entry : entries) {
+                if (total <= target) break;
+                if (delete(entry.file())) {
+                    total -= entry.size();
+                    removed++;
+                }
+            }
+            log.info("Кэш страниц: удалено {} файлов, размер {} байт", removed, total);
+        }
+        cacheBytes.set(total);
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
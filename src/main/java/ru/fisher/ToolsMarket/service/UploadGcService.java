@@ -0,0 +1,274 @@
+package ru.fisher.ToolsMarket.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.repository.UploadGcJdbcRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Сборщик неиспользуемых файлов в app.upload.path.
+ * <p>
+ * Файлы остаются на диске после удаления товаров, замены картинок категорий
+ * и неудачных сохранений. По расписанию каталог загрузок обходится потоком
+ * и сверяется с URL из product_image, category и image_mirror: URL читаются
+ * курсором и хранятся компактно — отсортированным массивом 64-битных хэшей путей
+ * (совпадение хэшей лишь оставляет лишний файл). Файл без ссылок, не менявшийся
+ * дольше app.upload.gc.grace-hours, переносится в карантин .quarantine/{дата}/;
+ * уменьшенные копии живут, пока жив оригинал. Карантин старше
+ * app.upload.gc.retention-days удаляется, освобожденные байты считает
+ * метрика uploads.gc.reclaimed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadGcService {
+
+    public static final String QUARANTINE_DIR = ".quarantine";
+    public static final String RECLAIMED_COUNTER = "uploads.gc.reclaimed";
+    public static final String QUARANTINED_COUNTER = "uploads.gc.quarantined";
+
+    // {имя}_w{ширина}.jpg/.png — копия картинки {имя}.* (ImageVariantService)
+    private static final Pattern VARIANT = Pattern.compile("(.+)_w\\d+\\.(jpg|png)");
+
+    private final UploadGcJdbcRepository gcRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.upload.gc.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.upload.gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.upload.gc.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${app.upload.path:./uploads/images}")
+    private String uploadPath;
+
+    /**
+     * Итог сборки: файлы и байты, перенесенные в карантин, и удаленные из карантина
+     */
+    public record Report(long scanned, long quarantinedFiles, long quarantinedBytes,
+                         long purgedFiles, long reclaimedBytes) {}
+
+    @Scheduled(cron = "${app.upload.gc.cron:0 30 4 * * *}", scheduler = AsyncConfig.TASK_SCHEDULER)
+    public void scheduledCollect() {
+        if (enabled) {
+            try {
+                collect();
+            } catch (IOException | UncheckedIOException e) {
+                log.error("Сборка неиспользуемых картинок прервана: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public Report collect() throws IOException {
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Path quarantine = root.resolve(QUARANTINE_DIR);
+        if (!Files.isDirectory(root)) {
+            return new Report(0, 0, 0, 0, 0);
+        }
+
+        Duration grace = Duration.ofHours(graceHours);
+        int forgotten = gcRepository.forgetUnusedMirrors(grace.toSeconds());
+
+        // Ссылки читаются до обхода: файл, сохраненный позже, моложе grace и не тронется
+        PathHashes referenced = new PathHashes();
+        PathHashes referencedStems = new PathHashes();
+        gcRepository.forEachReferencedUrl(url -> {
+            String key = keyOf(url);
+            if (key != null) {
+                referenced.add(key);
+                referencedStems.add(stemKey(key));
+            }
+        });
+        referenced.seal();
+        referencedStems.seal();
+
+        Instant cutoff = Instant.now().minus(grace);
+        Path target = quarantine.resolve(LocalDate.now().toString());
+        long scanned = 0;
+        long quarantinedFiles = 0;
+        long quarantinedBytes = 0;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> !f.startsWith(quarantine))
+                    .filter(Files::isRegularFile)::iterator) {
+                scanned++;
+                String key = root.relativize(file).toString().replace('\\', '/');
+                try {
+                    if (isReferenced(key, referenced, referencedStems)
+                            || Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) {
+                        continue;
+                    }
+
+                    long size = Files.size(file);
+                    Path moved = target.resolve(key);
+                    Files.createDirectories(moved.getParent());
+                    Files.move(file, moved, StandardCopyOption.REPLACE_EXISTING);
+                    quarantinedFiles++;
+                    quarantinedBytes += size;
+                    log.debug("Картинка без ссылок перенесена в карантин: {}", key);
+                } catch (NoSuchFileException e) {
+                    // Файл удален во время обхода
+                }
+            }
+        }
+
+        long[] purged = purgeQuarantine(quarantine);
+
+        Counter.builder(QUARANTINED_COUNTER)
+                .description("Байты неиспользуемых картинок, перенесенные в карантин")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .increment(quarantinedBytes);
+        Counter.builder(RECLAIMED_COUNTER)
+                .description("Байты, освобожденные удалением неиспользуемых картинок")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .increment(purged[1]);
+
+        Report report = new Report(scanned, quarantinedFiles, quarantinedBytes, purged[0], purged[1]);
+        log.info("Сборка картинок: проверено {}, в карантин {} ({} байт), удалено {} ({} байт), "
+                        + "забыто копий поставщиков {}",
+                scanned, quarantinedFiles, quarantinedBytes, purged[0], purged[1], forgotten);
+        return report;
+    }
+
+    /**
+     * Удаляет дни карантина старше retentionDays
+     *
+     * @return {файлов, байт}
+     */
+    private long[] purgeQuarantine(Path quarantine) throws IOException {
+        long files = 0;
+        long bytes = 0;
+        if (!Files.isDirectory(quarantine)) {
+            return new long[]{0, 0};
+        }
+
+        LocalDate oldestKept = LocalDate.now().minusDays(retentionDays);
+        try (DirectoryStream<Path> days = Files.newDirectoryStream(quarantine)) {
+            for (Path day : days) {
+                LocalDate date;
+                try {
+                    date = LocalDate.parse(day.getFileName().toString());
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                if (!date.isBefore(oldestKept)) {
+                    continue;
+                }
+
+                try (Stream<Path> content = Files.walk(day)) {
+                    for (Path file : (Iterable<Path>) content.filter(Files::isRegularFile)::iterator) {
+                        files++;
+                        bytes += Files.size(file);
+                    }
+                }
+                FileSystemUtils.deleteRecursively(day);
+                log.info("Удален карантин картинок за {}", date);
+            }
+        }
+        return new long[]{files, bytes};
+    }
+
+    private static boolean isReferenced(String key, PathHashes referenced, PathHashes referencedStems) {
+        if (referenced.contains(key)) {
+            return true;
+        }
+        // Старые URL вида /images/{имя} отдаются из categories/ и products/ (WebConfig)
+        int slash = key.indexOf('/');
+        if (slash > 0 && key.indexOf('/', slash + 1) < 0
+                && (key.startsWith("categories/") || key.startsWith("products/"))
+                && referenced.contains(key.substring(slash + 1))) {
+            return true;
+        }
+        Matcher variant = VARIANT.matcher(key);
+        return variant.matches() && referencedStems.contains(variant.group(1));
+    }
+
+    /**
+     * Путь файла внутри app.upload.path по URL картинки: часть после /images/.
+     * Хост не сравнивается — лишнее совпадение только оставит файл
+     *
+     * @return null для URL без /images/
+     */
+    static String keyOf(String url) {
+        int scheme = url.indexOf("://");
+        int pathStart = scheme >= 0 ? url.indexOf('/', scheme + 3) : 0;
+        if (pathStart < 0) return null;
+        int end = url.length();
+        for (char c : new char[]{'?', '#'}) {
+            int index = url.indexOf(c, pathStart);
+            if (index >= 0 && index < end) end = index;
+        }
+        String path = url.substring(pathStart, end);
+        return path.startsWith("/images/") && path.length() > "/images/".length()
+                ? path.substring("/images/".length())
+                : null;
+    }
+
+    private static String stemKey(String key) {
+        int slash = key.lastIndexOf('/');
+        int dot = key.lastIndexOf('.');
+        return dot > slash + 1 ? key.substring(0, dot) : key;
+    }
+
+    /**
+     * Множество путей в виде отсортированного массива 64-битных хэшей (FNV-1a):
+     * 8 байт на ссылку вместо строки
+     */
+    private static final class PathHashes {
+
+        private long[] hashes = new long[1024];
+        private int size;
+
+        void add(String key) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            hashes[size++] = hash(key);
+        }
+
+        void seal() {
+            Arrays.sort(hashes, 0, size);
+        }
+
+        boolean contains(String key) {
+            return Arrays.binarySearch(hashes, 0, size, hash(key)) >= 0;
+        }
+
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
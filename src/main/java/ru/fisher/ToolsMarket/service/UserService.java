@@ -15,6 +15,7 @@ import ru.fisher.ToolsMarket.dto.UserDTO.UserSpecification;
 import ru.fisher.ToolsMarket.models.Role;
 import ru.fisher.ToolsMarket.models.User;
 import ru.fisher.ToolsMarket.models.UserType;
+import ru.fisher.ToolsMarket.repository.OrderRepository;
 import ru.fisher.ToolsMarket.repository.RoleRepository;
 import ru.fisher.ToolsMarket.repository.UserRepository;
 
@@ -29,6 +30,7 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
+    private final OrderRepository orderRepository;
     private final PasswordEncoder passwordEncoder;
     private final ApplicationEventPublisher eventPublisher;
 
@@ -448,11 +450,11 @@ public class UserService {
      */
     @Transactional
     public void deleteUser(Long userId) {
-        User user = userRepository.findByIdWithOrders(userId)
+        User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден"));
 
-        // Проверяем, есть ли у пользователя заказы
-        if (user.getOrders() != null && !user.getOrders().isEmpty()) {
+        // Проверяем, есть ли у пользователя заказы (без загрузки самих заказов)
+        if (orderRepository.existsByUserId(userId)) {
             throw new IllegalStateException("Нельзя удалить пользователя с заказами");
         }
 
@@ -0,0 +1,35 @@
+package ru.fisher.ToolsMarket.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 в hex: хэши содержимого фидов и картинок, ключи кэша страниц
+ */
+public final class Digests {
+
+    private Digests() {
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязан поддерживать любой JDK
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Завершает подсчет и возвращает хэш строкой
+     */
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String sha256Hex(String value) {
+        return HexFormat.of().formatHex(sha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,127 @@
+package ru.fisher.ToolsMarket.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Запросы к чужим серверам с ограничением времени и размера ответа.
+ * <p>
+ * HttpRequest.timeout действует только до получения заголовков: чтение тела
+ * из BodyHandlers.ofInputStream() без него ждет сколько угодно. Здесь запрос
+ * и чтение тела выполняются в отдельном виртуальном потоке, а вызывающий ждет
+ * его не дольше заданного срока; по истечении поток прерывается — прерывание
+ * снимает блокировку чтения тела и отменяет запрос.
+ */
+public final class HttpBodies {
+
+    // Сколько ждать завершения прерванного потока, чтобы он не писал в уже удаленные файлы
+    private static final long CANCEL_WAIT_MS = 1000;
+
+    private HttpBodies() {
+    }
+
+    /**
+     * Обработка ответа: тело закрывается после возврата
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(HttpResponse<InputStream> response) throws IOException;
+    }
+
+    /**
+     * Отправляет запрос и обрабатывает ответ целиком в пределах timeout
+     *
+     * @throws HttpTimeoutException если заголовки или тело не получены вовремя
+     */
+    public static <T> T send(HttpClient client, HttpRequest request, Duration timeout, BodyReader<T> reader)
+            throws IOException, InterruptedException {
+        FutureTask<T> task = new FutureTask<>(() -> {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream ignored = response.body()) {
+                return reader.read(response);
+            }
+        });
+        Thread worker = Thread.ofVirtual().name("http-body").start(task);
+
+        try {
+            return task.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancel(task, worker);
+            throw new HttpTimeoutException("Нет ответа за " + timeout.toMillis() + " мс: " + request.uri());
+        } catch (InterruptedException e) {
+            cancel(task, worker);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException) throw new InterruptedIOException("Запрос прерван: " + request.uri());
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new IOException(cause);
+        }
+    }
+
+    private static void cancel(FutureTask<?> task, Thread worker) {
+        task.cancel(true);
+        try {
+            worker.join(Duration.ofMillis(CANCEL_WAIT_MS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Поток, который бросает IOException, если прочитано больше maxBytes.
+     * Оборачивает уже распакованное тело — gzip-бомба не разрастется в памяти
+     */
+    public static InputStream limited(InputStream in, long maxBytes) {
+        return new FilterInputStream(in) {
+
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) count(read);
+                return read;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                count(skipped);
+                return skipped;
+            }
+
+            private void count(long bytes) throws IOException {
+                count += bytes;
+                if (count > maxBytes) {
+                    throw new IOException("Ответ больше " + maxBytes + " байт");
+                }
+            }
+        };
+    }
+}
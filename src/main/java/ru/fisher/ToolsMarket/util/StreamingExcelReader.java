@@ -0,0 +1,512 @@
+package ru.fisher.ToolsMarket.util;
+
+import org.apache.poi.EmptyFileException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Потоковое чтение Excel без построения всей книги в памяти.
+ * .xlsx разбирается StAX-парсером по XML листов (в памяти только текущая строка
+ * и таблица общих строк), .xls читается через HSSF — формат ограничен 65 536 строками.
+ * Значения ячеек отдаются строками: числа без форматирования ("6990", "12.5"),
+ * пустые ячейки — null.
+ */
+public final class StreamingExcelReader {
+
+    private StreamingExcelReader() {
+    }
+
+    /**
+     * Обработчик строк. Вызывается последовательно для каждого листа.
+     */
+    public interface RowHandler {
+
+        /**
+         * @return false, если лист нужно пропустить
+         */
+        default boolean startSheet(int sheetIndex, String sheetName) {
+            return true;
+        }
+
+        /**
+         * @param rowIndex номер строки с нуля
+         * @param cells    значения по индексу столбца
+         */
+        void row(int rowIndex, String[] cells);
+
+        default void endSheet() {
+        }
+
+        /**
+         * @return true, если дальше читать не нужно
+         */
+        default boolean isDone() {
+            return false;
+        }
+    }
+
+    /**
+     * Курсор по книге: листы по очереди, внутри листа — непустые строки.
+     * Нужен там, где строки забирают по одной (ItemReader), а не получают через обработчик.
+     */
+    public interface RowCursor extends AutoCloseable {
+
+        /**
+         * Переход к следующему листу
+         *
+         * @return false, если листов больше нет
+         */
+        boolean nextSheet() throws IOException;
+
+        int sheetIndex();
+
+        String sheetName();
+
+        /**
+         * Следующая непустая строка текущего листа или null, если лист закончился
+         */
+        String[] nextRow() throws IOException;
+
+        /**
+         * Номер строки, возвращенной последним nextRow(), с нуля
+         */
+        int rowIndex();
+
+        /**
+         * Оценка количества строк текущего листа (по размерам листа) или -1, если неизвестно
+         */
+        default int estimatedRows() {
+            return -1;
+        }
+
+        @Override
+        void close() throws IOException;
+    }
+
+    public static void read(InputStream inputStream, RowHandler handler) throws IOException {
+        InputStream in = FileMagic.prepareToCheckMagic(inputStream);
+        FileMagic magic = detect(in);
+
+        if (magic == FileMagic.OLE2) {
+            try (RowCursor cursor = new XlsCursor(WorkbookFactory.create(in))) {
+                read(cursor, handler);
+            }
+            return;
+        }
+
+        // Zip читается с диска: OPCPackage.open(InputStream) распаковал бы всё в память
+        Path tempFile = Files.createTempFile("excel-import-", ".xlsx");
+        try {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            try (RowCursor cursor = new XlsxCursor(tempFile)) {
+                read(cursor, handler);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Открывает курсор по файлу на диске
+     */
+    public static RowCursor open(Path file) throws IOException {
+        FileMagic magic;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            magic = detect(in);
+        }
+        if (magic == FileMagic.OLE2) {
+            return new XlsCursor(WorkbookFactory.create(file.toFile(), null, true));
+        }
+        return new XlsxCursor(file);
+    }
+
+    /**
+     * Оценка количества строк в первых maxSheets листах — для прогресса импорта.
+     * Для .xlsx читается только начало XML каждого листа (элемент dimension).
+     *
+     * @return количество строк или -1, если размер какого-то листа неизвестен
+     */
+    public static long estimateRows(Path file, int maxSheets) throws IOException {
+        long total = 0;
+        try (RowCursor cursor = open(file)) {
+            for (int i = 0; i < maxSheets && cursor.nextSheet(); i++) {
+                int rows = cursor.estimatedRows();
+                if (rows < 0) {
+                    return -1;
+                }
+                total += rows;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Строковое значение ячейки или null, если столбца нет в строке
+     */
+    public static String cell(String[] cells, int index) {
+        return index >= 0 && index < cells.length ? cells[index] : null;
+    }
+
+    private static void read(RowCursor cursor, RowHandler handler) throws IOException {
+        while (!handler.isDone() && cursor.nextSheet()) {
+            if (!handler.startSheet(cursor.sheetIndex(), cursor.sheetName())) {
+                continue;
+            }
+            String[] cells;
+            while (!handler.isDone() && (cells = cursor.nextRow()) != null) {
+                handler.row(cursor.rowIndex(), cells);
+            }
+            handler.endSheet();
+        }
+    }
+
+    private static FileMagic detect(InputStream in) throws IOException {
+        FileMagic magic;
+        try {
+            magic = FileMagic.valueOf(in);
+        } catch (EmptyFileException e) {
+            throw new IOException("Файл пустой", e);
+        }
+        if (magic != FileMagic.OOXML && magic != FileMagic.OLE2) {
+            throw new IOException("Поддерживаются только файлы Excel (.xlsx, .xls)");
+        }
+        return magic;
+    }
+
+    private static String normalizeNumber(BigDecimal value) {
+        return value.stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * .xlsx: XML листа читается StAX-парсером строка за строкой
+     */
+    private static final class XlsxCursor implements RowCursor {
+
+        private final OPCPackage pkg;
+        private final ReadOnlySharedStringsTable strings;
+        private final XSSFReader.SheetIterator sheets;
+        private final XMLInputFactory xmlFactory;
+
+        private InputStream sheetStream;
+        private XMLStreamReader xml;
+        private int sheetIndex = -1;
+        private String sheetName;
+        private int rowIndex = -1;
+        private int estimatedRows = -1;
+
+        XlsxCursor(Path file) throws IOException {
+            try {
+                this.pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            } catch (OpenXML4JException | RuntimeException e) {
+                throw new IOException("Ошибка чтения xlsx: " + e.getMessage(), e);
+            }
+            try {
+                XSSFReader reader = new XSSFReader(pkg);
+                this.strings = new ReadOnlySharedStringsTable(pkg, false);
+                this.sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            } catch (OpenXML4JException | SAXException e) {
+                pkg.revert();
+                throw new IOException("Ошибка чтения xlsx: " + e.getMessage(), e);
+            }
+            this.xmlFactory = XMLInputFactory.newInstance();
+            xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        }
+
+        @Override
+        public boolean nextSheet() throws IOException {
+            closeSheet();
+            if (!sheets.hasNext()) {
+                return false;
+            }
+            sheetStream = sheets.next();
+            sheetName = sheets.getSheetName();
+            sheetIndex++;
+            rowIndex = -1;
+            try {
+                xml = xmlFactory.createXMLStreamReader(sheetStream);
+                estimatedRows = readDimension();
+            } catch (XMLStreamException e) {
+                throw new IOException("Ошибка чтения листа " + sheetName, e);
+            }
+            return true;
+        }
+
+        /**
+         * Элемент dimension (ref="A1:F5000") идет до sheetData; дальше не читаем
+         */
+        private int readDimension() throws XMLStreamException {
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String name = xml.getLocalName();
+                if ("dimension".equals(name)) {
+                    String ref = xml.getAttributeValue(null, "ref");
+                    if (ref == null) return -1;
+                    String last = ref.substring(ref.indexOf(':') + 1).replaceAll("[A-Z$]", "");
+                    try {
+                        return Integer.parseInt(last);
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                }
+                if ("sheetData".equals(name)) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int estimatedRows() {
+            return estimatedRows;
+        }
+
+        @Override
+        public int sheetIndex() {
+            return sheetIndex;
+        }
+
+        @Override
+        public String sheetName() {
+            return sheetName;
+        }
+
+        @Override
+        public int rowIndex() {
+            return rowIndex;
+        }
+
+        @Override
+        public String[] nextRow() throws IOException {
+            if (xml == null) return null;
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName())) {
+                        String r = xml.getAttributeValue(null, "r");
+                        rowIndex = r != null ? Integer.parseInt(r) - 1 : rowIndex + 1;
+
+                        List<String> cells = readRow();
+                        if (!cells.isEmpty()) {
+                            return cells.toArray(new String[0]);
+                        }
+                    }
+                }
+                return null;
+            } catch (XMLStreamException e) {
+                throw new IOException("Ошибка чтения листа " + sheetName, e);
+            }
+        }
+
+        private List<String> readRow() throws XMLStreamException {
+            List<String> cells = new ArrayList<>();
+            int column = -1;
+
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName())) {
+                    break;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+                    String ref = xml.getAttributeValue(null, "r");
+                    column = ref != null ? columnIndex(ref) : column + 1;
+                    String value = readCell(xml.getAttributeValue(null, "t"));
+                    if (value != null) {
+                        while (cells.size() <= column) {
+                            cells.add(null);
+                        }
+                        cells.set(column, value);
+                    }
+                }
+            }
+            return cells;
+        }
+
+        private String readCell(String type) throws XMLStreamException {
+            String raw = null;
+            StringBuilder inline = null;
+
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                    break;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+                switch (xml.getLocalName()) {
+                    case "v" -> raw = xml.getElementText();
+                    case "t" -> {
+                        if (inline == null) inline = new StringBuilder();
+                        inline.append(xml.getElementText());
+                    }
+                    case "f" -> xml.getElementText(); // формула — берем закешированное значение
+                    default -> {
+                    }
+                }
+            }
+
+            if ("inlineStr".equals(type)) {
+                return inline != null ? inline.toString() : null;
+            }
+            if (raw == null || raw.isEmpty()) {
+                return null;
+            }
+            if (type == null || "n".equals(type)) {
+                try {
+                    return normalizeNumber(new BigDecimal(raw));
+                } catch (NumberFormatException e) {
+                    return raw;
+                }
+            }
+            return switch (type) {
+                case "s" -> strings.getItemAt(Integer.parseInt(raw)).getString();
+                case "str" -> raw;
+                case "b" -> String.valueOf("1".equals(raw));
+                default -> null; // e — ошибка формулы
+            };
+        }
+
+        /**
+         * "AB12" → 27
+         */
+        private static int columnIndex(String ref) {
+            int column = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') break;
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+
+        private void closeSheet() throws IOException {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignored) {
+                }
+                xml = null;
+            }
+            if (sheetStream != null) {
+                sheetStream.close();
+                sheetStream = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                closeSheet();
+            } finally {
+                pkg.revert();
+            }
+        }
+    }
+
+    /**
+     * .xls: HSSF держит книгу в памяти, но формат ограничен 65 536 строками
+     */
+    private static final class XlsCursor implements RowCursor {
+
+        private final Workbook workbook;
+        private int sheetIndex = -1;
+        private Iterator<Row> rows;
+        private int rowIndex = -1;
+
+        XlsCursor(Workbook workbook) {
+            this.workbook = workbook;
+        }
+
+        @Override
+        public boolean nextSheet() {
+            if (sheetIndex + 1 >= workbook.getNumberOfSheets()) {
+                rows = null;
+                return false;
+            }
+            sheetIndex++;
+            Sheet sheet = workbook.getSheetAt(sheetIndex);
+            rows = sheet.iterator();
+            rowIndex = -1;
+            return true;
+        }
+
+        @Override
+        public int estimatedRows() {
+            return workbook.getSheetAt(sheetIndex).getLastRowNum() + 1;
+        }
+
+        @Override
+        public int sheetIndex() {
+            return sheetIndex;
+        }
+
+        @Override
+        public String sheetName() {
+            return workbook.getSheetName(sheetIndex);
+        }
+
+        @Override
+        public int rowIndex() {
+            return rowIndex;
+        }
+
+        @Override
+        public String[] nextRow() {
+            while (rows != null && rows.hasNext()) {
+                Row row = rows.next();
+                if (row.getLastCellNum() <= 0) continue;
+
+                String[] cells = new String[row.getLastCellNum()];
+                for (Cell cell : row) {
+                    cells[cell.getColumnIndex()] = cellValue(cell);
+                }
+                rowIndex = row.getRowNum();
+                return cells;
+            }
+            return null;
+        }
+
+        private static String cellValue(Cell cell) {
+            CellType type = cell.getCellType() == CellType.FORMULA
+                    ? cell.getCachedFormulaResultType()
+                    : cell.getCellType();
+
+            return switch (type) {
+                case STRING -> cell.getStringCellValue();
+                case NUMERIC -> normalizeNumber(BigDecimal.valueOf(cell.getNumericCellValue()));
+                case BOOLEAN -> String.valueOf(cell.getBooleanCellValue());
+                default -> null;
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.close();
+        }
+    }
+}
@@ -0,0 +1,2 @@
+-- Постраничная история заказов пользователя (ORDER BY created_at DESC)
+CREATE INDEX IF NOT EXISTS idx_orders_user_created_at ON "order"(user_id, created_at DESC);
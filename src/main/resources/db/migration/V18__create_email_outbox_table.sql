@@ -0,0 +1,20 @@
+CREATE TABLE email_outbox (
+        id BIGSERIAL PRIMARY KEY,
+
+        type VARCHAR(32) NOT NULL,
+        recipient VARCHAR(255) NOT NULL,
+        payload_json TEXT NOT NULL,
+
+        status VARCHAR(16) NOT NULL DEFAULT 'PENDING',
+        attempts INT NOT NULL DEFAULT 0,
+        next_attempt_at TIMESTAMP NOT NULL,
+        locked_at TIMESTAMP,
+        last_error TEXT,
+
+        created_at TIMESTAMP NOT NULL,
+        sent_at TIMESTAMP
+);
+
+-- Выборка очереди диспетчером
+CREATE INDEX idx_email_outbox_due ON email_outbox(next_attempt_at) WHERE status = 'PENDING';
+CREATE INDEX idx_email_outbox_status ON email_outbox(status);
@@ -0,0 +1,5 @@
+-- Письма, которые отправляются сводкой (digest), а не по одному
+ALTER TABLE email_outbox ADD COLUMN digest BOOLEAN NOT NULL DEFAULT FALSE;
+
+DROP INDEX IF EXISTS idx_email_outbox_due;
+CREATE INDEX idx_email_outbox_due ON email_outbox(digest, next_attempt_at) WHERE status = 'PENDING';
@@ -0,0 +1,13 @@
+-- Изменения цен, примененные импортом (по чанкам задания price-import)
+CREATE TABLE price_change_history (
+        id BIGSERIAL PRIMARY KEY,
+        job_instance_id BIGINT NOT NULL,
+        sku VARCHAR(100) NOT NULL,
+        product_title VARCHAR(512),
+        old_price NUMERIC(12,2) NOT NULL,
+        new_price NUMERIC(12,2) NOT NULL,
+        created_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_price_change_history_job ON price_change_history(job_instance_id);
+CREATE INDEX idx_price_change_history_sku ON price_change_history(sku, created_at);
@@ -0,0 +1,10 @@
+-- Состояние YML-фидов после последнего успешного импорта:
+-- валидаторы для условного GET (ETag / Last-Modified) и хэш содержимого
+CREATE TABLE yml_feed_state (
+        url VARCHAR(1024) PRIMARY KEY,
+        etag VARCHAR(512),
+        last_modified VARCHAR(128),
+        content_hash VARCHAR(64) NOT NULL,
+        content_length BIGINT NOT NULL,
+        imported_at TIMESTAMP NOT NULL DEFAULT now()
+);
@@ -0,0 +1,13 @@
+-- Хэш содержимого предложения YML-фида на поставщика: неизмененные предложения
+-- не применяются повторно, пропавшие из фида — снимаются с продажи
+CREATE TABLE yml_offer_hash (
+        supplier VARCHAR(255) NOT NULL,
+        offer_id VARCHAR(255) NOT NULL,
+        product_id BIGINT NOT NULL REFERENCES product(id) ON DELETE CASCADE,
+        content_hash VARCHAR(64) NOT NULL,
+        last_seen_run BIGINT NOT NULL,
+        updated_at TIMESTAMP NOT NULL DEFAULT now(),
+        PRIMARY KEY (supplier, offer_id)
+);
+
+CREATE INDEX idx_yml_offer_hash_product ON yml_offer_hash(product_id);
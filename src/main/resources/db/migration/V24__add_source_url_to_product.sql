@@ -0,0 +1,4 @@
+-- Страница товара у поставщика, с которой он был спарсен: по ней мониторятся цены
+ALTER TABLE product ADD COLUMN source_url VARCHAR(1024);
+
+CREATE INDEX idx_product_source_url ON product(id) WHERE source_url IS NOT NULL;
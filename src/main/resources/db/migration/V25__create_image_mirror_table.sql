@@ -0,0 +1,14 @@
+-- Картинки поставщиков, скопированные к нам (ImageMirrorService).
+-- Одна запись на внешний URL: успешная — с локальным URL, неудачная — с числом попыток и ошибкой
+CREATE TABLE image_mirror (
+        source_url TEXT PRIMARY KEY,
+        local_url TEXT,
+        content_hash VARCHAR(64),
+        size_bytes BIGINT,
+        attempts INT NOT NULL DEFAULT 0,
+        last_error VARCHAR(512),
+        updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Замена внешних URL на локальные идет по равенству url
+CREATE INDEX idx_product_image_url ON product_image(url);
@@ -0,0 +1,10 @@
+-- Уменьшенные копии картинок (ImageVariantService): URL копии для src и готовое значение srcset.
+-- srcset IS NULL — копии еще не созданы, пустая строка — создать не удалось (формат не читается)
+ALTER TABLE product_image
+    ADD COLUMN thumbnail_url TEXT,
+    ADD COLUMN srcset TEXT;
+
+ALTER TABLE category
+    ADD COLUMN image_srcset TEXT;
+
+CREATE INDEX idx_product_image_no_variants ON product_image(id) WHERE srcset IS NULL;
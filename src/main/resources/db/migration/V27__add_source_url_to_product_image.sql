@@ -0,0 +1,14 @@
+-- Исходный URL поставщика для картинок, скопированных к нам (ImageMirrorService):
+-- импорт фида сравнивает картинки предложения с ним, а не с локальным URL.
+-- Для уже скопированных картинок берется из image_mirror (при одинаковом содержимом
+-- у нескольких внешних URL — любой из них, такой товар один раз обновится заново)
+ALTER TABLE product_image
+    ADD COLUMN source_url TEXT;
+
+UPDATE product_image i
+SET source_url = m.source_url
+FROM (SELECT DISTINCT ON (local_url) local_url, source_url
+      FROM image_mirror
+      WHERE local_url IS NOT NULL
+      ORDER BY local_url, source_url) m
+WHERE i.url = m.local_url;
@@ -0,0 +1,6 @@
+-- Причина, по которой письмо из failed_emails не удалось перенести в outbox.
+-- Такие строки остаются для разбора и больше не выбираются при переносе
+ALTER TABLE failed_emails
+    ADD COLUMN transfer_error TEXT;
+
+CREATE INDEX idx_failed_emails_pending_transfer ON failed_emails(id) WHERE transfer_error IS NULL;
@@ -0,0 +1,74 @@
+package ru.fisher.ToolsMarket;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Строки товаров и картинок для тестов, которым не нужны JPA-сущности,
+ * и прайсы в формате импорта цен
+ */
+public final class TestData {
+
+    private TestData() {
+    }
+
+    public static long insertProduct(JdbcTemplate jdbc, String sku) {
+        return jdbc.queryForObject("""
+                INSERT INTO product (name, title, sku, price, created_at, updated_at)
+                VALUES (?, ?, ?, 100, now(), now())
+                RETURNING id
+                """, Long.class, sku, sku.toLowerCase(), sku);
+    }
+
+    public static void insertProduct(JdbcTemplate jdbc, String sku, String title, String price) {
+        jdbc.update("""
+                INSERT INTO product (name, title, sku, price, created_at, updated_at)
+                VALUES (?, ?, ?, ?, now(), now())
+                """, title, title, sku, new BigDecimal(price));
+    }
+
+    public static long insertImage(JdbcTemplate jdbc, long productId, String url) {
+        return insertImage(jdbc, productId, url, 0);
+    }
+
+    public static long insertImage(JdbcTemplate jdbc, long productId, String url, int sortOrder) {
+        return jdbc.queryForObject("""
+                INSERT INTO product_image (product_id, url, sort_order) VALUES (?, ?, ?)
+                RETURNING id
+                """, Long.class, productId, url, sortOrder);
+    }
+
+    /**
+     * Прайс с колонками «Артикул» и «Цена»; цена — число или строка как есть
+     */
+    public static ByteArrayInputStream priceExcel(Object[]... rows) throws IOException {
+        try (Workbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Price");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Артикул");
+            header.createCell(1).setCellValue("Цена");
+
+            for (int i = 0; i < rows.length; i++) {
+                Row row = sheet.createRow(i + 1);
+                row.createCell(0).setCellValue((String) rows[i][0]);
+                if (rows[i][1] instanceof String s) {
+                    row.createCell(1).setCellValue(s);
+                } else {
+                    row.createCell(1).setCellValue(((Number) rows[i][1]).doubleValue());
+                }
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+    }
+}
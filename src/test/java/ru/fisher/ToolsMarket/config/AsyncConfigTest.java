@@ -0,0 +1,100 @@
+package ru.fisher.ToolsMarket.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncConfigTest {
+
+    private final AsyncConfig config = new AsyncConfig();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<ThreadPoolTaskExecutor> executors = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executors.forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    @Test
+    void fullImportPoolRejectsAndDoesNotBlockAsyncPool() throws Exception {
+        ThreadPoolTaskExecutor imports = track(config.importExecutor(meterRegistry, 1, 1));
+        ThreadPoolTaskExecutor async = track(config.taskExecutor(meterRegistry, 1, 1, 1));
+        CountDownLatch started = new CountDownLatch(1);
+
+        // Один поток занят, одна задача в очереди — третья отклоняется
+        imports.submit(() -> {
+            started.countDown();
+            await();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        imports.submit(this::await);
+        assertThatThrownBy(() -> imports.submit(this::await)).isInstanceOf(TaskRejectedException.class);
+        assertThat(rejected(AsyncConfig.IMPORT_EXECUTOR)).isEqualTo(1);
+
+        // Занятые импорты не мешают фоновым задачам веба
+        Future<String> thread = async.submit(() -> Thread.currentThread().getName());
+        assertThat(thread.get(5, TimeUnit.SECONDS)).startsWith("async-");
+        assertThat(rejected(AsyncConfig.TASK_EXECUTOR)).isZero();
+    }
+
+    @Test
+    void fullAsyncPoolRunsTaskInCallerThread() throws Exception {
+        ThreadPoolTaskExecutor async = track(config.taskExecutor(meterRegistry, 1, 1, 1));
+        CountDownLatch started = new CountDownLatch(1);
+
+        async.submit(() -> {
+            started.countDown();
+            await();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        async.submit(this::await);
+
+        // Очередь полна: задача не теряется, а выполняется вызывающим потоком
+        Future<String> thread = async.submit(() -> Thread.currentThread().getName());
+        assertThat(thread.get(5, TimeUnit.SECONDS)).isEqualTo(Thread.currentThread().getName());
+        assertThat(rejected(AsyncConfig.TASK_EXECUTOR)).isEqualTo(1);
+    }
+
+    @Test
+    void queueWaitIsRecordedPerPool() throws Exception {
+        ThreadPoolTaskExecutor imports = track(config.importExecutor(meterRegistry, 1, 1));
+
+        imports.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+        assertThat(meterRegistry.get(AsyncConfig.WAIT_TIMER).tag("name", AsyncConfig.IMPORT_EXECUTOR)
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find(AsyncConfig.WAIT_TIMER).tag("name", AsyncConfig.TASK_EXECUTOR)
+                .timer()).isNull();
+    }
+
+    private ThreadPoolTaskExecutor track(ThreadPoolTaskExecutor executor) {
+        executors.add(executor);
+        return executor;
+    }
+
+    private double rejected(String pool) {
+        return meterRegistry.get(AsyncConfig.REJECTED_COUNTER).tag("name", pool).counter().count();
+    }
+
+    private void await() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
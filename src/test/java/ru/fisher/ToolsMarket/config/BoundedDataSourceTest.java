@@ -0,0 +1,99 @@
+package ru.fisher.ToolsMarket.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BoundedDataSourceTest {
+
+    @Mock
+    private DataSource target;
+    @Mock
+    private Connection connection;
+
+    @Test
+    void permitIsReturnedOnceWhenConnectionIsClosed() throws SQLException {
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.isClosed()).thenReturn(false);
+        BoundedDataSource dataSource = new BoundedDataSource(target, 1, 50);
+
+        Connection first = dataSource.getConnection();
+        assertThat(first.isClosed()).isFalse();
+        assertThat(dataSource.getAvailablePermits()).isZero();
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+
+        first.close();
+        // Повторный close не выдает лишнее разрешение (у Hikari он ничего не делает)
+        first.close();
+
+        assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+        verify(target, times(1)).getConnection();
+    }
+
+    @Test
+    void permitIsReturnedWhenCloseOfTargetFails() throws SQLException {
+        when(target.getConnection()).thenReturn(connection);
+        doThrow(new SQLException("соединение уже разорвано")).when(connection).close();
+        BoundedDataSource dataSource = new BoundedDataSource(target, 1, 50);
+
+        Connection first = dataSource.getConnection();
+        assertThatThrownBy(first::close).isInstanceOf(SQLException.class);
+
+        assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+    }
+
+    @Test
+    void permitIsReturnedWhenGetConnectionThrows() throws SQLException {
+        when(target.getConnection())
+                .thenThrow(new SQLException("нет связи с БД"))
+                .thenThrow(new IllegalStateException("пул закрыт"));
+        when(target.getConnection("user", "secret")).thenThrow(new SQLException("неверный пароль"));
+        BoundedDataSource dataSource = new BoundedDataSource(target, 1, 50);
+
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLException.class).hasMessage("нет связи с БД");
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> dataSource.getConnection("user", "secret")).isInstanceOf(SQLException.class);
+
+        assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+    }
+
+    @Test
+    void waitingThreadGetsConnectionAfterClose() throws Exception {
+        when(target.getConnection()).thenReturn(connection);
+        BoundedDataSource dataSource = new BoundedDataSource(target, 1, 5000);
+        Connection first = dataSource.getConnection();
+
+        CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dataSource.getWaitingThreads() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(dataSource.getWaitingThreads()).isEqualTo(1);
+
+        first.close();
+
+        Connection second = waiting.get(5, TimeUnit.SECONDS);
+        assertThat(dataSource.getAvailablePermits()).isZero();
+        second.close();
+        assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,184 @@
+package ru.fisher.ToolsMarket.parsingXml;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.batch.YmlOfferItemReader;
+import ru.fisher.ToolsMarket.config.AsyncConfig;
+import ru.fisher.ToolsMarket.models.Category;
+import ru.fisher.ToolsMarket.repository.CategoryRepository;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class StemYmlImportServiceTest {
+
+    private static final String SUPPLIER = "feed.example";
+
+    @Autowired
+    private StemYmlImportService importService;
+    @Autowired
+    private YmlOfferImporter offerImporter;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    @Qualifier(AsyncConfig.YML_PIPELINE_EXECUTOR)
+    private TaskExecutor ymlPipelineExecutor;
+
+    private Map<String, Long> categoryIds;
+
+    @BeforeEach
+    void setup() {
+        Category category = categoryRepository.save(Category.builder()
+                .name("Дрели")
+                .title("dreli")
+                .createdAt(Instant.now())
+                .build());
+        categoryIds = Map.of("10", category.getId());
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE yml_offer_hash, product, attribute, category RESTART IDENTITY CASCADE");
+    }
+
+    @Test
+    void repeatedRunSkipsUnchangedOffersAndDeactivatesMissingOnes() {
+        YmlOffer drill = offer("1", "SKU-1", "Дрель", "1000", "900 Вт");
+        YmlOffer saw = offer("2", "SKU-2", "Пила", "2000", "1200 Вт");
+        YmlOffer grinder = offer("3", "SKU-3", "Болгарка", "3000", "800 Вт");
+
+        StemYmlImportService.WriteOutcome first =
+                importService.writeOffers(List.of(drill, saw, grinder), categoryIds, SUPPLIER, 1L);
+        assertThat(first.imported()).isEqualTo(3);
+        assertThat(first.unchanged()).isZero();
+
+        // Второй запуск: пила подешевела, болгарка пропала из фида
+        YmlOffer cheaperSaw = offer("2", "SKU-2", "Пила", "1800", "1200 Вт");
+        StemYmlImportService.WriteOutcome second =
+                importService.writeOffers(List.of(drill, cheaperSaw), categoryIds, SUPPLIER, 2L);
+        assertThat(second.imported()).isEqualTo(2);
+        assertThat(second.unchanged()).isEqualTo(1);
+
+        assertThat(importService.deactivateMissing(SUPPLIER, 2L, 0.5)).isEqualTo(1);
+
+        assertThat(jdbc.queryForObject("SELECT price FROM product WHERE sku = 'SKU-2'", BigDecimal.class))
+                .isEqualByComparingTo("1800");
+        assertThat(jdbc.queryForList("SELECT sku FROM product WHERE NOT active", String.class))
+                .containsExactly("SKU-3");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM product_attribute_values", Integer.class))
+                .isEqualTo(3);
+    }
+
+    @Test
+    void mirroredImagesAreComparedBySupplierUrl() {
+        YmlOffer drill = offer("1", "SKU-1", "Дрель", "1000", "900 Вт");
+        importService.writeOffers(List.of(drill), categoryIds, SUPPLIER, 1L);
+
+        // Картинка скопирована к нам и уменьшена; хэшей прошлого импорта нет
+        jdbc.update("""
+                UPDATE product_image
+                SET source_url = url, url = 'http://localhost:8080/images/content/aa/bb/drill.jpg',
+                    srcset = 'drill_w200.jpg 200w'
+                """);
+        jdbc.update("DELETE FROM yml_offer_hash");
+
+        StemYmlImportService.WriteOutcome same =
+                importService.writeOffers(List.of(drill), categoryIds, SUPPLIER, 2L);
+        assertThat(same.unchanged()).isEqualTo(1);
+
+        // Изменилась только цена — картинки не пересоздаются
+        importService.writeOffers(List.of(offer("1", "SKU-1", "Дрель", "1100", "900 Вт")),
+                categoryIds, SUPPLIER, 3L);
+        assertThat(jdbc.queryForMap("SELECT url, source_url, srcset FROM product_image"))
+                .containsEntry("url", "http://localhost:8080/images/content/aa/bb/drill.jpg")
+                .containsEntry("source_url", "https://feed.example/SKU-1.jpg")
+                .containsEntry("srcset", "drill_w200.jpg 200w");
+    }
+
+    @Test
+    void categoriesAreUpsertedByTitle(@TempDir Path dir) throws Exception {
+        Path feed = Files.writeString(dir.resolve("feed.xml"), """
+                <yml_catalog><shop><categories>
+                    <category id="1">Инструмент</category>
+                    <category id="2" parentId="1">Пилы</category>
+                    <category id="3" parentId="1">дрели</category>
+                </categories></shop></yml_catalog>
+                """);
+
+        Map<String, Long> ids = importService.importCategories(feed);
+
+        // «дрели» совпала по title с существующей категорией «Дрели» — переименована, а не создана
+        assertThat(ids.get("3")).isEqualTo(categoryIds.get("10"));
+        assertThat(jdbc.queryForObject("SELECT name FROM category WHERE id = ?", String.class, ids.get("3")))
+                .isEqualTo("дрели");
+        assertThat(jdbc.queryForList("SELECT parent_id FROM category WHERE id IN (?, ?)", Long.class,
+                ids.get("2"), ids.get("3"))).containsOnly(ids.get("1"));
+
+        // Повторный импорт того же фида ничего не создает
+        assertThat(importService.importCategories(feed)).isEqualTo(ids);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM category", Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    void pipelineReaderKeepsFeedOrder(@TempDir Path dir) throws Exception {
+        StringBuilder xml = new StringBuilder("<yml_catalog><shop><offers>");
+        for (int i = 0; i < 500; i++) {
+            // Каждый десятый артикул повторяется — повторы должны прийти в порядке фида
+            String sku = i % 10 == 0 ? "SKU-DUP" : "SKU-" + i;
+            xml.append("<offer id=\"").append(i).append("\"><name>Товар ").append(i)
+                    .append("</name><price>").append(i).append(".50</price><vendorCode>").append(sku)
+                    .append("</vendorCode><categoryId>10</categoryId></offer>");
+        }
+        xml.append("</offers></shop></yml_catalog>");
+        Path feed = Files.writeString(dir.resolve("feed.xml"), xml);
+
+        YmlOfferItemReader reader = new YmlOfferItemReader("test", feed, importService, offerImporter, ymlPipelineExecutor, 8);
+        reader.open(new ExecutionContext());
+        List<YmlOffer> offers = new ArrayList<>();
+        try {
+            YmlOffer offer;
+            while ((offer = reader.read()) != null) {
+                offers.add(offer);
+            }
+        } finally {
+            reader.close();
+        }
+
+        assertThat(offers).hasSize(500);
+        assertThat(offers).extracting(YmlOffer::externalId)
+                .containsExactlyElementsOf(IntStream.range(0, 500).mapToObj(String::valueOf).toList());
+        assertThat(offers.get(7).price()).isEqualByComparingTo("7.50");
+        assertThat(offers.get(7).contentHash()).isNotBlank();
+        assertThat(offers.get(7).title()).endsWith("-SKU-7");
+    }
+
+    private YmlOffer offer(String id, String sku, String name, String price, String power) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("Мощность", power);
+        return new YmlOffer(id, sku, name, new BigDecimal(price), "10",
+                List.of("https://feed.example/" + sku + ".jpg"), params);
+    }
+}
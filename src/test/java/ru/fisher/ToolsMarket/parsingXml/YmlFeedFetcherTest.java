@@ -0,0 +1,132 @@
+package ru.fisher.ToolsMarket.parsingXml;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.fisher.ToolsMarket.config.HttpClientConfig;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository;
+import ru.fisher.ToolsMarket.repository.YmlFeedStateJdbcRepository.FeedState;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class YmlFeedFetcherTest {
+
+    private static final HttpClient HTTP_CLIENT = new HttpClientConfig().httpClient(2_000);
+    private static final byte[] FEED = "<yml_catalog><shop><offers/></shop></yml_catalog>"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private final YmlFeedStateJdbcRepository feedStateRepository = mock(YmlFeedStateJdbcRepository.class);
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        // Сервер без поддержки условных запросов: всегда 200 и новый ETag
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/feed.xml", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"v2\"");
+            exchange.getResponseHeaders().add("Last-Modified", "Mon, 19 Oct 2026 10:00:00 GMT");
+            exchange.sendResponseHeaders(200, FEED.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(FEED);
+            }
+        });
+        // Заголовки и начало фида отправлены, остальное не приходит
+        server.createContext("/stalled.xml", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("<yml_catalog>".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try {
+                stalled.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                // сервер остановлен
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        stalled.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void sameContentWithNewValidatorsIsUnchangedAndValidatorsAreSaved() throws Exception {
+        String url = url();
+        when(feedStateRepository.find(url)).thenReturn(Optional.of(
+                new FeedState(url, "\"v1\"", "Sun, 18 Oct 2026 10:00:00 GMT", sha256(FEED), FEED.length)));
+
+        YmlFeedFetcher.FetchResult result = fetcher().fetch(url, dir.resolve("feed.xml"));
+
+        assertThat(result.notModified()).isTrue();
+        assertThat(dir.resolve("feed.xml")).doesNotExist();
+        verify(feedStateRepository).updateValidators(url, "\"v2\"", "Mon, 19 Oct 2026 10:00:00 GMT");
+    }
+
+    @Test
+    void sameContentWithSameValidatorsIsNotSavedAgain() throws Exception {
+        String url = url();
+        when(feedStateRepository.find(url)).thenReturn(Optional.of(
+                new FeedState(url, "\"v2\"", "Mon, 19 Oct 2026 10:00:00 GMT", sha256(FEED), FEED.length)));
+
+        assertThat(fetcher().fetch(url, dir.resolve("feed.xml")).notModified()).isTrue();
+        verify(feedStateRepository, never()).updateValidators(anyString(), any(), any());
+    }
+
+    @Test
+    void feedStalledDuringBodyTimesOutAndLeavesNoPartFile() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stalled.xml";
+        when(feedStateRepository.find(url)).thenReturn(Optional.empty());
+        YmlFeedFetcher fetcher = new YmlFeedFetcher(feedStateRepository, HTTP_CLIENT, 500);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> fetcher.fetch(url, dir.resolve("feed.xml")))
+                .isInstanceOf(HttpTimeoutException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private YmlFeedFetcher fetcher() {
+        return new YmlFeedFetcher(feedStateRepository, HTTP_CLIENT, 5_000);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/feed.xml";
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,140 @@
+package ru.fisher.ToolsMarket.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.ProductImportRow;
+import ru.fisher.ToolsMarket.repository.ProductBulkJdbcRepository.UpsertOutcome;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class ProductBulkJdbcRepositoryTest {
+
+    @Autowired
+    private ProductBulkJdbcRepository repository;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private long drills;
+    private long saws;
+
+    @BeforeEach
+    void setup() {
+        drills = insertCategory("drills", "Дрели");
+        saws = insertCategory("saws", "Пилы");
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE product, category RESTART IDENTITY CASCADE");
+    }
+
+    @Test
+    void newProductsAreInsertedWithCategoryAndImage() {
+        UpsertOutcome outcome = repository.upsertProducts(List.of(
+                row("SKU-1", "Дрель", "drel-sku-1", "http://supplier.example/1.jpg"),
+                row("SKU-2", "Дрель-шуруповерт", "drel-sku-2", null)
+        ), drills, false);
+
+        assertThat(outcome.inserted()).containsExactlyInAnyOrder("SKU-1", "SKU-2");
+        assertThat(outcome.updated()).isEmpty();
+
+        Map<String, Object> product = jdbc.queryForMap(
+                "SELECT name, title, price, active FROM product WHERE sku = 'SKU-1'");
+        assertThat(product.get("name")).isEqualTo("Дрель");
+        assertThat(product.get("title")).isEqualTo("drel-sku-1");
+        assertThat(product.get("active")).isEqualTo(true);
+
+        assertThat(categorySkus(drills)).containsExactlyInAnyOrder("SKU-1", "SKU-2");
+        assertThat(jdbc.queryForList("""
+                SELECT i.url FROM product_image i JOIN product p ON p.id = i.product_id
+                WHERE p.sku = 'SKU-1' AND i.sort_order = 0
+                """, String.class)).containsExactly("http://supplier.example/1.jpg");
+        assertThat(imageCount("SKU-2")).isZero();
+    }
+
+    @Test
+    void existingProductsAreSkippedWithoutUpdateExisting() {
+        repository.upsertProducts(List.of(row("SKU-1", "Дрель", "drel-sku-1", "http://supplier.example/1.jpg")),
+                drills, false);
+
+        UpsertOutcome outcome = repository.upsertProducts(List.of(
+                row("SKU-1", "Дрель новая", "drel-novaya-sku-1", "http://supplier.example/new.jpg"),
+                row("SKU-3", "Пила", "pila-sku-3", null)
+        ), saws, false);
+
+        assertThat(outcome.inserted()).containsExactly("SKU-3");
+        assertThat(outcome.updated()).isEmpty();
+        assertThat(jdbc.queryForObject("SELECT name FROM product WHERE sku = 'SKU-1'", String.class))
+                .isEqualTo("Дрель");
+        // Пропущенный товар не привязывается к новой категории и не получает картинку
+        assertThat(categorySkus(saws)).containsExactly("SKU-3");
+        assertThat(imageCount("SKU-1")).isEqualTo(1);
+    }
+
+    @Test
+    void changedProductsAreUpdatedAndUnchangedAreNotReported() {
+        repository.upsertProducts(List.of(
+                row("SKU-1", "Дрель", "drel-sku-1", "http://supplier.example/1.jpg"),
+                row("SKU-2", "Пила", "pila-sku-2", null)
+        ), drills, false);
+
+        UpsertOutcome outcome = repository.upsertProducts(List.of(
+                row("SKU-1", "Дрель ударная", "drel-udarnaya-sku-1", "http://supplier.example/new.jpg"),
+                row("SKU-2", "Пила", "pila-sku-2", null)
+        ), saws, true);
+
+        // xmax = 0 только у вставленных строк; неизмененная строка не проходит WHERE и не возвращается
+        assertThat(outcome.inserted()).isEmpty();
+        assertThat(outcome.updated()).containsExactly("SKU-1");
+
+        Map<String, Object> product = jdbc.queryForMap("SELECT name, title FROM product WHERE sku = 'SKU-1'");
+        assertThat(product.get("name")).isEqualTo("Дрель ударная");
+        // На title ведут ссылки — он не меняется; категория и картинки остаются как есть
+        assertThat(product.get("title")).isEqualTo("drel-sku-1");
+        assertThat(categorySkus(saws)).isEmpty();
+        assertThat(categorySkus(drills)).containsExactlyInAnyOrder("SKU-1", "SKU-2");
+        assertThat(imageCount("SKU-1")).isEqualTo(1);
+    }
+
+    @Test
+    void emptyBatchDoesNothing() {
+        UpsertOutcome outcome = repository.upsertProducts(List.of(), drills, true);
+
+        assertThat(outcome.inserted()).isEmpty();
+        assertThat(outcome.updated()).isEmpty();
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM product", Long.class)).isZero();
+    }
+
+    private static ProductImportRow row(String sku, String name, String title, String imageUrl) {
+        return new ProductImportRow(sku, name, title, "Описание " + name, name, imageUrl);
+    }
+
+    private long insertCategory(String title, String name) {
+        return jdbc.queryForObject("INSERT INTO category (title, name) VALUES (?, ?) RETURNING id",
+                Long.class, title, name);
+    }
+
+    private List<String> categorySkus(long categoryId) {
+        return jdbc.queryForList("""
+                SELECT p.sku FROM product_category pc JOIN product p ON p.id = pc.product_id
+                WHERE pc.category_id = ?
+                """, String.class, categoryId);
+    }
+
+    private int imageCount(String sku) {
+        return jdbc.queryForObject("""
+                SELECT count(*) FROM product_image i JOIN product p ON p.id = i.product_id WHERE p.sku = ?
+                """, Integer.class, sku);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.ParsedProductData;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class BulkProductParseServiceTest {
+
+    @Autowired
+    private BulkProductParseService parseService;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE product RESTART IDENTITY CASCADE");
+    }
+
+    @Test
+    void unsupportedAndMalformedUrlsAreReportedPerUrl() throws InterruptedException {
+        List<BulkProductParseService.ParseOutcome> outcomes = parseService.parseAll(List.of(
+                "https://unknown.example/product/1",
+                "not a url"));
+
+        assertThat(outcomes).extracting(BulkProductParseService.ParseOutcome::url)
+                .containsExactly("https://unknown.example/product/1", "not a url");
+        assertThat(outcomes).allMatch(BulkProductParseService.ParseOutcome::failed);
+    }
+
+    @Test
+    void draftsAreSavedInactiveAndExistingSkusSkipped() {
+        jdbc.update("""
+                INSERT INTO product (name, title, sku, price, active, created_at, updated_at)
+                VALUES ('Пила', 'pila-sku-1', 'SKU-1', 100, true, now(), now())
+                """);
+
+        BulkProductParseService.DraftOutcome outcome = parseService.saveDrafts(List.of(
+                parsed("https://a.example/1", "SKU-1", "Пила"),
+                parsed("https://a.example/2", "SKU-2", "Дрель"),
+                parsed("https://a.example/3", null, "Без артикула"),
+                new BulkProductParseService.ParseOutcome("https://a.example/4", null, "timeout")));
+
+        assertThat(outcome.created()).containsExactly("SKU-2");
+        assertThat(outcome.skipped()).containsExactly("SKU-1 (уже существует)");
+        assertThat(outcome.errors()).hasSize(2);
+
+        assertThat(jdbc.queryForObject("SELECT active FROM product WHERE sku = 'SKU-2'", Boolean.class)).isFalse();
+        assertThat(jdbc.queryForList("SELECT url FROM product_image i JOIN product p ON p.id = i.product_id "
+                + "WHERE p.sku = 'SKU-2' ORDER BY i.sort_order", String.class))
+                .containsExactly("https://a.example/img/SKU-2-0.jpg", "https://a.example/img/SKU-2-1.jpg");
+    }
+
+    private BulkProductParseService.ParseOutcome parsed(String url, String sku, String name) {
+        ParsedProductData data = new ParsedProductData();
+        data.setSku(sku);
+        data.setName(name);
+        data.setPrice(new BigDecimal("1500"));
+        data.setImageUrls(List.of("https://a.example/img/" + sku + "-0.jpg", "https://a.example/img/" + sku + "-1.jpg"));
+        return new BulkProductParseService.ParseOutcome(url, data, null);
+    }
+}
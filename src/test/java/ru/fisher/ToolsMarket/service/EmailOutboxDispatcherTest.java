@@ -0,0 +1,175 @@
+package ru.fisher.ToolsMarket.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.UserDTO.UserRegistrationEvent;
+import ru.fisher.ToolsMarket.models.EmailOutbox;
+import ru.fisher.ToolsMarket.models.EmailOutboxStatus;
+import ru.fisher.ToolsMarket.repository.EmailOutboxRepository;
+import ru.fisher.ToolsMarket.repository.FailedEmailRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "app.mail.outbox.initial-delay-ms=3600000",
+        "app.mail.outbox.max-per-minute=3",
+        "app.mail.outbox.max-attempts=2",
+        "app.mail.outbox.retry-delay-ms=60000",
+        "app.mail.digest.enabled=false"
+})
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class EmailOutboxDispatcherTest {
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+    @Autowired
+    private EmailOutboxService outboxService;
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+    @Autowired
+    private FailedEmailRepository failedEmailRepository;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+    @MockitoBean
+    private SpringTemplateEngine templateEngine;
+
+    @BeforeEach
+    void setUp() {
+        failedEmailRepository.deleteAll();
+        outboxRepository.deleteAll();
+        reset(mailSender, templateEngine);
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> mock(MimeMessage.class));
+        when(templateEngine.process(anyString(), any())).thenReturn("<html>Письмо</html>");
+        // Окно ограничения частоты — состояние бина, общего для тестов
+        ReflectionTestUtils.setField(dispatcher, "windowStart", Instant.now());
+        ReflectionTestUtils.setField(dispatcher, "sentInWindow", 0);
+    }
+
+    @Test
+    void failedSendIsRetriedWithBackoff() {
+        EmailOutbox entry = enqueue("first");
+        doThrow(new MailAuthenticationException("535 неверный пароль"))
+                .when(mailSender).send(any(MimeMessage[].class));
+
+        Instant before = Instant.now();
+        dispatcher.dispatch();
+
+        EmailOutbox retried = outboxRepository.findById(entry.getId()).orElseThrow();
+        assertThat(retried.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(retried.getAttempts()).isEqualTo(1);
+        assertThat(retried.getLastError()).contains("535");
+        assertThat(retried.getLockedAt()).isNull();
+        // Первая задержка — app.mail.outbox.retry-delay-ms
+        assertThat(retried.getNextAttemptAt()).isCloseTo(before.plus(Duration.ofMinutes(1)), within(Duration.ofSeconds(5)));
+
+        // До наступления next_attempt_at письмо не берется повторно
+        dispatcher.dispatch();
+        verify(mailSender, times(1)).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void backoffGrowsExponentially() {
+        assertThat(outboxService.backoff(1)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(outboxService.backoff(2)).isEqualTo(Duration.ofMinutes(2));
+        assertThat(outboxService.backoff(4)).isEqualTo(Duration.ofMinutes(8));
+        // Ограничено app.mail.outbox.max-retry-delay-ms (6 часов)
+        assertThat(outboxService.backoff(30)).isEqualTo(Duration.ofHours(6));
+    }
+
+    @Test
+    void lastAttemptMovesToFailed() {
+        EmailOutbox entry = enqueue("first");
+        entry.setAttempts(1);
+        outboxRepository.save(entry);
+        doThrow(new MailAuthenticationException("535 неверный пароль"))
+                .when(mailSender).send(any(MimeMessage[].class));
+
+        dispatcher.dispatch();
+
+        EmailOutbox failed = outboxRepository.findById(entry.getId()).orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(failed.getAttempts()).isEqualTo(2);
+
+        dispatcher.dispatch();
+        verify(mailSender, times(1)).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void sendingIsLimitedPerMinute() {
+        for (int i = 0; i < 5; i++) {
+            enqueue("user" + i);
+        }
+
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+
+        // Лимит 3 в минуту: вторая итерация ничего не отправляет
+        ArgumentCaptor<MimeMessage[]> sent = ArgumentCaptor.forClass(MimeMessage[].class);
+        verify(mailSender, times(1)).send(sent.capture());
+        assertThat(sent.getValue()).hasSize(3);
+        assertThat(outboxService.countByStatus(EmailOutboxStatus.SENT)).isEqualTo(3);
+        assertThat(outboxService.countByStatus(EmailOutboxStatus.PENDING)).isEqualTo(2);
+
+        // Новое окно — отправляются оставшиеся
+        ReflectionTestUtils.setField(dispatcher, "windowStart", Instant.now().minus(Duration.ofMinutes(2)));
+        dispatcher.dispatch();
+
+        assertThat(outboxService.countByStatus(EmailOutboxStatus.SENT)).isEqualTo(5);
+    }
+
+    @Test
+    void onlyFailedMessagesOfPartialSendAreRetried() {
+        enqueue("first");
+        enqueue("second");
+        enqueue("third");
+        // Одно из трех писем отклонено сервером, остальные доставлены
+        doAnswer(invocation -> {
+            MimeMessage[] messages = (MimeMessage[]) invocation.getRawArguments()[0];
+            throw new MailSendException(Map.of(messages[1], new MessagingException("550 ящик недоступен")));
+        }).when(mailSender).send(any(MimeMessage[].class));
+
+        dispatcher.dispatch();
+
+        assertThat(outboxService.countByStatus(EmailOutboxStatus.SENT)).isEqualTo(2);
+        assertThat(outboxRepository.findAll())
+                .filteredOn(entry -> entry.getStatus() == EmailOutboxStatus.PENDING)
+                .singleElement()
+                .satisfies(retried -> {
+                    assertThat(retried.getAttempts()).isEqualTo(1);
+                    assertThat(retried.getLastError()).contains("550");
+                    assertThat(retried.getSentAt()).isNull();
+                });
+    }
+
+    private EmailOutbox enqueue(String username) {
+        return outboxService.enqueueUserRegistration(UserRegistrationEvent.builder()
+                .userId(1L)
+                .username(username)
+                .email(username + "@example.com")
+                .build());
+    }
+}
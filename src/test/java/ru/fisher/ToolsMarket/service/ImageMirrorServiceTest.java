@@ -0,0 +1,165 @@
+package ru.fisher.ToolsMarket.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.fisher.ToolsMarket.TestData.insertImage;
+import static ru.fisher.ToolsMarket.TestData.insertProduct;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "app.upload.path=./test-uploads",
+        "app.base.url=http://testlocalhost:8080",
+        "app.images.mirror.max-bytes=1000",
+        "app.images.mirror.timeout-ms=1000"
+})
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class ImageMirrorServiceTest {
+
+    private static final byte[] PICTURE = "same picture bytes".getBytes();
+
+    @Autowired
+    private ImageMirrorService mirrorService;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        // CDN поставщика: одна картинка под двумя URL, слишком большая и отсутствующая
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = switch (path) {
+                case "/a.jpg", "/b.jpg" -> PICTURE;
+                case "/huge.jpg" -> new byte[5000];
+                default -> null;
+            };
+            if ("/stalled.jpg".equals(path)) {
+                // Заголовки отправлены, тело не приходит
+                exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+                exchange.sendResponseHeaders(200, 500);
+                OutputStream out = exchange.getResponseBody();
+                out.write(PICTURE);
+                out.flush();
+                try {
+                    stalled.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    // сервер остановлен
+                }
+                exchange.close();
+                return;
+            }
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void cleanup() {
+        stalled.countDown();
+        server.stop(0);
+        jdbc.execute("TRUNCATE TABLE product, image_mirror RESTART IDENTITY CASCADE");
+    }
+
+    @Test
+    void sameContentIsStoredOnceAndUrlsAreRewritten() {
+        long first = insertProduct(jdbc, "SKU-1");
+        long second = insertProduct(jdbc, "SKU-2");
+        long third = insertProduct(jdbc, "SKU-3");
+        insertImage(jdbc, first, url("/a.jpg"));
+        insertImage(jdbc, second, url("/a.jpg"));
+        insertImage(jdbc, second, url("/b.jpg"));
+        insertImage(jdbc, third, url("/huge.jpg"));
+        insertImage(jdbc, third, url("/missing.jpg"));
+        insertImage(jdbc, third, "http://testlocalhost:8080/images/products/own.jpg");
+
+        assertThat(mirrorService.mirrorPending()).isEqualTo(2);
+
+        // Общий URL скачан один раз, одинаковое содержимое — один файл
+        assertThat(requests).hasValue(4);
+        List<String> mirrored = jdbc.queryForList(
+                "SELECT DISTINCT url FROM product_image WHERE product_id IN (?, ?)", String.class, first, second);
+        assertThat(mirrored).singleElement().asString()
+                .startsWith("http://testlocalhost:8080/images/content/");
+        // Внешний URL остается для сравнения с фидом поставщика
+        assertThat(jdbc.queryForList("SELECT source_url FROM product_image WHERE product_id = ?",
+                String.class, first)).containsExactly(url("/a.jpg"));
+
+        // Ошибки остаются внешними ссылками и не повторяются сразу
+        assertThat(jdbc.queryForList("SELECT url FROM product_image WHERE product_id = ? ORDER BY id",
+                String.class, third))
+                .containsExactly(url("/huge.jpg"), url("/missing.jpg"),
+                        "http://testlocalhost:8080/images/products/own.jpg");
+        assertThat(jdbc.queryForObject(
+                "SELECT COUNT(*) FROM image_mirror WHERE local_url IS NULL AND attempts = 1", Integer.class))
+                .isEqualTo(2);
+
+        assertThat(mirrorService.mirrorPending()).isZero();
+        assertThat(requests).hasValue(4);
+    }
+
+    @Test
+    void alreadyMirroredUrlIsReusedForNewProducts() {
+        insertImage(jdbc, insertProduct(jdbc, "SKU-1"), url("/a.jpg"));
+        mirrorService.mirrorPending();
+
+        long later = insertProduct(jdbc, "SKU-2");
+        insertImage(jdbc, later, url("/a.jpg"));
+        mirrorService.mirrorPending();
+
+        assertThat(requests).hasValue(1);
+        assertThat(jdbc.queryForObject("SELECT url FROM product_image WHERE product_id = ?", String.class, later))
+                .startsWith("http://testlocalhost:8080/images/content/");
+    }
+
+    @Test
+    void stalledDownloadFailsByDeadline() {
+        insertImage(jdbc, insertProduct(jdbc, "SKU-1"), url("/stalled.jpg"));
+
+        long started = System.nanoTime();
+        assertThat(mirrorService.mirrorPending()).isZero();
+
+        // app.images.mirror.timeout-ms ограничивает и чтение тела, а не только заголовки
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(10));
+        assertThat(jdbc.queryForObject("SELECT last_error FROM image_mirror WHERE source_url = ?",
+                String.class, url("/stalled.jpg"))).isEqualTo("таймаут");
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
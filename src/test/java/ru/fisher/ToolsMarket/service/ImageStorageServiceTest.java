@@ -1,19 +1,30 @@
 package ru.fisher.ToolsMarket.service;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.ImageOrderDto;
 import ru.fisher.ToolsMarket.models.ProductImage;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static ru.fisher.ToolsMarket.TestData.insertImage;
+import static ru.fisher.ToolsMarket.TestData.insertProduct;
 
 
 @SpringBootTest
@@ -24,12 +35,22 @@ import static org.junit.jupiter.api.Assertions.*;
 @ContextConfiguration(initializers = PostgresTestConfig.class)
 class ImageStorageServiceTest {
 
+    private static final String IMAGE_URL = "http://testlocalhost:8080/images/x.jpg";
+
     @Autowired
     private ImageStorageService imageStorageService;
 
+    @Autowired
+    private JdbcTemplate jdbc;
+
     @TempDir
     static Path tempDir;
 
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE product RESTART IDENTITY CASCADE");
+    }
+
     @Test
     void saveImage_WithValidImage_ShouldSaveAndReturnProductImage() throws IOException {
         // Given
@@ -48,7 +69,7 @@ class ImageStorageServiceTest {
         assertNotNull(result);
         assertNotNull(result.getUrl());
         assertTrue(result.getUrl().startsWith("http://testlocalhost:8080/images/"));
-        assertTrue(result.getUrl().toLowerCase().contains("testproduct"));
+        assertTrue(result.getUrl().startsWith("http://testlocalhost:8080/images/content/"));
         assertEquals("TestProduct", result.getAlt());
         assertEquals(0, result.getSortOrder());
     }
@@ -68,7 +89,74 @@ class ImageStorageServiceTest {
         assertNotNull(result1.getUrl());
         assertNotNull(result2.getUrl());
         assertNotEquals(result1.getUrl(), result2.getUrl(), "URLs should be different for different files");
-        assertTrue(result1.getUrl().contains("sameproduct") || result1.getUrl().contains("SameProduct"));
-        assertTrue(result2.getUrl().contains("sameproduct") || result2.getUrl().contains("SameProduct"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void sameContent_ShouldBeStoredOnceUnderContentHash() throws IOException, NoSuchAlgorithmException {
+        // Given
+        byte[] content = "identical image content".getBytes();
+        MockMultipartFile file1 = new MockMultipartFile("a.jpg", "a.jpg", "image/jpeg", content);
+        MockMultipartFile file2 = new MockMultipartFile("b.JPG", "b.JPG", "image/jpeg", content);
+
+        // When
+        ProductImage result1 = imageStorageService.saveImage(file1, "First");
+        ProductImage result2 = imageStorageService.saveImage(file2, "Second");
+        String categoryUrl = imageStorageService.saveCategoryImage(file1, "Category");
+
+        // Then
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        String expected = "http://testlocalhost:8080/images/content/"
+                + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".jpg";
+        assertEquals(expected, result1.getUrl());
+        assertEquals(expected, result2.getUrl());
+        assertEquals(expected, categoryUrl);
+        assertTrue(Files.exists(Path.of("./test-uploads/content", hash.substring(0, 2), hash.substring(2, 4),
+                hash + ".jpg")));
+    }
+
+    @Test
+    void updateImageOrder_ShouldApplyWholeOrderOrNothing() {
+        // Given
+        long product = insertProduct(jdbc, "SKU-1");
+        long other = insertProduct(jdbc, "SKU-2");
+        long first = insertImage(jdbc, product, IMAGE_URL, 1);
+        long second = insertImage(jdbc, product, IMAGE_URL, 2);
+        long foreign = insertImage(jdbc, other, IMAGE_URL, 1);
+
+        // When
+        imageStorageService.updateImageOrder(product, List.of(
+                new ImageOrderDto(first, 2), new ImageOrderDto(second, 1)));
+
+        // Then
+        assertEquals(List.of(second, first), jdbc.queryForList(
+                "SELECT id FROM product_image WHERE product_id = ? ORDER BY sort_order", Long.class, product));
+
+        // Картинка другого товара — конфликт, порядок не меняется
+        assertThrows(OptimisticLockingFailureException.class, () -> imageStorageService.updateImageOrder(product,
+                List.of(new ImageOrderDto(first, 1), new ImageOrderDto(foreign, 2))));
+        assertEquals(2, jdbc.queryForObject("SELECT sort_order FROM product_image WHERE id = ?", Integer.class, first));
+        assertEquals(1, jdbc.queryForObject("SELECT sort_order FROM product_image WHERE id = ?", Integer.class, foreign));
+    }
+
+    @Test
+    void updateImageOrder_ShouldRejectOrderMissingImageAddedAfterPageLoad() {
+        // Given: страница загружена с двумя картинками, затем добавлена третья
+        long product = insertProduct(jdbc, "SKU-1");
+        long first = insertImage(jdbc, product, IMAGE_URL, 1);
+        long second = insertImage(jdbc, product, IMAGE_URL, 2);
+        long added = insertImage(jdbc, product, IMAGE_URL, 1);
+
+        // When / Then: порядок без новой картинки дал бы ей совпадающий sort_order
+        assertThrows(OptimisticLockingFailureException.class, () -> imageStorageService.updateImageOrder(product,
+                List.of(new ImageOrderDto(first, 2), new ImageOrderDto(second, 1))));
+        assertEquals(List.of(1, 2, 1), jdbc.queryForList(
+                "SELECT sort_order FROM product_image WHERE id IN (?, ?, ?) ORDER BY id", Integer.class,
+                first, second, added));
+
+        // Полный порядок применяется
+        imageStorageService.updateImageOrder(product, List.of(
+                new ImageOrderDto(first, 3), new ImageOrderDto(second, 2), new ImageOrderDto(added, 1)));
+        assertEquals(List.of(added, second, first), jdbc.queryForList(
+                "SELECT id FROM product_image WHERE product_id = ? ORDER BY sort_order", Long.class, product));
+    }
+}
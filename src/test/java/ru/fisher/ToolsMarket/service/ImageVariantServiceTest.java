@@ -0,0 +1,111 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.FileSystemUtils;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.fisher.ToolsMarket.TestData.insertImage;
+import static ru.fisher.ToolsMarket.TestData.insertProduct;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "app.upload.path=./test-uploads/variants",
+        "app.base.url=http://testlocalhost:8080",
+        "app.images.variants.widths=200,400,800"
+})
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class ImageVariantServiceTest {
+
+    private static final String IMAGES = "http://testlocalhost:8080/images/";
+    private static final Path UPLOADS = Paths.get("./test-uploads/variants");
+
+    @Autowired
+    private ImageVariantService variantService;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @AfterEach
+    void cleanup() throws IOException {
+        jdbc.execute("TRUNCATE TABLE product, category RESTART IDENTITY CASCADE");
+        FileSystemUtils.deleteRecursively(UPLOADS);
+    }
+
+    @Test
+    void variantsAreCreatedOncePerFileAndStoredAsSrcset() throws IOException {
+        writeImage("products/photo.jpg", 1000, 500, BufferedImage.TYPE_INT_RGB, "jpg");
+        writeImage("products/logo.png", 300, 300, BufferedImage.TYPE_INT_ARGB, "png");
+        Files.writeString(UPLOADS.resolve("products/broken.jpg"), "не картинка");
+
+        long first = insertProduct(jdbc, "SKU-1");
+        long second = insertProduct(jdbc, "SKU-2");
+        insertImage(jdbc, first, IMAGES + "products/photo.jpg");
+        insertImage(jdbc, second, IMAGES + "products/photo.jpg");
+        insertImage(jdbc, second, IMAGES + "products/logo.png");
+        insertImage(jdbc, second, IMAGES + "products/broken.jpg");
+        insertImage(jdbc, second, "https://supplier.example/remote.jpg");
+
+        assertThat(variantService.generatePending()).isEqualTo(4);
+
+        // Все ширины меньше исходной, оригинал — самый широкий вариант
+        Map<String, Object> photo = jdbc.queryForMap(
+                "SELECT thumbnail_url, srcset FROM product_image WHERE product_id = ? ORDER BY id LIMIT 1", first);
+        assertThat(photo.get("thumbnail_url")).isEqualTo(IMAGES + "products/photo_w400.jpg");
+        assertThat(photo.get("srcset")).isEqualTo(
+                IMAGES + "products/photo_w200.jpg 200w, "
+                        + IMAGES + "products/photo_w400.jpg 400w, "
+                        + IMAGES + "products/photo_w800.jpg 800w, "
+                        + IMAGES + "products/photo.jpg 1000w");
+        BufferedImage small = ImageIO.read(UPLOADS.resolve("products/photo_w400.jpg").toFile());
+        assertThat(small.getWidth()).isEqualTo(400);
+        assertThat(small.getHeight()).isEqualTo(200);
+
+        // Прозрачность сохраняется в PNG; копий шире исходной нет
+        assertThat(jdbc.queryForObject("SELECT srcset FROM product_image WHERE url LIKE '%logo.png'", String.class))
+                .isEqualTo(IMAGES + "products/logo_w200.png 200w, " + IMAGES + "products/logo.png 300w");
+        assertThat(UPLOADS.resolve("products/logo_w400.png")).doesNotExist();
+
+        // Нечитаемый файл больше не обрабатывается, внешний URL ждет копирования
+        assertThat(jdbc.queryForObject("SELECT srcset FROM product_image WHERE url LIKE '%broken.jpg'", String.class))
+                .isEmpty();
+        assertThat(jdbc.queryForObject("SELECT srcset FROM product_image WHERE url LIKE 'https:%'", String.class))
+                .isNull();
+
+        assertThat(variantService.generatePending()).isZero();
+    }
+
+    @Test
+    void categoryThumbnailPointsToVariant() throws IOException {
+        writeImage("categories/drills.jpg", 900, 600, BufferedImage.TYPE_INT_RGB, "jpg");
+        jdbc.update("""
+                INSERT INTO category (title, name, image_url, thumbnail_url)
+                VALUES ('drills', 'Дрели', ?, ?)
+                """, IMAGES + "categories/drills.jpg", IMAGES + "categories/drills.jpg");
+
+        variantService.generatePending();
+
+        Map<String, Object> category = jdbc.queryForMap("SELECT thumbnail_url, image_srcset FROM category");
+        assertThat(category.get("thumbnail_url")).isEqualTo(IMAGES + "categories/drills_w400.jpg");
+        assertThat((String) category.get("image_srcset")).endsWith("categories/drills.jpg 900w");
+    }
+
+    private void writeImage(String path, int width, int height, int type, String format) throws IOException {
+        Path file = UPLOADS.resolve(path);
+        Files.createDirectories(file.getParent());
+        ImageIO.write(new BufferedImage(width, height, type), format, file.toFile());
+    }
+}
@@ -0,0 +1,189 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.batch.ImportJobsConfig;
+import ru.fisher.ToolsMarket.dto.ImportJobDto;
+import ru.fisher.ToolsMarket.dto.ImportProgressDto;
+import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.dto.PriceChange;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.groups.Tuple.tuple;
+import static ru.fisher.ToolsMarket.TestData.insertProduct;
+import static ru.fisher.ToolsMarket.TestData.priceExcel;
+
+@SpringBootTest
+@TestPropertySource(properties = "app.import.batch-size=2")
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class ImportJobServiceTest {
+
+    @Autowired
+    private ImportJobService importJobService;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private JobRepository jobRepository;
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @BeforeEach
+    void setup() {
+        insertProduct(jdbc, "SKU-1", "drel-1", "1000.00");
+        insertProduct(jdbc, "SKU-2", "drel-2", "2000.00");
+        insertProduct(jdbc, "SKU-3", "drel-3", "3000.00");
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE product RESTART IDENTITY CASCADE");
+        jdbc.execute("TRUNCATE TABLE price_change_history");
+    }
+
+    @Test
+    void importPricesCommitsEveryChunkAndRecordsJobHistory() throws Exception {
+        // Чанки по 2 строки: [SKU-1, SKU-2], [SKU-3, UNKNOWN], [SKU-1]
+        // SKU-1 меняется дважды — в итоге остается последняя цена, SKU-2 без изменений
+        ByteArrayInputStream excel = priceExcel(
+                new Object[]{"SKU-1", 1100},
+                new Object[]{"SKU-2", "2 000,00"},
+                new Object[]{"SKU-3", 2900.5},
+                new Object[]{"UNKNOWN", 10},
+                new Object[]{"SKU-1", 1200}
+        );
+
+        long jobId = importJobService.startPrices(excel, "prices.xlsx");
+        ImportProgressDto progress = awaitFinished(jobId);
+
+        assertThat(progress.status()).isEqualTo("COMPLETED");
+        assertThat(progress.percent()).isEqualTo(100.0);
+        assertThat(progress.readCount()).isEqualTo(5);
+
+        ImportResult result = importJobService.priceResult(jobId);
+
+        assertThat(result.updatedCount()).isEqualTo(3);
+        assertThat(result.samePriceCount()).isEqualTo(1);
+        assertThat(result.notFoundArticles()).containsExactly("UNKNOWN");
+        assertThat(result.priceChanges())
+                .extracting(PriceChange::sku, c -> c.oldPrice().stripTrailingZeros(), c -> c.newPrice().stripTrailingZeros())
+                .containsExactly(
+                        tuple("SKU-1", new BigDecimal("1000"), new BigDecimal("1100")),
+                        tuple("SKU-3", new BigDecimal("3000"), new BigDecimal("2900.5")),
+                        tuple("SKU-1", new BigDecimal("1100"), new BigDecimal("1200"))
+                );
+
+        assertThat(jdbc.queryForObject("SELECT price FROM product WHERE sku = 'SKU-1'", BigDecimal.class))
+                .isEqualByComparingTo("1200");
+        assertThat(jdbc.queryForObject("SELECT price FROM product WHERE sku = 'SKU-2'", BigDecimal.class))
+                .isEqualByComparingTo("2000");
+
+        // Запуск виден в истории, каждый чанк закоммичен отдельно
+        ImportJobDto job = importJobService.recentExecutions(1).get(0);
+        assertThat(job.jobName()).isEqualTo("priceImportJob");
+        assertThat(job.status()).isEqualTo("COMPLETED");
+        assertThat(job.source()).isEqualTo("prices.xlsx");
+        assertThat(job.readCount()).isEqualTo(5);
+        assertThat(job.commitCount()).isGreaterThanOrEqualTo(3);
+        assertThat(job.restartable()).isFalse();
+    }
+
+    @Test
+    void orphanedExecutionIsFailedOnStartupAndCanBeRestarted(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("prices.xlsx");
+        Files.write(file, priceExcel(new Object[]{"SKU-1", 1500}, new Object[]{"SKU-2", 2500}).readAllBytes());
+
+        // Запуск, который выполнял упавший экземпляр приложения: STARTED без времени окончания
+        JobExecution orphan = jobRepository.createJobExecution(ImportJobsConfig.PRICE_IMPORT_JOB,
+                new JobParametersBuilder()
+                        .addString(ImportJobsConfig.PARAM_FILE, file.toString())
+                        .addString(ImportJobsConfig.PARAM_FILE_NAME, "prices.xlsx", false)
+                        .toJobParameters());
+        orphan.setStatus(BatchStatus.STARTED);
+        orphan.setStartTime(LocalDateTime.now());
+        jobRepository.update(orphan);
+        StepExecution step = orphan.createStepExecution("priceImportStep");
+        step.setStatus(BatchStatus.STARTED);
+        step.setStartTime(LocalDateTime.now());
+        jobRepository.add(step);
+
+        assertThat(importJobService.findRunning(ImportJobsConfig.PRICE_IMPORT_JOB)).contains(orphan.getId());
+        assertThat(importJobService.canRestart(orphan.getId())).isFalse();
+
+        // Остановку некому довести до STOPPED — запуск так и остается выполняющимся
+        importJobService.stop(orphan.getId());
+        ImportProgressDto stopping = importJobService.progress(orphan.getId());
+        assertThat(stopping.status()).isEqualTo("STOPPING");
+        assertThat(stopping.running()).isTrue();
+
+        // Граница с запасом: время создания запуска может совпасть с now()
+        assertThat(importJobService.failOrphaned(LocalDateTime.now().plusSeconds(1))).isEqualTo(1);
+
+        assertThat(importJobService.findRunning(ImportJobsConfig.PRICE_IMPORT_JOB)).isEmpty();
+        ImportProgressDto failed = importJobService.progress(orphan.getId());
+        assertThat(failed.status()).isEqualTo("FAILED");
+        assertThat(failed.running()).isFalse();
+        assertThat(failed.exitMessage()).contains("запуск #" + orphan.getId());
+        assertThat(jobExplorer.getStepExecution(orphan.getId(), step.getId()).getStatus())
+                .isEqualTo(BatchStatus.FAILED);
+        assertThat(importJobService.canRestart(orphan.getId())).isTrue();
+
+        long restarted = importJobService.restart(orphan.getId());
+        ImportProgressDto progress = awaitFinished(restarted);
+
+        assertThat(progress.status()).isEqualTo("COMPLETED");
+        assertThat(progress.readCount()).isEqualTo(2);
+        assertThat(jdbc.queryForObject("SELECT price FROM product WHERE sku = 'SKU-2'", BigDecimal.class))
+                .isEqualByComparingTo("2500");
+        assertThatThrownBy(() -> importJobService.stop(restarted))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void executionsCreatedAfterStartupAreNotTouched() throws Exception {
+        JobExecution running = jobRepository.createJobExecution(ImportJobsConfig.YML_IMPORT_JOB,
+                new JobParametersBuilder()
+                        .addString(ImportJobsConfig.PARAM_URL, "http://localhost/feed.xml")
+                        .addLong(ImportJobsConfig.PARAM_RUN_AT, System.currentTimeMillis())
+                        .toJobParameters());
+        running.setStatus(BatchStatus.STARTED);
+        jobRepository.update(running);
+
+        assertThat(importJobService.failOrphaned(running.getCreateTime().minusSeconds(1))).isZero();
+        assertThat(importJobService.findRunning(ImportJobsConfig.YML_IMPORT_JOB)).contains(running.getId());
+
+        // Чтобы не мешать другим тестам
+        importJobService.failOrphaned(LocalDateTime.now().plusSeconds(1));
+    }
+
+    private ImportProgressDto awaitFinished(long jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        ImportProgressDto progress = importJobService.progress(jobId);
+        while (progress.running() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            progress = importJobService.progress(jobId);
+        }
+        assertThat(progress.running()).as("импорт не завершился за 30 секунд").isFalse();
+        return progress;
+    }
+}
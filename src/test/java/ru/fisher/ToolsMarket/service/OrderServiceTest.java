@@ -6,6 +6,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -13,11 +15,14 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.context.ContextConfiguration;
 import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.OrderDTO.OrderSummaryDto;
+import ru.fisher.ToolsMarket.dto.OrderDTO.UserOrderStatsDto;
 import ru.fisher.ToolsMarket.exceptions.InvalidStatusTransitionException;
 import ru.fisher.ToolsMarket.exceptions.OrderFinalizedException;
 import ru.fisher.ToolsMarket.exceptions.OrderNotFoundException;
 import ru.fisher.ToolsMarket.exceptions.OrderValidationException;
 import ru.fisher.ToolsMarket.models.*;
+import ru.fisher.ToolsMarket.repository.EmailOutboxRepository;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -43,6 +48,8 @@ class OrderServiceTest {
     private Authentication originalAuthentication;
     @Autowired
     private JdbcTemplate jdbc;
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
 
     @AfterEach
     void cleanup() {
@@ -50,6 +57,7 @@ class OrderServiceTest {
         SecurityContextHolder.getContext().setAuthentication(originalAuthentication);
 
         // Очищаем базу данных
+        jdbc.execute("TRUNCATE TABLE email_outbox RESTART IDENTITY CASCADE");
         jdbc.execute("TRUNCATE TABLE order_item RESTART IDENTITY CASCADE");
         jdbc.execute("TRUNCATE TABLE \"order\" RESTART IDENTITY CASCADE");
         jdbc.execute("TRUNCATE TABLE cart_item RESTART IDENTITY CASCADE");
@@ -248,6 +256,61 @@ class OrderServiceTest {
         assertThat(paidOrders.get(0).getId()).isEqualTo(order2.getId());
     }
 
+    @Test
+    void getUserOrderSummariesReturnsPagedProjectionsWithItemCount() {
+        Product p1 = createAndSaveProduct("p1", BigDecimal.valueOf(1000.0));
+        Product p2 = createAndSaveProduct("p2", BigDecimal.valueOf(500.0));
+
+        Cart cart = cartService.getOrCreateCart(testUser.getId());
+        cartService.addProductWithQuantity(cart.getId(), p1.getId(), 2);
+        cartService.addProductWithQuantity(cart.getId(), p2.getId(), 3);
+        Order first = orderService.createOrder(cart.getId(), "");
+
+        cartService.addProductWithQuantity(cart.getId(), p1.getId(), 1);
+        Order second = orderService.createOrder(cart.getId(), "");
+        orderService.updateStatus(second.getId(), OrderStatus.COMPLETED);
+
+        Page<OrderSummaryDto> page = orderService.getUserOrderSummaries(
+                testUser.getId(), null, PageRequest.of(0, 1));
+
+        assertThat(page.getTotalElements()).isEqualTo(2L);
+        assertThat(page.getTotalPages()).isEqualTo(2);
+        assertThat(page.getContent().size()).isEqualTo(1);
+
+        Page<OrderSummaryDto> created = orderService.getUserOrderSummaries(
+                testUser.getId(), OrderStatus.CREATED, PageRequest.of(0, 10));
+        assertThat(created.getTotalElements()).isEqualTo(1L);
+        OrderSummaryDto summary = created.getContent().getFirst();
+        assertThat(summary.getId()).isEqualTo(first.getId());
+        assertThat(summary.getItemsCount()).isEqualTo(5L);
+        assertThat(summary.getTotalPrice()).isEqualByComparingTo(BigDecimal.valueOf(3500));
+
+        UserOrderStatsDto stats = orderService.getUserOrderStats(testUser.getId());
+        assertThat(stats.getTotalOrdersCount()).isEqualTo(2L);
+        assertThat(stats.getActiveOrdersCount()).isEqualTo(1L);
+        assertThat(stats.getTotalSpent()).isEqualByComparingTo(BigDecimal.valueOf(1000));
+    }
+
+    @Test
+    void createOrderWritesEmailToOutboxInSameTransaction() {
+        Cart cart = cartService.getOrCreateCart(testUser.getId());
+        Product p1 = createAndSaveProduct("p1", BigDecimal.valueOf(1000.0));
+        cartService.addProductWithQuantity(cart.getId(), p1.getId(), 1);
+
+        Order order = orderService.createOrder(cart.getId(), "");
+
+        List<EmailOutbox> outbox = emailOutboxRepository.findAll();
+        assertThat(outbox.size()).isEqualTo(1);
+        assertThat(outbox.getFirst().getType()).isEqualTo(EmailOutboxType.ORDER_CREATED);
+        assertThat(outbox.getFirst().getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(outbox.getFirst().getPayloadJson()).contains(String.valueOf(order.getOrderNumber()));
+
+        // Пустая корзина — заказ откатывается, письма в очереди не прибавилось
+        assertThatThrownBy(() -> orderService.createOrder(cart.getId(), ""))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(emailOutboxRepository.count()).isEqualTo(1L);
+    }
+
     @Test
     void cancelOrderChangesStatusAndCanBeCancelledByUser() {
         Cart cart = cartService.getOrCreateCart(testUser.getId());
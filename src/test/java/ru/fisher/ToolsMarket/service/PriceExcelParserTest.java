@@ -4,6 +4,7 @@ import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
 import ru.fisher.ToolsMarket.dto.PriceRow;
 
@@ -11,6 +12,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
@@ -42,6 +44,36 @@ class PriceExcelParserTest {
                 );
     }
 
+    @Test
+    void shouldStreamXlsxInChunksAcrossSheets() throws Exception {
+
+        // given: лист без заголовков и лист с 5 товарами
+        Workbook workbook = new XSSFWorkbook();
+        workbook.createSheet("Инфо").createRow(0).createCell(0).setCellValue("Прайс-лист поставщика");
+
+        Sheet sheet = workbook.createSheet("Price");
+        Row header = sheet.createRow(1);
+        header.createCell(0).setCellValue("Артикул");
+        header.createCell(2).setCellValue("Цена");
+        for (int i = 0; i < 5; i++) {
+            Row row = sheet.createRow(i + 2);
+            row.createCell(0).setCellValue("SKU-" + i);
+            row.createCell(2).setCellValue(100.5 + i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        workbook.close();
+
+        // when
+        List<List<PriceRow>> chunks = new ArrayList<>();
+        int total = parser.parse(new ByteArrayInputStream(out.toByteArray()), 2, chunks::add);
+
+        // then
+        assertThat(total).isEqualTo(5);
+        assertThat(chunks).extracting(List::size).containsExactly(2, 2, 1);
+        assertThat(chunks.get(0).get(0)).isEqualTo(new PriceRow("SKU-0", new BigDecimal("100.5")));
+    }
+
     private ByteArrayInputStream createTestExcel() throws IOException {
         Workbook workbook = new HSSFWorkbook();
         Sheet sheet = workbook.createSheet("Price");
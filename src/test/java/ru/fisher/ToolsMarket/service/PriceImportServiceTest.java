@@ -0,0 +1,78 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.dto.PriceChange;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static ru.fisher.ToolsMarket.TestData.insertProduct;
+import static ru.fisher.ToolsMarket.TestData.priceExcel;
+
+@SpringBootTest
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class PriceImportServiceTest {
+
+    @Autowired
+    private PriceImportService priceImportService;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setup() {
+        insertProduct(jdbc, "SKU-1", "drel-1", "1000.00");
+        insertProduct(jdbc, "SKU-2", "drel-2", "2000.00");
+        insertProduct(jdbc, "SKU-3", "drel-3", "3000.00");
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE product RESTART IDENTITY CASCADE");
+    }
+
+    @Test
+    void applyDryRunUsesReviewedRowsAndSkipsPricesChangedInBetween() throws IOException {
+        ImportResult preview = priceImportService.dryRunImport(priceExcel(
+                new Object[]{"SKU-1", 900},
+                new Object[]{"SKU-1", 1100},
+                new Object[]{"SKU-2", 2000},
+                new Object[]{"SKU-3", 3500},
+                new Object[]{"UNKNOWN", 10}
+        ), "prices.xlsx");
+
+        // Повтор артикула схлопнут: действует последняя строка файла
+        assertThat(preview.token()).isNotNull();
+        assertThat(preview.updatedCount()).isEqualTo(2);
+        assertThat(preview.samePriceCount()).isEqualTo(1);
+        assertThat(preview.notFoundArticles()).containsExactly("UNKNOWN");
+
+        // Цена SKU-3 меняется между предпросмотром и применением
+        jdbc.update("UPDATE product SET price = 3200 WHERE sku = 'SKU-3'");
+
+        ImportResult applied = priceImportService.applyDryRun(preview.token());
+
+        assertThat(applied.updatedCount()).isEqualTo(1);
+        assertThat(applied.priceChanges()).extracting(PriceChange::sku).containsExactly("SKU-1");
+        assertThat(applied.conflictArticles()).containsExactly("SKU-3");
+        assertThat(applied.notFoundArticles()).containsExactly("UNKNOWN");
+
+        assertThat(jdbc.queryForObject("SELECT price FROM product WHERE sku = 'SKU-1'", BigDecimal.class))
+                .isEqualByComparingTo("1100");
+        assertThat(jdbc.queryForObject("SELECT price FROM product WHERE sku = 'SKU-3'", BigDecimal.class))
+                .isEqualByComparingTo("3200");
+
+        // Токен одноразовый
+        assertThatThrownBy(() -> priceImportService.applyDryRun(preview.token()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,107 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+import ru.fisher.ToolsMarket.dto.ImportResult;
+import ru.fisher.ToolsMarket.dto.ParsedProductData;
+import ru.fisher.ToolsMarket.dto.PriceChange;
+import ru.fisher.ToolsMarket.util.ProductPageParser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "app.parse.monitor.auto-apply-percent=20",
+        "app.parse.host-delay-ms=0"
+})
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class PriceMonitorServiceTest {
+
+    @Autowired
+    private PriceMonitorService monitorService;
+    @Autowired
+    private PriceImportService priceImportService;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private ParserRouter router;
+
+    @AfterEach
+    void cleanup() {
+        jdbc.execute("TRUNCATE TABLE product RESTART IDENTITY CASCADE");
+    }
+
+    @Test
+    void reportHasDryRunShapeAndLargeChangesAreAutoApplied() throws Exception {
+        insertProduct("SKU-1", "1000.00", "https://supplier.example/1");
+        insertProduct("SKU-2", "1000.00", "https://supplier.example/2");
+        insertProduct("SKU-3", "1000.00", "https://supplier.example/3");
+        insertProduct("SKU-4", "1000.00", "https://supplier.example/4");
+        insertProduct("SKU-5", "1000.00", null);
+
+        Map<String, BigDecimal> supplierPrices = Map.of(
+                "https://supplier.example/1", new BigDecimal("1050"),   // +5% — в отчет
+                "https://supplier.example/2", new BigDecimal("1500"),   // +50% — автоприменение
+                "https://supplier.example/3", new BigDecimal("1000"));  // без изменений
+        ProductPageParser parser = new ProductPageParser() {
+            @Override
+            public boolean supports(String url) {
+                return true;
+            }
+
+            @Override
+            public ParsedProductData parse(String url) throws IOException {
+                BigDecimal price = supplierPrices.get(url);
+                if (price == null) {
+                    throw new IOException("страница недоступна");
+                }
+                ParsedProductData data = new ParsedProductData();
+                data.setPrice(price);
+                return data;
+            }
+        };
+        when(router.getParser(anyString())).thenReturn(parser);
+
+        PriceMonitorService.Report report = monitorService.check();
+
+        // Товар без ссылки не проверяется
+        assertThat(report.checked()).isEqualTo(4);
+        assertThat(report.errors()).singleElement().asString().startsWith("SKU-4");
+        assertThat(report.autoApplied()).extracting(PriceChange::sku).containsExactly("SKU-2");
+        assertThat(price("SKU-2")).isEqualByComparingTo("1500");
+
+        ImportResult result = report.result();
+        assertThat(result.dryRun()).isTrue();
+        assertThat(result.samePriceCount()).isEqualTo(1);
+        assertThat(result.priceChanges()).extracting(PriceChange::sku).containsExactly("SKU-1");
+        assertThat(price("SKU-1")).isEqualByComparingTo("1000");
+
+        // Отчет применяется так же, как проверенный прайс
+        ImportResult applied = priceImportService.applyDryRun(result.token());
+        assertThat(applied.updatedCount()).isEqualTo(1);
+        assertThat(price("SKU-1")).isEqualByComparingTo("1050");
+    }
+
+    private void insertProduct(String sku, String price, String sourceUrl) {
+        jdbc.update("""
+                INSERT INTO product (name, title, sku, price, source_url, created_at, updated_at)
+                VALUES (?, ?, ?, ?, ?, now(), now())
+                """, "Товар " + sku, sku.toLowerCase(), sku, new BigDecimal(price), sourceUrl);
+    }
+
+    private BigDecimal price(String sku) {
+        return jdbc.queryForObject("SELECT price FROM product WHERE sku = ?", BigDecimal.class, sku);
+    }
+}
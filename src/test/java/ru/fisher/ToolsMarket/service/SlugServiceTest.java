@@ -0,0 +1,97 @@
+package ru.fisher.ToolsMarket.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlugServiceTest {
+
+    @Test
+    void shouldTransliterateAndNormalizeSeparators() {
+        assertThat(SlugService.slugify("Дрель ударная  Bosch GSB-13 RE", 200, "product"))
+                .isEqualTo("drel_udarnaya_bosch_gsb_13_re");
+        assertThat(SlugService.slugify("  — Щётка, (2 шт.) — ", 200, "product"))
+                .isEqualTo("shchyotka_2_sht");
+        assertThat(SlugService.slugify("Объём 5л", 200, "product"))
+                .isEqualTo("obyom_5l");
+    }
+
+    @Test
+    void shouldCutToMaxLengthWithoutTrailingSeparator() {
+        assertThat(SlugService.slugify("abc def", 4, "product")).isEqualTo("abc");
+        assertThat(SlugService.slugify("Щука", 3, "product")).isEqualTo("shc");
+    }
+
+    @Test
+    void shouldFallBackWhenNothingLeft() {
+        assertThat(SlugService.slugify("", 200, "category")).startsWith("category-");
+        assertThat(SlugService.slugify("!!!", 200, "product")).startsWith("product-");
+    }
+
+    @Test
+    void fallbackIsDeterministic() {
+        // Slug категории — ключ сопоставления при импорте: повторный импорт не должен создавать дубль
+        assertThat(SlugService.slugify("№", 200, "category"))
+                .isEqualTo(SlugService.slugify("№", 200, "category"))
+                .matches("category-[0-9a-f]{8}");
+        assertThat(SlugService.slugify("電動工具", 200, "category"))
+                .isEqualTo(SlugService.slugify("電動工具", 200, "category"))
+                .isNotEqualTo(SlugService.slugify("手工具", 200, "category"));
+    }
+
+    @Test
+    void shouldMatchPreviousRegexImplementation() {
+        List<String> names = List.of(
+                "Пила циркулярная Makita 5008MG",
+                "Набор бит (32 шт.) -- PH/PZ/TORX",
+                "Ёмкость_для_воды 20 л",
+                "Клей\tмонтажный\nпрозрачный",
+                "ЩЁТКА-СМЕТКА  «Эконом»",
+                "Шуруповёрт 18V 2×2.0Ah",
+                "- - -Ключ- -",
+                "Перфоратор SDS-plus 800 Вт 2,7 Дж".repeat(10));
+
+        for (String name : names) {
+            assertThat(SlugService.slugify(name, 150, "product"))
+                    .as(name)
+                    .isEqualTo(regexSlug(name, 150));
+        }
+    }
+
+    /**
+     * Прежняя реализация из импортеров — эталон для сравнения (и в SlugServiceBenchmark)
+     */
+    static String regexSlug(String name, int maxLength) {
+        Map<Character, String> map = new HashMap<>();
+        String lower = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя";
+        String[] latin = {"a", "b", "v", "g", "d", "e", "yo", "zh", "z", "i", "y", "k", "l", "m", "n", "o",
+                "p", "r", "s", "t", "u", "f", "kh", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya"};
+        for (int i = 0; i < latin.length; i++) {
+            map.put(lower.charAt(i), latin[i]);
+            map.put(Character.toUpperCase(lower.charAt(i)), latin[i]);
+        }
+        StringBuilder transliterated = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            transliterated.append(map.getOrDefault(c, String.valueOf(c)));
+        }
+
+        String slug = transliterated.toString()
+                .replaceAll("[^a-zA-Z0-9\\s-]", "")
+                .replaceAll("\\s+", "_")
+                .replaceAll("-+", "_")
+                .toLowerCase();
+        slug = slug.replaceAll("^_+|_+$", "");
+        slug = slug.replaceAll("_+", "_");
+        if (slug.length() > maxLength) {
+            slug = slug.substring(0, maxLength);
+        }
+        if (slug.endsWith("_")) {
+            slug = slug.substring(0, slug.length() - 1);
+        }
+        return slug;
+    }
+}
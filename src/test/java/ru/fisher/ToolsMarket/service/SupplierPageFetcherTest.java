@@ -0,0 +1,189 @@
+package ru.fisher.ToolsMarket.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.fisher.ToolsMarket.config.HttpClientConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SupplierPageFetcherTest {
+
+    private static final HttpClient HTTP_CLIENT = new HttpClientConfig().httpClient(2_000);
+    private static final String ETAG = "\"v1\"";
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        // Заглушка сайта поставщика: страница с ETag, на совпавший If-None-Match — 304
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/product/", exchange -> {
+            requests.incrementAndGet();
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = ("<html><body><h1>Товар " + path + "</h1>"
+                    + "<img src=\"/img/1.jpg\">" + "x".repeat(2000) + "</body></html>")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // Заголовки отправлены, тело не приходит
+        server.createContext("/stalled", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 1000);
+            OutputStream out = exchange.getResponseBody();
+            out.write("<html>".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try {
+                stalled.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                // сервер остановлен
+            }
+            exchange.close();
+        });
+        // Маленький gzip, который распаковывается в мегабайты
+        server.createContext("/bomb", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(new byte[5_000_000]);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                compressed.writeTo(out);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        stalled.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void freshPageIsServedWithoutRequest() throws IOException {
+        SupplierPageFetcher fetcher = fetcher(600, 10_000_000);
+
+        Document first = fetcher.fetch(url("/product/1"));
+        Document second = fetcher.fetch(url("/product/1"));
+
+        assertThat(requests).hasValue(1);
+        assertThat(second.selectFirst("h1").text()).isEqualTo(first.selectFirst("h1").text());
+        // Относительные ссылки разрешаются от адреса страницы и для страницы из кэша
+        assertThat(second.selectFirst("img").absUrl("src")).isEqualTo(url("/img/1.jpg"));
+    }
+
+    @Test
+    void stalePageIsRevalidatedWithEtag() throws IOException {
+        SupplierPageFetcher fetcher = fetcher(0, 10_000_000);
+
+        fetcher.fetch(url("/product/1"));
+        Document revalidated = fetcher.fetch(url("/product/1"));
+
+        assertThat(requests).hasValue(2);
+        assertThat(notModified).hasValue(1);
+        assertThat(revalidated.selectFirst("h1").text()).isEqualTo("Товар /product/1");
+    }
+
+    @Test
+    void cacheSizeIsBounded() throws IOException {
+        // Каждая страница после gzip — несколько сотен байт
+        SupplierPageFetcher fetcher = fetcher(600, 1_000);
+
+        for (int i = 0; i < 10; i++) {
+            fetcher.fetch(url("/product/" + i));
+        }
+
+        long total;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            total = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertThat(total).isLessThanOrEqualTo(1_000);
+    }
+
+    @Test
+    void failedCacheWriteLeavesNoTempFile() throws Exception {
+        // На месте файла кэша — непустой каталог: перенос временного файла не удастся
+        byte[] hash = MessageDigest.getInstance("SHA-256")
+                .digest(url("/product/1").getBytes(StandardCharsets.UTF_8));
+        Path blocked = cacheDir.resolve(HexFormat.of().formatHex(hash) + ".page");
+        Files.createDirectories(blocked);
+        Files.writeString(blocked.resolve("busy"), "x");
+
+        Document page = fetcher(600, 10_000_000).fetch(url("/product/1"));
+
+        assertThat(page.selectFirst("h1").text()).isEqualTo("Товар /product/1");
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertThat(files.filter(file -> file.toString().endsWith(".tmp"))).isEmpty();
+        }
+    }
+
+    @Test
+    void bodyStalledAfterHeadersTimesOut() {
+        SupplierPageFetcher fetcher = new SupplierPageFetcher(HTTP_CLIENT, cacheDir.toString(), 600, 10_000_000,
+                500, 2_000_000);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> fetcher.fetch(url("/stalled")))
+                .isInstanceOf(HttpTimeoutException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void decodedBodyIsLimited() {
+        assertThatThrownBy(() -> fetcher(600, 10_000_000).fetch(url("/bomb")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("2000000");
+    }
+
+    private SupplierPageFetcher fetcher(long freshSeconds, long maxBytes) {
+        return new SupplierPageFetcher(HTTP_CLIENT, cacheDir.toString(), freshSeconds, maxBytes, 5_000, 2_000_000);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,114 @@
+package ru.fisher.ToolsMarket.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.FileSystemUtils;
+import ru.fisher.ToolsMarket.PostgresTestConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "app.upload.path=./test-uploads/gc",
+        "app.base.url=http://testlocalhost:8080",
+        "app.upload.gc.grace-hours=24",
+        "app.upload.gc.retention-days=7"
+})
+@ContextConfiguration(initializers = PostgresTestConfig.class)
+class UploadGcServiceTest {
+
+    private static final Path UPLOADS = Paths.get("./test-uploads/gc");
+    private static final Path QUARANTINE = UPLOADS.resolve(UploadGcService.QUARANTINE_DIR);
+
+    @Autowired
+    private UploadGcService gcService;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void cleanup() throws IOException {
+        jdbc.execute("TRUNCATE TABLE product, category, image_mirror RESTART IDENTITY CASCADE");
+        FileSystemUtils.deleteRecursively(UPLOADS);
+    }
+
+    @Test
+    void unreferencedOldFilesAreQuarantined() throws IOException {
+        long product = jdbc.queryForObject("""
+                INSERT INTO product (name, title, sku, price, created_at, updated_at)
+                VALUES ('Дрель', 'drill', 'SKU-1', 100, now(), now())
+                RETURNING id
+                """, Long.class);
+        jdbc.update("INSERT INTO product_image (product_id, url, sort_order) VALUES (?, ?, 0)",
+                product, "http://testlocalhost:8080/images/content/aa/bb/used.jpg");
+        // Старый формат URL: файл лежит в categories/, а ссылка без подкаталога
+        jdbc.update("INSERT INTO category (title, name, image_url) VALUES ('drills', 'Дрели', ?)",
+                "http://testlocalhost:8080/images/legacy.png");
+
+        oldFile("content/aa/bb/used.jpg", 100);
+        oldFile("content/aa/bb/used_w400.jpg", 40);
+        oldFile("categories/legacy.png", 10);
+        oldFile("content/cc/dd/orphan.jpg", 300);
+        oldFile("content/cc/dd/orphan_w200.jpg", 20);
+        Files.writeString(UPLOADS.resolve("content/cc/dd/fresh.jpg"), "только что загружен");
+
+        UploadGcService.Report report = gcService.collect();
+
+        assertThat(report.scanned()).isEqualTo(6);
+        assertThat(report.quarantinedFiles()).isEqualTo(2);
+        assertThat(report.quarantinedBytes()).isEqualTo(320);
+        assertThat(UPLOADS.resolve("content/aa/bb/used.jpg")).exists();
+        assertThat(UPLOADS.resolve("content/aa/bb/used_w400.jpg")).exists();
+        assertThat(UPLOADS.resolve("categories/legacy.png")).exists();
+        assertThat(UPLOADS.resolve("content/cc/dd/fresh.jpg")).exists();
+        assertThat(UPLOADS.resolve("content/cc/dd/orphan.jpg")).doesNotExist();
+        assertThat(QUARANTINE.resolve(LocalDate.now() + "/content/cc/dd/orphan.jpg")).exists();
+    }
+
+    @Test
+    void expiredQuarantineIsDeletedAndCounted() throws IOException {
+        double before = reclaimed();
+        Path expired = QUARANTINE.resolve(LocalDate.now().minusDays(8) + "/content/ee/ff/old.jpg");
+        Path kept = QUARANTINE.resolve(LocalDate.now().minusDays(2) + "/content/ee/ff/recent.jpg");
+        Files.createDirectories(expired.getParent());
+        Files.createDirectories(kept.getParent());
+        Files.write(expired, new byte[500]);
+        Files.write(kept, new byte[50]);
+
+        UploadGcService.Report report = gcService.collect();
+
+        assertThat(report.purgedFiles()).isEqualTo(1);
+        assertThat(report.reclaimedBytes()).isEqualTo(500);
+        assertThat(expired.getParent()).doesNotExist();
+        assertThat(kept).exists();
+        assertThat(reclaimed() - before).isEqualTo(500);
+    }
+
+    private void oldFile(String path, int size) throws IOException {
+        Path file = UPLOADS.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(2, ChronoUnit.DAYS)));
+    }
+
+    private double reclaimed() {
+        var counter = meterRegistry.find(UploadGcService.RECLAIMED_COUNTER).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}